@@ -1,54 +1,72 @@
 package com.ovrhere.android.currencyconverter.model;
 
-import java.text.ParseException;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.res.Resources;
-import android.content.res.TypedArray;
-import android.preference.PreferenceManager;
 import android.support.v4.content.AsyncTaskLoader;
 import android.util.Log;
 
 import com.ovrhere.android.currencyconverter.R;
+import com.ovrhere.android.currencyconverter.model.currencyrequest.JsonHttpRateSource;
+import com.ovrhere.android.currencyconverter.model.currencyrequest.RateAggregator;
+import com.ovrhere.android.currencyconverter.model.currencyrequest.RateSource;
 import com.ovrhere.android.currencyconverter.model.currencyrequest.YahooApiExchangeRatesUpdate;
-import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract;
 import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.DisplayOrderEntry;
-import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.ExchangeRateEntry;
+import com.ovrhere.android.currencyconverter.model.data.RateSnapshot;
+import com.ovrhere.android.currencyconverter.model.data.RateSnapshotLoader;
+import com.ovrhere.android.currencyconverter.model.requests.KeepAliveRequestClient;
 import com.ovrhere.android.currencyconverter.prefs.PreferenceUtils;
-import com.ovrhere.android.currencyconverter.utils.Timestamp;
 
 /**
  * Simple loader to provide abstraction from the back end.
+ * Uses base-currency mode if <code>R.string.currConv_config_baseCurrency</code> is set,
+ * and fetches from <code>R.string.currConv_config_rateEndpoint</code> &amp;
+ * <code>R.array.currConv_config_rateMirrors</code> if set; several endpoints are
+ * combined as <code>R.string.currConv_config_rateAggregation</code>.
+ * The http keep-alive pool is sized by <code>R.integer.currConv_config_httpPoolSize</code>.
+ * Updates are requested in the format of <code>R.string.currConv_pref_KEY_USE_JSON_REQUEST</code>.
+ * Cancelling the load aborts the update's requests in flight; rates it already 
+ * wrote stay, but the last update time is only set by a successful update.
+ * The update's threads are kept between loads until the loader is reset.
+ * The first run seeds the defaults from the rate snapshot <code>R.raw.default_exchange_rates</code>.
  * 
  * @author Jason J. 
- * @version 0.3.0-20150527
+ * @version 0.9.3-20261018
  */
 public class ExchangeRateUpdateLoader extends AsyncTaskLoader<Void> {
 	/** Class name for debugging purposes. */
 	final static private String LOGTAG = ExchangeRateUpdateLoader.class
 			.getSimpleName();
+	/** The value of <code>R.string.currConv_config_rateAggregation</code> to
+	 * combine endpoints by quorum. */
+	final static private String AGGREGATION_QUORUM = "quorum";
+	
+	/** Whether the keep-alive pool has been configured, in this process. */
+	private static boolean sHttpPoolConfigured = false;
 	
 	private final YahooApiExchangeRatesUpdate mUpdate;
+	/** The base currency of base-currency mode or <code>null</code> to store every pair. */
+	private final String mBaseCurrency;
 	
 	public ExchangeRateUpdateLoader(Context context) {
 		super(context);
 		String[] currencyList = context.getResources().getStringArray(R.array.currConv_rateOrder);
-		boolean json = PreferenceManager.getDefaultSharedPreferences(context).getBoolean(
-				context.getString(R.string.currConv_pref_KEY_USE_JSON_REQUEST),
-				true);
-		mUpdate = new YahooApiExchangeRatesUpdate(context.getContentResolver(), currencyList, json);
+		mBaseCurrency = getBaseCurrency(context);
+		mUpdate = newUpdate(context, currencyList, mBaseCurrency);
+		configureRateSource(context);
+		configureHttpPool(context);
 	}
 	
 	public ExchangeRateUpdateLoader(Context context, String[] currencyList) {
 		super(context);
-		boolean json = PreferenceManager.getDefaultSharedPreferences(context).getBoolean(
-							context.getString(R.string.currConv_pref_KEY_USE_JSON_REQUEST),
-							true);
-		
-		mUpdate = new YahooApiExchangeRatesUpdate(context.getContentResolver(), currencyList, json);
+		mBaseCurrency = getBaseCurrency(context);
+		mUpdate = newUpdate(context, currencyList, mBaseCurrency);
+		configureRateSource(context);
+		configureHttpPool(context);
 	}
 
     @Override
@@ -62,6 +80,9 @@ public class ExchangeRateUpdateLoader extends AsyncTaskLoader<Void> {
 		
 		checkAndConfigFirstRun(lastUpdate);
 		
+		if (isLoadInBackgroundCanceled()) {
+			return null;
+		}
 		mUpdate.run();
 		if (mUpdate.isUpdateSuccessful()) {
 			PreferenceUtils.setLastUpdateTimeToNow(getContext());
@@ -71,10 +92,76 @@ public class ExchangeRateUpdateLoader extends AsyncTaskLoader<Void> {
 		return null;
 	}
 	
+	@Override
+	public void cancelLoadInBackground() {
+		super.cancelLoadInBackground();
+		mUpdate.cancel();
+	}
+	
+	@Override
+	protected void onReset() {
+		super.onReset();
+		mUpdate.shutdown(); //its threads are kept between loads
+	}
+	
 	////////////////////////////////////////////////////////////////////////////////////////////////
 	//// Helper methods
 	////////////////////////////////////////////////////////////////////////////////////////////////
 
+	/** @return The update of the list, in the preferred request format. */
+	private static YahooApiExchangeRatesUpdate newUpdate(Context context, String[] currencyList,
+			String baseCurrency) {
+		final String format = PreferenceUtils.getRequestFormat(context);
+		YahooApiExchangeRatesUpdate update = new YahooApiExchangeRatesUpdate(
+				context.getContentResolver(), currencyList, 
+				!PreferenceUtils.REQUEST_FORMAT_XML.equals(format), baseCurrency);
+		update.setJsonScanner(PreferenceUtils.REQUEST_FORMAT_JSON_SCANNER.equals(format));
+		return update;
+	}
+	
+	/** Fetches from the configured endpoints, if any, rather than the yahoo api. */
+	private void configureRateSource(Context context) {
+		final Resources res = context.getResources();
+		final List<RateSource> sources = new ArrayList<RateSource>();
+		final String endpoint = context.getString(R.string.currConv_config_rateEndpoint).trim();
+		if (!endpoint.isEmpty()) {
+			sources.add(new JsonHttpRateSource(endpoint));
+		}
+		for (String mirror : res.getStringArray(R.array.currConv_config_rateMirrors)) {
+			if (!mirror.trim().isEmpty()) {
+				sources.add(new JsonHttpRateSource(mirror.trim()));
+			}
+		}
+		if (sources.isEmpty()) {
+			return;
+		}
+		final RateAggregator.Mode mode = 
+				AGGREGATION_QUORUM.equals(context.getString(R.string.currConv_config_rateAggregation)) ?
+				RateAggregator.Mode.QUORUM : RateAggregator.Mode.HEDGED;
+		mUpdate.setRateSources(mode, sources.toArray(new RateSource[sources.size()]));
+		mUpdate.setHedgeDelay(res.getInteger(R.integer.currConv_config_hedgeDelay));
+	}
+	
+	/** Configures the keep-alive pool from <code>R.integer.currConv_config_httpPoolSize</code>
+	 * &amp; <code>R.integer.currConv_config_httpKeepAliveDuration</code>; once per process, 
+	 * as the platform reads them on its first request. */
+	private static void configureHttpPool(Context context) {
+		synchronized (ExchangeRateUpdateLoader.class) {
+			if (sHttpPoolConfigured) {
+				return;
+			}
+			sHttpPoolConfigured = true;
+		}
+		final Resources res = context.getResources();
+		KeepAliveRequestClient.configurePool(res.getInteger(R.integer.currConv_config_httpPoolSize),
+				res.getInteger(R.integer.currConv_config_httpKeepAliveDuration));
+	}
+	
+	/** @return The configured base currency or <code>null</code> if not in base-currency mode. */
+	private static String getBaseCurrency(Context context) {
+		final String baseCurrency = context.getString(R.string.currConv_config_baseCurrency).trim();
+		return baseCurrency.isEmpty() ? null : baseCurrency;
+	}
 	
 	
 	////////////////////////////////////////////////////////////////////////////////////////////////
@@ -83,7 +170,8 @@ public class ExchangeRateUpdateLoader extends AsyncTaskLoader<Void> {
 	
 	/**
 	 * Sets the database to be the value of the defaults, if there has never been any 
-	 * updates.
+	 * updates. The defaults are the rate snapshot <code>R.raw.default_exchange_rates</code>,
+	 * mapped rather than parsed; if it cannot be read, the first run is tried again next load.
 	 * @param lastUpdate The time since epoch since last update.
 	 */
 	private void checkAndConfigFirstRun(long lastUpdate) {
@@ -94,38 +182,18 @@ public class ExchangeRateUpdateLoader extends AsyncTaskLoader<Void> {
 		 * First run is to load the data
 		 */
 		Resources res = getContext().getResources();
-		String[] currencyList = res.getStringArray(R.array.currConv_rateOrder);
-		TypedArray arrayIdList = res.obtainTypedArray(R.array.currConv_rateArray_array);
-		
-		List<ContentValues> returnValues = new ArrayList<ContentValues>();
+		buildDisplayOrder(res.getStringArray(R.array.currConv_rateOrder));
 		
-		buildDisplayOrder(currencyList);
-		
-		final int SIZE = currencyList.length;
-		for (int index = 0; index < SIZE; index++) {
-			String code = currencyList[index];
-			
-			int id = arrayIdList.getResourceId(index, 0); //get our array id
-			TypedArray array = res.obtainTypedArray(id); //use id to get our actual rate array.
-			
-			createCurrencyData(code, currencyList, res.obtainTypedArray(id), returnValues);
-			array.recycle();
-		}
-		
-		arrayIdList.recycle();		
-		
-		ContentValues[] input = new ContentValues[returnValues.size()];
-		
-		getContext().getContentResolver()
-					.bulkInsert(ExchangeRateEntry.CONTENT_URI, returnValues.toArray(input));
-		
-		long time = 0;
+		RateSnapshot snapshot = null;
 		try {
-			time = Timestamp.parse(getContext().getString(R.string.currConv_defRate_updateTime)).getTime();
-		} catch (ParseException e) {
-			Log.w(LOGTAG, "Oops! Default timestamp did not parse.");
+			snapshot = RateSnapshot.open(res, R.raw.default_exchange_rates);
+		} catch (IOException e) {
+			Log.w(LOGTAG, "Oops! Default rates did not load: " + e);
+			return;
 		}
-		PreferenceUtils.setLastUpdateTime(getContext(), time);
+		//base-currency mode only stores the base's rates.
+		RateSnapshotLoader.seed(getContext().getContentResolver(), snapshot, mBaseCurrency);
+		PreferenceUtils.setLastUpdateTime(getContext(), snapshot.getUpdateTime());
 	}
 
 	/** Populates the display order table. 
@@ -144,48 +212,4 @@ public class ExchangeRateUpdateLoader extends AsyncTaskLoader<Void> {
 		getContext().getContentResolver()
 					.bulkInsert(DisplayOrderEntry.CONTENT_URI, input); 
 	}
-	
-	/**
-	 * 
-	 * @param sourceCode The starting currency to convert from
-	 * @param currencyList The list of all possible currencies (including itself)
-	 * @param exchangeRates The list of matching exchange rates (parallel to currencyList) 
-	 * @param returnValues The list to modified values in for return
-	 */
-	private static void createCurrencyData(String sourceCode, String[] currencyList, 
-			TypedArray exchangeRates, final List<ContentValues> returnValues){
-				
-		if (currencyList.length != exchangeRates.length()){
-			Log.w(LOGTAG, "Irregular behavior: Mismatched lists?");			
-			throw new IndexOutOfBoundsException();
-		}
-		
-		final int SIZE = currencyList.length;
-		
-		for (int index = 0; index < SIZE; index++) {
-			//NOTE: this means we will include self conversions, e.g. USD -> USD
-			returnValues.add(
-						buildContentValues(
-								sourceCode,
-								currencyList[index], 
-								exchangeRates.getFloat(index, 0))
-					);
-		}		
-		
-	}
-	
-	/**
-	 * @param src The source code
-	 * @param dst The destination code
-	 * @param rate The rate
-	 * @return  The content values populated using the keys in 
-	 * {@link CurrencyConverterContract.ExchangeRateEntry}
-	 */
-	private static ContentValues buildContentValues(String src, String dst, double rate) {
-		ContentValues cvPair = new ContentValues();
-		cvPair.put(ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE, src);
-		cvPair.put(ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE, dst);							
-		cvPair.put(ExchangeRateEntry.COLUMN_EXCHANGE_RATE, rate);
-		return cvPair;
-	}
 }
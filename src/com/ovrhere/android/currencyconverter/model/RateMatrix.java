@@ -0,0 +1,466 @@
+/*
+ * Copyright 2015 Jason J. (iamovrhere)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.ovrhere.android.currencyconverter.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
+import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.ExchangeRateEntry;
+
+/**
+ * <p>Every exchange rate between a set of currencies, held as primitives: 
+ * codes are interned to dense indices 0, 1, 2... in order added, and the rates
+ * are a single row-major <code>double[]</code>, from row's code to column's code. 
+ * Each row (source) has the time it was last replaced. Rates not known are 
+ * {@link Double#NaN}. Lookups by index are a single array read; by code, 
+ * two map lookups.</p>
+ * 
+ * <p>Not thread-safe; confine the matrix to its writer &amp; hand readers 
+ * {@link #snapshot()}s. Snapshots are immutable &amp; share the matrix's arrays
+ * until its next write, which then copies them (once) before changing.</p>
+ * 
+ * <p>Backs the provider's in-memory rates, see 
+ * {@link com.ovrhere.android.currencyconverter.model.data.RateMatrixCache}, 
+ * &amp; the reading &amp; writing of 
+ * {@link com.ovrhere.android.currencyconverter.model.data.RateSnapshot}s.</p>
+ *
+ * @author Jason J.
+ * @version 0.2.0-20261018
+ */
+public final class RateMatrix {
+	/** The codes held before the arrays grow, by default. */
+	final static public int DEFAULT_CAPACITY = 16;
+	
+	/** The columns of the rates read from &amp; written to cursors. */
+	final static private String[] RATE_PROJECTION = new String[]{
+		ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE,
+		ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE,
+		ExchangeRateEntry.COLUMN_EXCHANGE_RATE
+	};
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// End constants
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** The current table; never changed once {@link #mShared}. */
+	private Table mTable;
+	/** Whether {@link #mTable} is held by a snapshot, so must be copied to write. */
+	private boolean mShared = false;
+	/** The snapshot of {@link #mTable} or <code>null</code> if written since. */
+	private Snapshot mSnapshot = null;
+	
+	/** Creates an empty matrix of {@value #DEFAULT_CAPACITY} codes before growing. */
+	public RateMatrix() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * Creates an empty matrix.
+	 * @param capacity The codes held before growing.
+	 */
+	public RateMatrix(int capacity) {
+		this.mTable = new Table(Math.max(1, capacity));
+	}
+	
+	/**
+	 * Reads the rates of a provider cursor, as of the given time.
+	 * @param cursor A cursor of {@link ExchangeRateEntry}, with at least the source
+	 * code, destination code &amp; rate columns. Read from its start; not closed.
+	 * @param time The time of the rates, in ms since epoch.
+	 * @return The matrix of the rates.
+	 * @throws IllegalArgumentException If a column is missing.
+	 */
+	public static RateMatrix fromCursor(Cursor cursor, long time) {
+		final RateMatrix matrix = new RateMatrix(); 
+		matrix.putAll(cursor, time);
+		return matrix;
+	}
+	
+	/** @return The number of codes; every index is less. */
+	public int size() {
+		return mTable.size;
+	}
+	
+	/**
+	 * @param code The code, in any case.
+	 * @return The index of the code or -1 if not held.
+	 */
+	public int indexOf(String code) {
+		return mTable.indexOf(code);
+	}
+	
+	/**
+	 * @param index The index of the code.
+	 * @return The code; uppercase.
+	 * @throws IndexOutOfBoundsException If not an index held.
+	 */
+	public String getCode(int index) {
+		return mTable.getCode(index);
+	}
+	
+	/**
+	 * @param source The index of the source code.
+	 * @param dest The index of the destination code.
+	 * @return The rate from source to destination or NaN if not known.
+	 * @throws IndexOutOfBoundsException If either is not an index held.
+	 */
+	public double get(int source, int dest) {
+		return mTable.get(source, dest);
+	}
+	
+	/**
+	 * @param sourceCode The source code, in any case.
+	 * @param destCode The destination code, in any case.
+	 * @return The rate from source to destination or NaN if either is not held
+	 * or the rate not known.
+	 */
+	public double get(String sourceCode, String destCode) {
+		return mTable.get(sourceCode, destCode);
+	}
+	
+	/**
+	 * @param source The index of the source code.
+	 * @return The time the row was last replaced, in ms since epoch, or 0 if never.
+	 * @throws IndexOutOfBoundsException If not an index held.
+	 */
+	public long getRowTime(int source) {
+		return mTable.getRowTime(source);
+	}
+	
+	/**
+	 * Adds the code, if not already held; its rates unknown.
+	 * @param code The code, in any case.
+	 * @return The index of the code.
+	 */
+	public int addCode(String code) {
+		final String key = toKey(code);
+		final Integer index = mTable.indexes.get(key);
+		if (index != null) {
+			return index;
+		}
+		final Table table = writable(mTable.size + 1);
+		table.codes[table.size] = key;
+		table.indexes.put(key, table.size);
+		return table.size++;
+	}
+	
+	/**
+	 * Sets a single rate; the row's time is unchanged.
+	 * @param source The index of the source code.
+	 * @param dest The index of the destination code.
+	 * @param rate The rate from source to destination or NaN to forget it.
+	 * @throws IndexOutOfBoundsException If either is not an index held.
+	 */
+	public void set(int source, int dest, double rate) {
+		mTable.checkIndex(source);
+		mTable.checkIndex(dest);
+		final Table table = writable(0);
+		table.rates[source * table.stride + dest] = rate;
+	}
+	
+	/**
+	 * Replaces every rate of a row at once. 
+	 * @param source The index of the source code.
+	 * @param rates The rates from the source, by index of destination; 
+	 * NaN where not known. Copied.
+	 * @param time The time of the rates, in ms since epoch.
+	 * @throws IndexOutOfBoundsException If not an index held.
+	 * @throws IllegalArgumentException If not a rate for every code held.
+	 */
+	public void replaceRow(int source, double[] rates, long time) {
+		mTable.checkIndex(source);
+		if (rates.length != mTable.size) {
+			throw new IllegalArgumentException("Expected " + mTable.size + 
+					" rates, not " + rates.length);
+		}
+		final Table table = writable(0);
+		System.arraycopy(rates, 0, table.rates, source * table.stride, rates.length);
+		table.rowTimes[source] = time;
+	}
+	
+	/**
+	 * Puts every rate of a provider cursor, adding codes as needed; the rows of 
+	 * every source read are given the time.
+	 * @param cursor A cursor of {@link ExchangeRateEntry}, with at least the source
+	 * code, destination code &amp; rate columns. Read from its start; not closed.
+	 * @param time The time of the rates, in ms since epoch.
+	 * @return The number of rates read.
+	 * @throws IllegalArgumentException If a column is missing.
+	 */
+	public int putAll(Cursor cursor, long time) {
+		final int sourceColumn = cursor.getColumnIndexOrThrow(RATE_PROJECTION[0]);
+		final int destColumn = cursor.getColumnIndexOrThrow(RATE_PROJECTION[1]);
+		final int rateColumn = cursor.getColumnIndexOrThrow(RATE_PROJECTION[2]);
+		int count = 0;
+		cursor.moveToPosition(-1);
+		while (cursor.moveToNext()) {
+			final int source = addCode(cursor.getString(sourceColumn));
+			final int dest = addCode(cursor.getString(destColumn));
+			final Table table = writable(0);
+			table.rates[source * table.stride + dest] = cursor.getDouble(rateColumn);
+			table.rowTimes[source] = time;
+			count++;
+		}
+		return count;
+	}
+	
+	/**
+	 * Takes an immutable view of the matrix as it is now, for other threads to read.
+	 * Costs nothing until the matrix is next written, which copies its arrays once.
+	 * @return The snapshot; the same one until the matrix is written.
+	 */
+	public Snapshot snapshot() {
+		if (mSnapshot == null) {
+			mSnapshot = new Snapshot(mTable);
+			mShared = true;
+		}
+		return mSnapshot;
+	}
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Helper methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * Readies the table to write; copying it if shared or too small.
+	 * @param capacity The codes the table must hold.
+	 * @return The table to write.
+	 */
+	private Table writable(int capacity) {
+		mSnapshot = null;
+		if (mShared || capacity > mTable.stride) {
+			int stride = mTable.stride;
+			while (stride < capacity) {
+				stride *= 2;
+			}
+			mTable = mTable.copy(stride);
+			mShared = false;
+		}
+		return mTable;
+	}
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Utility methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** @return The code as a key; uppercase. */
+	private static String toKey(String code) {
+		return code.trim().toUpperCase(Locale.US);
+	}
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Internal classes
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * An immutable view of a {@link RateMatrix}; thread-safe.
+	 * @version 0.2.0-20261018
+	 */
+	public static final class Snapshot {
+		final private Table mTable;
+		
+		private Snapshot(Table table) {
+			this.mTable = table;
+		}
+		
+		/** @return The number of codes; every index is less. */
+		public int size() {
+			return mTable.size;
+		}
+		
+		/** @see RateMatrix#indexOf(String) */
+		public int indexOf(String code) {
+			return mTable.indexOf(code);
+		}
+		
+		/** @see RateMatrix#getCode(int) */
+		public String getCode(int index) {
+			return mTable.getCode(index);
+		}
+		
+		/** @see RateMatrix#get(int, int) */
+		public double get(int source, int dest) {
+			return mTable.get(source, dest);
+		}
+		
+		/** @see RateMatrix#get(String, String) */
+		public double get(String sourceCode, String destCode) {
+			return mTable.get(sourceCode, destCode);
+		}
+		
+		/** @see RateMatrix#getRowTime(int) */
+		public long getRowTime(int source) {
+			return mTable.getRowTime(source);
+		}
+		
+		/** 
+		 * @return A cursor of every known rate, row by row: the source code, 
+		 * destination code &amp; rate columns of {@link ExchangeRateEntry}.
+		 */
+		public Cursor toCursor() {
+			final Table table = mTable;
+			final MatrixCursor cursor = new MatrixCursor(RATE_PROJECTION, table.size * table.size);
+			for (int source = 0; source < table.size; source++) {
+				for (int dest = 0; dest < table.size; dest++) {
+					final double rate = table.rates[source * table.stride + dest];
+					if (!Double.isNaN(rate)) {
+						cursor.addRow(new Object[]{table.codes[source], table.codes[dest], rate});
+					}
+				}
+			}
+			return cursor;
+		}
+		
+		/** @return Every known rate, row by row, as values to insert into 
+		 * {@link ExchangeRateEntry#CONTENT_URI}. */
+		public ContentValues[] toContentValues() {
+			return toContentValues(0, mTable.size);
+		}
+		
+		/** 
+		 * @param source The index of the source code.
+		 * @return Every known rate of the row, as {@link #toContentValues()}.
+		 * @throws IndexOutOfBoundsException If not an index held.
+		 */
+		public ContentValues[] toContentValues(int source) {
+			mTable.checkIndex(source);
+			return toContentValues(source, source + 1);
+		}
+		
+		/** @return Every rate, known or not, row-major; a dense copy of 
+		 * {@link #size()} rows of {@link #size()}. */
+		public double[] toArray() {
+			final Table table = mTable;
+			final double[] rates = new double[table.size * table.size];
+			for (int source = 0; source < table.size; source++) {
+				System.arraycopy(table.rates, source * table.stride, 
+						rates, source * table.size, table.size);
+			}
+			return rates;
+		}
+		
+		/** @return The codes, by index; uppercase. */
+		public String[] getCodes() {
+			return Arrays.copyOf(mTable.codes, mTable.size);
+		}
+		
+		/** @return The known rates of the rows from first to last, exclusive. */
+		private ContentValues[] toContentValues(int first, int last) {
+			final Table table = mTable;
+			final ContentValues[] values = new ContentValues[(last - first) * table.size];
+			int count = 0;
+			for (int source = first; source < last; source++) {
+				for (int dest = 0; dest < table.size; dest++) {
+					final double rate = table.rates[source * table.stride + dest];
+					if (Double.isNaN(rate)) {
+						continue;
+					}
+					ContentValues cvPair = new ContentValues(3);
+					cvPair.put(ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE, table.codes[source]);
+					cvPair.put(ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE, table.codes[dest]);
+					cvPair.put(ExchangeRateEntry.COLUMN_EXCHANGE_RATE, rate);
+					values[count++] = cvPair;
+				}
+			}
+			return Arrays.copyOf(values, count);
+		}
+	}
+	
+	/** The arrays of a matrix; rows of {@link #stride} rates, of which the first
+	 * {@link #size} are used. */
+	final private static class Table {
+		final int stride;
+		/** The codes by index; uppercase. */
+		final String[] codes;
+		/** The indices by code. */
+		final HashMap<String, Integer> indexes;
+		/** The [source * stride + dest] rates; {@link Double#NaN} when not known. */
+		final double[] rates;
+		/** The time each row was last replaced; 0 if never. */
+		final long[] rowTimes;
+		int size = 0;
+		
+		Table(int stride) {
+			this(stride, new HashMap<String, Integer>());
+		}
+		
+		private Table(int stride, HashMap<String, Integer> indexes) {
+			this.stride = stride;
+			this.codes = new String[stride];
+			this.indexes = indexes;
+			this.rates = new double[stride * stride];
+			this.rowTimes = new long[stride];
+			Arrays.fill(rates, Double.NaN);
+		}
+		
+		/** @return A copy of the table, of the given stride; at least the current. */
+		Table copy(int newStride) {
+			final Table table = new Table(newStride, new HashMap<String, Integer>(indexes));
+			System.arraycopy(codes, 0, table.codes, 0, size);
+			System.arraycopy(rowTimes, 0, table.rowTimes, 0, size);
+			if (newStride == stride) {
+				System.arraycopy(rates, 0, table.rates, 0, size * stride);
+			} else {
+				for (int row = 0; row < size; row++) {
+					System.arraycopy(rates, row * stride, table.rates, row * newStride, size);
+				}
+			}
+			table.size = size;
+			return table;
+		}
+		
+		int indexOf(String code) {
+			final Integer index = indexes.get(toKey(code));
+			return index == null ? -1 : index;
+		}
+		
+		String getCode(int index) {
+			checkIndex(index);
+			return codes[index];
+		}
+		
+		double get(int source, int dest) {
+			checkIndex(source);
+			checkIndex(dest);
+			return rates[source * stride + dest];
+		}
+		
+		double get(String sourceCode, String destCode) {
+			final Integer source = indexes.get(toKey(sourceCode));
+			final Integer dest = indexes.get(toKey(destCode));
+			if (source == null || dest == null) {
+				return Double.NaN;
+			}
+			return rates[source * stride + dest];
+		}
+		
+		long getRowTime(int source) {
+			checkIndex(source);
+			return rowTimes[source];
+		}
+		
+		void checkIndex(int index) {
+			if (index < 0 || index >= size) {
+				throw new IndexOutOfBoundsException("No code at: " + index + "; size " + size);
+			}
+		}
+	}
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2015 Jason J. (iamovrhere)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.ovrhere.android.currencyconverter.model.currencyrequest;
+
+import java.util.Arrays;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+
+import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.ExchangeRateEntry;
+
+/**
+ * <p>Writes rates to the provider as they are parsed, rather than once every
+ * response has been parsed into one array. Each rate is checked by the 
+ * {@link RateChangeDetector} and, if it moved, buffered; every 
+ * {@link #getChunkSize()} buffered rates are written by a single bulk insert,
+ * one transaction each. Memory is bounded by the chunk, however large 
+ * the responses.</p>
+ * 
+ * <p>Chunks are committed as they are written; closing without a flush only 
+ * drops the rows still buffered. A write that is abandoned part way thus 
+ * leaves the rates it has already written.</p>
+ * 
+ * <p>The rows of parsed rates are pooled, a row per slot of the chunk, and 
+ * overwritten once their chunk has been inserted; the provider does not keep
+ * them past the insert.</p>
+ * 
+ * <p>Rates are taken between {@link #open()} &amp; {@link #close(boolean)}, 
+ * from any thread; calls are serialized, so a slow write holds back the 
+ * parsers feeding it. Rates given while closed, such as by a parser yet to 
+ * notice its fetch was aborted, are ignored.</p>
+ *
+ * @author Jason J.
+ * @version 0.2.1-20261018
+ */
+final class ChunkedRateWriter implements RateSource.OnRateListener {
+	/** The default number of rows per bulk insert. */
+	final static public int DEFAULT_CHUNK_SIZE = 200;
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// End constants
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** Resolver used to insert into the database. */
+	final private ContentResolver mContentResolver;
+	/** Used to skip the rates that have not moved. */
+	final private RateChangeDetector mChangeDetector;
+	/** Whether or not to write the reverse of every rate. */
+	final private boolean mReverseRates;
+	/** The rows buffered for the next insert; reused. */
+	final private ContentValues[] mChunk;
+	/** The pooled row of each slot of {@link #mChunk}, created as first needed. */
+	final private ContentValues[] mPool;
+	
+	/** The count of rows in {@link #mChunk}. */
+	private int mBuffered = 0;
+	private boolean mOpen = false;
+	private int mInsertedCount = 0;
+	private int mInsertCount = 0;
+	
+	/**
+	 * @param resolver The resolver to insert with.
+	 * @param changeDetector The detector to skip the unchanged rates with.
+	 * @param reverseRates <code>true</code> to write the reverse of every 
+	 * {@link #onRate(CodeRatePair)} too.
+	 * @param chunkSize The rows per bulk insert; at least 1.
+	 */
+	public ChunkedRateWriter(ContentResolver resolver, RateChangeDetector changeDetector, 
+			boolean reverseRates, int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Chunks must have at least 1 row");
+		}
+		this.mContentResolver = resolver;
+		this.mChangeDetector = changeDetector;
+		this.mReverseRates = reverseRates;
+		this.mChunk = new ContentValues[chunkSize];
+		this.mPool = new ContentValues[chunkSize];
+	}
+	
+	/** @return The rows per bulk insert. */
+	public int getChunkSize() {
+		return mChunk.length;
+	}
+	
+	/** @return The rows inserted since last opened. */
+	public synchronized int getInsertedCount() {
+		return mInsertedCount;
+	}
+	
+	/** @return The bulk inserts made since last opened. */
+	public synchronized int getInsertCount() {
+		return mInsertCount;
+	}
+	
+	/** Starts taking rates; loads the stored rates to compare against. */
+	public synchronized void open() {
+		mChangeDetector.begin();
+		mBuffered = 0;
+		mInsertedCount = 0;
+		mInsertCount = 0;
+		mOpen = true;
+	}
+	
+	/** Writes the rate &amp; its reverse, if set, once they fill a chunk. 
+	 * Ignored if closed. */
+	@Override
+	public synchronized void onRate(CodeRatePair pair) {
+		if (!mOpen) {
+			return;
+		}
+		add(pair.writeTo(obtainRow()));
+		if (mReverseRates) {
+			add(pair.writeReverseTo(obtainRow()));
+		}
+	}
+	
+	/**
+	 * Writes the rows once they fill a chunk. Ignored if closed.
+	 * @param values The rows in the form of {@link ExchangeRateEntry}.
+	 */
+	public synchronized void write(ContentValues[] values) {
+		if (!mOpen) {
+			return;
+		}
+		for (ContentValues value : values) {
+			add(value);
+		}
+	}
+	
+	/**
+	 * Stops taking rates.
+	 * @param flush <code>true</code> to write the rows still buffered, 
+	 * <code>false</code> to drop them; chunks already written stay either way.
+	 */
+	public synchronized void close(boolean flush) {
+		try {
+			if (flush && mOpen) {
+				flush();
+			}
+		} finally {
+			Arrays.fill(mChunk, null);
+			mBuffered = 0;
+			mOpen = false;
+			mChangeDetector.end();
+		}
+	}
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Helper methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** @return The pooled row of the next slot, to overwrite. */
+	private ContentValues obtainRow() {
+		if (mPool[mBuffered] == null) {
+			mPool[mBuffered] = new ContentValues();
+		}
+		return mPool[mBuffered];
+	}
+	
+	/** Buffers the row if it moved, flushing a full chunk. */
+	private void add(ContentValues value) {
+		if (!mChangeDetector.isChanged(value)) {
+			return;
+		}
+		mChunk[mBuffered++] = value;
+		if (mBuffered == mChunk.length) {
+			flush();
+		}
+	}
+	
+	/** Inserts the buffered rows, if any. */
+	private void flush() {
+		if (mBuffered == 0) {
+			return;
+		}
+		final ContentValues[] chunk = mBuffered == mChunk.length ? 
+				mChunk : Arrays.copyOf(mChunk, mBuffered);
+		try {
+			mInsertedCount += mContentResolver.bulkInsert(ExchangeRateEntry.CONTENT_URI, chunk);
+			mInsertCount++;
+		} finally {
+			Arrays.fill(mChunk, 0, mBuffered, null);
+			mBuffered = 0;
+		}
+	}
+}
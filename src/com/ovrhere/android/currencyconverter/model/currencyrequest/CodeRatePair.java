@@ -17,7 +17,6 @@ package com.ovrhere.android.currencyconverter.model.currencyrequest;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.util.Locale;
 
 import android.content.ContentValues;
 import android.util.Log;
@@ -25,15 +24,34 @@ import android.util.Log;
 import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract;
 import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.ExchangeRateEntry;
 
-/** Simple internal dao for easy management. 
- * @version 0.4.0-20150523 */
-class CodeRatePair {
+/** Simple dao for easy management; the rate of a single pair, 
+ * as given by a {@link RateSource}. 
+ * 
+ * <p>Codes registered with {@link CurrencyCodes} are interned, so pairs share 
+ * their code strings and may be compared by id; any other code is copied. Rates are rounded in double &amp; long
+ * arithmetic, to the same result as {@link BigDecimal} would give.</p>
+ * @version 0.7.2-20261018 */
+public class CodeRatePair {
+	/** The largest magnitude rounded without {@link BigDecimal}; its 
+	 * millionths are exact as a double. */
+	final static private double MAX_FAST_ROUNDING = 9.0e9d;
+	/** The millionths in 1. */
+	final static private double MILLION = 1000000d;
+	/** The odd factor of a million; 10^6 = 5^6 * 2^6. */
+	final static private long FIVE_TO_THE_6 = 15625L;
+	
 	/** Always rounded to 6 decimals; RoundingMode HALF_UP */
 	final public double rate;
 	/** Always uppercase. */
 	final public String destCode;
 	/** Always uppercase. */
 	final public String srcCode;
+	/** The id of {@link #srcCode}, as interned by {@link CurrencyCodes}, 
+	 * or {@link CurrencyCodes#NONE} if not registered. */
+	final public int srcId;
+	/** The id of {@link #destCode}, as interned by {@link CurrencyCodes}, 
+	 * or {@link CurrencyCodes#NONE} if not registered. */
+	final public int destId;
 	
 	/**
 	 * Creates a simple code rate pair based on the raw ids and rates.
@@ -48,11 +66,31 @@ class CodeRatePair {
 					"Unable to extract currency code from id: "+idText);
 			throw new IllegalArgumentException("Cannot parse this rate pair");
 		}
-		this.destCode = idText.substring(3).toUpperCase(Locale.US);
-		this.srcCode = idText.substring(0,3).toUpperCase(Locale.US);
+		this.srcId = CurrencyCodes.idOf(idText, 0);
+		this.destId = CurrencyCodes.idOf(idText, CurrencyCodes.CODE_LENGTH);
+		this.srcCode = srcId != CurrencyCodes.NONE ? 
+				CurrencyCodes.codeOf(srcId) : CurrencyCodes.toCode(idText, 0);
+		this.destCode = destId != CurrencyCodes.NONE ? 
+				CurrencyCodes.codeOf(destId) : CurrencyCodes.toCode(idText, CurrencyCodes.CODE_LENGTH);
 		this.rate = roundTo6(rate);
 	}
-	
+
+	/**
+	 * Creates a code rate pair of codes already interned, as by a parser
+	 * reading the id in place.
+	 * @param srcId The id of the source code, as given by {@link CurrencyCodes}.
+	 * @param destId The id of the destination code, as given by {@link CurrencyCodes}.
+	 * @param rate The exchange rate from source to destination.
+	 * @throws IndexOutOfBoundsException If either is not a given id.
+	 */
+	CodeRatePair(int srcId, int destId, double rate) {
+		this.srcId = srcId;
+		this.destId = destId;
+		this.srcCode = CurrencyCodes.codeOf(srcId);
+		this.destCode = CurrencyCodes.codeOf(destId);
+		this.rate = roundTo6(rate);
+	}
+
 	/**
 	 * @return  The content values populated using the keys in 
 	 * {@link CurrencyConverterContract.ExchangeRateEntry}
@@ -60,7 +98,15 @@ class CodeRatePair {
 	 * "USD" -> "CAD" = 0.8100
 	 */
 	public ContentValues toContentValues() {
-		ContentValues cvPair = new ContentValues();
+		return writeTo(new ContentValues());
+	}
+	
+	/**
+	 * Puts the src -&gt; dest pair into reused values, as {@link #toContentValues()}.
+	 * @param cvPair The values to overwrite.
+	 * @return The values given.
+	 */
+	public ContentValues writeTo(ContentValues cvPair) {
 		cvPair.put(ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE, srcCode);
 		cvPair.put(ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE, destCode);							
 		cvPair.put(ExchangeRateEntry.COLUMN_EXCHANGE_RATE, rate);
@@ -74,7 +120,15 @@ class CodeRatePair {
 	 * "CAD" -> "USD" = 1.2300
 	 */
 	public ContentValues toReverseContentValues() {
-		ContentValues cvPair = new ContentValues();
+		return writeReverseTo(new ContentValues());
+	}
+	
+	/**
+	 * Puts the dest -&gt; src pair into reused values, as {@link #toReverseContentValues()}.
+	 * @param cvPair The values to overwrite.
+	 * @return The values given.
+	 */
+	public ContentValues writeReverseTo(ContentValues cvPair) {
 		cvPair.put(ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE, destCode);
 		cvPair.put(ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE, srcCode);							
 		cvPair.put(ExchangeRateEntry.COLUMN_EXCHANGE_RATE, roundTo6(1.0d/rate));
@@ -92,9 +146,41 @@ class CodeRatePair {
 	//// Utility methods
 	////////////////////////////////////////////////////////////////////////////////////////////////
 	
-	/** Neatly round input to 6 decimal places. */
-	private static double roundTo6(double num) {
-		return new BigDecimal(num).setScale(6, RoundingMode.HALF_UP).doubleValue();
+	/** Neatly round input to 6 decimal places; RoundingMode HALF_UP. 
+	 * Identical to <code>new BigDecimal(num).setScale(6, RoundingMode.HALF_UP).doubleValue()</code>
+	 * but without allocating, where <code>|num| &lt; 9e9</code>. 
+	 * The rounding of every stored rate. */
+	public static double roundTo6(double num) {
+		if (!(Math.abs(num) < MAX_FAST_ROUNDING)) { //NaN too, to throw as before
+			return new BigDecimal(num).setScale(6, RoundingMode.HALF_UP).doubleValue();
+		}
+		/* num is exactly m * 2^e, so num * 10^6 is exactly (m * 5^6) / 2^shift. 
+		 * That is rounded half up in longs, then divided by 10^6 in a double; 
+		 * exact operands, so correctly rounded, as BigDecimal#doubleValue(). */
+		final long bits = Double.doubleToRawLongBits(num);
+		final int exponent = (int) ((bits >>> 52) & 0x7ff);
+		long mantissa = bits & 0xfffffffffffffL;
+		if (exponent != 0) {
+			mantissa |= 1L << 52;
+		}
+		final int shift = 1075 - Math.max(exponent, 1) - 6;
+		if (shift <= 0) {
+			return num; //at most 6 decimals already
+		} else if (shift > 68 || mantissa == 0) {
+			return 0.0d; //below half a millionth; never negative, as BigDecimal
+		}
+		//the product, P = high * 2^32 + low, would overflow a long
+		final long high = (mantissa >>> 32) * FIVE_TO_THE_6; 
+		final long low = (mantissa & 0xffffffffL) * FIVE_TO_THE_6;
+		//P / 2^(shift - 1), floored
+		final long halves = shift <= 33 ?
+				(high << (33 - shift)) + (low >>> (shift - 1)) : 
+				(high + (low >>> 32)) >>> (shift - 33);
+		final long millionths = (halves + 1) >>> 1; //half up
+		if (millionths == 0) {
+			return 0.0d;
+		}
+		return (bits < 0 ? -millionths : millionths) / MILLION;
 	}
 	
 }
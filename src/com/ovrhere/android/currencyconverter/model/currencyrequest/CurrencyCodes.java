@@ -0,0 +1,212 @@
+/*
+ * Copyright 2015 Jason J. (iamovrhere)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.ovrhere.android.currencyconverter.model.currencyrequest;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * <p>Interns the 3 character currency codes of the configured currencies 
+ * (<code>R.array.currConv_rateOrder</code>) to small, dense integer ids: 
+ * 0, 1, 2... in order registered, each with a single canonical uppercase 
+ * string. Looking up a registered code reads the characters in place; 
+ * no substring or uppercase copy is made.</p>
+ * 
+ * <p>Only registered codes are interned, so the table is bounded by the 
+ * configuration, not by the responses parsed. Any other code has no id &amp; 
+ * is copied out as a new uppercase string; see {@link #toCode(CharSequence, int)}.</p>
+ * 
+ * <p>Codes are case insensitive. The table is immutable &amp; replaced whole 
+ * when codes are registered, so lookups take no lock; ids are never reused 
+ * or changed.</p>
+ *
+ * @author Jason J.
+ * @version 0.2.0-20261018
+ */
+final class CurrencyCodes {
+	/** The length of a currency code. */
+	final static public int CODE_LENGTH = 3;
+	/** The id of a code that is not registered. */
+	final static public int NONE = -1;
+	
+	/** Marks an empty slot of a key table, or a key of non-ascii characters. */
+	final static private long EMPTY = -1L;
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// End constants
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** The registered codes; replaced, never modified. */
+	volatile private static Table sTable = new Table(new String[0]);
+	
+	/** Not to be instantiated. */
+	private CurrencyCodes() {}
+	
+	/**
+	 * Registers the codes to intern, after those already registered; 
+	 * such as the configured currencies. Codes registered before keep their ids.
+	 * @param codes The codes; case insensitive.
+	 * @throws IllegalArgumentException If a code is not of {@value #CODE_LENGTH} 
+	 * ascii characters.
+	 */
+	public static synchronized void register(String... codes) {
+		final Table table = sTable;
+		String[] registered = table.codes;
+		for (String code : codes) {
+			if (code.length() != CODE_LENGTH || pack(code, 0) == EMPTY) {
+				throw new IllegalArgumentException("Not a currency code: " + code);
+			} else if (table.idOf(pack(code, 0)) == NONE && 
+					indexOf(registered, table.codes.length, code) < 0) {
+				registered = Arrays.copyOf(registered, registered.length + 1);
+				registered[registered.length - 1] = code.toUpperCase(Locale.US);
+			}
+		}
+		if (registered != table.codes) {
+			sTable = new Table(registered);
+		}
+	}
+	
+	/**
+	 * @param text The text containing the code.
+	 * @param start The index of the code's first character.
+	 * @return The id of the code or {@link #NONE} if not registered.
+	 * @throws IndexOutOfBoundsException If the text is too short.
+	 */
+	public static int idOf(CharSequence text, int start) {
+		final long key = pack(text, start);
+		return key == EMPTY ? NONE : sTable.idOf(key);
+	}
+	
+	/**
+	 * @param code The code; case insensitive.
+	 * @return The id of the code or {@link #NONE} if not registered.
+	 * @throws IllegalArgumentException If not {@value #CODE_LENGTH} characters.
+	 */
+	public static int idOf(String code) {
+		if (code.length() != CODE_LENGTH) {
+			throw new IllegalArgumentException("Not a currency code: " + code);
+		}
+		return idOf(code, 0);
+	}
+	
+	/**
+	 * @param id An id given by {@link #idOf(CharSequence, int)}.
+	 * @return The canonical, uppercase code of the id.
+	 * @throws IndexOutOfBoundsException If not a given id.
+	 */
+	public static String codeOf(int id) {
+		final String[] codes = sTable.codes;
+		if (id < 0 || id >= codes.length) {
+			throw new IndexOutOfBoundsException("Unknown code id: " + id);
+		}
+		return codes[id];
+	}
+	
+	/**
+	 * @param text The text containing the code.
+	 * @param start The index of the code's first character.
+	 * @return The canonical code if registered, otherwise a new uppercase copy.
+	 * @throws IndexOutOfBoundsException If the text is too short.
+	 */
+	public static String toCode(CharSequence text, int start) {
+		final int id = idOf(text, start);
+		return id != NONE ? codeOf(id) : 
+			text.subSequence(start, start + CODE_LENGTH).toString().toUpperCase(Locale.US);
+	}
+	
+	/** @return The count of codes registered so far; every id is less. */
+	public static int size() {
+		return sTable.codes.length;
+	}
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Utility methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** @return The code's 3 ascii characters, uppercased, packed into a key or 
+	 * {@link #EMPTY} if any is not ascii. */
+	static long pack(CharSequence text, int start) {
+		long key = 0;
+		for (int index = start; index < start + CODE_LENGTH; index++) {
+			char c = text.charAt(index);
+			if (c > 0x7f) {
+				return EMPTY;
+			} else if (c >= 'a' && c <= 'z') {
+				c -= 'a' - 'A';
+			}
+			key = (key << 8) | c;
+		}
+		return key;
+	}
+	
+	/** @return The index of the code among those from the given index, 
+	 * ignoring case, or -1. */
+	private static int indexOf(String[] codes, int from, String code) {
+		for (int index = from; index < codes.length; index++) {
+			if (codes[index].equalsIgnoreCase(code)) {
+				return index;
+			}
+		}
+		return -1;
+	}
+	
+	/** @return The slot of the key or the empty slot it belongs in. */
+	private static int findSlot(long[] keys, long key) {
+		final int mask = keys.length - 1;
+		int slot = (int) (key ^ (key >>> 17)) * 0x9E3779B9 >>> 16 & mask;
+		while (keys[slot] != EMPTY && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Internal classes
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** The immutable, open addressed table of packed codes to ids; 
+	 * at most half full. */
+	final private static class Table {
+		/** The codes by id. */
+		final String[] codes;
+		final long[] keys;
+		final int[] ids;
+		
+		/** @param codes The uppercase, ascii codes, by id; kept. */
+		Table(String[] codes) {
+			int capacity = 4;
+			while (capacity < codes.length * 2) {
+				capacity *= 2;
+			}
+			this.codes = codes;
+			this.keys = new long[capacity];
+			this.ids = new int[capacity];
+			Arrays.fill(keys, EMPTY);
+			for (int id = 0; id < codes.length; id++) {
+				final long key = pack(codes[id], 0);
+				final int slot = findSlot(keys, key);
+				keys[slot] = key;
+				ids[slot] = id;
+			}
+		}
+		
+		/** @return The id of the packed code or {@link #NONE}. */
+		int idOf(long key) {
+			final int slot = findSlot(keys, key);
+			return keys[slot] == key ? ids[slot] : NONE;
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2015 Jason J. (iamovrhere)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.ovrhere.android.currencyconverter.model.currencyrequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import android.net.Uri;
+
+import com.ovrhere.android.currencyconverter.model.requests.AbstractSimpleHttpRequest;
+
+/**
+ * <p>The {@link RateSource} of a generic json-over-http endpoint. The pairs are 
+ * requested as a comma separated query parameter:
+ * <code>endpoint?pairs=USDCAD,USDJPY</code>; the response is in the form 
+ * parsed by {@link JsonRateParser}.</p>
+ *
+ * @author Jason J.
+ * @version 0.1.0-20261018
+ */
+public class JsonHttpRateSource implements RateSource {
+	/** The query parameter of the pairs. */
+	final static public String QUERY_PAIRS = "pairs";
+	
+	/** The endpoint to request from. */
+	final private String mEndpoint;
+	
+	/** @param endpoint The url of the endpoint, without the pairs. */
+	public JsonHttpRateSource(String endpoint) {
+		if (endpoint == null) {
+			throw new NullPointerException("Endpoint cannot be null");
+		}
+		this.mEndpoint = endpoint;
+	}
+	
+	@Override
+	public AbstractSimpleHttpRequest newRequest(List<String> pairIds) {
+		return new PairsRequest(mEndpoint, pairIds);
+	}
+	
+	@Override
+	public void parse(InputStream in, OnRateListener listener) throws IOException {
+		new JsonRateParser(listener).parseJsonStream(in);
+	}
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Internal classes
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** Requests the pairs from the endpoint. */
+	private static class PairsRequest extends AbstractSimpleHttpRequest {
+		final private String mEndpoint;
+		/** The pairs, comma separated. */
+		final private String mPairs;
+		
+		public PairsRequest(String endpoint, List<String> pairIds) {
+			this.mEndpoint = endpoint;
+			StringBuilder pairs = new StringBuilder();
+			for (String pairId : pairIds) {
+				if (pairs.length() > 0) {
+					pairs.append(',');
+				}
+				pairs.append(pairId);
+			}
+			this.mPairs = pairs.toString();
+		}
+		
+		@Override
+		protected Uri getUriRequest() {
+			return Uri.parse(mEndpoint).buildUpon()
+					.appendQueryParameter(QUERY_PAIRS, mPairs)
+					.build();
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2015 Jason J. (iamovrhere)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.ovrhere.android.currencyconverter.model.currencyrequest;
+
+import java.io.IOException;
+
+import android.util.Log;
+
+import com.ovrhere.android.currencyconverter.model.parsers.AbstractJsonParser;
+
+/**
+ * <p>The parser of the generic rate format; an object of rates by pair id,
+ * as numbers or strings. Other members are skipped.</p>
+ * 
+ * <pre>
+ * {
+ * 	"rates":{
+ * 		"USDCAD":1.2315,
+ * 		"USDJPY":"121.505",
+ * 		...
+ * 	}
+ * }
+ * </pre>
+ * 
+ * <p>Every rate is streamed to the listener as it is parsed; the count is returned.</p>
+ *
+ * @author Jason J.
+ * @version 0.1.0-20261018
+ * @see JsonHttpRateSource
+ */
+public class JsonRateParser extends AbstractJsonParser<Integer> {
+	/** For debugging purposes. */
+	final static private String LOGTAG = JsonRateParser.class
+			.getSimpleName();
+	
+	/** The tag of the object of rates. */
+	final static public String TAG_RATES = "rates";
+	
+	/////////////////////////////////////////////////////////////////////////////////////////////////
+	/// End constants
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** The listener given every rate. */
+	final private RateSource.OnRateListener mRateListener;
+	
+	/** @param rateListener The listener given every rate, as it is parsed. */
+	public JsonRateParser(RateSource.OnRateListener rateListener) {
+		super();
+		this.mRateListener = rateListener;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @return The count of rates given to the listener.
+	 */
+	@Override
+	protected Integer parseJsonToReturnData() throws IOException {
+		int count = 0;
+		mJsonReader.beginObject();
+		while (mJsonReader.hasNext()) {
+			final String ROOT = mJsonReader.nextName();
+			if (ROOT.equals(TAG_RATES) && nextNotNull()) { //arrived at: "rates":{
+				count += parseRates();
+			} else {
+				mJsonReader.skipValue();
+			}
+		}
+		mJsonReader.endObject();
+		return count;
+	}
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Helper methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** Parses the object of rates.
+	 * @return The count of rates parsed.
+	 * @throws IOException Re-thrown */
+	private int parseRates() throws IOException {
+		int count = 0;
+		mJsonReader.beginObject();
+		while (mJsonReader.hasNext()) {
+			final String idText = mJsonReader.nextName();
+			if (!nextNotNull()) {
+				mJsonReader.skipValue();
+				continue;
+			}
+			final double rate;
+			try {
+				rate = mJsonReader.nextDouble();
+			} catch (NumberFormatException e) {
+				Log.w(LOGTAG, "Rate was not parsed correctly for \"" + idText + "\"; skipping.");
+				mJsonReader.skipValue();
+				continue;
+			}
+			try {
+				mRateListener.onRate(new CodeRatePair(idText, rate));
+				count++;
+			} catch (IllegalArgumentException badPair) {
+				Log.w(LOGTAG, "Failed to parse pair: " + badPair);
+			}
+		}
+		mJsonReader.endObject();
+		return count;
+	}
+}
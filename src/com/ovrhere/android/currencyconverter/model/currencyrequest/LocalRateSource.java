@@ -0,0 +1,223 @@
+/*
+ * Copyright 2015 Jason J. (iamovrhere)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.ovrhere.android.currencyconverter.model.currencyrequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.ovrhere.android.currencyconverter.model.requests.AbstractSimpleHttpRequest;
+import com.ovrhere.android.currencyconverter.model.requests.RequestClient;
+
+/**
+ * <p>An in-process {@link RateSource} answering from a fixed table of rates, 
+ * given directly or read from a file in the form of {@link JsonRateParser}. 
+ * For deterministic tests &amp; load tests without the network.</p>
+ * 
+ * <p>Its requests are real {@link AbstractSimpleHttpRequest}s, answered by an 
+ * in-memory connection instead of a socket; so they are timed, retried, 
+ * counted &amp; cancelled as any other. Each answer may be delayed to 
+ * simulate latency; see {@link #setLatency(long)}. Pairs not in the table 
+ * are left out of the answer.</p>
+ *
+ * @author Jason J.
+ * @version 0.1.0-20261018
+ */
+public class LocalRateSource extends JsonHttpRateSource {
+	/** The url of every request; never resolved. */
+	final static private String LOCAL_ENDPOINT = "http://localhost.invalid/rates";
+	
+	/** The rates by uppercase pair id. */
+	final private Map<String, Double> mRates;
+	/** The client answering every request. */
+	final private RequestClient mClient = new LocalClient();
+	/** The count of requests answered. */
+	final private AtomicInteger mRequestCount = new AtomicInteger();
+	/** The delay of every answer in ms. */
+	volatile private long mLatency = 0;
+	
+	/** @param rates The rates by pair id, in the form <code>"USDCAD"</code>; copied. */
+	public LocalRateSource(Map<String, Double> rates) {
+		super(LOCAL_ENDPOINT);
+		Map<String, Double> copy = new HashMap<String, Double>();
+		for (Map.Entry<String, Double> rate : rates.entrySet()) {
+			copy.put(rate.getKey().toUpperCase(Locale.US), rate.getValue());
+		}
+		this.mRates = Collections.unmodifiableMap(copy);
+	}
+	
+	/**
+	 * @param file The file of rates in the form of {@link JsonRateParser}.
+	 * @return The source answering with the rates of the file.
+	 * @throws IOException If the file cannot be read or parsed.
+	 */
+	public static LocalRateSource fromFile(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			return fromStream(in);
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * @param in The rates in the form of {@link JsonRateParser}; not closed.
+	 * @return The source answering with the rates read.
+	 * @throws IOException If the stream cannot be read or parsed.
+	 */
+	public static LocalRateSource fromStream(InputStream in) throws IOException {
+		final Map<String, Double> rates = new HashMap<String, Double>();
+		new JsonRateParser(new OnRateListener() {
+			@Override
+			public void onRate(CodeRatePair pair) {
+				rates.put(pair.srcCode + pair.destCode, pair.rate);
+			}
+		}).parseJsonStream(in);
+		return new LocalRateSource(rates);
+	}
+	
+	/** @param latency The time in ms to wait before each answer. */
+	public void setLatency(long latency) {
+		this.mLatency = latency;
+	}
+	
+	/** @return The count of requests answered. */
+	public int getRequestCount() {
+		return mRequestCount.get();
+	}
+	
+	@Override
+	public AbstractSimpleHttpRequest newRequest(List<String> pairIds) {
+		AbstractSimpleHttpRequest request = super.newRequest(pairIds);
+		request.setRequestClient(mClient);
+		return request;
+	}
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Helper methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** @return The body answering the request url. */
+	private byte[] buildBody(URL url) throws IOException {
+		StringBuilder body = new StringBuilder("{\"" + JsonRateParser.TAG_RATES + "\":{");
+		final String query = url.getQuery() == null ? "" : url.getQuery();
+		int count = 0;
+		for (String param : query.split("&")) {
+			if (!param.startsWith(QUERY_PAIRS + "=")) {
+				continue;
+			}
+			final String pairs = URLDecoder.decode(
+					param.substring(QUERY_PAIRS.length() + 1), "UTF-8");
+			for (String pairId : pairs.split(",")) {
+				final Double rate = mRates.get(pairId.toUpperCase(Locale.US));
+				if (rate == null) {
+					continue;
+				}
+				if (count++ > 0) {
+					body.append(',');
+				}
+				body.append('"').append(pairId).append("\":").append(rate);
+			}
+		}
+		return body.append("}}").toString().getBytes("UTF-8");
+	}
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Internal classes
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** Opens in-memory connections. */
+	private class LocalClient implements RequestClient {
+		@Override
+		public HttpURLConnection open(URL url) throws IOException {
+			return new LocalConnection(url);
+		}
+		
+		@Override
+		public void release(HttpURLConnection connection, InputStream body, boolean reusable) {
+			connection.disconnect();
+		}
+	}
+	
+	/** A connection answered from the table, after the latency. */
+	private class LocalConnection extends HttpURLConnection {
+		private byte[] mBody = null;
+		
+		public LocalConnection(URL url) {
+			super(url);
+		}
+		
+		@Override
+		public void connect() throws IOException {
+			if (connected) {
+				return;
+			}
+			final long latency = mLatency;
+			if (latency > 0) {
+				try {
+					Thread.sleep(latency);
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException("Interrupted while waiting to answer");
+				}
+			}
+			mBody = buildBody(getURL());
+			mRequestCount.incrementAndGet();
+			connected = true;
+		}
+		
+		@Override
+		public int getResponseCode() throws IOException {
+			connect();
+			return HTTP_OK;
+		}
+		
+		@Override
+		public InputStream getInputStream() throws IOException {
+			connect();
+			return new ByteArrayInputStream(mBody);
+		}
+		
+		@Override
+		public int getContentLength() {
+			return mBody == null ? -1 : mBody.length;
+		}
+		
+		@Override
+		public String getHeaderField(String name) {
+			return null; //no validators or encoding
+		}
+		
+		@Override
+		public void disconnect() {}
+		
+		@Override
+		public boolean usingProxy() {
+			return false;
+		}
+	}
+}
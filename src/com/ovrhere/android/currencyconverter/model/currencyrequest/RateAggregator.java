@@ -0,0 +1,754 @@
+/*
+ * Copyright 2015 Jason J. (iamovrhere)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.ovrhere.android.currencyconverter.model.currencyrequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.content.ContentValues;
+import android.util.Log;
+
+import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.ExchangeRateEntry;
+import com.ovrhere.android.currencyconverter.model.requests.HttpValidatorCache;
+import com.ovrhere.android.currencyconverter.model.requests.RetryPolicy;
+
+/**
+ * <p>Fetches the rates from one or more {@link RateSource}s, each with its own
+ * {@link ShardedRateFetcher} (sharding, retries &amp; all), combined by {@link Mode}:</p>
+ * <ul>
+ * <li>{@link Mode#HEDGED}: the sources are tried in order. The next source is
+ * started once the last has not answered within the {@link #setHedgeDelay(long)} 
+ * or has failed; the first to answer every shard wins and the rest are cancelled.
+ * One slow source then costs at most the delay.</li>
+ * <li>{@link Mode#QUORUM}: every source is fetched at once and each pair 
+ * takes the median of the rates given for it, if given by at least 
+ * {@link #setQuorum(int)} sources, by default a majority. One wrong source 
+ * cannot move a rate. Its requests are never conditional: a source not modified 
+ * gives no rates, so could not vote for the pairs it still agrees on.</li>
+ * </ul>
+ * 
+ * <p>With a single source, either mode is a plain fetch, whose rates may be 
+ * streamed; see {@link #fetch(RateSource.OnRateListener)}.</p>
+ * 
+ * <p>A fetch only returns or throws once every source it started has stopped; 
+ * see {@link #cancel()}.</p>
+ * 
+ * <p>The threads of the sources, and of their requests, are kept between 
+ * fetches; {@link #shutdown()} the aggregator with its owner.</p>
+ *
+ * @author Jason J.
+ * @version 0.2.4-20261018
+ */
+public final class RateAggregator {
+	/** Class name for debugging purposes. */
+	final static private String LOGTAG = RateAggregator.class
+			.getSimpleName();
+	
+	/** The default time to wait on a source before starting the next, in ms. */
+	final static public long DEFAULT_HEDGE_DELAY = 2000; //ms
+	
+	/** How the sources are combined. */
+	public enum Mode {
+		/** The first source to answer in full wins. */
+		HEDGED,
+		/** Every source is fetched and each pair takes the median. */
+		QUORUM
+	}
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// End constants
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	final private String[] mSourceCodes;
+	final private String[] mDestCodes;
+	final private boolean mReverseRates;
+	
+	/** The fetcher per source, in order; replaced, never modified. */
+	volatile private List<ShardedRateFetcher> mFetchers = 
+			Collections.<ShardedRateFetcher>emptyList();
+	/** The executor of the sources, a thread each, or <code>null</code> until 
+	 * the next fetch. */
+	private ExecutorService mExecutor = null;
+	private Mode mMode = Mode.HEDGED;
+	private long mHedgeDelay = DEFAULT_HEDGE_DELAY;
+	/** The quorum or 0 for a majority of the sources. */
+	private int mQuorum = 0;
+	
+	/* The fetcher configuration, applied to every fetcher. */
+	private int mShardSize = ShardedRateFetcher.DEFAULT_SHARD_SIZE;
+	private int mParallelism = ShardedRateFetcher.DEFAULT_PARALLELISM;
+	private RetryPolicy mRetryPolicy = null;
+	private int mRequestTimeout = -1;
+	private HttpValidatorCache mValidatorCache = HttpValidatorCache.getDefault();
+	
+	/** The fetchers of the last fetch. */
+	volatile private List<ShardedRateFetcher> mLastFetchers = 
+			Collections.<ShardedRateFetcher>emptyList();
+	/** The fetchers started by the last fetch. */
+	volatile private int mStartedCount = 0;
+	/** The index of the source that won the last hedged fetch or -1 if none. */
+	volatile private int mWinner = -1;
+	/** The count of pairs dropped by the last quorum fetch for too few rates. */
+	volatile private int mDroppedPairCount = 0;
+	/** Whether the last fetch answered every pair. */
+	volatile private boolean mComplete = false;
+	/** Whether the last fetch answered nothing, as every source failed outright. */
+	volatile private boolean mFailed = false;
+	
+	/** Whether the fetch in progress, or if none the next, has been cancelled; 
+	 * cleared as a fetch ends. Set under {@link #mStarted}. */
+	volatile private boolean mCancelled = false;
+	/** Whether the last fetch was cancelled. */
+	volatile private boolean mLastCancelled = false;
+	/** The sources started by the fetch in progress; guarded by itself. 
+	 * Only added to by the fetching thread. */
+	final private List<SourceFetch> mStarted = new ArrayList<SourceFetch>();
+	
+	/**
+	 * @param source The single source to request from; see 
+	 * {@link #setRateSources(Mode, RateSource...)}.
+	 * @param sourceCodes The list of source currency codes in ISO 4217 form.
+	 * @param destCodes The list of destination codes in ISO 4217 form.
+	 * @param reverseRates <code>true</code> to manufacture the reverse of every rate.
+	 */
+	public RateAggregator(RateSource source, String[] sourceCodes, String[] destCodes, 
+			boolean reverseRates) {
+		this.mSourceCodes = sourceCodes;
+		this.mDestCodes = destCodes;
+		this.mReverseRates = reverseRates;
+		setRateSources(Mode.HEDGED, source);
+	}
+	
+	/**
+	 * Sets the sources to request from &amp; how to combine them; 
+	 * the fetchers of the last sources are shut down.
+	 * Not to be called during a fetch.
+	 * @param mode How to combine the sources.
+	 * @param sources The sources, in order of preference; at least one.
+	 */
+	public synchronized void setRateSources(Mode mode, RateSource... sources) {
+		if (mode == null) {
+			throw new NullPointerException("Mode cannot be null");
+		} else if (sources.length < 1) {
+			throw new IllegalArgumentException("Must have at least one source");
+		}
+		final List<ShardedRateFetcher> fetchers = 
+				new ArrayList<ShardedRateFetcher>(sources.length);
+		for (RateSource source : sources) {
+			ShardedRateFetcher fetcher = 
+					new ShardedRateFetcher(source, mSourceCodes, mDestCodes, mReverseRates);
+			fetchers.add(fetcher);
+		}
+		shutdown();
+		this.mMode = mode;
+		this.mFetchers = fetchers;
+		for (ShardedRateFetcher fetcher : fetchers) {
+			configure(fetcher);
+		}
+	}
+	
+	/** Shuts down the threads kept between fetches, of every source; 
+	 * sources in flight still run. A later fetch starts afresh. */
+	public synchronized void shutdown() {
+		if (mExecutor != null) {
+			mExecutor.shutdown();
+			mExecutor = null;
+		}
+		for (ShardedRateFetcher fetcher : mFetchers) {
+			fetcher.shutdown();
+		}
+	}
+	
+	/** @param hedgeDelay The time in ms to wait on a source before also starting 
+	 * the next, in hedged mode. Defaults to {@value #DEFAULT_HEDGE_DELAY}. */
+	public synchronized void setHedgeDelay(long hedgeDelay) {
+		if (hedgeDelay < 0) {
+			throw new IllegalArgumentException("Delay cannot be negative");
+		}
+		this.mHedgeDelay = hedgeDelay;
+	}
+	
+	/** @param quorum The sources that must give a pair for it to be kept, 
+	 * in quorum mode; at least 1. Defaults to a majority of the sources. */
+	public synchronized void setQuorum(int quorum) {
+		if (quorum < 1) {
+			throw new IllegalArgumentException("Quorum must be at least 1");
+		}
+		this.mQuorum = quorum;
+	}
+	
+	/** @param shardSize The maximum number of pairs per request; at least 1.
+	 * @see ShardedRateFetcher#setShardSize(int) */
+	public synchronized void setShardSize(int shardSize) {
+		for (ShardedRateFetcher fetcher : mFetchers) {
+			fetcher.setShardSize(shardSize);
+		}
+		this.mShardSize = shardSize;
+	}
+	
+	/** @param parallelism The maximum number of concurrent requests per source; 
+	 * at least 1. @see ShardedRateFetcher#setParallelism(int) */
+	public synchronized void setParallelism(int parallelism) {
+		for (ShardedRateFetcher fetcher : mFetchers) {
+			fetcher.setParallelism(parallelism);
+		}
+		this.mParallelism = parallelism;
+	}
+	
+	/** @param retryPolicy The policy deciding whether &amp; when failed shards 
+	 * are retried. @see ShardedRateFetcher#setRetryPolicy(RetryPolicy) */
+	public synchronized void setRetryPolicy(RetryPolicy retryPolicy) {
+		for (ShardedRateFetcher fetcher : mFetchers) {
+			fetcher.setRetryPolicy(retryPolicy);
+		}
+		this.mRetryPolicy = retryPolicy;
+	}
+	
+	/** @param requestTimeout The timeout of each request in milliseconds. */
+	public synchronized void setRequestTimeout(int requestTimeout) {
+		for (ShardedRateFetcher fetcher : mFetchers) {
+			fetcher.setRequestTimeout(requestTimeout);
+		}
+		this.mRequestTimeout = requestTimeout;
+	}
+	
+	/** @param validatorCache The validators to make requests conditional with,
+	 * or <code>null</code> for none. @see ShardedRateFetcher#setValidatorCache(HttpValidatorCache) */
+	public synchronized void setValidatorCache(HttpValidatorCache validatorCache) {
+		this.mValidatorCache = validatorCache;
+		for (ShardedRateFetcher fetcher : mFetchers) {
+			fetcher.setValidatorCache(getFetcherValidatorCache());
+		}
+	}
+	
+	/** Discards the validators stored by the sources of the last fetch, 
+	 * as {@link ShardedRateFetcher#discardValidators()}. Call once the fetch has ended. */
+	public void discardValidators() {
+		for (ShardedRateFetcher fetcher : startedFetchers()) {
+			fetcher.discardValidators();
+		}
+	}
+	
+	/** @return The mode the sources are combined by. */
+	public synchronized Mode getMode() {
+		return mMode;
+	}
+	
+	/** @return The number of sources. */
+	public int getSourceCount() {
+		return mFetchers.size();
+	}
+	
+	/** @return The number of sources the last fetch started; in hedged mode, 
+	 * more than 1 only if hedged. */
+	public int getStartedCount() {
+		return mStartedCount;
+	}
+	
+	/** @return The index of the source whose rates the last hedged fetch used
+	 * or -1 if none answered. */
+	public int getWinningSource() {
+		return mWinner;
+	}
+	
+	/** @return The count of pairs the last quorum fetch dropped for being given 
+	 * by fewer sources than the quorum. */
+	public int getDroppedPairCount() {
+		return mDroppedPairCount;
+	}
+	
+	/** @return <code>true</code> if the last fetch answered every pair: in hedged 
+	 * mode, a source answered every shard; in quorum mode, at least the quorum did. */
+	public boolean isComplete() {
+		return mComplete;
+	}
+	
+	/** @return <code>true</code> if every source of the last fetch 
+	 * failed every shard. */
+	public boolean isFailed() {
+		return mFailed;
+	}
+	
+	/** @return The requests made in the last fetch over every source, retries included. */
+	public int getAttemptCount() {
+		int count = 0;
+		for (ShardedRateFetcher fetcher : startedFetchers()) {
+			count += fetcher.getAttemptCount();
+		}
+		return count;
+	}
+	
+	/** @return The time in milliseconds the sources spent backing off in the 
+	 * last fetch, summed. */
+	public long getBackoffTime() {
+		long time = 0;
+		for (ShardedRateFetcher fetcher : startedFetchers()) {
+			time += fetcher.getBackoffTime();
+		}
+		return time;
+	}
+	
+	/** @return The shards of the started sources that failed every attempt 
+	 * in the last fetch. */
+	public int getFailedShardCount() {
+		int count = 0;
+		for (ShardedRateFetcher fetcher : startedFetchers()) {
+			count += fetcher.getFailedShardCount();
+		}
+		return count;
+	}
+	
+	/** @return The shards of the started sources that were not modified in the last fetch. */
+	public int getNotModifiedShardCount() {
+		int count = 0;
+		for (ShardedRateFetcher fetcher : startedFetchers()) {
+			count += fetcher.getNotModifiedShardCount();
+		}
+		return count;
+	}
+	
+	/** @return The shards a source's fetch requests, before retries. */
+	public int getShardCount() {
+		return mFetchers.get(0).getShardCount();
+	}
+	
+	/** @return The bytes received in the last fetch over every source, as transferred. */
+	public long getEncodedBytes() {
+		long bytes = 0;
+		for (ShardedRateFetcher fetcher : startedFetchers()) {
+			bytes += fetcher.getEncodedBytes();
+		}
+		return bytes;
+	}
+	
+	/** @return The bytes received in the last fetch over every source, once decoded. */
+	public long getDecodedBytes() {
+		long bytes = 0;
+		for (ShardedRateFetcher fetcher : startedFetchers()) {
+			bytes += fetcher.getDecodedBytes();
+		}
+		return bytes;
+	}
+	
+	/**
+	 * Cancels the fetch in progress, from any thread, or if there is none the 
+	 * next to start. Every source's requests are aborted; {@link #fetch()} 
+	 * throws once they have stopped.
+	 */
+	public void cancel() {
+		synchronized (mStarted) {
+			mCancelled = true;
+			for (SourceFetch fetch : mStarted) {
+				fetch.cancel();
+			}
+		}
+	}
+	
+	/** @return <code>true</code> if the last fetch was cancelled. */
+	public boolean isCancelled() {
+		return mLastCancelled;
+	}
+	
+	/**
+	 * Fetches from the sources by the mode, blocking until done.
+	 * @return The rates, in the form of {@link ExchangeRateEntry}; 
+	 * those of the winning source when hedged, the medians by quorum.
+	 * @throws InterruptedException If interrupted while waiting; every source 
+	 * is cancelled.
+	 * @throws CancellationException If {@link #cancel()} was called during the fetch.
+	 */
+	public ContentValues[] fetch() throws InterruptedException {
+		return fetch(null);
+	}
+	
+	/**
+	 * Fetches from the sources by the mode, blocking until done. 
+	 * @param sink The sink to stream the rates to as they are parsed, if there is 
+	 * a single source, or <code>null</code>. 
+	 * See {@link ShardedRateFetcher#fetch(RateSource.OnRateListener)}. 
+	 * Several sources must be combined before they are known, so are never streamed.
+	 * @return The rates, as {@link #fetch()}; empty if streamed.
+	 * @throws InterruptedException If interrupted while waiting; every source 
+	 * is cancelled.
+	 * @throws CancellationException If {@link #cancel()} was called during the fetch.
+	 */
+	public ContentValues[] fetch(RateSource.OnRateListener sink) throws InterruptedException {
+		final List<ShardedRateFetcher> fetchers;
+		final Mode mode;
+		final long hedgeDelay;
+		final int quorum;
+		final ExecutorService executor;
+		synchronized (this) {
+			if (mExecutor == null) {
+				mExecutor = Executors.newFixedThreadPool(mFetchers.size(), 
+						new SourceThreadFactory());
+			}
+			executor = mExecutor;
+			fetchers = mFetchers;
+			mode = mMode;
+			hedgeDelay = mHedgeDelay;
+			quorum = mQuorum > 0 ? mQuorum : fetchers.size() / 2 + 1;
+		}
+		mLastFetchers = fetchers;
+		mLastCancelled = false;
+		mStartedCount = 0;
+		mWinner = -1;
+		mDroppedPairCount = 0;
+		mComplete = false;
+		mFailed = false;
+		
+		final List<SourceFetch> started = mStarted;
+		try {
+			final CompletionService<ContentValues[]> completion = 
+					new ExecutorCompletionService<ContentValues[]>(executor);
+			if (mode == Mode.QUORUM && fetchers.size() > 1) {
+				return fetchQuorum(completion, fetchers, started, quorum);
+			} 
+			return fetchHedged(completion, fetchers, started, hedgeDelay, 
+					fetchers.size() == 1 ? sink : null);
+		} finally {
+			final List<SourceFetch> stopping;
+			synchronized (mStarted) {
+				for (SourceFetch fetch : mStarted) {
+					fetch.cancel();
+				}
+				stopping = new ArrayList<SourceFetch>(mStarted);
+			}
+			awaitAll(stopping);
+			synchronized (mStarted) {
+				mStarted.clear();
+				mLastCancelled = mCancelled;
+				mCancelled = false; //any cancel after is for the next fetch
+			}
+		}
+	}
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Helper methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** Applies the fetcher configuration; the retry policy only if set. 
+	 * Call after the mode &amp; fetchers are set. */
+	private void configure(ShardedRateFetcher fetcher) {
+		fetcher.setShardSize(mShardSize);
+		fetcher.setParallelism(mParallelism);
+		if (mRetryPolicy != null) {
+			fetcher.setRetryPolicy(mRetryPolicy);
+		}
+		fetcher.setRequestTimeout(mRequestTimeout);
+		fetcher.setValidatorCache(getFetcherValidatorCache());
+	}
+	
+	/** @return The validator cache of the fetchers; <code>null</code> when
+	 * several sources are fetched by quorum, as every source must vote. */
+	private HttpValidatorCache getFetcherValidatorCache() {
+		if (mMode == Mode.QUORUM && mFetchers.size() > 1) {
+			return null;
+		}
+		return mValidatorCache;
+	}
+	
+	/** @return The fetchers started by the last fetch. */
+	private List<ShardedRateFetcher> startedFetchers() {
+		final List<ShardedRateFetcher> fetchers = mLastFetchers;
+		return fetchers.subList(0, Math.min(mStartedCount, fetchers.size()));
+	}
+	
+	/** Starts the next source.
+	 * @param sink The sink to stream its rates to or <code>null</code>.
+	 * @throws CancellationException If cancelled. */
+	private void start(CompletionService<ContentValues[]> completion, 
+			List<ShardedRateFetcher> fetchers, List<SourceFetch> started, 
+			RateSource.OnRateListener sink) {
+		synchronized (mStarted) {
+			if (mCancelled) {
+				throw new CancellationException("Fetch cancelled");
+			}
+			final int index = started.size();
+			final SourceFetch fetch = new SourceFetch(index, fetchers.get(index), sink);
+			fetch.mFuture = completion.submit(fetch);
+			started.add(fetch);
+			mStartedCount = started.size();
+		}
+	}
+	
+	/** Waits for every source to stop, uninterruptibly; they have been cancelled, 
+	 * so stop promptly. An interrupt is kept for the caller. */
+	private static void awaitAll(List<SourceFetch> fetches) {
+		boolean interrupted = false;
+		for (SourceFetch fetch : fetches) {
+			while (true) {
+				try {
+					fetch.awaitDone();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/** @return The source fetch of the completed future, its result recorded. */
+	private static SourceFetch complete(Future<ContentValues[]> future, List<SourceFetch> started) 
+			throws InterruptedException {
+		SourceFetch fetch = null;
+		for (SourceFetch candidate : started) {
+			if (candidate.mFuture == future) {
+				fetch = candidate;
+				break;
+			}
+		}
+		try {
+			fetch.mResult = future.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof InterruptedException) {
+				Log.d(LOGTAG, "Source " + fetch.mIndex + " interrupted");
+			} else if (!(e.getCause() instanceof CancellationException)) {
+				Log.w(LOGTAG, "Source " + fetch.mIndex + " failed: " + e.getCause());
+			}
+		} catch (CancellationException e) {
+			//left without a result
+		}
+		return fetch;
+	}
+	
+	/** Tries the sources in turn, starting the next on delay or failure. 
+	 * @param sink The sink of a single source or <code>null</code>. */
+	private ContentValues[] fetchHedged(CompletionService<ContentValues[]> completion, 
+			List<ShardedRateFetcher> fetchers, List<SourceFetch> started, long hedgeDelay,
+			RateSource.OnRateListener sink) throws InterruptedException {
+		final int SIZE = fetchers.size();
+		SourceFetch best = null;
+		start(completion, fetchers, started, sink);
+		for (int completed = 0; completed < started.size(); ) {
+			final Future<ContentValues[]> future = started.size() < SIZE ?
+					completion.poll(hedgeDelay, TimeUnit.MILLISECONDS) : completion.take();
+			if (future == null) {
+				start(completion, fetchers, started, null); //too slow; hedge
+				continue;
+			}
+			completed++;
+			final SourceFetch fetch = complete(future, started);
+			if (mCancelled) {
+				throw new CancellationException("Fetch cancelled");
+			} else if (fetch.isComplete()) {
+				best = fetch;
+				break;
+			} else if (fetch.mResult != null && 
+					(best == null || fetch.mResult.length > best.mResult.length)) {
+				best = fetch; //partial; in case nothing does better
+			}
+			if (started.size() < SIZE) {
+				start(completion, fetchers, started, null); //failed; hedge now
+			}
+		}
+		if (best == null) {
+			mFailed = true;
+			return new ContentValues[0];
+		}
+		mWinner = best.mIndex;
+		mComplete = best.isComplete();
+		mFailed = best.isFailed();
+		return best.mResult;
+	}
+	
+	/** Fetches every source at once &amp; takes the median of each pair. */
+	private ContentValues[] fetchQuorum(CompletionService<ContentValues[]> completion, 
+			List<ShardedRateFetcher> fetchers, List<SourceFetch> started, int quorum) 
+					throws InterruptedException {
+		final int SIZE = fetchers.size();
+		for (int index = 0; index < SIZE; index++) {
+			start(completion, fetchers, started, null);
+		}
+		final List<ContentValues[]> results = new ArrayList<ContentValues[]>(SIZE);
+		int completeCount = 0;
+		int failedCount = 0;
+		for (int completed = 0; completed < SIZE; completed++) {
+			final SourceFetch fetch = complete(completion.take(), started);
+			if (mCancelled) {
+				throw new CancellationException("Fetch cancelled");
+			} 
+			if (fetch.mResult != null) {
+				results.add(fetch.mResult);
+			}
+			if (fetch.isComplete()) {
+				completeCount++;
+			} else if (fetch.isFailed()) {
+				failedCount++;
+			}
+		}
+		mComplete = completeCount >= quorum;
+		mFailed = failedCount == SIZE;
+		return median(results, quorum);
+	}
+	
+	/**
+	 * @param results The rates given by each source.
+	 * @param quorum The sources that must give a pair for it to be kept.
+	 * @return The median rate of each pair given by at least the quorum, 
+	 * in order first given.
+	 */
+	private ContentValues[] median(List<ContentValues[]> results, int quorum) {
+		final Map<String, List<Double>> ratesByPair = new LinkedHashMap<String, List<Double>>();
+		for (ContentValues[] values : results) {
+			for (ContentValues value : values) {
+				final String key = 
+						value.getAsString(ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE) + 
+						value.getAsString(ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE);
+				List<Double> rates = ratesByPair.get(key);
+				if (rates == null) {
+					rates = new ArrayList<Double>(results.size());
+					ratesByPair.put(key, rates);
+				}
+				rates.add(value.getAsDouble(ExchangeRateEntry.COLUMN_EXCHANGE_RATE));
+			}
+		}
+		final List<ContentValues> merged = new ArrayList<ContentValues>(ratesByPair.size());
+		int dropped = 0;
+		for (Map.Entry<String, List<Double>> entry : ratesByPair.entrySet()) {
+			final List<Double> rates = entry.getValue();
+			if (rates.size() < quorum) {
+				dropped++;
+				continue;
+			}
+			merged.add(new CodeRatePair(entry.getKey(), median(rates)).toContentValues());
+		}
+		mDroppedPairCount = dropped;
+		if (dropped > 0) {
+			Log.w(LOGTAG, dropped + " pairs given by fewer than " + quorum + " sources");
+		}
+		return merged.toArray(new ContentValues[merged.size()]);
+	}
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Utility methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** @return The median of the rates; the mean of the middle two if even. 
+	 * Sorts the list. */
+	static double median(List<Double> rates) {
+		Collections.sort(rates);
+		final int SIZE = rates.size();
+		if (SIZE % 2 == 1) {
+			return rates.get(SIZE / 2);
+		}
+		return (rates.get(SIZE / 2 - 1) + rates.get(SIZE / 2)) / 2.0d;
+	}
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Internal classes
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** Creates named, daemon threads, so idle sources never hold up the process. */
+	private static class SourceThreadFactory implements ThreadFactory {
+		final private static AtomicInteger sPoolCount = new AtomicInteger();
+		final private int mPool = sPoolCount.incrementAndGet();
+		final private AtomicInteger mThreadCount = new AtomicInteger();
+		
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, 
+					LOGTAG + "-" + mPool + "-" + mThreadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+	
+	/** The fetch of a single source. Its result is read once its future has completed. */
+	private static class SourceFetch implements Callable<ContentValues[]> {
+		/** The fetch has neither started nor been cancelled. */
+		final static private int STATE_PENDING = 0;
+		/** The fetch is running. */
+		final static private int STATE_RUNNING = 1;
+		/** The fetch has run or never will. */
+		final static private int STATE_DONE = 2;
+		
+		final private int mIndex;
+		final private ShardedRateFetcher mFetcher;
+		/** The sink to stream to or <code>null</code>. */
+		final private RateSource.OnRateListener mSink;
+		private Future<ContentValues[]> mFuture = null;
+		/** The fetched rates or <code>null</code> if it threw. */
+		private ContentValues[] mResult = null;
+		/** One of the states; pending until run or cancelled. */
+		final private AtomicInteger mState = new AtomicInteger(STATE_PENDING);
+		/** Released once the state is done. */
+		final private CountDownLatch mDone = new CountDownLatch(1);
+		
+		public SourceFetch(int index, ShardedRateFetcher fetcher, RateSource.OnRateListener sink) {
+			this.mIndex = index;
+			this.mFetcher = fetcher;
+			this.mSink = sink;
+		}
+		
+		@Override
+		public ContentValues[] call() throws Exception {
+			if (!mState.compareAndSet(STATE_PENDING, STATE_RUNNING)) {
+				throw new CancellationException("Source cancelled");
+			}
+			try {
+				return mFetcher.fetch(mSink);
+			} finally {
+				mState.set(STATE_DONE);
+				mDone.countDown();
+			}
+		}
+		
+		/** @return <code>true</code> if every shard was answered. */
+		public boolean isComplete() {
+			return mResult != null && mFetcher.getFailedShardCount() == 0;
+		}
+		
+		/** @return <code>true</code> if it threw or every shard failed. */
+		public boolean isFailed() {
+			final int failed = mFetcher.getFailedShardCount();
+			return mResult == null || (failed > 0 && failed == mFetcher.getShardCount());
+		}
+		
+		/** Aborts the fetch, whether yet started or not; a fetch of the source 
+		 * that has already ended is left be. */
+		public void cancel() {
+			mFetcher.abort();
+			mFuture.cancel(true); //interrupts a fetch yet to begin, to abort as it does
+			if (mState.compareAndSet(STATE_PENDING, STATE_DONE)) {
+				mDone.countDown(); //never to run
+			}
+		}
+		
+		/** Waits until the fetch has stopped or will never run. */
+		public void awaitDone() throws InterruptedException {
+			mDone.await();
+		}
+	}
+}
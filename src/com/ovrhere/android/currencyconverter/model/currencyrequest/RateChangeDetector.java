@@ -0,0 +1,187 @@
+/*
+ * Copyright 2015 Jason J. (iamovrhere)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.ovrhere.android.currencyconverter.model.currencyrequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.ExchangeRateEntry;
+
+/**
+ * Compares parsed rates against those stored, so only the changed cells 
+ * are written. Rates are compared at their stored precision, 6 decimals, so
+ * movement below the rounding is not a change. Each {@link #detect(ContentValues[])}
+ * reports the count of changed, unchanged & new rows.
+ * 
+ * <p>Rates may also be detected one at a time as they stream in, between
+ * {@link #begin()} &amp; {@link #end()}; the stored rates are loaded once.</p>
+ * 
+ * @author Jason J.
+ * @version 0.2.0-20261018
+ */
+final class RateChangeDetector {
+	/** The scale rates are compared at; 6 decimals. */
+	final static private double RATE_SCALE = 1000000d;
+	
+	/** The columns of the stored rates. */
+	final static private String[] PROJECTION = new String[]{
+		ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE,
+		ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE,
+		ExchangeRateEntry.COLUMN_EXCHANGE_RATE
+	};
+	final static private int COL_SOURCE_CODE = 0;
+	final static private int COL_DEST_CODE = 1;
+	final static private int COL_EXCHANGE_RATE = 2;
+	
+	/** Resolver used to query the stored rates. */
+	final private ContentResolver mContentResolver;
+	
+	/** The stored, scaled rates between {@link #begin()} & {@link #end()}; 
+	 * <code>null</code> otherwise. */
+	private HashMap<String, Long> mStored = null;
+	
+	private int mChangedCount = 0;
+	private int mUnchangedCount = 0;
+	private int mNewCount = 0;
+	
+	/** @param resolver The resolver to query the stored rates from. */
+	public RateChangeDetector(ContentResolver resolver) {
+		this.mContentResolver = resolver;
+	}
+	
+	/**
+	 * Filters the parsed rates to those that are new or differ from the stored
+	 * rate; updating the counts. Rows missing a column are kept, 
+	 * for the provider to reject.
+	 * @param values The parsed values in the form of {@link ExchangeRateEntry}.
+	 * @return The values to write, in order. May be empty.
+	 */
+	public ContentValues[] detect(ContentValues[] values) {
+		begin();
+		try {
+			final List<ContentValues> results = new ArrayList<ContentValues>(values.length);
+			for (ContentValues value : values) {
+				if (isChanged(value)) {
+					results.add(value);
+				}
+			}
+			return results.toArray(new ContentValues[results.size()]);
+		} finally {
+			end();
+		}
+	}
+	
+	/** Resets the counts &amp; loads the stored rates, to detect rates one at a time. */
+	public void begin() {
+		mChangedCount = mUnchangedCount = mNewCount = 0;
+		mStored = loadStoredRates();
+	}
+	
+	/**
+	 * Checks a parsed rate against the stored &amp; those checked since 
+	 * {@link #begin()}; updating the counts. 
+	 * @param value The parsed value in the form of {@link ExchangeRateEntry}.
+	 * @return <code>true</code> if it is to be written; new, moved or missing a column.
+	 * @throws IllegalStateException If not begun.
+	 */
+	public boolean isChanged(ContentValues value) {
+		if (mStored == null) {
+			throw new IllegalStateException("Detection not begun");
+		}
+		final String source = value.getAsString(ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE);
+		final String dest = value.getAsString(ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE);
+		final Double rate = value.getAsDouble(ExchangeRateEntry.COLUMN_EXCHANGE_RATE);
+		if (source == null || dest == null || rate == null) {
+			return true;
+		}
+		final Long scaledRate = toScaledRate(rate);
+		final Long previous = mStored.put(toKey(source, dest), scaledRate);
+		
+		if (previous == null) {
+			mNewCount++;
+		} else if (previous.equals(scaledRate)) {
+			mUnchangedCount++;
+			return false;
+		} else {
+			mChangedCount++;
+		}
+		return true;
+	}
+	
+	/** Releases the stored rates loaded by {@link #begin()}; the counts remain. */
+	public void end() {
+		mStored = null;
+	}
+	
+	/** @return The count of rows of the last detection whose rate moved. */
+	public int getChangedCount() {
+		return mChangedCount;
+	}
+	
+	/** @return The count of rows of the last detection whose rate had not moved. */
+	public int getUnchangedCount() {
+		return mUnchangedCount;
+	}
+	
+	/** @return The count of rows of the last detection not yet stored. */
+	public int getNewCount() {
+		return mNewCount;
+	}
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Helper methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** @return The stored, scaled rates by {@link #toKey(String, String)}. */
+	private HashMap<String, Long> loadStoredRates() {
+		final HashMap<String, Long> stored = new HashMap<String, Long>();
+		final Cursor cursor = mContentResolver.query(ExchangeRateEntry.CONTENT_URI, 
+				PROJECTION, null, null, null);
+		if (cursor == null) {
+			return stored;
+		}
+		try {
+			while (cursor.moveToNext()) {
+				stored.put(
+						toKey(cursor.getString(COL_SOURCE_CODE), cursor.getString(COL_DEST_CODE)),
+						toScaledRate(cursor.getDouble(COL_EXCHANGE_RATE)));
+			}
+		} finally {
+			cursor.close();
+		}
+		return stored;
+	}
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Utility methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** @return The key of the pair, case insensitive. */
+	private static String toKey(String source, String dest) {
+		return (source.trim() + "/" + dest.trim()).toUpperCase(Locale.US);
+	}
+	
+	/** @return The rate in millionths, as stored. */
+	private static Long toScaledRate(double rate) {
+		return Long.valueOf(Math.round(rate * RATE_SCALE));
+	}
+}
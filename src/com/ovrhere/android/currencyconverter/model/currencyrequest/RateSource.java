@@ -0,0 +1,67 @@
+/*
+ * Copyright 2015 Jason J. (iamovrhere)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.ovrhere.android.currencyconverter.model.currencyrequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+import com.ovrhere.android.currencyconverter.model.requests.AbstractSimpleHttpRequest;
+
+/**
+ * <p>Where rates are fetched from: an upstream's request &amp; the parse of its 
+ * response. The request is run like any other, so it may be made conditional, 
+ * retried &amp; cancelled by the caller; the parse streams each rate to a 
+ * listener as it is read, so no intermediate copy is built.</p>
+ * 
+ * <p>Implementations must be safe to use from several threads at once; 
+ * requests are made concurrently.</p>
+ *
+ * @author Jason J.
+ * @version 0.1.0-20261018
+ * @see YahooRateSource
+ * @see JsonHttpRateSource
+ * @see LocalRateSource
+ */
+public interface RateSource {
+	/**
+	 * Creates, but does not run, the request for the rates of the pairs. 
+	 * The caller sets its listener.
+	 * @param pairIds The pairs in the form <code>"USDCAD"</code>, without 
+	 * redundant pairs; see {@link YahooApiCurrencyRequest#preparePairs(List, List)}.
+	 * @return The new request.
+	 */
+	public AbstractSimpleHttpRequest newRequest(List<String> pairIds);
+	
+	/**
+	 * Parses the body of a response to {@link #newRequest(List)}. Pairs the 
+	 * upstream does not know are left out; their reverse is never given.
+	 * @param in The response body.
+	 * @param listener The listener given each rate, as it is read.
+	 * @throws IOException If the body cannot be read or is cut short.
+	 * @throws XmlPullParserException If the body is not in the expected form.
+	 */
+	public void parse(InputStream in, OnRateListener listener) 
+			throws IOException, XmlPullParserException;
+	
+	/** Receives the rates of a response as they are parsed. */
+	public interface OnRateListener {
+		/** @param pair The rate parsed. */
+		public void onRate(CodeRatePair pair);
+	}
+}
@@ -0,0 +1,634 @@
+/*
+ * Copyright 2015 Jason J. (iamovrhere)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.ovrhere.android.currencyconverter.model.currencyrequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+import android.content.ContentValues;
+import android.util.Log;
+
+import com.ovrhere.android.currencyconverter.model.requests.AbstractSimpleHttpRequest;
+import com.ovrhere.android.currencyconverter.model.requests.ExponentialBackoffPolicy;
+import com.ovrhere.android.currencyconverter.model.requests.HttpValidatorCache;
+import com.ovrhere.android.currencyconverter.model.requests.RequestExecutor;
+import com.ovrhere.android.currencyconverter.model.requests.RequestFuture;
+import com.ovrhere.android.currencyconverter.model.requests.RetryPolicy;
+import com.ovrhere.android.currencyconverter.model.requests.AbstractSimpleHttpRequest.OnTransferEventListener;
+
+/**
+ * <p>Fetches the rates of many currencies by splitting the pairs into shards of
+ * {@link #setShardSize(int)} pairs, one request of the {@link RateSource} each, run
+ * concurrently on a {@link RequestExecutor} of at most {@link #setParallelism(int)} 
+ * threads. This keeps each url short and stops one slow response from stalling 
+ * the rest. The executor is kept between fetches, so its threads, and the 
+ * parsers they hold, are reused; {@link #shutdown()} it with its owner.</p>
+ *
+ * <p>Each shard is parsed as it arrives. Failed shards are resubmitted together, 
+ * as the {@link RetryPolicy} allows; by default with exponential backoff &amp; 
+ * jitter, only where the failure may be transient. The parsed rates of every 
+ * successful shard are merged in shard order; failed shards are counted,
+ * see {@link #getFailedShardCount()}. Attempts &amp; the time spent backing off 
+ * are counted too; see {@link #getAttemptCount()}.</p>
+ * 
+ * <p>A fetch may be aborted from any thread with {@link #cancel()}, which 
+ * tears down the requests in flight; a cancel made before the fetch starts 
+ * aborts it as it starts. A fetch only returns or throws once its requests 
+ * have stopped, so no rate is given after.</p>
+ * 
+ * <p>Requests are conditional, so a shard whose response has not changed 
+ * since its last fetch (a 304) is successful but adds no rates; 
+ * see {@link #getNotModifiedShardCount()}.</p>
+ * 
+ * <p>The bytes received over every attempt are totalled, both as 
+ * transferred and once decoded; see {@link #getEncodedBytes()}.</p>
+ * 
+ * <p>Rather than merged, the rates may be streamed to a sink as each shard 
+ * is parsed; see {@link #fetch(RateSource.OnRateListener)}.</p>
+ *
+ * @author Jason J.
+ * @version 0.7.3-20261018
+ */
+final class ShardedRateFetcher {
+	/** Class name for debugging purposes. */
+	final static private String LOGTAG = ShardedRateFetcher.class
+			.getSimpleName();
+
+	/** The default number of pairs per request. */
+	final static public int DEFAULT_SHARD_SIZE = 50;
+	/** The default number of concurrent requests. */
+	final static public int DEFAULT_PARALLELISM = 4;
+
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// End constants
+	////////////////////////////////////////////////////////////////////////////////////////////////
+
+	/** The non-redundant pairs to fetch. */
+	final private List<String> mPairIds;
+	/** The source to request from. */
+	volatile private RateSource mSource;
+	/** Whether or not to manufacture reverse rates. */
+	final private boolean mReverseRates;
+
+	private int mShardSize = DEFAULT_SHARD_SIZE;
+	private int mParallelism = DEFAULT_PARALLELISM;
+	private RetryPolicy mRetryPolicy = new ExponentialBackoffPolicy();
+	/** The request timeout or -1 for the request's default. */
+	private int mRequestTimeout = -1;
+	/** The validators to make requests conditional with or <code>null</code> for none. */
+	private HttpValidatorCache mValidatorCache = HttpValidatorCache.getDefault();
+
+	/** The count of shards that failed in the last fetch. */
+	volatile private int mFailedShardCount = 0;
+	/** The count of shards that were not modified in the last fetch. */
+	final private AtomicInteger mNotModifiedShardCount = new AtomicInteger();
+	/** The bytes received in the last fetch. */
+	final private AtomicLong mEncodedBytes = new AtomicLong();
+	/** The bytes received in the last fetch, once decoded. */
+	final private AtomicLong mDecodedBytes = new AtomicLong();
+	/** The requests made in the last fetch, retries included. */
+	final private AtomicInteger mAttemptCount = new AtomicInteger();
+	/** The time spent backing off in the last fetch, in ms. */
+	final private AtomicLong mBackoffTime = new AtomicLong();
+	/** The rates parsed in the last fetch, retries included. */
+	final private AtomicInteger mRateCount = new AtomicInteger();
+	
+	/** The shards of the last fetch. */
+	volatile private List<ShardFetch> mLastFetches = Collections.<ShardFetch>emptyList();
+	
+	/** The sink of the fetch in progress or <code>null</code> to merge. */
+	volatile private RateSource.OnRateListener mSink = null;
+	
+	/** Whether the fetch in progress, or if none the next, has been cancelled; 
+	 * cleared as a fetch ends. Set under {@link #mInFlight}. */
+	volatile private boolean mCancelled = false;
+	/** Whether the last fetch was cancelled. */
+	volatile private boolean mLastCancelled = false;
+	/** The executor of the requests, sized by {@link #mParallelism}, or 
+	 * <code>null</code> until the next fetch; guarded by this. */
+	private RequestExecutor mExecutor = null;
+	
+	/** Whether a fetch is in progress; guarded by {@link #mInFlight}. */
+	private boolean mFetching = false;
+	/** The requests of the current attempt; guarded by itself, 
+	 * which is notified on cancel. */
+	final private List<RequestFuture> mInFlight = new ArrayList<RequestFuture>();
+
+	/**
+	 * @param source The source to request from.
+	 * @param sourceCodes The list of source currency codes in ISO 4217 form.
+	 * @param destCodes The list of destination codes in ISO 4217 form.
+	 * @param reverseRates <code>true</code> to manufacture the reverse of every rate.
+	 */
+	public ShardedRateFetcher(RateSource source, String[] sourceCodes, String[] destCodes,
+			boolean reverseRates) {
+		setRateSource(source);
+		this.mPairIds = YahooApiCurrencyRequest.preparePairs(
+				Arrays.asList(sourceCodes), Arrays.asList(destCodes));
+		this.mReverseRates = reverseRates;
+	}
+
+	/** @param source The source to request from. */
+	public void setRateSource(RateSource source) {
+		if (source == null) {
+			throw new NullPointerException("Rate source cannot be null");
+		}
+		this.mSource = source;
+	}
+
+	/** @param shardSize The maximum number of pairs per request; at least 1. */
+	public void setShardSize(int shardSize) {
+		if (shardSize < 1) {
+			throw new IllegalArgumentException("Shards must have at least 1 pair");
+		}
+		this.mShardSize = shardSize;
+	}
+
+	/** @param parallelism The maximum number of concurrent requests; at least 1. */
+	public synchronized void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1");
+		} else if (parallelism == mParallelism) {
+			return;
+		}
+		this.mParallelism = parallelism;
+		shutdown(); //resized by the next fetch
+	}
+	
+	/** Shuts down the executor kept between fetches; requests in flight still run. 
+	 * A later fetch starts a new one. */
+	public synchronized void shutdown() {
+		if (mExecutor != null) {
+			mExecutor.shutdown();
+			mExecutor = null;
+		}
+	}
+
+	/** @param retryPolicy The policy deciding whether &amp; when failed shards 
+	 * are retried; an {@link ExponentialBackoffPolicy} by default. */
+	public void setRetryPolicy(RetryPolicy retryPolicy) {
+		if (retryPolicy == null) {
+			throw new NullPointerException("Retry policy cannot be null");
+		}
+		this.mRetryPolicy = retryPolicy;
+	}
+
+	/** @param requestTimeout The timeout of each request in milliseconds. */
+	public void setRequestTimeout(int requestTimeout) {
+		this.mRequestTimeout = requestTimeout;
+	}
+
+	/** @param validatorCache The validators to make requests conditional with,
+	 * {@link HttpValidatorCache#getDefault()} by default, or <code>null</code> for none. */
+	public void setValidatorCache(HttpValidatorCache validatorCache) {
+		this.mValidatorCache = validatorCache;
+	}
+
+	/** @return The number of requests a fetch makes, before retries. */
+	public int getShardCount() {
+		return shard(mPairIds, mShardSize).size();
+	}
+
+	/** @return The count of shards that failed every attempt in the last fetch. */
+	public int getFailedShardCount() {
+		return mFailedShardCount;
+	}
+
+	/** @return The count of shards not modified since their previous fetch, 
+	 * in the last fetch. */
+	public int getNotModifiedShardCount() {
+		return mNotModifiedShardCount.get();
+	}
+
+	/** @return The bytes received in the last fetch, as transferred; 
+	 * compressed where the server compressed. */
+	public long getEncodedBytes() {
+		return mEncodedBytes.get();
+	}
+
+	/** @return The bytes received in the last fetch, once decoded. */
+	public long getDecodedBytes() {
+		return mDecodedBytes.get();
+	}
+
+	/** @return The requests made in the last fetch, retries included. */
+	public int getAttemptCount() {
+		return mAttemptCount.get();
+	}
+
+	/** @return The time in milliseconds spent backing off between attempts 
+	 * in the last fetch. */
+	public long getBackoffTime() {
+		return mBackoffTime.get();
+	}
+	
+	/** @return The rates parsed in the last fetch, before any reverse rates; 
+	 * those of retried shards counted once per attempt. */
+	public int getRateCount() {
+		return mRateCount.get();
+	}
+
+	/**
+	 * Cancels the fetch in progress, from any thread, or if there is none the 
+	 * next to start. Its requests in flight are aborted and no more are made; 
+	 * {@link #fetch()} throws once they have stopped.
+	 */
+	public void cancel() {
+		synchronized (mInFlight) {
+			mCancelled = true;
+			cancelAll(mInFlight);
+			mInFlight.notifyAll(); //end any backoff
+		}
+	}
+	
+	/**
+	 * Cancels the fetch in progress, as {@link #cancel()}, but only if there is one; 
+	 * so a fetch that has just ended does not leave a cancel for the next.
+	 */
+	void abort() {
+		synchronized (mInFlight) {
+			if (mFetching) {
+				cancel();
+			}
+		}
+	}
+	
+	/**
+	 * Discards the validators stored by every shard of the last fetch, so each 
+	 * is requested in full next time; such as when its rates could not all be 
+	 * kept, which a 304 would otherwise hide. Call once the fetch has ended.
+	 */
+	public void discardValidators() {
+		for (ShardFetch fetch : mLastFetches) {
+			if (fetch.mRequest != null) {
+				fetch.mRequest.discardValidators();
+			}
+		}
+	}
+	
+	/** @return <code>true</code> if the last fetch was cancelled. */
+	public boolean isCancelled() {
+		return mLastCancelled;
+	}
+
+	/**
+	 * Fetches & parses every shard, blocking until all have completed or failed.
+	 * @return The merged rates of the successful shards, in the form of
+	 * {@link com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.ExchangeRateEntry}.
+	 * @throws InterruptedException If interrupted while waiting; outstanding
+	 * requests are cancelled.
+	 * @throws CancellationException If {@link #cancel()} was called during the fetch.
+	 */
+	public ContentValues[] fetch() throws InterruptedException {
+		return fetch(null);
+	}
+	
+	/**
+	 * Fetches & parses every shard, blocking until all have completed or failed.
+	 * @param sink The sink to stream every rate to as it is parsed, from the request 
+	 * threads concurrently, or <code>null</code> to merge them. Rates of a shard 
+	 * that fails part way are still given, and may be given again by its retry.
+	 * No reverse rates are made; the sink may make its own.
+	 * @return The merged rates of the successful shards, in the form of
+	 * {@link com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.ExchangeRateEntry}; 
+	 * empty if streamed.
+	 * @throws InterruptedException If interrupted while waiting; outstanding
+	 * requests are cancelled.
+	 * @throws CancellationException If {@link #cancel()} was called during the fetch.
+	 */
+	public ContentValues[] fetch(RateSource.OnRateListener sink) throws InterruptedException {
+		final List<List<String>> shards = shard(mPairIds, mShardSize);
+		mSink = sink;
+		mLastFetches = Collections.<ShardFetch>emptyList();
+		mLastCancelled = false;
+		mFailedShardCount = 0;
+		mNotModifiedShardCount.set(0);
+		mEncodedBytes.set(0);
+		mDecodedBytes.set(0);
+		mAttemptCount.set(0);
+		mBackoffTime.set(0);
+		mRateCount.set(0);
+		synchronized (mInFlight) {
+			mFetching = true;
+		}
+		try {
+			return fetchShards(shards);
+		} finally {
+			synchronized (mInFlight) {
+				mFetching = false;
+				mLastCancelled = mCancelled;
+				mCancelled = false; //any cancel after is for the next fetch
+			}
+		}
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Helper methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** Fetches the shards, as {@link #fetch(RateSource.OnRateListener)}; 
+	 * once every request has stopped. */
+	private ContentValues[] fetchShards(List<List<String>> shards) throws InterruptedException {
+		if (mCancelled) {
+			throw new CancellationException("Fetch cancelled");
+		} else if (shards.isEmpty()) {
+			return new ContentValues[0];
+		}
+
+		final RateSource source = mSource;
+		final List<ShardFetch> fetches = new ArrayList<ShardFetch>(shards.size());
+		for (List<String> shard : shards) {
+			fetches.add(new ShardFetch(source, shard));
+		}
+		mLastFetches = fetches;
+		final RequestExecutor executor = obtainExecutor();
+		try {
+			final List<ShardFetch> failed = new ArrayList<ShardFetch>();
+			List<ShardFetch> pending = attempt(executor, fetches);
+			for (int retry = 1; !pending.isEmpty(); retry++) {
+				final List<ShardFetch> retryable = new ArrayList<ShardFetch>();
+				for (ShardFetch fetch : pending) {
+					(mRetryPolicy.isRetryable(fetch.mResponseCode, fetch.mError) ? 
+							retryable : failed).add(fetch);
+				}
+				final long backoff = retryable.isEmpty() ? -1 : mRetryPolicy.getBackoff(retry);
+				if (backoff < 0) {
+					failed.addAll(retryable);
+					break;
+				}
+				backOff(backoff);
+				pending = attempt(executor, retryable);
+			}
+			for (ShardFetch fetch : failed) {
+				Log.w(LOGTAG, "Shard failed (" + fetch.mResponseCode + "): " + 
+						(fetch.mError != null ? fetch.mError : "did not complete"));
+			}
+			mFailedShardCount = failed.size();
+			
+			final List<ContentValues> results = new ArrayList<ContentValues>();
+			for (ShardFetch fetch : fetches) {
+				if (fetch.mResult != null) {
+					results.addAll(Arrays.asList(fetch.mResult));
+				}
+			}
+			return results.toArray(new ContentValues[results.size()]);
+		} finally {
+			awaitAll(cancelInFlight());
+		}
+	}
+
+	/** @return The executor kept between fetches, created as first needed. */
+	private synchronized RequestExecutor obtainExecutor() {
+		if (mExecutor == null) {
+			mExecutor = new RequestExecutor(mParallelism);
+		}
+		return mExecutor;
+	}
+	
+	/**
+	 * Submits the shards together & waits for every one.
+	 * @return The shards that failed.
+	 * @throws InterruptedException If interrupted while waiting.
+	 * @throws CancellationException If cancelled.
+	 */
+	private List<ShardFetch> attempt(RequestExecutor executor, List<ShardFetch> shards) 
+			throws InterruptedException {
+		synchronized (mInFlight) {
+			if (mCancelled) {
+				throw new CancellationException("Fetch cancelled");
+			}
+			mInFlight.clear();
+			for (ShardFetch fetch : shards) {
+				mInFlight.add(fetch.submit(executor));
+			}
+		}
+		mAttemptCount.addAndGet(shards.size());
+		final List<ShardFetch> failed = new ArrayList<ShardFetch>();
+		final int SIZE = shards.size();
+		for (int index = 0; index < SIZE; index++) {
+			final RequestFuture future;
+			synchronized (mInFlight) {
+				future = mInFlight.get(index);
+			}
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				shards.get(index).mError = e;
+			} catch (CancellationException e) {
+				//counted below
+			}
+			if (mCancelled) {
+				throw new CancellationException("Fetch cancelled");
+			} else if (!shards.get(index).isSuccessful()) {
+				failed.add(shards.get(index));
+			}
+		}
+		return failed;
+	}
+	
+	/**
+	 * Waits before a retry, unless cancelled.
+	 * @param delay The time to wait in milliseconds.
+	 * @throws InterruptedException If interrupted while waiting.
+	 * @throws CancellationException If cancelled.
+	 */
+	private void backOff(long delay) throws InterruptedException {
+		final long start = System.nanoTime();
+		try {
+			synchronized (mInFlight) {
+				long remaining = delay;
+				while (!mCancelled && remaining > 0) {
+					mInFlight.wait(remaining);
+					remaining = delay - (System.nanoTime() - start) / 1000000;
+				}
+			}
+		} finally {
+			mBackoffTime.addAndGet((System.nanoTime() - start) / 1000000);
+		}
+		if (mCancelled) {
+			throw new CancellationException("Fetch cancelled");
+		}
+	}
+	
+	/** Aborts the requests of the current attempt, if any are left.
+	 * @return The requests aborted, to wait on. */
+	private List<RequestFuture> cancelInFlight() {
+		synchronized (mInFlight) {
+			cancelAll(mInFlight);
+			final List<RequestFuture> cancelled = new ArrayList<RequestFuture>(mInFlight);
+			mInFlight.clear();
+			return cancelled;
+		}
+	}
+	
+	/** Cancels the futures last first, so the queued are cancelled before 
+	 * aborting a running one frees its thread to start them. */
+	private static void cancelAll(List<RequestFuture> futures) {
+		for (int index = futures.size() - 1; index >= 0; index--) {
+			futures.get(index).cancel(true);
+		}
+	}
+	
+	/** Waits for every request to stop, uninterruptibly; they have been aborted, 
+	 * so stop promptly. An interrupt is kept for the caller. */
+	private static void awaitAll(List<RequestFuture> futures) {
+		boolean interrupted = false;
+		for (RequestFuture future : futures) {
+			while (true) {
+				try {
+					future.awaitDone();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Utility methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @param pairIds The pairs to split.
+	 * @param shardSize The maximum size of each shard.
+	 * @return The consecutive shards, all full but the last.
+	 */
+	static List<List<String>> shard(List<String> pairIds, int shardSize) {
+		final List<List<String>> shards = new ArrayList<List<String>>();
+		final int SIZE = pairIds.size();
+		for (int start = 0; start < SIZE; start += shardSize) {
+			shards.add(pairIds.subList(start, Math.min(start + shardSize, SIZE)));
+		}
+		return shards;
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Internal classes
+	////////////////////////////////////////////////////////////////////////////////////////////////
+
+	/** Requests & parses a single shard; an attempt at a time. Its fields are 
+	 * read once the attempt's future has completed. */
+	private class ShardFetch implements OnTransferEventListener, RateSource.OnRateListener {
+		/** The source of the fetch. */
+		final private RateSource mRateSource;
+		final private List<String> mPairIds;
+		/** The request of the current attempt; a cancelled request cannot be rerun. */
+		private AbstractSimpleHttpRequest mRequest = null;
+		/** The rates of the current attempt, as they are parsed. */
+		final private List<ContentValues> mParsed = new ArrayList<ContentValues>();
+		/** The parsed rates of the current attempt, if successful; 
+		 * empty if not modified. */
+		private ContentValues[] mResult = null;
+		/** The failure of the current attempt, if any. */
+		private Exception mError = null;
+		/** The response code of the current attempt or 0 if none. */
+		private int mResponseCode = 0;
+
+		public ShardFetch(RateSource source, List<String> pairIds) {
+			this.mRateSource = source;
+			this.mPairIds = pairIds;
+		}
+
+		/** Starts a new attempt. 
+		 * @return The attempt's request handle. */
+		public RequestFuture submit(RequestExecutor executor) {
+			mResult = null;
+			mError = null;
+			mResponseCode = 0;
+			mRequest = mRateSource.newRequest(mPairIds);
+			mRequest.setOnRequestEventListener(this);
+			mRequest.setValidatorCache(mValidatorCache);
+			if (mRequestTimeout >= 0) {
+				mRequest.setRequestTimeout(mRequestTimeout);
+			}
+			return executor.submit(mRequest);
+		}
+
+		/** @return <code>true</code> if the completed attempt was parsed or not modified. */
+		public boolean isSuccessful() {
+			return mResult != null;
+		}
+
+		@Override
+		public void onStart(InputStream in) {
+			mParsed.clear();
+			try {
+				mRateSource.parse(in, this);
+				mResult = mParsed.toArray(new ContentValues[mParsed.size()]);
+			} catch (XmlPullParserException parsingIssue) {
+				mError = parsingIssue;
+			} catch (IOException ioIssue) {
+				mError = ioIssue;
+			}
+			mParsed.clear();
+			if (mError != null) {
+				mRequest.discardValidators(); //a 304 must not hide the failure
+			}
+		}
+
+		@Override
+		public void onRate(CodeRatePair pair) {
+			mRateCount.incrementAndGet();
+			final RateSource.OnRateListener sink = mSink;
+			if (sink != null) {
+				sink.onRate(pair);
+				return;
+			}
+			mParsed.add(pair.toContentValues());
+			if (mReverseRates) {
+				mParsed.add(pair.toReverseContentValues());
+			}
+		}
+
+		@Override
+		public void onException(Exception e) {
+			mError = e;
+		}
+
+		@Override
+		public void onResponseCode(int responseCode) {
+			mResponseCode = responseCode;
+			if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+				mResult = new ContentValues[0];
+				mNotModifiedShardCount.incrementAndGet();
+			}
+		}
+
+		@Override
+		public void onTransfer(long encodedBytes, long decodedBytes) {
+			mEncodedBytes.addAndGet(encodedBytes);
+			mDecodedBytes.addAndGet(decodedBytes);
+		}
+
+		@Override
+		public void onComplete() {}
+	}
+}
@@ -31,9 +31,13 @@ import com.ovrhere.android.currencyconverter.model.parsers.AbstractJsonParser;
  * 
  * Note that this will create double values from compact results;
  * i.e. take USD -> CAD rates and manufacture CAD -> USD rates. 
+ * Unless constructed without reverse rates, for base-currency mode.
+ * 
+ * <p>Not thread-safe; confine each parser to a thread &amp; {@link #reset()}
+ * it between parses to reuse it.</p>
  * 
  * @author Jason J.
- * @version 0.2.0-20150523
+ * @version 0.6.0-20261018
  * @see YahooApiCurrencyRequest
  */
 public class YahooApiCurrencyJsonParser extends AbstractJsonParser<ContentValues[]>{
@@ -75,9 +79,39 @@ public class YahooApiCurrencyJsonParser extends AbstractJsonParser<ContentValues
 	/// End constants
 	////////////////////////////////////////////////////////////////////////////////////////////////
 	
+	/** Whether or not to manufacture the reverse of every rate. */
+	final private boolean mReverseRates;
+	/** The listener to stream rates to or <code>null</code> to return them. */
+	private RateSource.OnRateListener mRateListener = null;
+	
+	/** Initializes parser, manufacturing reverse rates. */
+	public YahooApiCurrencyJsonParser() {
+		this(true);
+	}
+	
+	/** Initializes parser.
+	 * @param reverseRates <code>true</code> to manufacture CAD -> USD from USD -> CAD,
+	 * <code>false</code> to return only the rates given (as in base-currency mode). */
+	public YahooApiCurrencyJsonParser(boolean reverseRates) {
+		super();
+		this.mReverseRates = reverseRates;
+	}
+	
+	/** Streams every rate to the listener as it is parsed, instead of returning 
+	 * them. No reverse rates are made; the listener may make its own.
+	 * @param rateListener The listener or <code>null</code> to return the rates. */
+	public void setOnRateListener(RateSource.OnRateListener rateListener) {
+		this.mRateListener = rateListener;
+	}
+	
+	/** Readies the parser to be reused, as if new; the listener is removed. */
+	public void reset() {
+		mRateListener = null;
+	}
+	
 	/**
 	 * {@inheritDoc}
-	 * @return The array of {@link ContentValues}. 
+	 * @return The array of {@link ContentValues}; empty if streamed to a listener. 
 	 */
 	@Override
 	protected ContentValues[] parseJsonToReturnData() throws IOException {
@@ -87,13 +121,11 @@ public class YahooApiCurrencyJsonParser extends AbstractJsonParser<ContentValues
 		while (mJsonReader.hasNext()){
 			final String ROOT = mJsonReader.nextName();
 			
-			if (ROOT.equals(TAG_QUERY_ROOT)){ //arrived at: "query":{
-				if (nextNotNull()){
-					List<ContentValues> res = parseJsonAtRoot();
-					results = new ContentValues[res.size()];
-					res.toArray(results);
-				}
-			} else {
+			if (ROOT.equals(TAG_QUERY_ROOT) && nextNotNull()){ //arrived at: "query":{
+				List<ContentValues> res = parseJsonAtRoot();
+				results = new ContentValues[res.size()];
+				res.toArray(results);
+			} else { //including null
 				mJsonReader.skipValue();
 			}
 		}
@@ -118,11 +150,9 @@ public class YahooApiCurrencyJsonParser extends AbstractJsonParser<ContentValues
 		while (mJsonReader.hasNext()) {
 			final String RESULTS = mJsonReader.nextName();
 			
-			if (RESULTS.equals(TAG_RESULTS)) { //arrived at: "results":{
-				if (nextNotNull()) {
-					parseJsonAtRate(results);
-				}
-			} else { //we are not interesting in other values
+			if (RESULTS.equals(TAG_RESULTS) && nextNotNull()) { //arrived at: "results":{
+				parseJsonAtRate(results);
+			} else { //we are not interesting in other values, nor null; as when no results
 				mJsonReader.skipValue();
 			}
 		}
@@ -142,23 +172,27 @@ public class YahooApiCurrencyJsonParser extends AbstractJsonParser<ContentValues
 		while (mJsonReader.hasNext()){
 			final String RATES = mJsonReader.nextName();
 			
-			if (RATES.equals(TAG_RATE)){ //arrived at: "rate":[
-				if (nextNotNull()){
-					mJsonReader.beginArray();					
-					while (mJsonReader.hasNext()){
-						
-						CodeRatePair ratePair = null;
-						try {
-							ratePair = parseCodeRatePair();
-							results.add(ratePair.toContentValues());
+			if (RATES.equals(TAG_RATE) && nextNotNull()){ //arrived at: "rate":[
+				mJsonReader.beginArray();					
+				while (mJsonReader.hasNext()){
+					
+					CodeRatePair ratePair = null;
+					try {
+						ratePair = parseCodeRatePair();
+						if (mRateListener != null) {
+							mRateListener.onRate(ratePair);
+							continue;
+						}
+						results.add(ratePair.toContentValues());
+						if (mReverseRates) {
 							results.add(ratePair.toReverseContentValues());
-							
-						} catch (IllegalArgumentException badPair ) {
-							Log.w(LOGTAG, "Failed to parse pair: " + badPair);
 						}
-					}					
-					mJsonReader.endArray();
-				}
+						
+					} catch (IllegalArgumentException badPair ) {
+						Log.w(LOGTAG, "Failed to parse pair: " + badPair);
+					}
+				}					
+				mJsonReader.endArray();
 			} else {
 				mJsonReader.skipValue();
 			}
@@ -170,7 +204,8 @@ public class YahooApiCurrencyJsonParser extends AbstractJsonParser<ContentValues
 	/** Parses the rate pair from the json stream.
 	 * @return The rate pair if successfully parsed or <code>null</code>
 	 * @throws IOException Re-thrown
-	 * @throws NumberFormatException Re-thrown during parsing
+	 * @throws NumberFormatException If the rate could not be parsed; thrown once the
+	 * pair is read, so the stream is left at the next pair
 	 * @throws IllegalArgumentException Re-thrown
 	 */
 	private CodeRatePair parseCodeRatePair() throws IOException, 
@@ -180,6 +215,7 @@ public class YahooApiCurrencyJsonParser extends AbstractJsonParser<ContentValues
 		
 		String idText = "";
 		double rate = 0.0d;
+		NumberFormatException badRate = null;
 		while (mJsonReader.hasNext()){
 			final String TAG = mJsonReader.nextName();
 			if (TAG.equals(TAG_RATE_ID) && nextNotNull()){
@@ -192,7 +228,11 @@ public class YahooApiCurrencyJsonParser extends AbstractJsonParser<ContentValues
 					Log.w(LOGTAG, 
 							"Rate was not parsed correctly for currency \""+
 									idText+"\"; skipping. ");
-					throw e;
+					//the unparsed rate is still buffered; drop it & finish the object
+					mJsonReader.skipValue();
+					if (badRate == null) {
+						badRate = e;
+					}
 				}
 			} else {
 				mJsonReader.skipValue();
@@ -200,6 +240,9 @@ public class YahooApiCurrencyJsonParser extends AbstractJsonParser<ContentValues
 		}
 		
 		mJsonReader.endObject();
+		if (badRate != null) {
+			throw badRate; //such as "N/A"; the next pair can still be parsed
+		}
 				
 		return new CodeRatePair(idText, rate); 
 	}
@@ -0,0 +1,751 @@
+/*
+ * Copyright 2015 Jason J. (iamovrhere)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.ovrhere.android.currencyconverter.model.currencyrequest;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import android.content.ContentValues;
+import android.util.Log;
+
+import com.google.gson.stream.MalformedJsonException;
+import com.ovrhere.android.currencyconverter.model.parsers.JsonStreamParser;
+
+/**
+ * <p>The JSON parser for the yahoo currency exchange api that scans the bytes 
+ * of the response itself, rather than reading it through a JsonReader. Only the
+ * names on the way to the rates, <code>"id"</code> &amp; <code>"Rate"</code>
+ * are matched, byte by byte, &amp; every other value is skipped unread.
+ * Ids of registered codes are interned by {@link CurrencyCodes} in place &amp; 
+ * plain decimal rates are parsed from their digits; no String is made of either.</p>
+ * 
+ * <p>Gives the same rates, in the same order, as {@link YahooApiCurrencyJsonParser}, 
+ * &amp; skips the same pairs; escaped or non-ascii values &amp; rates of more 
+ * digits than a double holds exactly are decoded as the JsonReader would. 
+ * Malformed payloads are rejected with an {@link IOException}.</p>
+ * 
+ * <p>Streams are read as UTF-8. Readers cannot be scanned, so are handed to a 
+ * {@link YahooApiCurrencyJsonParser}.</p>
+ * 
+ * <p>Not thread-safe; confine each scanner to a thread &amp; {@link #reset()}
+ * it between parses to reuse it, buffer &amp; all.</p>
+ * 
+ * @author Jason J.
+ * @version 0.2.2-20261018
+ * @see YahooApiCurrencyRequest
+ */
+public class YahooApiCurrencyJsonScanner implements JsonStreamParser<ContentValues[]> {
+	/** For debugging purposes. */
+	final static private String LOGTAG = YahooApiCurrencyJsonScanner.class
+			.getSimpleName();
+	
+	/** The size of the read buffer. */
+	final static private int BUFFER_SIZE = 8 * 1024;
+	
+	/** The root name of the query. */
+	final static private byte[] NAME_QUERY_ROOT = ascii("query");
+	/** The outer name of results. */
+	final static private byte[] NAME_RESULTS = ascii("results");
+	/** The outer name of the array of rates. */
+	final static private byte[] NAME_RATE = ascii("rate");
+	/** The name of the id with the rate in the form: "USDCAD". */
+	final static private byte[] NAME_RATE_ID = ascii("id");
+	/** The name of the actual exchange rate. */
+	final static private byte[] NAME_EXCHANGE_RATE = ascii("Rate");
+	
+	/** The length of a pair id: "USDCAD". */
+	final static private int PAIR_ID_LENGTH = 2 * CurrencyCodes.CODE_LENGTH;
+	
+	/** Returned by {@link #nextName(byte[], byte[])} if neither name matched. */
+	final static private int MATCH_NONE = 0;
+	/** Returned by {@link #nextName(byte[], byte[])} if the first name matched. */
+	final static private int MATCH_FIRST = 1;
+	/** Returned by {@link #nextName(byte[], byte[])} if the second name matched. */
+	final static private int MATCH_SECOND = 2;
+	
+	/** The largest mantissa held exactly by a double; 2^53. */
+	final static private long MAX_EXACT_MANTISSA = 1L << 53;
+	/** The powers of ten held exactly by a double; 10^0 to 10^22. */
+	final static private double[] EXACT_POWERS_OF_TEN = new double[23];
+	static {
+		EXACT_POWERS_OF_TEN[0] = 1.0d;
+		for (int power = 1; power < EXACT_POWERS_OF_TEN.length; power++) {
+			EXACT_POWERS_OF_TEN[power] = EXACT_POWERS_OF_TEN[power - 1] * 10.0d;
+		}
+	}
+	
+	/////////////////////////////////////////////////////////////////////////////////////////////////
+	/// End constants
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** Whether or not to manufacture the reverse of every rate. */
+	final private boolean mReverseRates;
+	/** The listener to stream rates to or <code>null</code> to return them. */
+	private RateSource.OnRateListener mRateListener = null;
+	
+	/** The read buffer; bytes from {@link #mPos} to {@link #mLimit} are unread. */
+	final private byte[] mBuffer = new byte[BUFFER_SIZE];
+	private int mPos = 0;
+	private int mLimit = 0;
+	/** The stream being scanned. */
+	private InputStream mIn = null;
+	
+	/** The id of the pair being scanned. */
+	final private Value mId = new Value();
+	/** The last rate scanned. */
+	final private Value mRate = new Value();
+	
+	/** Initializes parser, manufacturing reverse rates. */
+	public YahooApiCurrencyJsonScanner() {
+		this(true);
+	}
+	
+	/** Initializes parser.
+	 * @param reverseRates <code>true</code> to manufacture CAD -> USD from USD -> CAD,
+	 * <code>false</code> to return only the rates given (as in base-currency mode). */
+	public YahooApiCurrencyJsonScanner(boolean reverseRates) {
+		this.mReverseRates = reverseRates;
+	}
+	
+	/** Streams every rate to the listener as it is parsed, instead of returning 
+	 * them. No reverse rates are made; the listener may make its own.
+	 * @param rateListener The listener or <code>null</code> to return the rates. */
+	public void setOnRateListener(RateSource.OnRateListener rateListener) {
+		this.mRateListener = rateListener;
+	}
+	
+	/** Readies the parser to be reused, as if new; the listener is removed &amp;
+	 * nothing of the last parse is kept, even if it failed part way. */
+	public void reset() {
+		mRateListener = null;
+		mIn = null;
+		mPos = 0;
+		mLimit = 0;
+		mId.reset();
+		mRate.reset();
+	}
+	
+	/**
+	 * Scans the stream &amp; safely closes it.
+	 * @param in The UTF-8 input stream.
+	 * @return The array of {@link ContentValues}; empty if streamed to a listener.
+	 * @throws IOException Re-thrown from the stream or if malformed.
+	 */
+	@Override
+	public ContentValues[] parseJsonStream(InputStream in) throws IOException {
+		mIn = in;
+		mPos = 0;
+		mLimit = 0;
+		try {
+			return scanRoot();
+		} finally {
+			mIn = null;
+			try {
+				in.close();
+			} catch (IOException e) {}
+		}
+	}
+	
+	/** 
+	 * Parses the reader with a {@link YahooApiCurrencyJsonParser}, as 
+	 * characters cannot be scanned as bytes.
+	 * {@inheritDoc} 
+	 */
+	@Override
+	public ContentValues[] parseJsonStream(Reader reader) throws IOException {
+		YahooApiCurrencyJsonParser parser = new YahooApiCurrencyJsonParser(mReverseRates);
+		parser.setOnRateListener(mRateListener);
+		return parser.parseJsonStream(reader);
+	}
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Helper methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** Scans the root object; as {@link YahooApiCurrencyJsonParser}, the rates
+	 * of the last "query" are returned.
+	 * @return The content values of the rates. */
+	private ContentValues[] scanRoot() throws IOException {
+		ContentValues[] results = new ContentValues[]{};
+		expect('{');
+		for (boolean first = true; hasNext('}', first); first = false) {
+			if (nextName(NAME_QUERY_ROOT, null) != MATCH_FIRST) {
+				skipValue();
+			} else if (!skipNull()) { //arrived at: "query":{
+				List<ContentValues> res = scanQuery();
+				results = new ContentValues[res.size()];
+				res.toArray(results);
+			}
+		}
+		return results;
+	}
+	
+	/** Scans the query object, from its opening brace. 
+	 * @return The content values of the rates of every "results". */
+	private List<ContentValues> scanQuery() throws IOException {
+		List<ContentValues> results = new ArrayList<ContentValues>();
+		expect('{');
+		for (boolean first = true; hasNext('}', first); first = false) {
+			if (nextName(NAME_RESULTS, null) != MATCH_FIRST) {
+				skipValue(); //we are not interesting in other values
+			} else if (!skipNull()) { //arrived at: "results":{
+				scanResults(results);
+			}
+		}
+		return results;
+	}
+	
+	/** Scans the results object, from its opening brace, into the results. */
+	private void scanResults(List<ContentValues> results) throws IOException {
+		expect('{');
+		for (boolean first = true; hasNext('}', first); first = false) {
+			if (nextName(NAME_RATE, null) != MATCH_FIRST) {
+				skipValue();
+			} else if (!skipNull()) { //arrived at: "rate":[
+				expect('[');
+				for (boolean firstPair = true; hasNext(']', firstPair); firstPair = false) {
+					scanPair(results);
+				}
+			}
+		}
+	}
+	
+	/** Scans a pair object, from its opening brace, into the results or to the 
+	 * listener. Pairs that cannot be parsed are skipped, as by 
+	 * {@link YahooApiCurrencyJsonParser}. */
+	private void scanPair(List<ContentValues> results) throws IOException {
+		expect('{');
+		//arrived at: {"id":"USDEUR",...,"Rate":"0.7876",...},
+		mId.reset(); //as ""
+		double rate = 0.0d;
+		NumberFormatException badRate = null;
+		for (boolean first = true; hasNext('}', first); first = false) {
+			final int name = nextName(NAME_RATE_ID, NAME_EXCHANGE_RATE);
+			if (name == MATCH_FIRST) {
+				if (!skipNull()) {
+					readId();
+				}
+			} else if (name == MATCH_SECOND) {
+				if (!skipNull()) {
+					try {
+						rate = readRate();
+					} catch (NumberFormatException e) {
+						Log.w(LOGTAG, 
+								"Rate was not parsed correctly for currency \""+
+										mId+"\"; skipping. ");
+						if (badRate == null) {
+							badRate = e;
+						}
+					}
+				}
+			} else {
+				skipValue();
+			}
+		}
+		
+		try {
+			if (badRate != null) {
+				throw badRate; //such as "N/A"
+			}
+			final CodeRatePair ratePair = newCodeRatePair(rate);
+			if (mRateListener != null) {
+				mRateListener.onRate(ratePair);
+				return;
+			}
+			results.add(ratePair.toContentValues());
+			if (mReverseRates) {
+				results.add(ratePair.toReverseContentValues());
+			}
+		} catch (IllegalArgumentException badPair) {
+			Log.w(LOGTAG, "Failed to parse pair: " + badPair);
+		}
+	}
+	
+	/** @return The pair of the last id read &amp; the rate; the codes
+	 * interned in place where the id is a plain pair of registered codes. 
+	 * @throws IllegalArgumentException If the id is not a pair. */
+	private CodeRatePair newCodeRatePair(double rate) throws IOException {
+		if (mId.plain && mId.length == PAIR_ID_LENGTH) {
+			final int srcId = CurrencyCodes.idOf(mId, 0);
+			final int destId = CurrencyCodes.idOf(mId, CurrencyCodes.CODE_LENGTH);
+			if (srcId != CurrencyCodes.NONE && destId != CurrencyCodes.NONE) {
+				return new CodeRatePair(srcId, destId, rate);
+			}
+		}
+		return new CodeRatePair(mId.decode(), rate);
+	}
+	
+	/** Reads the id value, a string or number, into {@link #mId}. */
+	private void readId() throws IOException {
+		final int c = nextToken();
+		if (c == '"') {
+			readString(mId);
+		} else if (c == '-' || (c >= '0' && c <= '9')) {
+			readLiteral(c, mId); //read as text, as the JsonReader would
+		} else {
+			throw syntaxError("Expected an id but was '" + (char) c + "'");
+		}
+	}
+	
+	/** 
+	 * Reads the rate value, a string or number.
+	 * @return The rate, as {@link Double#parseDouble(String)} would give.
+	 * @throws NumberFormatException If the rate is not a number.
+	 * @throws IOException If the rate is not a string or number, or is not finite.
+	 */
+	private double readRate() throws IOException, NumberFormatException {
+		final int c = nextToken();
+		if (c == '"') {
+			readString(mRate);
+		} else if (c == '-' || (c >= '0' && c <= '9')) {
+			readLiteral(c, mRate);
+		} else {
+			throw syntaxError("Expected a rate but was '" + (char) c + "'");
+		}
+		final double rate = mRate.plain ? 
+				parseDecimal(mRate.bytes, 0, mRate.length) : Double.parseDouble(mRate.decode());
+		if (Double.isNaN(rate) || Double.isInfinite(rate)) {
+			throw syntaxError("JSON forbids NaN and infinities: " + rate);
+		}
+		return rate;
+	}
+	
+	/** Reads the rest of a name, its opening quote read, &amp; its colon.
+	 * @param first The first name to match.
+	 * @param second The second name to match or <code>null</code>.
+	 * @return {@link #MATCH_FIRST}, {@link #MATCH_SECOND} or {@link #MATCH_NONE}. */
+	private int nextName(byte[] first, byte[] second) throws IOException {
+		expect('"');
+		boolean matchesFirst = true;
+		boolean matchesSecond = second != null;
+		int length = 0;
+		for (int c = nextByte(); c != '"'; c = nextByte()) {
+			if (c == '\\') {
+				c = readEscape();
+			}
+			matchesFirst = matchesFirst && length < first.length && first[length] == c;
+			matchesSecond = matchesSecond && length < second.length && second[length] == c;
+			length++;
+		}
+		expect(':');
+		if (matchesFirst && length == first.length) {
+			return MATCH_FIRST;
+		} else if (matchesSecond && length == second.length) {
+			return MATCH_SECOND;
+		}
+		return MATCH_NONE;
+	}
+	
+	/** Reads the rest of a string, its opening quote read, into the value;
+	 * escapes are kept, to be decoded by {@link Value#decode()}. */
+	private void readString(Value value) throws IOException {
+		value.reset();
+		for (int c = nextByte(); c != '"'; c = nextByte()) {
+			if (c == '\\') {
+				value.plain = false;
+				value.append(c);
+				c = nextByte(); //never the end of the string
+			} else if (c >= 0x80) {
+				value.plain = false;
+			}
+			value.append(c);
+		}
+	}
+	
+	/** Reads the rest of a number, its first byte read, into the value. */
+	private void readLiteral(int first, Value value) throws IOException {
+		value.reset();
+		value.append(first);
+		while ((mPos < mLimit || fill()) && !isDelimiter(mBuffer[mPos])) {
+			value.append(mBuffer[mPos++]);
+		}
+		if (!isJsonNumber(value.bytes, value.length)) {
+			throw syntaxError("Expected a number but was \"" + value + "\"");
+		}
+	}
+	
+	/** @return <code>true</code> if a null was next &amp; read. */
+	private boolean skipNull() throws IOException {
+		if (peekToken() != 'n') {
+			return false;
+		}
+		mPos++;
+		if (nextByte() != 'u' || nextByte() != 'l' || nextByte() != 'l' || 
+				((mPos < mLimit || fill()) && !isDelimiter(mBuffer[mPos]))) {
+			throw syntaxError("Expected null");
+		}
+		return true;
+	}
+	
+	/** Skips the next value, however nested. */
+	private void skipValue() throws IOException {
+		int depth = 0;
+		do {
+			final int c = nextToken();
+			if (c == '{' || c == '[') {
+				depth++;
+			} else if (c == '}' || c == ']') {
+				depth--;
+			} else if (c == '"') {
+				skipString();
+			} else if (c != ',' && c != ':') {
+				while ((mPos < mLimit || fill()) && !isDelimiter(mBuffer[mPos])) {
+					mPos++; //number or literal
+				}
+			}
+		} while (depth > 0);
+	}
+	
+	/** Skips the rest of a string, its opening quote read. */
+	private void skipString() throws IOException {
+		for (int c = nextByte(); c != '"'; c = nextByte()) {
+			if (c == '\\') {
+				nextByte();
+			}
+		}
+	}
+	
+	/** Reads an escape, its backslash read.
+	 * @return The character escaped. */
+	private int readEscape() throws IOException {
+		final int c = nextByte();
+		switch (c) {
+		case 'u':
+			int value = 0;
+			for (int digit = 0; digit < 4; digit++) {
+				value = (value << 4) | hexValue(nextByte());
+			}
+			return value;
+		case 't':
+			return '\t';
+		case 'b':
+			return '\b';
+		case 'n':
+			return '\n';
+		case 'r':
+			return '\r';
+		case 'f':
+			return '\f';
+		default:
+			return c;
+		}
+	}
+	
+	/**
+	 * @param close The closing brace or bracket.
+	 * @param first <code>true</code> if no member or element has been read.
+	 * @return <code>true</code> if another member or element follows, its
+	 * comma read, <code>false</code> if the closing brace or bracket was read.
+	 */
+	private boolean hasNext(int close, boolean first) throws IOException {
+		final int c = peekToken();
+		if (c == close) {
+			mPos++;
+			return false;
+		} else if (!first) {
+			if (c != ',') {
+				throw syntaxError("Expected ',' or '" + (char) close + "' but was '" + (char) c + "'");
+			}
+			mPos++;
+		}
+		return true;
+	}
+	
+	/** Reads the next token, which must be as expected. */
+	private void expect(int expected) throws IOException {
+		final int c = nextToken();
+		if (c != expected) {
+			throw syntaxError("Expected '" + (char) expected + "' but was '" + (char) c + "'");
+		}
+	}
+	
+	/** @return The next byte, past any whitespace; read. */
+	private int nextToken() throws IOException {
+		final int c = peekToken();
+		mPos++;
+		return c;
+	}
+	
+	/** @return The next byte, past any whitespace; unread. */
+	private int peekToken() throws IOException {
+		while (true) {
+			if (mPos == mLimit && !fill()) {
+				throw new EOFException("End of input");
+			}
+			final int c = mBuffer[mPos] & 0xff;
+			if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+				return c;
+			}
+			mPos++;
+		}
+	}
+	
+	/** @return The next byte, whitespace or not; read. */
+	private int nextByte() throws IOException {
+		if (mPos == mLimit && !fill()) {
+			throw new EOFException("End of input");
+		}
+		return mBuffer[mPos++] & 0xff;
+	}
+	
+	/** Refills the buffer, once every byte has been read.
+	 * @return <code>false</code> at the end of the stream. */
+	private boolean fill() throws IOException {
+		int read = 0;
+		while (read == 0) {
+			read = mIn.read(mBuffer, 0, mBuffer.length);
+		}
+		if (read < 0) {
+			return false;
+		}
+		mPos = 0;
+		mLimit = read;
+		return true;
+	}
+	
+	/** @return A syntax error, as the JsonReader would throw. */
+	private static MalformedJsonException syntaxError(String message) {
+		return new MalformedJsonException(message);
+	}
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Utility methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * Parses the ascii decimal as {@link Double#parseDouble(String)} would.
+	 * Plain decimals, <code>-?\d+(\.\d+)?</code>, of up to 2^53 without the point
+	 * &amp; 22 decimal places are the quotient of two exact doubles, so 
+	 * correctly rounded by a single division, without a String. Others are
+	 * handed to {@link Double#parseDouble(String)}.
+	 * @param bytes The ascii bytes of the decimal.
+	 * @param offset The index of the first byte.
+	 * @param length The count of bytes.
+	 * @return The decimal's value.
+	 * @throws NumberFormatException If not a number.
+	 */
+	static double parseDecimal(byte[] bytes, int offset, int length) 
+			throws NumberFormatException {
+		final int end = offset + length;
+		int index = offset;
+		final boolean negative = index < end && bytes[index] == '-';
+		if (negative) {
+			index++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int decimalPlaces = -1; //no point
+		for (; index < end; index++) {
+			final int c = bytes[index];
+			if (c >= '0' && c <= '9') {
+				mantissa = mantissa * 10 + (c - '0');
+				if (mantissa > MAX_EXACT_MANTISSA) {
+					return Double.parseDouble(asciiString(bytes, offset, length));
+				}
+				digits++;
+				if (decimalPlaces >= 0) {
+					decimalPlaces++;
+				}
+			} else if (c == '.' && decimalPlaces < 0 && digits > 0) {
+				decimalPlaces = 0;
+			} else {
+				return Double.parseDouble(asciiString(bytes, offset, length));
+			}
+		}
+		if (digits == 0 || decimalPlaces == 0 || decimalPlaces >= EXACT_POWERS_OF_TEN.length) {
+			return Double.parseDouble(asciiString(bytes, offset, length));
+		}
+		final double value = decimalPlaces < 0 ? 
+				mantissa : mantissa / EXACT_POWERS_OF_TEN[decimalPlaces];
+		return negative ? -value : value;
+	}
+	
+	/** @return <code>true</code> if the bytes are a number, as by the json grammar. */
+	private static boolean isJsonNumber(byte[] bytes, int length) {
+		int index = 0;
+		if (index < length && bytes[index] == '-') {
+			index++;
+		}
+		final int integerStart = index;
+		while (index < length && isDigit(bytes[index])) {
+			index++;
+		}
+		if (index == integerStart || 
+				(bytes[integerStart] == '0' && index - integerStart > 1)) {
+			return false; //no digits or a leading zero
+		}
+		if (index < length && bytes[index] == '.') {
+			final int fractionStart = ++index;
+			while (index < length && isDigit(bytes[index])) {
+				index++;
+			}
+			if (index == fractionStart) {
+				return false;
+			}
+		}
+		if (index < length && (bytes[index] == 'e' || bytes[index] == 'E')) {
+			index++;
+			if (index < length && (bytes[index] == '+' || bytes[index] == '-')) {
+				index++;
+			}
+			final int exponentStart = index;
+			while (index < length && isDigit(bytes[index])) {
+				index++;
+			}
+			if (index == exponentStart) {
+				return false;
+			}
+		}
+		return index == length;
+	}
+	
+	private static boolean isDigit(byte c) {
+		return c >= '0' && c <= '9';
+	}
+	
+	/** @return <code>true</code> if the byte ends a number or literal. */
+	private static boolean isDelimiter(byte c) {
+		return c == ',' || c == '}' || c == ']' || c == ':' || 
+				c == ' ' || c == '\n' || c == '\r' || c == '\t';
+	}
+	
+	/** @return The value of the hex digit. */
+	private static int hexValue(int c) throws MalformedJsonException {
+		if (c >= '0' && c <= '9') {
+			return c - '0';
+		} else if (c >= 'a' && c <= 'f') {
+			return c - 'a' + 10;
+		} else if (c >= 'A' && c <= 'F') {
+			return c - 'A' + 10;
+		}
+		throw syntaxError("Invalid escape: '" + (char) c + "'");
+	}
+	
+	/** @return The ascii bytes as a string. */
+	private static String asciiString(byte[] bytes, int offset, int length) {
+		final char[] chars = new char[length];
+		for (int index = 0; index < length; index++) {
+			chars[index] = (char) (bytes[offset + index] & 0xff);
+		}
+		return new String(chars);
+	}
+	
+	/** @return The bytes of the ascii name. */
+	private static byte[] ascii(String name) {
+		final byte[] bytes = new byte[name.length()];
+		for (int index = 0; index < bytes.length; index++) {
+			bytes[index] = (byte) name.charAt(index);
+		}
+		return bytes;
+	}
+	
+	/////////////////////////////////////////////////////////////////////////////////////////////////
+	/// Internal classes
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** The raw bytes of a string or number value, reused between values. Read 
+	 * as characters where plain, so an id can be interned without a copy. */
+	private static class Value implements CharSequence {
+		byte[] bytes = new byte[16];
+		int length = 0;
+		/** Whether every byte is ascii &amp; unescaped; the characters as read. */
+		boolean plain = true;
+		
+		/** Empties the value. */
+		void reset() {
+			length = 0;
+			plain = true;
+		}
+		
+		void append(int c) {
+			if (length == bytes.length) {
+				bytes = Arrays.copyOf(bytes, length * 2);
+			}
+			bytes[length++] = (byte) c;
+		}
+		
+		/** @return The value as the JsonReader would read it; UTF-8 decoded 
+		 * &amp; unescaped. */
+		String decode() throws IOException {
+			final String text = new String(bytes, 0, length, "UTF-8");
+			if (text.indexOf('\\') < 0) {
+				return text;
+			}
+			final StringBuilder decoded = new StringBuilder(text.length());
+			for (int index = 0; index < text.length(); index++) {
+				char c = text.charAt(index);
+				if (c == '\\') {
+					c = text.charAt(++index);
+					switch (c) {
+					case 'u':
+						if (index + 4 >= text.length()) {
+							throw syntaxError("Unterminated escape sequence");
+						}
+						int value = 0;
+						for (int digit = 0; digit < 4; digit++) {
+							value = (value << 4) | hexValue(text.charAt(++index));
+						}
+						c = (char) value;
+						break;
+					case 't':
+						c = '\t';
+						break;
+					case 'b':
+						c = '\b';
+						break;
+					case 'n':
+						c = '\n';
+						break;
+					case 'r':
+						c = '\r';
+						break;
+					case 'f':
+						c = '\f';
+						break;
+					default: //as escaped
+					}
+				}
+				decoded.append(c);
+			}
+			return decoded.toString();
+		}
+		
+		@Override
+		public int length() {
+			return length;
+		}
+		
+		@Override
+		public char charAt(int index) {
+			return (char) (bytes[index] & 0xff);
+		}
+		
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return toString().substring(start, end);
+		}
+		
+		@Override
+		public String toString() {
+			return asciiString(bytes, 0, length);
+		}
+	}
+}
@@ -37,8 +37,10 @@ import com.ovrhere.android.currencyconverter.model.requests.AbstractSimpleHttpRe
  * <p>
  * Note that an instance of {@link YahooApiCurrencyRequest} will only run 
  * one request at a time and that requests are blocking</p>
+ * <p>For many currencies, split the pairs across several requests; see 
+ * {@link #preparePairs(List, List)} & {@link ShardedRateFetcher}.</p>
  * @author Jason J.
- * @version 0.5.0-20150521
+ * @version 0.6.0-20261018
  */
 public class YahooApiCurrencyRequest extends AbstractSimpleHttpRequest {
 	/** The logtag for debugging. */
@@ -79,6 +81,9 @@ public class YahooApiCurrencyRequest extends AbstractSimpleHttpRequest {
 	/** The select query for the query {@link #QUERY_PREPARED_SELECT}. */
 	final private String selectQuery;
 	
+	/** The API base url to request from. */
+	private String apiBase = API_BASE;
+	
 	
 	/** Creates and prepares a new request.
 	 * @param sourceCodes The list of source currency codes in ISO 4217 form.
@@ -110,6 +115,17 @@ public class YahooApiCurrencyRequest extends AbstractSimpleHttpRequest {
 		this.setOnRequestEventListener(onRequestEventListener);
 	}
 	
+	/** Creates and prepares a new request for the given pairs, only.
+	 * @param pairIds The pairs in the form <code>"USDCAD"</code>, 
+	 * as given by {@link #preparePairs(List, List)}.
+	 * @param onRequestEventListener The listener to process the results and errors.
+	 */
+	public YahooApiCurrencyRequest (List<String> pairIds, 
+			OnRequestEventListener onRequestEventListener) {
+		this.selectQuery = prepareQuery(pairIds);
+		this.setOnRequestEventListener(onRequestEventListener);
+	}
+	
 	/** Whether to use json format for the response. False by default.
 	 * @param jsonFormat <code>true</code> for JSON, <code>false</code> for XML.
 	 */
@@ -117,9 +133,16 @@ public class YahooApiCurrencyRequest extends AbstractSimpleHttpRequest {
 		this.jsonFormat = jsonFormat;
 	}
 	
+	/** Sets the API base url to request from. Used for testing.
+	 * @param apiBase The base url, defaults to the yahoo api.
+	 */
+	public void setApiBase(String apiBase) {
+		this.apiBase = apiBase;
+	}
+	
 	@Override
 	protected Uri getUriRequest() {
-		Uri.Builder builder = Uri.parse(API_BASE).buildUpon();
+		Uri.Builder builder = Uri.parse(apiBase).buildUpon();
 		builder	.appendQueryParameter(QUERY_PREPARED_SELECT, selectQuery)
 				.appendQueryParameter(QUERY_ENV, VALUE_ENV_TABLE);
 		
@@ -131,33 +154,58 @@ public class YahooApiCurrencyRequest extends AbstractSimpleHttpRequest {
 	}
 	
 	/////////////////////////////////////////////////////////////////////////////////////////////////
-	/// Helper methods
+	/// Utility methods
 	////////////////////////////////////////////////////////////////////////////////////////////////
 	/**
-	 * Prepares the request url by formatting the input appropriately to CSV form: 
-	 * <code>"USDEUR","USDJPY","USDGBP",...</code>
+	 * Lists the non-redundant pairs of the codes, in the form: <code>"USDCAD"</code>.
+	 * A pair is never listed with its complement nor with itself.
 	 * @param sourceCodes The list source currency codes
 	 * @param destCodes The list of destination codes 
-	 * (note: will remove elements from this; cannot be same list as sourceCodes)
+	 * @return The pair ids in order of source, then destination.
 	 */
-	private String prepareQuery(List<String> sourceCodes, List<String> destCodes){
-		String codeList = "";
+	public static List<String> preparePairs(List<String> sourceCodes, List<String> destCodes) {
+		List<String> dstCodes = new ArrayList<String>(destCodes);
+		List<String> pairIds = new ArrayList<String>();
 		for (String sCode : sourceCodes){
-			final int SIZE = destCodes.size();
-			for (int index = 0; index < SIZE; index++){
-				String dCode = destCodes.get(index);
+			for (String dCode : dstCodes){
 				if (sCode.equalsIgnoreCase(dCode)){
 					continue;
 				}
-				if (!codeList.isEmpty()){
-					codeList += ",";
-				}
-				codeList += "\""+sCode+dCode+"\"";
+				pairIds.add(sCode + dCode);
+			}
+			dstCodes.remove(sCode); //do not request twice
+		}
+		return pairIds;
+	}
+	
+	/////////////////////////////////////////////////////////////////////////////////////////////////
+	/// Helper methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * Prepares the request url by formatting the input appropriately to CSV form: 
+	 * <code>"USDEUR","USDJPY","USDGBP",...</code>
+	 * @param sourceCodes The list source currency codes
+	 * @param destCodes The list of destination codes 
+	 */
+	private String prepareQuery(List<String> sourceCodes, List<String> destCodes){
+		return prepareQuery(preparePairs(sourceCodes, destCodes));
+	}
+	
+	/**
+	 * Prepares the request url by formatting the pairs to CSV form: 
+	 * <code>"USDEUR","USDJPY","USDGBP",...</code>
+	 * @param pairIds The pairs in the form <code>"USDCAD"</code>
+	 */
+	private String prepareQuery(List<String> pairIds){
+		StringBuilder codeList = new StringBuilder();
+		for (String pairId : pairIds) {
+			if (codeList.length() > 0){
+				codeList.append(",");
 			}
-			destCodes.remove(sCode); //do not request twice
+			codeList.append("\"").append(pairId).append("\"");
 		}
 		//insert records & replace spaces (as the api does not handle spaces well)
 		//We could also use URLEncoder.encode(String, Locale);
-		return String.format(Locale.US, VALUE_PREPARED_SELECT, codeList);
+		return String.format(Locale.US, VALUE_PREPARED_SELECT, codeList.toString());
 	}
 }
@@ -31,10 +31,14 @@ import com.ovrhere.android.currencyconverter.model.parsers.AbstractXmlParser;
  * Found at: <code>http://query.yahooapis.com/v1/public/yql?...</code></p>
  * 
  * Note that this will create double values from compact results;
- * i.e. take USD -> CAD rates and manufacture CAD -> USD rates.
+ * i.e. take USD -> CAD rates and manufacture CAD -> USD rates. 
+ * Unless constructed without reverse rates, for base-currency mode.
+ * 
+ * <p>Not thread-safe; confine each parser to a thread &amp; {@link #reset()}
+ * it between parses to reuse it.</p>
  * 
  * @author Jason J.
- * @version 0.3.1-20140929 
+ * @version 0.6.0-20261018 
  * @see YahooApiCurrencyRequest */
 public class YahooApiCurrencyXmlParser extends AbstractXmlParser<ContentValues[]> {
 		/** The tag for debugging purposes. */
@@ -70,20 +74,46 @@ public class YahooApiCurrencyXmlParser extends AbstractXmlParser<ContentValues[]
 	/// End constants
 	////////////////////////////////////////////////////////////////////////////////////////////////
 	
-	/** Initializes parser.
+	/** Whether or not to manufacture the reverse of every rate. */
+	final private boolean mReverseRates;
+	/** The listener to stream rates to or <code>null</code> to return them. */
+	private RateSource.OnRateListener mRateListener = null;
+	
+	/** Initializes parser, manufacturing reverse rates.
 	 * @throws XmlPullParserException if parser or factory fails to be created.*/
 	public YahooApiCurrencyXmlParser() throws XmlPullParserException {
+		this(true);
+	}
+	
+	/** Initializes parser.
+	 * @param reverseRates <code>true</code> to manufacture CAD -> USD from USD -> CAD,
+	 * <code>false</code> to return only the rates given (as in base-currency mode).
+	 * @throws XmlPullParserException if parser or factory fails to be created.*/
+	public YahooApiCurrencyXmlParser(boolean reverseRates) throws XmlPullParserException {
 		super();
+		this.mReverseRates = reverseRates;
 	}
 	
 	
+	/** Streams every rate to the listener as it is parsed, instead of returning 
+	 * them. No reverse rates are made; the listener may make its own.
+	 * @param rateListener The listener or <code>null</code> to return the rates. */
+	public void setOnRateListener(RateSource.OnRateListener rateListener) {
+		this.mRateListener = rateListener;
+	}
+	
+	/** Readies the parser to be reused, as if new; the listener is removed. */
+	public void reset() {
+		mRateListener = null;
+	}
+	
 	/////////////////////////////////////////////////////////////////////////////////////////////////
 	/// Override methods
 	////////////////////////////////////////////////////////////////////////////////////////////////
 	
 	/**
 	 * {@inheritDoc}
-	 * @return The array of {@link ContentValues}. 
+	 * @return The array of {@link ContentValues}; empty if streamed to a listener. 
 	 * @throws XmlPullParserException If the XML does not parse correctly (due to poor form).
 	 */
 	@Override
@@ -119,10 +149,15 @@ public class YahooApiCurrencyXmlParser extends AbstractXmlParser<ContentValues[]
 				CodeRatePair ratePair = parseRateBlock();
 				if (ratePair == null){
 					continue;
+				} else if (mRateListener != null) {
+					mRateListener.onRate(ratePair);
+					continue;
 				}
 				
 				results.add(ratePair.toContentValues());
-				results.add(ratePair.toReverseContentValues());
+				if (mReverseRates) {
+					results.add(ratePair.toReverseContentValues());
+				}
 				
 			} else {
 				skipTag(); //skip all other tags
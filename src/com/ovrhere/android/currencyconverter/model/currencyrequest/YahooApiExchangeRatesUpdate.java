@@ -18,23 +18,50 @@ package com.ovrhere.android.currencyconverter.model.currencyrequest;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.SocketTimeoutException;
+import java.util.concurrent.CancellationException;
 
 import org.xmlpull.v1.XmlPullParserException;
 
 import android.content.ContentResolver;
-import android.content.ContentValues;
 import android.util.Log;
 
-import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.ExchangeRateEntry;
+import com.ovrhere.android.currencyconverter.model.requests.CircuitBreaker;
+import com.ovrhere.android.currencyconverter.model.requests.HttpValidatorCache;
+import com.ovrhere.android.currencyconverter.model.requests.RetryPolicy;
 import com.ovrhere.android.currencyconverter.model.requests.AbstractSimpleHttpRequest.OnRequestEventListener;
 
 /**
  * The currency update with requests, parses, and database update. Use {@link #run()} to
- * run. Will retry {@value #RETRY_LIMIT} times every {@value #RETRY_INTERVAL} milliseconds
- * if not successful on the first attempt.
+ * run. The pairs are requested in concurrent shards, failed shards retried with 
+ * backoff where the failure may be transient; see {@link ShardedRateFetcher}.
+ * 
+ * <p>Rates may be fetched from several sources, hedged or by quorum; 
+ * see {@link #setRateSources(RateAggregator.Mode, RateSource...)}.</p>
+ * 
+ * <p>Updates share a {@link CircuitBreaker}: once several updates in a row have 
+ * failed outright, updates are skipped for a while rather than retried; 
+ * see {@link #isSuppressed()}.</p>
+ * 
+ * <p>In base-currency mode only the rates from the base currency are requested 
+ * and stored; N - 1 rates instead of N * (N - 1). The provider derives the rest.</p>
+ * 
+ * <p>Only the rates that are new or have moved since the last update are 
+ * written; see {@link RateChangeDetector}. They are written as they are parsed,
+ * a chunk at a time, rather than once every rate is in memory; see 
+ * {@link #setChunkSize(int)}.</p>
+ * 
+ * <p>An update in progress may be aborted from another thread with {@link #cancel()}; 
+ * nothing more is written, though chunks already written stay. A cancelled or 
+ * failed update may so leave the stored rates partly updated; it is not 
+ * successful, so the next update is not put off. The validators of its 
+ * requests are discarded, so the rates it dropped are not hidden by a 304 next time.</p>
+ * 
+ * <p>Each update writes through a writer of its own, so a parser still 
+ * finishing off an aborted update cannot write into the next. The request 
+ * threads, and their parsers, are kept between updates; see {@link #shutdown()}.</p>
  * 
  * @author Jason J.
- * @version 0.2.0-20150525
+ * @version 0.11.4-20261018
  */
 public class YahooApiExchangeRatesUpdate implements Runnable,  OnRequestEventListener{
 	/** Class name for debugging purposes. */
@@ -42,25 +69,34 @@ public class YahooApiExchangeRatesUpdate implements Runnable,  OnRequestEventLis
 			.getSimpleName();
 	/** Verbose debug; for when we want all the excessive details. */
 	final static private boolean VERBOSE_DEBUG = false;	
-
-	/** The number of times to retry the connection. */
-	private static final int RETRY_LIMIT = 3;
-	/** The wait time between attempts. */
-	private static final long RETRY_INTERVAL = 1000; //ms
+	
+	/** The breaker shared by every update, as they share a service. */
+	final static private CircuitBreaker sCircuitBreaker = new CircuitBreaker();
 
 	/** Resolver used to insert into the database.  */
 	private final ContentResolver mContentResolver; 
 	/** Used to perform requests in run. */
-	private final YahooApiCurrencyRequest mRequest;
+	private final RateAggregator mFetcher;
 	/** Whether or not to request/parse for json. */
 	private final boolean mUseJson;
+	/** Whether or not to scan json, rather than read it. */
+	private boolean mScanJson = false;
+	/** The api base of the yahoo api or <code>null</code> for the default. */
+	private String mApiBase = null;
+	/** Whether or not to store reverse rates; <code>false</code> in base-currency mode. */
+	private final boolean mReverseRates;
+	/** Used to skip the rates that have not moved. */
+	private final RateChangeDetector mChangeDetector;
+	/** The rows written per bulk insert, as they are parsed. */
+	private int mChunkSize = ChunkedRateWriter.DEFAULT_CHUNK_SIZE;
+	
+	/** The breaker guarding the update. */
+	private CircuitBreaker mCircuitBreaker = sCircuitBreaker;
 	
 	/** The value for if the update was successful. */
 	private boolean mUpdateSuccessful = false;
-	
-	
-	/** the number of attempts thus far. */
-	private int mRetryAttempts = 0;
+	/** Whether the last update was refused by the breaker. */
+	private boolean mSuppressed = false;
 	
 	/**
 	 * Uses request & parses together to update the content provider.
@@ -70,17 +106,217 @@ public class YahooApiExchangeRatesUpdate implements Runnable,  OnRequestEventLis
 	 * to use XML
 	 */
 	public YahooApiExchangeRatesUpdate(ContentResolver resolver, String[] currencyList, boolean useJson) {
+		this(resolver, currencyList, useJson, null);
+	}
+	
+	/**
+	 * Uses request & parses together to update the content provider.
+	 * @param resolver {@link ContentResolver} used to update the database. 
+	 * @param currencyList The list of currents to get exchange rates for. 
+	 * @param useJson <code>true</code> to use json request + parsing, <code>false</code>
+	 * to use XML
+	 * @param baseCurrency The base currency to request rates from, only, or 
+	 * <code>null</code> to request every pair (both ways).
+	 */
+	public YahooApiExchangeRatesUpdate(ContentResolver resolver, String[] currencyList, 
+			boolean useJson, String baseCurrency) {
 		this.mContentResolver = resolver;
-		this.mUseJson = useJson;		
-		this.mRequest = new YahooApiCurrencyRequest(currencyList, currencyList, this);
-		this.mRequest.setJsonFormat(useJson);
+		this.mUseJson = useJson;
+		this.mReverseRates = baseCurrency == null;
+		this.mChangeDetector = new RateChangeDetector(resolver);
+		CurrencyCodes.register(currencyList); //only the configured codes are interned
+		final String[] sourceList = baseCurrency == null ? 
+				currencyList : new String[]{baseCurrency};
+		this.mFetcher = new RateAggregator(new YahooRateSource(useJson), 
+				sourceList, currencyList, mReverseRates);
 	}
 	
-
+	/** Sets the API base url of the yahoo api to request from. Used for testing.
+	 * @param apiBase The base url, defaults to the yahoo api.
+	 */
+	public void setApiBase(String apiBase) {
+		this.mApiBase = apiBase;
+		setRateSource(new YahooRateSource(mUseJson, mScanJson, apiBase));
+	}
+	
+	/** Sets whether json is scanned by a {@link YahooApiCurrencyJsonScanner} or 
+	 * read by a {@link YahooApiCurrencyJsonParser}; the rates are the same. 
+	 * Replaces the rate source with the yahoo api, so call before 
+	 * {@link #setRateSources(RateAggregator.Mode, RateSource...)}.
+	 * @param scanJson <code>true</code> to scan, <code>false</code> to read (default).
+	 */
+	public void setJsonScanner(boolean scanJson) {
+		this.mScanJson = scanJson;
+		setRateSource(new YahooRateSource(mUseJson, scanJson, mApiBase));
+	}
+	
+	/** Sets where rates are fetched from; the yahoo api by default. 
+	 * @param source The source to request from.
+	 */
+	public void setRateSource(RateSource source) {
+		mFetcher.setRateSources(RateAggregator.Mode.HEDGED, source);
+	}
+	
+	/** Sets the sources rates are fetched from, &amp; how they are combined.
+	 * @param mode Whether to take the first source to answer or the median of all.
+	 * @param sources The sources to request from, in order of preference.
+	 * @see RateAggregator
+	 */
+	public void setRateSources(RateAggregator.Mode mode, RateSource... sources) {
+		mFetcher.setRateSources(mode, sources);
+	}
+	
+	/** @param hedgeDelay The time in ms to wait on a source before also requesting
+	 * the next, when hedged. @see RateAggregator#setHedgeDelay(long) */
+	public void setHedgeDelay(long hedgeDelay) {
+		mFetcher.setHedgeDelay(hedgeDelay);
+	}
+	
+	/** @param quorum The sources that must give a rate for it to be written,
+	 * by quorum. @see RateAggregator#setQuorum(int) */
+	public void setQuorum(int quorum) {
+		mFetcher.setQuorum(quorum);
+	}
+	
+	/** Sets the number of pairs per request & the number of concurrent requests.
+	 * @param shardSize The maximum number of pairs per request; at least 1. 
+	 * Defaults to {@value ShardedRateFetcher#DEFAULT_SHARD_SIZE}.
+	 * @param parallelism The maximum number of concurrent requests; at least 1.
+	 * Defaults to {@value ShardedRateFetcher#DEFAULT_PARALLELISM}.
+	 */
+	public void setSharding(int shardSize, int parallelism) {
+		mFetcher.setShardSize(shardSize);
+		mFetcher.setParallelism(parallelism);
+	}
+	
+	/** @param chunkSize The rows written per bulk insert, as they are parsed; 
+	 * at least 1. Defaults to {@value ChunkedRateWriter#DEFAULT_CHUNK_SIZE}. */
+	public void setChunkSize(int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Chunks must have at least 1 row");
+		}
+		this.mChunkSize = chunkSize;
+	}
+	
+	/** @param retryPolicy The policy deciding whether &amp; when failed 
+	 * shards are retried. */
+	public void setRetryPolicy(RetryPolicy retryPolicy) {
+		mFetcher.setRetryPolicy(retryPolicy);
+	}
+	
+	/** @param validatorCache The validators to make requests conditional with,
+	 * or <code>null</code> for none. @see RateAggregator#setValidatorCache(HttpValidatorCache) */
+	public void setValidatorCache(HttpValidatorCache validatorCache) {
+		mFetcher.setValidatorCache(validatorCache);
+	}
+	
+	/** @param circuitBreaker The breaker to guard the update with; 
+	 * one shared by every update by default. */
+	public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+		if (circuitBreaker == null) {
+			throw new NullPointerException("Circuit breaker cannot be null");
+		}
+		this.mCircuitBreaker = circuitBreaker;
+	}
 	
+	/** Fetches every shard, writing the rates as they are parsed.
+	 * Successful only if every shard was answered. Skipped while the breaker is open; 
+	 * an update where every shard failed counts against it. */
 	@Override
 	public void run() {
-		mRequest.run();
+		mUpdateSuccessful = false;
+		mSuppressed = !mCircuitBreaker.allowRequest();
+		if (mSuppressed) {
+			Log.w(LOGTAG, "Update skipped; too many failures in a row");
+			return;
+		}
+		final ChunkedRateWriter writer = newWriter();
+		boolean written = false;
+		boolean abandoned = false;
+		writer.open();
+		try {
+			boolean fetched = false;
+			try {
+				//streamed from a single source; several are combined first
+				writer.write(mFetcher.fetch(writer));
+				fetched = true;
+			} finally {
+				writer.close(fetched);
+			}
+			written = true;
+		} catch (InterruptedException e) {
+			abandoned = true;
+			mCircuitBreaker.onAbandoned();
+			Thread.currentThread().interrupt();
+			return;
+		} catch (CancellationException e) {
+			abandoned = true;
+			mCircuitBreaker.onAbandoned();
+			Log.d(LOGTAG, "Update cancelled");
+			return;
+		} finally {
+			if (!written) {
+				//the rates still buffered were dropped; refetch them in full next time
+				mFetcher.discardValidators();
+				if (!abandoned) {
+					mCircuitBreaker.onFailure(); //the writer threw; still resolve any trial
+				}
+			}
+		}
+		logWrites(writer);
+		final int failedShards = mFetcher.getFailedShardCount();
+		if (failedShards > 0) {
+			Log.w(LOGTAG, failedShards + " shards failed over " + 
+					mFetcher.getStartedCount() + " of " + mFetcher.getSourceCount() + " sources");
+		}
+		if (mFetcher.isFailed()) {
+			mCircuitBreaker.onFailure();
+		} else {
+			mCircuitBreaker.onSuccess(); //the service is answering
+		}
+		if (VERBOSE_DEBUG) {
+			Log.d(LOGTAG, mFetcher.getAttemptCount() + " requests made; " + 
+					mFetcher.getBackoffTime() + "ms backing off");
+			Log.d(LOGTAG, mFetcher.getNotModifiedShardCount() + " shards not modified; " +
+					HttpValidatorCache.getDefault().getBytesSaved() + " bytes saved in total");
+			Log.d(LOGTAG, mFetcher.getEncodedBytes() + " bytes received, " + 
+					mFetcher.getDecodedBytes() + " decoded");
+		}
+		mUpdateSuccessful = mFetcher.isComplete();
+	}
+	
+	/** Cancels the update in progress, from any thread. Its requests are aborted 
+	 * and nothing more is written, though chunks already written stay; 
+	 * it is not successful. */
+	public void cancel() {
+		mFetcher.cancel();
+	}
+	
+	/** Shuts down the threads kept between updates; call once done with the 
+	 * update. A later update starts afresh. */
+	public void shutdown() {
+		mFetcher.shutdown();
+	}
+	
+	/** @return <code>true</code> if the last update was skipped as the 
+	 * breaker was open. */
+	public boolean isSuppressed() {
+		return mSuppressed;
+	}
+	
+	/** @return The requests made by the last update, retries included. */
+	public int getAttemptCount() {
+		return mFetcher.getAttemptCount();
+	}
+	
+	/** @return The time in milliseconds the last update spent backing off. */
+	public long getBackoffTime() {
+		return mFetcher.getBackoffTime();
+	}
+	
+	/** @return <code>true</code> if the last update was cancelled. */
+	public boolean isCancelled() {
+		return mFetcher.isCancelled();
 	}
 	
 	/**
@@ -91,17 +327,40 @@ public class YahooApiExchangeRatesUpdate implements Runnable,  OnRequestEventLis
 		return mUpdateSuccessful;
 	}
 	
+	/** @return The count of stored rates changed by the last update. */
+	public int getChangedCount() {
+		return mChangeDetector.getChangedCount();
+	}
+	
+	/** @return The count of rates the last update skipped as unchanged. */
+	public int getUnchangedCount() {
+		return mChangeDetector.getUnchangedCount();
+	}
+	
+	/** @return The count of rates the last update stored for the first time. */
+	public int getNewCount() {
+		return mChangeDetector.getNewCount();
+	}
+	
 	
 	////////////////////////////////////////////////////////////////////////////////////////////////
 	//// Helper methods.
 	////////////////////////////////////////////////////////////////////////////////////////////////
 	
-	private void retry(){
-		if (mRetryAttempts++ < RETRY_LIMIT) {
-			try {
-				Thread.sleep(RETRY_INTERVAL);
-			} catch (InterruptedException e) {}
-			run();
+	/** @return A writer for a single update, of the set chunk size. */
+	private ChunkedRateWriter newWriter() {
+		return new ChunkedRateWriter(mContentResolver, mChangeDetector, mReverseRates, 
+				mChunkSize);
+	}
+	
+	/** Logs what the writer wrote, if verbose. */
+	private void logWrites(ChunkedRateWriter writer) {
+		if (VERBOSE_DEBUG) {
+			Log.d(LOGTAG, writer.getInsertedCount() + " records inserted in " + 
+					writer.getInsertCount() + " chunks; " + 
+					mChangeDetector.getChangedCount() + " changed, " + 
+					mChangeDetector.getUnchangedCount() + " unchanged, " + 
+					mChangeDetector.getNewCount() + " new");
 		}
 	}
 	
@@ -109,12 +368,46 @@ public class YahooApiExchangeRatesUpdate implements Runnable,  OnRequestEventLis
 	//// Event Listener
 	////////////////////////////////////////////////////////////////////////////////////////////////
 	
+	/** Parses & writes a single response, as given by a {@link YahooApiCurrencyRequest}. 
+	 * Rates parsed before any failure are still written. */
 	@Override
 	public void onStart(InputStream in) {
-		ContentValues[] values = new ContentValues[]{};
-		if (mUseJson) {
+		final ChunkedRateWriter writer = newWriter();
+		writer.open();
+		try {
+			parse(in, writer);
+		} finally {
+			writer.close(true);
+		}
+		logWrites(writer);
+	}
+	
+	/** Parses the response, streaming its rates to the writer, with the 
+	 * parser of this thread. */
+	private void parse(InputStream in, ChunkedRateWriter writer) {
+		if (mUseJson && mScanJson) {
 			try {
-				values = new YahooApiCurrencyJsonParser().parseJsonStream(in);
+				YahooApiCurrencyJsonScanner parser = YahooApiParsers.jsonScanner(mReverseRates);
+				parser.setOnRateListener(writer);
+				try {
+					parser.parseJsonStream(in);
+				} finally {
+					parser.reset(); //drops the writer
+				}
+			} catch (IOException badParsing) {
+				if (VERBOSE_DEBUG){
+					badParsing.printStackTrace();
+				}
+			}
+		} else if (mUseJson) {
+			try {
+				YahooApiCurrencyJsonParser parser = YahooApiParsers.jsonParser(mReverseRates);
+				parser.setOnRateListener(writer);
+				try {
+					parser.parseJsonStream(in);
+				} finally {
+					parser.reset(); //drops the writer
+				}
 			} catch (IOException badParsing) {
 				if (VERBOSE_DEBUG){
 					badParsing.printStackTrace();
@@ -122,7 +415,13 @@ public class YahooApiExchangeRatesUpdate implements Runnable,  OnRequestEventLis
 			}
 		} else {
 			try {
-				values = new YahooApiCurrencyXmlParser().parseXmlStream(in);
+				YahooApiCurrencyXmlParser parser = YahooApiParsers.xmlParser(mReverseRates);
+				parser.setOnRateListener(writer);
+				try {
+					parser.parseXmlStream(in);
+				} finally {
+					parser.reset(); //drops the writer
+				}
 			} catch (XmlPullParserException parsingIssue) {
 				if (VERBOSE_DEBUG){
 					parsingIssue.printStackTrace();
@@ -133,11 +432,6 @@ public class YahooApiExchangeRatesUpdate implements Runnable,  OnRequestEventLis
 				}
 			}
 		}
-		long insertCount = mContentResolver.bulkInsert(ExchangeRateEntry.CONTENT_URI, values);		
-		//we're done!
-		if (VERBOSE_DEBUG) {
-			Log.d(LOGTAG, insertCount + " records inserted");
-		}
 	}
 	
 	@Override
@@ -150,10 +444,8 @@ public class YahooApiExchangeRatesUpdate implements Runnable,  OnRequestEventLis
 	public void onException(Exception e) {
 		if (e instanceof SocketTimeoutException) {
 			Log.w(LOGTAG, "Connection timed out");
-			retry();
 		} else if (e instanceof IOException) {
 			Log.w(LOGTAG, "IO issue: Could not connect to server:" + e);
-			retry();
 		} else {
 			Log.e(LOGTAG, "Unexpected error during update: " + e);
 		}
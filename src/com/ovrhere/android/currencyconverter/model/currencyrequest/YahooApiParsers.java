@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015 Jason J. (iamovrhere)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.ovrhere.android.currencyconverter.model.currencyrequest;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * Holds a parser of each kind per thread, made on first use &amp; reused 
+ * after, so the cost of building parsers (pull parsers, buffers) is paid once
+ * per thread rather than once per response. Every parser given is
+ * {@link YahooApiCurrencyXmlParser#reset() reset} &amp; only ever given to its own thread, 
+ * so must not be kept beyond the parse nor used by a listener to parse again;
+ * reset it again once done, so its listener is not held until the next parse.
+ *
+ * @author Jason J.
+ * @version 0.1.0-20261018
+ */
+final class YahooApiParsers {
+	/** The parsers of the calling thread. */
+	final static private ThreadLocal<YahooApiParsers> sParsers = 
+			new ThreadLocal<YahooApiParsers>() {
+				@Override
+				protected YahooApiParsers initialValue() {
+					return new YahooApiParsers();
+				}
+			};
+	
+	/////////////////////////////////////////////////////////////////////////////////////////////////
+	/// End constants
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** The parsers by reverse rates; index 1 if reversing. */
+	final private YahooApiCurrencyXmlParser[] mXmlParsers = new YahooApiCurrencyXmlParser[2];
+	/** The parsers by reverse rates; index 1 if reversing. */
+	final private YahooApiCurrencyJsonParser[] mJsonParsers = new YahooApiCurrencyJsonParser[2];
+	/** The scanners by reverse rates; index 1 if reversing. */
+	final private YahooApiCurrencyJsonScanner[] mJsonScanners = new YahooApiCurrencyJsonScanner[2];
+	
+	private YahooApiParsers() {}
+	
+	/**
+	 * @param reverseRates As {@link YahooApiCurrencyXmlParser#YahooApiCurrencyXmlParser(boolean)}
+	 * @return The reset xml parser of the calling thread.
+	 * @throws XmlPullParserException If the parser fails to be created.
+	 */
+	static YahooApiCurrencyXmlParser xmlParser(boolean reverseRates) 
+			throws XmlPullParserException {
+		final YahooApiCurrencyXmlParser[] parsers = sParsers.get().mXmlParsers;
+		final int index = indexOf(reverseRates);
+		if (parsers[index] == null) {
+			parsers[index] = new YahooApiCurrencyXmlParser(reverseRates);
+		} else {
+			parsers[index].reset();
+		}
+		return parsers[index];
+	}
+	
+	/**
+	 * @param reverseRates As {@link YahooApiCurrencyJsonParser#YahooApiCurrencyJsonParser(boolean)}
+	 * @return The reset json parser of the calling thread.
+	 */
+	static YahooApiCurrencyJsonParser jsonParser(boolean reverseRates) {
+		final YahooApiCurrencyJsonParser[] parsers = sParsers.get().mJsonParsers;
+		final int index = indexOf(reverseRates);
+		if (parsers[index] == null) {
+			parsers[index] = new YahooApiCurrencyJsonParser(reverseRates);
+		} else {
+			parsers[index].reset();
+		}
+		return parsers[index];
+	}
+	
+	/**
+	 * @param reverseRates As {@link YahooApiCurrencyJsonScanner#YahooApiCurrencyJsonScanner(boolean)}
+	 * @return The reset json scanner of the calling thread.
+	 */
+	static YahooApiCurrencyJsonScanner jsonScanner(boolean reverseRates) {
+		final YahooApiCurrencyJsonScanner[] scanners = sParsers.get().mJsonScanners;
+		final int index = indexOf(reverseRates);
+		if (scanners[index] == null) {
+			scanners[index] = new YahooApiCurrencyJsonScanner(reverseRates);
+		} else {
+			scanners[index].reset();
+		}
+		return scanners[index];
+	}
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Helper methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	private static int indexOf(boolean reverseRates) {
+		return reverseRates ? 1 : 0;
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015 Jason J. (iamovrhere)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.ovrhere.android.currencyconverter.model.currencyrequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+import com.ovrhere.android.currencyconverter.model.requests.AbstractSimpleHttpRequest;
+
+/**
+ * The {@link RateSource} of the yahoo finance api, in json or xml; 
+ * see {@link YahooApiCurrencyRequest}. Json may be read by a JsonReader,
+ * {@link YahooApiCurrencyJsonParser}, or scanned, {@link YahooApiCurrencyJsonScanner};
+ * the rates are the same. Parsers are reused per thread, see {@link YahooApiParsers}.
+ * Requests are pipelined, so responses are parsed (&amp; their rates handled)
+ * while they download.
+ *
+ * @author Jason J.
+ * @version 0.4.0-20261018
+ */
+public class YahooRateSource implements RateSource {
+	/** Whether or not to request/parse for json. */
+	final private boolean mUseJson;
+	/** Whether or not to scan json, rather than read it. */
+	final private boolean mScanJson;
+	/** The api base or <code>null</code> for the request's default. */
+	final private String mApiBase;
+	
+	/** @param useJson <code>true</code> to use json request + parsing, 
+	 * <code>false</code> to use XML */
+	public YahooRateSource(boolean useJson) {
+		this(useJson, null);
+	}
+	
+	/**
+	 * @param useJson <code>true</code> to use json request + parsing, 
+	 * <code>false</code> to use XML
+	 * @param apiBase The API base url to request from or <code>null</code> 
+	 * for the yahoo api. Used for testing.
+	 */
+	public YahooRateSource(boolean useJson, String apiBase) {
+		this(useJson, false, apiBase);
+	}
+	
+	/**
+	 * @param useJson <code>true</code> to use json request + parsing, 
+	 * <code>false</code> to use XML
+	 * @param scanJson <code>true</code> to parse json with a 
+	 * {@link YahooApiCurrencyJsonScanner}, <code>false</code> with a
+	 * {@link YahooApiCurrencyJsonParser}. Ignored for XML.
+	 * @param apiBase The API base url to request from or <code>null</code> 
+	 * for the yahoo api. Used for testing.
+	 */
+	public YahooRateSource(boolean useJson, boolean scanJson, String apiBase) {
+		this.mUseJson = useJson;
+		this.mScanJson = scanJson;
+		this.mApiBase = apiBase;
+	}
+	
+	@Override
+	public AbstractSimpleHttpRequest newRequest(List<String> pairIds) {
+		YahooApiCurrencyRequest request = new YahooApiCurrencyRequest(pairIds, null);
+		request.setJsonFormat(mUseJson);
+		request.setPipelined(true);
+		if (mApiBase != null) {
+			request.setApiBase(mApiBase);
+		}
+		return request;
+	}
+	
+	@Override
+	public void parse(InputStream in, OnRateListener listener) 
+			throws IOException, XmlPullParserException {
+		if (mUseJson && mScanJson) {
+			YahooApiCurrencyJsonScanner parser = YahooApiParsers.jsonScanner(false);
+			parser.setOnRateListener(listener);
+			try {
+				parser.parseJsonStream(in);
+			} finally {
+				parser.reset(); //drops the listener
+			}
+		} else if (mUseJson) {
+			YahooApiCurrencyJsonParser parser = YahooApiParsers.jsonParser(false);
+			parser.setOnRateListener(listener);
+			try {
+				parser.parseJsonStream(in);
+			} finally {
+				parser.reset(); //drops the listener
+			}
+		} else {
+			YahooApiCurrencyXmlParser parser = YahooApiParsers.xmlParser(false);
+			parser.setOnRateListener(listener);
+			try {
+				parser.parseXmlStream(in);
+			} finally {
+				parser.reset(); //drops the listener
+			}
+		}
+	}
+}
@@ -25,7 +25,7 @@ import android.provider.BaseColumns;
 /**
  * The currency data contract for the currency database.
  * @author Jason J.
- * @version 1.0.0-20150527
+ * @version 1.2.0-20261018
  */
 public class CurrencyConverterContract {
 	
@@ -38,7 +38,9 @@ public class CurrencyConverterContract {
     final static public String PATH_EXCHANGE = "exchange_rate";
     /** Uri path for display orders. */
     final static public String PATH_ORDER = "display_order";
-	
+    /** Uri path for exchange rate history. */
+    final static public String PATH_HISTORY = "exchange_rate_history";
+
     /** Table for list of supported currencies and their display order.
      * @version 1.0.0-20150527 */
 	static public class DisplayOrderEntry implements BaseColumns  {
@@ -57,7 +59,8 @@ public class CurrencyConverterContract {
         final public static String TABLE_NAME = "display_order";
         //note: BaseColumns supplies the _ID column.
 		
-		/** String. Unique key. The currency code in ISO 4217 form; 3 letters. */
+		/** String. Unique key. The currency code in ISO 4217 form; 3 letters. 
+		 * Codes are never replaced, as their _ID keys {@link RatePairEntry}. */
 		final static public String COLUMN_CURRENCY_CODE = "currency_code";
 		/** Int. The optional order in which to list currencies.
 		 * Values that are -1 are to be ignored.   */
@@ -79,7 +82,9 @@ public class CurrencyConverterContract {
     
 	
 	/** Table for list of currency exchanges: SOURCE -> DEST.  
-	 * @version 1.0.0-20150521
+	 * <p>This is a read-only, verbose view of {@link RatePairEntry}; writes are 
+	 * made through the provider, which resolves the codes to their ids.</p>
+	 * @version 1.1.0-20261018
 	 * */
 	static public class ExchangeRateEntry implements BaseColumns {	
 		/** Defines content uri base for map entries. */
@@ -92,9 +97,10 @@ public class CurrencyConverterContract {
         final static public String CONTENT_ITEM_TYPE =
                 ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_EXCHANGE;
         
-        /** The table name of map entries. */
+        /** The view name of map entries. */
         final public static String TABLE_NAME = "exchange_rate";
         //note: BaseColumns supplies the _ID column.
+        //The _ID is derived from the pair: (source id << 32) | dest id
 		
 		/** String. The source currency code in ISO 4217 form; 3 letters.  */
 		final static public String COLUMN_SOURCE_CURRENCY_CODE = "source_code";
@@ -103,11 +109,25 @@ public class CurrencyConverterContract {
 		final static public String COLUMN_DEST_CURRENCY_CODE = "dest_code";
 		/**  Double. The rate from SOURCE to the DEST currency in question. */
 		final static public String COLUMN_EXCHANGE_RATE = "exchange_rate";
+		/** Long. The source's {@link DisplayOrderEntry#_ID}. See {@link RatePairEntry}. */
+		final static public String COLUMN_SOURCE_ID = RatePairEntry.COLUMN_SOURCE_ID;
+		/** Long. The destination's {@link DisplayOrderEntry#_ID}. See {@link RatePairEntry}. */
+		final static public String COLUMN_DEST_ID = RatePairEntry.COLUMN_DEST_ID;
 
 		/////////////////////////////////////////////////////////////////////////////////////////////////
 		/// Utility methods
 		////////////////////////////////////////////////////////////////////////////////////////////////
 		
+		/**
+		 * Builds the {@link #_ID} of a given pair.
+		 * @param sourceId The source's {@link DisplayOrderEntry#_ID}
+		 * @param destId The destination's {@link DisplayOrderEntry#_ID}
+		 * @return The id of the exchange rate entry. 
+		 */
+		public static long buildExchangeRateId(long sourceId, long destId) {
+			return (sourceId << 32) | destId;
+		}
+		
 		/**
          * Builds Uri for a specific exchange rate entry.
          * @param id The exchange db _ID.
@@ -167,5 +187,118 @@ public class CurrencyConverterContract {
 		
 	}
 	
-	
+	/** Compact storage table for currency exchanges: SOURCE id -> DEST id. 
+	 * Not exposed by the provider; see {@link ExchangeRateEntry} for the verbose form. 
+	 * @version 1.0.0-20261018
+	 * */
+	static public class RatePairEntry {
+		/** The table name of the compact pairs. Keyed by (source id, dest id); no _ID. */
+		final public static String TABLE_NAME = "exchange_rate_pair";
+		
+		/** Long. Foreign key ({@link DisplayOrderEntry#_ID}). The source currency.  */
+		final static public String COLUMN_SOURCE_ID = "src_id";
+		/** Long. Foreign key ({@link DisplayOrderEntry#_ID}). The destination currency.  */
+		final static public String COLUMN_DEST_ID = "dst_id";
+		/**  Double. The rate from SOURCE to the DEST currency in question. */
+		final static public String COLUMN_RATE = "rate";
+	}
+
+	/** Append-only history of currency exchanges: SOURCE id -> DEST id over time.
+	 * Rows are queried by code, as {@link #buildRateHistoryUri(String, String, long, long)},
+	 * returning the {@link ExchangeRateEntry} code & rate columns alongside the
+	 * {@link #COLUMN_TIMESTAMP} & {@link #COLUMN_RESOLUTION}.
+	 * <p>Old points are downsampled into hourly then daily buckets;
+	 * see {@link RateHistoryRetention}.</p>
+	 * @version 1.0.0-20261018
+	 * */
+	static public class RateHistoryEntry implements BaseColumns {
+		/** Defines content uri base for history entries. */
+        final static public Uri CONTENT_URI =
+        		BASE_CONTENT_URI.buildUpon().appendPath(PATH_HISTORY).build();
+        /** Defines map type for [dir]. */
+        final static public String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_HISTORY;
+
+		/** The table name of history entries. */
+		final public static String TABLE_NAME = "rate_history";
+		//note: BaseColumns supplies the _ID column.
+
+		/** Query parameter. Long. The inclusive start time, in ms since epoch. */
+		final static public String PARAM_FROM = "from";
+		/** Query parameter. Long. The inclusive end time, in ms since epoch. */
+		final static public String PARAM_TO = "to";
+
+		/** Long. Foreign key ({@link DisplayOrderEntry#_ID}). The source currency.  */
+		final static public String COLUMN_SOURCE_ID = RatePairEntry.COLUMN_SOURCE_ID;
+		/** Long. Foreign key ({@link DisplayOrderEntry#_ID}). The destination currency.  */
+		final static public String COLUMN_DEST_ID = RatePairEntry.COLUMN_DEST_ID;
+		/**  Double. The rate from SOURCE to the DEST currency at the time. */
+		final static public String COLUMN_RATE = RatePairEntry.COLUMN_RATE;
+		/** Long. The time of the rate in ms since epoch.
+		 * For buckets, the start of the bucket. */
+		final static public String COLUMN_TIMESTAMP = "timestamp";
+		/** Int. One of {@link #RESOLUTION_RAW}, {@link #RESOLUTION_HOURLY}
+		 * or {@link #RESOLUTION_DAILY}. */
+		final static public String COLUMN_RESOLUTION = "resolution";
+
+		/** Resolution of a rate as it was written. */
+		final static public int RESOLUTION_RAW = 0;
+		/** Resolution of the average rate over an hour. */
+		final static public int RESOLUTION_HOURLY = 1;
+		/** Resolution of the average rate over a day. */
+		final static public int RESOLUTION_DAILY = 2;
+
+		/////////////////////////////////////////////////////////////////////////////////////////////////
+		/// Utility methods
+		////////////////////////////////////////////////////////////////////////////////////////////////
+
+		/**
+         * Builds Uri for the full history of a source -> destination currency.
+         * @param sourceCode The starting currency.
+         * @param destCode The destination currency being converted to.
+         * @return The structured Uri for the history entries.
+         */
+        public static Uri buildRateHistoryUri(String sourceCode, String destCode) {
+        	return CONTENT_URI.buildUpon()
+        				.appendPath(sourceCode.toLowerCase(Locale.US))
+        				.appendPath(destCode.toLowerCase(Locale.US))
+        				.build();
+        }
+
+        /**
+         * Builds Uri for the history of a source -> destination currency over a period.
+         * @param sourceCode The starting currency.
+         * @param destCode The destination currency being converted to.
+         * @param from The inclusive start time in ms since epoch.
+         * @param to The inclusive end time in ms since epoch.
+         * @return The structured Uri for the history entries.
+         */
+        public static Uri buildRateHistoryUri(String sourceCode, String destCode,
+        		long from, long to) {
+        	return buildRateHistoryUri(sourceCode, destCode).buildUpon()
+        				.appendQueryParameter(PARAM_FROM, String.valueOf(from))
+        				.appendQueryParameter(PARAM_TO, String.valueOf(to))
+        				.build();
+        }
+
+        /**
+         * Parses the given time parameter from the uri.
+         * @param uri The uri to dissect.
+         * @param param Either {@link #PARAM_FROM} or {@link #PARAM_TO}
+         * @param defaultValue The value to return when absent or malformed.
+         * @return The time in ms since epoch or the default.
+         */
+        public static long getTimeFromUri(Uri uri, String param, long defaultValue) {
+        	final String value = uri.getQueryParameter(param);
+        	if (value == null) {
+        		return defaultValue;
+        	}
+        	try {
+        		return Long.parseLong(value);
+        	} catch (NumberFormatException e) {
+        		return defaultValue;
+        	}
+        }
+	}
+
 }
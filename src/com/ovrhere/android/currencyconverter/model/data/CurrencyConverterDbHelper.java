@@ -15,18 +15,44 @@
  */
 package com.ovrhere.android.currencyconverter.model.data;
 
+import java.util.Locale;
+
+import android.annotation.TargetApi;
 import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 
 import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.DisplayOrderEntry;
 import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.ExchangeRateEntry;
+import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.RateHistoryEntry;
+import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.RatePairEntry;
 
 
 /**
  * Creates the database for holding exchange rates between currencies.
+ * Currency codes are expected to be uppercase, as normalized by
+ * {@link CurrencyConverterProvider}, so that lookups are exact matches served
+ * by the covering indexes below.
+ * <p>Rates are stored compactly in {@link RatePairEntry} as 
+ * (source id, dest id, rate), keyed to {@link DisplayOrderEntry#_ID}; 
+ * {@link ExchangeRateEntry} is a view restoring the verbose codes. 
+ * Where SQLite supports it (3.8.2+, i.e. Lollipop) the pairs are 
+ * <code>WITHOUT ROWID</code>, storing each row once in its primary key.</p>
+ * <p>Every rate written is also appended to {@link RateHistoryEntry}, which is 
+ * kept bounded by {@link RateHistoryRetention}.</p>
+ * <p>Connections use write-ahead logging where available (API 11+), so 
+ * readers are not blocked by a refresh's write transaction, with 
+ * <code>synchronous=NORMAL</code> and a {@link #CACHE_SIZE_KIB} page cache.
+ * On API 16+ this is configured in {@link #onConfigure(SQLiteDatabase)}; 
+ * on older versions, in {@link #onOpen(SQLiteDatabase)}. Either runs once, 
+ * on the primary connection; the pool's read connections are not reachable 
+ * through the framework, so only the writer is tuned &amp; queries served 
+ * by read connections keep SQLite's default cache.</p>
  * @author Jason J.
- * @version 1.0.0-20150527
+ * @version 1.4.2-20261018
  */
 public class CurrencyConverterDbHelper extends SQLiteOpenHelper {
 	
@@ -49,22 +75,68 @@ public class CurrencyConverterDbHelper extends SQLiteOpenHelper {
 
 	//for version 1 see: CurrencyConvertDatabaseOpenHelper
     // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2; 
+    // 3: Added covering indexes for exact match lookups.
+    // 4: Compact integer-keyed rate pairs, exchange_rate became a view.
+    // 5: Added the append-only rate history.
+    // 6: Indexed rate pairs by destination, for the display order delete trigger.
+    private static final int DATABASE_VERSION = 6; 
 
     protected static final String DATABASE_NAME = "currencyconverter.db";
     
+    /** Covering index for display orders by currency code. */
+    protected static final String INDEX_DISPLAY_ORDER_CODE = 
+    		DisplayOrderEntry.TABLE_NAME + "_code_idx";
+    /** Index for rate pairs by destination; the primary key serves the source. */
+    protected static final String INDEX_RATE_PAIR_DEST = 
+    		RatePairEntry.TABLE_NAME + "_dest_idx";
+    /** Trigger removing the pairs of a deleted display order. */
+    protected static final String TRIGGER_DISPLAY_ORDER_DELETE = 
+    		DisplayOrderEntry.TABLE_NAME + "_delete_pairs";
+    /** Index for history by pair over time. */
+    protected static final String INDEX_RATE_HISTORY_PAIR_TIME = 
+    		RateHistoryEntry.TABLE_NAME + "_pair_time_idx";
+    
+    /** The page cache size of the connection, in KiB. Holds every rate pair & index. */
+    protected static final int CACHE_SIZE_KIB = 2048;
+    
+    /** The first SQLite version to support <code>WITHOUT ROWID</code>. */
+    private static final int[] SQLITE_WITHOUT_ROWID_VERSION = {3, 8, 2};
+    
     
     private Context mContext = null;
     
     public CurrencyConverterDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);          
         this.mContext = context;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+        	enableWriteAheadLogging();
+        }
+    }
+    
+    @Override
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    public void onConfigure(SQLiteDatabase sqLiteDb) {
+    	super.onConfigure(sqLiteDb);
+    	configureConnection(sqLiteDb);
+    }
+    
+    @Override
+    public void onOpen(SQLiteDatabase sqLiteDb) {
+    	super.onOpen(sqLiteDb);
+    	if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+    		//no onConfigure; configure here, outside of any transaction. 
+    		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB && !sqLiteDb.isReadOnly()) {
+    			enableWriteAheadLogging(sqLiteDb);
+    		}
+    		configureConnection(sqLiteDb);
+    	}
     }
 	
 	@Override
 	public void onCreate(SQLiteDatabase sqLiteDb) {
-		createExchangeRatesDB(sqLiteDb);
 		createCurrencyOrderDB(sqLiteDb);
+		createExchangeRatesDB(sqLiteDb);
+		createRateHistoryDB(sqLiteDb);
 		mContext.deleteDatabase(OLD_DATABASE.DATABASE_NAME);		
 	}
 
@@ -72,14 +144,83 @@ public class CurrencyConverterDbHelper extends SQLiteOpenHelper {
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
         // Database is only a cache for online data, so its upgrade policy is
         // to simply to discard the data and start over. 
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + ExchangeRateEntry.TABLE_NAME);
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + DisplayOrderEntry.TABLE_NAME);
+    	// Before version 4 the exchange rates were a table, now a view.
+    	dropIfExists(sqLiteDatabase, ExchangeRateEntry.TABLE_NAME);
+    	dropIfExists(sqLiteDatabase, RateHistoryEntry.TABLE_NAME);
+    	dropIfExists(sqLiteDatabase, RatePairEntry.TABLE_NAME);
+    	dropIfExists(sqLiteDatabase, DisplayOrderEntry.TABLE_NAME);
         onCreate(sqLiteDatabase);
     }
+    
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    //// Utility methods
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    
+    /** Returns whether the given database supports <code>WITHOUT ROWID</code> tables.
+     * @param sqLiteDatabase The database to check
+     * @return <code>true</code> if SQLite is 3.8.2 or greater.
+     */
+    static boolean supportsWithoutRowId(SQLiteDatabase sqLiteDatabase) {
+    	final String version = 
+    			DatabaseUtils.stringForQuery(sqLiteDatabase, "SELECT sqlite_version()", null);
+    	final String[] parts = version.split("\\.");
+    	for (int index = 0; index < SQLITE_WITHOUT_ROWID_VERSION.length; index++) {
+    		int part = 0;
+    		if (index < parts.length) {
+    			try {
+    				part = Integer.parseInt(parts[index]);
+    			} catch (NumberFormatException e) {} //treat as 0
+    		}
+    		if (part != SQLITE_WITHOUT_ROWID_VERSION[index]) {
+    			return part > SQLITE_WITHOUT_ROWID_VERSION[index];
+    		}
+    	}
+    	return true;
+    }
+
+    /** Tunes the given connection: <code>synchronous=NORMAL</code>, which in WAL
+     * only syncs at checkpoints (the database is a cache of online data),
+     * and a page cache of {@link #CACHE_SIZE_KIB}. Pragmas run on the primary
+     * connection only, so the cache size applies to the writer, not to WAL readers. 
+     * @param sqLiteDatabase The connection to configure.
+     */
+    static void configureConnection(SQLiteDatabase sqLiteDatabase) {
+    	sqLiteDatabase.execSQL("PRAGMA synchronous = NORMAL");
+    	//in pages rather than negative KiB, which needs SQLite 3.7.10+ 
+    	final long pages = Math.max(1, CACHE_SIZE_KIB * 1024L / sqLiteDatabase.getPageSize());
+    	sqLiteDatabase.execSQL("PRAGMA cache_size = " + pages);
+    }
 
     ////////////////////////////////////////////////////////////////////////////////////////////////
     //// helper methods
     ////////////////////////////////////////////////////////////////////////////////////////////////
+    
+    /** Enables WAL for every database opened by this helper. */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void enableWriteAheadLogging() {
+    	setWriteAheadLoggingEnabled(true);
+    }
+    
+    /** Enables WAL on the open database. Must not be in a transaction. */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void enableWriteAheadLogging(SQLiteDatabase sqLiteDatabase) {
+    	sqLiteDatabase.enableWriteAheadLogging();
+    }
+    
+    /** Drops the given table or view, if it exists. */
+    private static void dropIfExists(SQLiteDatabase sqLiteDatabase, String name) {
+    	Cursor cursor = sqLiteDatabase.query("sqlite_master", new String[]{"type"}, 
+    			"name = ? AND type IN ('table', 'view')", new String[]{name}, 
+    			null, null, null);
+    	try {
+    		if (cursor.moveToFirst()) {
+    			final String type = cursor.getString(0).toUpperCase(Locale.US);
+    			sqLiteDatabase.execSQL("DROP " + type + " IF EXISTS " + name);
+    		}
+    	} finally {
+    		cursor.close();
+    	}
+    }
 
     /** Creates the {@link DisplayOrderEntry} database table. */
     private void createCurrencyOrderDB(SQLiteDatabase sqLiteDatabase) {
@@ -89,32 +230,108 @@ public class CurrencyConverterDbHelper extends SQLiteOpenHelper {
 				DisplayOrderEntry.COLUMN_CURRENCY_CODE + " TEXT NOT NULL, " +
 				DisplayOrderEntry.COLUMN_DEF_DISPLAY_ORDER + " INTEGER NOT NULL, " +
                 
+				//codes are updated in place, never replaced, as their ids key the pairs.
 				" UNIQUE (" +
 					DisplayOrderEntry.COLUMN_CURRENCY_CODE +  
-				") ON CONFLICT REPLACE );"; 
+				") );"; 
 
         sqLiteDatabase.execSQL(SQL_CREATE_ORDER_TABLE);
+        
+        //covers lookups by code, returning the id & order without a table lookup.
+        sqLiteDatabase.execSQL("CREATE INDEX " + INDEX_DISPLAY_ORDER_CODE + 
+        		" ON " + DisplayOrderEntry.TABLE_NAME + " (" + 
+        			DisplayOrderEntry.COLUMN_CURRENCY_CODE + ", " +
+        			DisplayOrderEntry.COLUMN_DEF_DISPLAY_ORDER + 
+        		");");
     }
     
-    /** Creates the {@link ExchangeRateEntry} database table. */
+    /** Creates the {@link RatePairEntry} table and the {@link ExchangeRateEntry} view. */
     private void createExchangeRatesDB(SQLiteDatabase sqLiteDatabase) {
-        final String SQL_CREATE_EXCHANGE_TABLE = "CREATE TABLE " + ExchangeRateEntry.TABLE_NAME + " (" +
-				ExchangeRateEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
-
-                ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE + " TEXT NOT NULL, " +
-                ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE + " TEXT NOT NULL, " +
-				ExchangeRateEntry.COLUMN_EXCHANGE_RATE + " REAL NOT NULL, " +
+        final String SQL_CREATE_PAIR_TABLE = "CREATE TABLE " + RatePairEntry.TABLE_NAME + " (" +
+        		RatePairEntry.COLUMN_SOURCE_ID + " INTEGER NOT NULL, " +
+        		RatePairEntry.COLUMN_DEST_ID + " INTEGER NOT NULL, " +
+        		RatePairEntry.COLUMN_RATE + " REAL NOT NULL, " +
                 
-				//we enforce that each destination has an order. 
-				" FOREIGN KEY (" + ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE + ") REFERENCES " +
-				DisplayOrderEntry.TABLE_NAME + " (" + DisplayOrderEntry.COLUMN_CURRENCY_CODE + "), " +
+				//we enforce that each currency has an order.
+				" FOREIGN KEY (" + RatePairEntry.COLUMN_SOURCE_ID + ") REFERENCES " +
+				DisplayOrderEntry.TABLE_NAME + " (" + DisplayOrderEntry._ID + "), " +
+				" FOREIGN KEY (" + RatePairEntry.COLUMN_DEST_ID + ") REFERENCES " +
+				DisplayOrderEntry.TABLE_NAME + " (" + DisplayOrderEntry._ID + "), " +
 				
-				" UNIQUE (" +
-					ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE + ", " +
-					ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE + 
-				") ON CONFLICT REPLACE);"; //we don't need old records
+				" PRIMARY KEY (" +
+					RatePairEntry.COLUMN_SOURCE_ID + ", " +
+					RatePairEntry.COLUMN_DEST_ID + 
+				") ON CONFLICT REPLACE)" + //we don't need old records
+				(supportsWithoutRowId(sqLiteDatabase) ? " WITHOUT ROWID;" : ";"); 
 
-        sqLiteDatabase.execSQL(SQL_CREATE_EXCHANGE_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_PAIR_TABLE);
+        
+        //lets the trigger below search, rather than scan, for pairs to a deleted order.
+        sqLiteDatabase.execSQL("CREATE INDEX " + INDEX_RATE_PAIR_DEST + 
+        		" ON " + RatePairEntry.TABLE_NAME + " (" + 
+        			RatePairEntry.COLUMN_DEST_ID + 
+        		");");
+        
+        //foreign keys are not enforced by default, so cascade deletes ourselves.
+        sqLiteDatabase.execSQL("CREATE TRIGGER " + TRIGGER_DISPLAY_ORDER_DELETE + 
+        		" AFTER DELETE ON " + DisplayOrderEntry.TABLE_NAME + " BEGIN " +
+        		" DELETE FROM " + RatePairEntry.TABLE_NAME + " WHERE " + 
+        			RatePairEntry.COLUMN_SOURCE_ID + " = OLD." + DisplayOrderEntry._ID + " OR " + 
+        			RatePairEntry.COLUMN_DEST_ID + " = OLD." + DisplayOrderEntry._ID + "; " +
+        		" DELETE FROM " + RateHistoryEntry.TABLE_NAME + " WHERE " + 
+        			RateHistoryEntry.COLUMN_SOURCE_ID + " = OLD." + DisplayOrderEntry._ID + " OR " + 
+        			RateHistoryEntry.COLUMN_DEST_ID + " = OLD." + DisplayOrderEntry._ID + "; " +
+        		"END;");
+        
+        final String SOURCE = "source";
+        final String DEST = "dest";
+        final String SQL_CREATE_EXCHANGE_VIEW = "CREATE VIEW " + ExchangeRateEntry.TABLE_NAME + " AS " +
+        		"SELECT " +
+        			"(" + RatePairEntry.COLUMN_SOURCE_ID + " << 32) | " + 
+        				RatePairEntry.COLUMN_DEST_ID + " AS " + ExchangeRateEntry._ID + ", " +
+        			SOURCE + "." + DisplayOrderEntry.COLUMN_CURRENCY_CODE + 
+        				" AS " + ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE + ", " +
+        			DEST + "." + DisplayOrderEntry.COLUMN_CURRENCY_CODE + 
+    					" AS " + ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE + ", " +
+    				RatePairEntry.COLUMN_RATE + " AS " + ExchangeRateEntry.COLUMN_EXCHANGE_RATE + ", " +
+    				RatePairEntry.COLUMN_SOURCE_ID + " AS " + ExchangeRateEntry.COLUMN_SOURCE_ID + ", " +
+    				RatePairEntry.COLUMN_DEST_ID + " AS " + ExchangeRateEntry.COLUMN_DEST_ID + 
+    			" FROM " + RatePairEntry.TABLE_NAME + 
+    			" INNER JOIN " + DisplayOrderEntry.TABLE_NAME + " AS " + SOURCE + " ON " +
+    				SOURCE + "." + DisplayOrderEntry._ID + " = " + RatePairEntry.COLUMN_SOURCE_ID +
+    			" INNER JOIN " + DisplayOrderEntry.TABLE_NAME + " AS " + DEST + " ON " +
+    				DEST + "." + DisplayOrderEntry._ID + " = " + RatePairEntry.COLUMN_DEST_ID + ";";
+        
+        sqLiteDatabase.execSQL(SQL_CREATE_EXCHANGE_VIEW);
+    }
+    
+    /** Creates the {@link RateHistoryEntry} table. 
+     * Must be created before the first display order is deleted (see trigger). */
+    private void createRateHistoryDB(SQLiteDatabase sqLiteDatabase) {
+    	final String SQL_CREATE_HISTORY_TABLE = "CREATE TABLE " + RateHistoryEntry.TABLE_NAME + " (" +
+    			RateHistoryEntry._ID + " INTEGER PRIMARY KEY," +
+    			
+    			RateHistoryEntry.COLUMN_SOURCE_ID + " INTEGER NOT NULL, " +
+    			RateHistoryEntry.COLUMN_DEST_ID + " INTEGER NOT NULL, " +
+    			RateHistoryEntry.COLUMN_RATE + " REAL NOT NULL, " +
+    			RateHistoryEntry.COLUMN_TIMESTAMP + " INTEGER NOT NULL, " +
+    			RateHistoryEntry.COLUMN_RESOLUTION + " INTEGER NOT NULL DEFAULT " + 
+    				RateHistoryEntry.RESOLUTION_RAW + ", " +
+    			
+				" FOREIGN KEY (" + RateHistoryEntry.COLUMN_SOURCE_ID + ") REFERENCES " +
+				DisplayOrderEntry.TABLE_NAME + " (" + DisplayOrderEntry._ID + "), " +
+				" FOREIGN KEY (" + RateHistoryEntry.COLUMN_DEST_ID + ") REFERENCES " +
+				DisplayOrderEntry.TABLE_NAME + " (" + DisplayOrderEntry._ID + ") );";
+    	
+    	sqLiteDatabase.execSQL(SQL_CREATE_HISTORY_TABLE);
+    	
+    	//serves both range queries per pair & retention scans.
+    	sqLiteDatabase.execSQL("CREATE INDEX " + INDEX_RATE_HISTORY_PAIR_TIME + 
+        		" ON " + RateHistoryEntry.TABLE_NAME + " (" + 
+        			RateHistoryEntry.COLUMN_SOURCE_ID + ", " +
+        			RateHistoryEntry.COLUMN_DEST_ID + ", " +
+        			RateHistoryEntry.COLUMN_TIMESTAMP + 
+        		");");
     }
 
 }
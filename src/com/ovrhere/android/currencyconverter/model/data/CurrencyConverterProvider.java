@@ -15,17 +15,28 @@
  */
 package com.ovrhere.android.currencyconverter.model.data;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
+import android.database.sqlite.SQLiteDoneException;
 import android.net.Uri;
 
+import com.ovrhere.android.currencyconverter.R;
+
 /**
  * <p>Provides ContentResolver a means of querying and updating the database for 
  * currency exchange rates.
@@ -36,10 +47,46 @@ import android.net.Uri;
             /&gt;</code> to the manifest.</p>
  * 
  * Provider will only return precisely what is put in, that is to say the data store
- * is NOT compact (requires both A -> B and B -> A). 
+ * does not derive rates (requires both A -> B and B -> A). 
+ * 
+ * <p>Rates are stored compactly as (source id, dest id, rate) in 
+ * {@link CurrencyConverterContract.RatePairEntry}, keyed to the display order ids, 
+ * while every query keeps returning the verbose codes of 
+ * {@link CurrencyConverterContract.ExchangeRateEntry}. Codes without a display
+ * order are registered on write with an order of -1, which are not listed 
+ * by {@link #EXCHANGE_RATES_WITH_SOURCE} nor {@link #EXCHANGE_RATE_FROM_SOURCE_TO_DEST}.</p>
+ * 
+ * <p>Queries on {@link #EXCHANGE_RATES_WITH_SOURCE} and 
+ * {@link #EXCHANGE_RATE_FROM_SOURCE_TO_DEST} are answered from an in-memory 
+ * {@link RateMatrixCache} which is invalidated on every write.</p>
+ * 
+ * <p>All currency codes are normalized to uppercase on the way in, both in written
+ * values and in uris, so that lookups are exact, indexed matches.</p>
+ * 
+ * <p>Bulk inserts of exchange rates are upserted through precompiled 
+ * statements, updating rates in place rather than replacing rows.</p>
+ * 
+ * <p>When <code>R.string.currConv_config_baseCurrency</code> is set, the provider
+ * is in base-currency mode: only the N rates of the base currency need be stored and
+ * every other source -&gt; dest rate is derived on read by the {@link RateMatrixCache}.
+ * Derived rates are only returned by {@link #EXCHANGE_RATES_WITH_SOURCE} and 
+ * {@link #EXCHANGE_RATE_FROM_SOURCE_TO_DEST}; queries the cache cannot answer 
+ * get them unioned with the stored rates in SQL.</p>
+ * 
+ * <p>Every rate written is appended to {@link CurrencyConverterContract.RateHistoryEntry}
+ * within the same transaction, queried by {@link #RATE_HISTORY_FROM_SOURCE_TO_DEST}.
+ * The history is downsampled by {@link RateHistoryRetention} after writes, 
+ * at most once per {@link RateHistoryRetention#RUN_INTERVAL}.</p>
+ * 
+ * <p>Writes of rates notify only the uris of the pairs they touch, 
+ * <code>exchange_rate/SRC/DST</code>, escalating to the source's or the table's
+ * uri when many are touched; see {@link RateChangeSet}. Updates & deletes
+ * resolve the pairs they select before writing. Bulk inserts & 
+ * {@link #applyBatch(ArrayList)} notify each uri once, after committing,
+ * through a {@link NotificationDebouncer}.</p>
  *
  * @author Jason J.
- * @version 0.2.0-20150527
+ * @version 0.8.2-20261018
  */
 public class CurrencyConverterProvider extends ContentProvider {
 
@@ -49,10 +96,8 @@ public class CurrencyConverterProvider extends ContentProvider {
     
     final public static int DISPLAY_ORDER = 200;
     
-    //TODO enforce uppercase
-    //TODO allow for compact contents of the database, while having verbose responses
-    // for both EXCHANGE_RATES_WITH_SOURCE and EXCHANGE_RATE_FROM_SOURCE_TO_DEST.
-
+    final public static int RATE_HISTORY_FROM_SOURCE_TO_DEST = 300;
+    
     ////////////////////////////////////////////////////////////////////////////////////////////////
     //// End Public Constants
     ////////////////////////////////////////////////////////////////////////////////////////////////
@@ -61,40 +106,181 @@ public class CurrencyConverterProvider extends ContentProvider {
     /** Builder, very helpful for repetitive queries. */
     final private static SQLiteQueryBuilder RATE_BY_SOURCE_BUILDER =
             new SQLiteQueryBuilder();
+    /** Builder for history, resolving the ids to codes. */
+    final private static SQLiteQueryBuilder RATE_HISTORY_BUILDER =
+    		new SQLiteQueryBuilder();
+    
+    /** Joins the rates to the display order of their destination, if ordered. */
+    final private static String RATE_JOIN_DISPLAY_ORDER = 
+    		" INNER JOIN " + CurrencyConverterContract.DisplayOrderEntry.TABLE_NAME +
+    		" ON " + CurrencyConverterContract.ExchangeRateEntry.TABLE_NAME +
+    		"." + CurrencyConverterContract.ExchangeRateEntry.COLUMN_DEST_ID +
+    		" = " + CurrencyConverterContract.DisplayOrderEntry.TABLE_NAME +
+    		"." + CurrencyConverterContract.DisplayOrderEntry._ID + 
+    		" AND " + CurrencyConverterContract.DisplayOrderEntry.TABLE_NAME +
+    		"." + CurrencyConverterContract.DisplayOrderEntry.COLUMN_DEF_DISPLAY_ORDER +
+    		" >= 0 ";
+    
+    /** Table aliases of the history's display orders. */
+    final private static String HISTORY_SOURCE = "source";
+    final private static String HISTORY_DEST = "dest";
 
     static {
         //If we were to JOIN, we could do it here.
+    	//the view resolves the verbose codes; we join on the integer keys.
     	RATE_BY_SOURCE_BUILDER.setTables(
-                CurrencyConverterContract.ExchangeRateEntry.TABLE_NAME + " INNER JOIN " +
-                		CurrencyConverterContract.DisplayOrderEntry.TABLE_NAME +
-                		" ON " + CurrencyConverterContract.ExchangeRateEntry.TABLE_NAME +
-                		"." + CurrencyConverterContract.ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE +
-                		" = " + CurrencyConverterContract.DisplayOrderEntry.TABLE_NAME +
-                		"." + CurrencyConverterContract.DisplayOrderEntry.COLUMN_CURRENCY_CODE
-        );
+                CurrencyConverterContract.ExchangeRateEntry.TABLE_NAME + RATE_JOIN_DISPLAY_ORDER);
     	
+    	RATE_HISTORY_BUILDER.setTables(
+    			CurrencyConverterContract.RateHistoryEntry.TABLE_NAME + 
+    			" INNER JOIN " + CurrencyConverterContract.DisplayOrderEntry.TABLE_NAME + 
+    				" AS " + HISTORY_SOURCE + " ON " + 
+    				HISTORY_SOURCE + "." + CurrencyConverterContract.DisplayOrderEntry._ID + " = " +
+    				CurrencyConverterContract.RateHistoryEntry.TABLE_NAME + "." + 
+    				CurrencyConverterContract.RateHistoryEntry.COLUMN_SOURCE_ID +
+    			" INNER JOIN " + CurrencyConverterContract.DisplayOrderEntry.TABLE_NAME + 
+    				" AS " + HISTORY_DEST + " ON " + 
+    				HISTORY_DEST + "." + CurrencyConverterContract.DisplayOrderEntry._ID + " = " +
+    				CurrencyConverterContract.RateHistoryEntry.TABLE_NAME + "." + 
+    				CurrencyConverterContract.RateHistoryEntry.COLUMN_DEST_ID
+    	);
+    	//history is returned in the verbose form of the exchange rates.
+    	HashMap<String, String> historyColumns = new HashMap<String, String>();
+    	putHistoryColumn(historyColumns, CurrencyConverterContract.RateHistoryEntry._ID,
+    			CurrencyConverterContract.RateHistoryEntry.TABLE_NAME + "." + 
+    			CurrencyConverterContract.RateHistoryEntry._ID);
+    	putHistoryColumn(historyColumns, 
+    			CurrencyConverterContract.ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE,
+    			HISTORY_SOURCE + "." + CurrencyConverterContract.DisplayOrderEntry.COLUMN_CURRENCY_CODE);
+    	putHistoryColumn(historyColumns, 
+    			CurrencyConverterContract.ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE,
+    			HISTORY_DEST + "." + CurrencyConverterContract.DisplayOrderEntry.COLUMN_CURRENCY_CODE);
+    	putHistoryColumn(historyColumns, 
+    			CurrencyConverterContract.ExchangeRateEntry.COLUMN_EXCHANGE_RATE,
+    			CurrencyConverterContract.RateHistoryEntry.TABLE_NAME + "." + 
+    			CurrencyConverterContract.RateHistoryEntry.COLUMN_RATE);
+    	putHistoryColumn(historyColumns, 
+    			CurrencyConverterContract.RateHistoryEntry.COLUMN_TIMESTAMP,
+    			CurrencyConverterContract.RateHistoryEntry.TABLE_NAME + "." + 
+    			CurrencyConverterContract.RateHistoryEntry.COLUMN_TIMESTAMP);
+    	putHistoryColumn(historyColumns, 
+    			CurrencyConverterContract.RateHistoryEntry.COLUMN_RESOLUTION,
+    			CurrencyConverterContract.RateHistoryEntry.TABLE_NAME + "." + 
+    			CurrencyConverterContract.RateHistoryEntry.COLUMN_RESOLUTION);
+    	RATE_HISTORY_BUILDER.setProjectionMap(historyColumns);
     }
     
 
-    /** Prepared statement. source_code = ?  (case insensitive) */
+    /** Prepared statement. source_code = ?  (exact; codes are normalized to uppercase) */
     final private static String SELECTION_SOURCE_CURRENCY =
-            CurrencyConverterContract.ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE + " LIKE ? ";
+            CurrencyConverterContract.ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE + " = ? ";
 
-    /** Prepared statement. source_code = ? AND dest_code = ?  (case insensitive) */
+    /** Prepared statement. source_code = ? AND dest_code = ?  
+     * (exact; codes are normalized to uppercase) */
     final private static String SELECTION_SOURCE_TO_DEST =
-    		CurrencyConverterContract.ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE + " LIKE ?  AND " +
-			CurrencyConverterContract.ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE + " LIKE ? ";
+    		CurrencyConverterContract.ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE + " = ?  AND " +
+			CurrencyConverterContract.ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE + " = ? ";
 
+    /** Prepared statement. source code = ? AND dest code = ? AND timestamp >= ? AND timestamp <= ?
+     * (exact; codes are normalized to uppercase) */
+    final private static String SELECTION_HISTORY_SOURCE_TO_DEST_BETWEEN =
+    		HISTORY_SOURCE + "." + CurrencyConverterContract.DisplayOrderEntry.COLUMN_CURRENCY_CODE + 
+    			" = ? AND " +
+    		HISTORY_DEST + "." + CurrencyConverterContract.DisplayOrderEntry.COLUMN_CURRENCY_CODE + 
+    			" = ? AND " +
+    		CurrencyConverterContract.RateHistoryEntry.TABLE_NAME + "." + 
+    			CurrencyConverterContract.RateHistoryEntry.COLUMN_TIMESTAMP + " >= ? AND " +
+    		CurrencyConverterContract.RateHistoryEntry.TABLE_NAME + "." + 
+    			CurrencyConverterContract.RateHistoryEntry.COLUMN_TIMESTAMP + " <= ? ";
+    
+    /** The default order of history: oldest first. */
+    final private static String SORT_HISTORY_DEFAULT = 
+    		CurrencyConverterContract.RateHistoryEntry.COLUMN_TIMESTAMP + " ASC";
 
+    /** The pair's {@link CurrencyConverterContract.ExchangeRateEntry#_ID}, 
+     * as an expression of the {@link CurrencyConverterContract.RatePairEntry} columns. */
+    final private static String PAIR_ID = 
+    		"((" + CurrencyConverterContract.RatePairEntry.COLUMN_SOURCE_ID + " << 32) | " + 
+    		CurrencyConverterContract.RatePairEntry.COLUMN_DEST_ID + ")";
+    
+    /** Prepared statement. Pairs within the exchange rates matching the given selection. */
+    final private static String SELECTION_PAIRS_WHERE = 
+    		PAIR_ID + " IN (SELECT " + CurrencyConverterContract.ExchangeRateEntry._ID + 
+    		" FROM " + CurrencyConverterContract.ExchangeRateEntry.TABLE_NAME + " WHERE ";
+    
+    /** Compiled statement. Finds the _ID of: currency_code = ? */
+    final private static String SQL_SELECT_CODE_ID =
+    		"SELECT " + CurrencyConverterContract.DisplayOrderEntry._ID + 
+    		" FROM " + CurrencyConverterContract.DisplayOrderEntry.TABLE_NAME + 
+    		" WHERE " + CurrencyConverterContract.DisplayOrderEntry.COLUMN_CURRENCY_CODE + " = ? ";
+    
+    /** Compiled statement. Registers (currency_code) without a display order. */
+    final private static String SQL_INSERT_CODE =
+    		"INSERT INTO " + CurrencyConverterContract.DisplayOrderEntry.TABLE_NAME + " (" +
+    		CurrencyConverterContract.DisplayOrderEntry.COLUMN_CURRENCY_CODE + ", " +
+    		CurrencyConverterContract.DisplayOrderEntry.COLUMN_DEF_DISPLAY_ORDER + 
+    		") VALUES (?, -1)";
+    
+    /** Compiled statement. Upserts (src_id, dst_id, rate); the pair is the primary key. */
+    final private static String SQL_UPSERT_RATE_PAIR =
+    		"INSERT OR REPLACE INTO " + CurrencyConverterContract.RatePairEntry.TABLE_NAME + " (" +
+    		CurrencyConverterContract.RatePairEntry.COLUMN_SOURCE_ID + ", " +
+    		CurrencyConverterContract.RatePairEntry.COLUMN_DEST_ID + ", " +
+    		CurrencyConverterContract.RatePairEntry.COLUMN_RATE + 
+    		") VALUES (?, ?, ?)";
+    
+    /** Compiled statement. Appends raw (src_id, dst_id, rate, timestamp) to the history. */
+    final private static String SQL_INSERT_HISTORY =
+    		"INSERT INTO " + CurrencyConverterContract.RateHistoryEntry.TABLE_NAME + " (" +
+    		CurrencyConverterContract.RateHistoryEntry.COLUMN_SOURCE_ID + ", " +
+    		CurrencyConverterContract.RateHistoryEntry.COLUMN_DEST_ID + ", " +
+    		CurrencyConverterContract.RateHistoryEntry.COLUMN_RATE + ", " +
+    		CurrencyConverterContract.RateHistoryEntry.COLUMN_TIMESTAMP + 
+    		") VALUES (?, ?, ?, ?)";
+    
+    /** Prepared statement. Appends the current rates of the pairs matching the 
+     * where clause to the history; the first argument is the timestamp. */
+    final private static String SQL_INSERT_HISTORY_FROM_PAIRS =
+    		"INSERT INTO " + CurrencyConverterContract.RateHistoryEntry.TABLE_NAME + " (" +
+    		CurrencyConverterContract.RateHistoryEntry.COLUMN_SOURCE_ID + ", " +
+    		CurrencyConverterContract.RateHistoryEntry.COLUMN_DEST_ID + ", " +
+    		CurrencyConverterContract.RateHistoryEntry.COLUMN_RATE + ", " +
+    		CurrencyConverterContract.RateHistoryEntry.COLUMN_TIMESTAMP + 
+    		") SELECT " + 
+    		CurrencyConverterContract.RatePairEntry.COLUMN_SOURCE_ID + ", " +
+    		CurrencyConverterContract.RatePairEntry.COLUMN_DEST_ID + ", " +
+    		CurrencyConverterContract.RatePairEntry.COLUMN_RATE + ", ? " +
+    		" FROM " + CurrencyConverterContract.RatePairEntry.TABLE_NAME;
+    
+    /** The columns, of either table, holding currency codes. */
+    final private static String[] CODE_COLUMNS = new String[]{
+    	CurrencyConverterContract.ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE,
+    	CurrencyConverterContract.ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE,
+    	CurrencyConverterContract.DisplayOrderEntry.COLUMN_CURRENCY_CODE
+    };
+    
     ////////////////////////////////////////////////////////////////////////////////////////////////
     //// End Constants
     ////////////////////////////////////////////////////////////////////////////////////////////////
 
     private CurrencyConverterDbHelper mDbHelper = null;
+    /** Coalesces the notifications of batches. */
+    private NotificationDebouncer mNotifier = null;
+    /** The in-memory copy of the rates, answering the source (and dest) queries. */
+    final private RateMatrixCache mRateCache = new RateMatrixCache();
+    /** Whether or not to answer queries from {@link #mRateCache}. */
+    volatile private boolean mRateCacheEnabled = true;
+    /** Whether or not to bulk insert rates through {@link #bulkRateUpsert(Uri, ContentValues[])}. */
+    volatile private boolean mRateUpsertEnabled = true;
+    /** The last time, in ms, the history retention was run. */
+    volatile private long mLastRetentionRun = 0;
 
     @Override
     public boolean onCreate() {
         this.mDbHelper = new CurrencyConverterDbHelper(getContext());
+        this.mNotifier = new NotificationDebouncer(getContext().getContentResolver());
+        final String baseCurrency = getContext().getString(R.string.currConv_config_baseCurrency);
+        mRateCache.setBaseCurrency(baseCurrency.trim().isEmpty() ? null : baseCurrency);
         return true;
     }
 
@@ -112,6 +298,9 @@ public class CurrencyConverterProvider extends ContentProvider {
                 
             case DISPLAY_ORDER:
             	return CurrencyConverterContract.DisplayOrderEntry.CONTENT_TYPE;
+            	
+            case RATE_HISTORY_FROM_SOURCE_TO_DEST:
+            	return CurrencyConverterContract.RateHistoryEntry.CONTENT_TYPE;
                             	
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
@@ -141,6 +330,10 @@ public class CurrencyConverterProvider extends ContentProvider {
                          projection, selection, selectionArgs, sortOrder);
                  break;
                  
+            case RATE_HISTORY_FROM_SOURCE_TO_DEST:
+            	result = getHistoryFromSourceToDest(uri, projection, sortOrder);
+            	break;
+                 
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -153,24 +346,42 @@ public class CurrencyConverterProvider extends ContentProvider {
     public Uri insert(Uri uri, ContentValues values) throws SQLException {
         final SQLiteDatabase wDb = mDbHelper.getWritableDatabase();
         Uri resultUri  = null;
+        RateChangeSet changes = null;
+        values = normalizeCodes(values);
 
         switch (URI_MATCHER.match(uri)) {
             case EXCHANGE_RATES: {
-                final String table = CurrencyConverterContract.ExchangeRateEntry.TABLE_NAME;
-                
-                long id = wDb.insert(table, null, values);
+            	long id = -1;
+            	wDb.beginTransaction();
+            	try {
+            		id = insertRatePair(wDb, values, System.currentTimeMillis());
+            		wDb.setTransactionSuccessful();
+            	} finally {
+            		wDb.endTransaction();
+            	}
                 if ( id >= 0 ) {
                     resultUri = CurrencyConverterContract.ExchangeRateEntry.buildExchangeRateUri(id);
                 } else {
                     throw new SQLException("Failed to insert row into " + uri);
                 }
+                changes = newRateChangeSet();
+                changes.add(
+                		values.getAsString(CurrencyConverterContract.ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE), 
+                		values.getAsString(CurrencyConverterContract.ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE));
+                notifyHistoryChange();
+                runRetentionIfDue();
                 break;
             }
             
             case DISPLAY_ORDER: {
-                final String table = CurrencyConverterContract.DisplayOrderEntry.TABLE_NAME;
-                
-                long id = wDb.insert(table, null, values);
+                long id = -1;
+                wDb.beginTransaction();
+            	try {
+            		id = upsertDisplayOrder(wDb, values);
+            		wDb.setTransactionSuccessful();
+            	} finally {
+            		wDb.endTransaction();
+            	}
                 if ( id >= 0 ) {
                     resultUri = CurrencyConverterContract.DisplayOrderEntry.buildDisplayOrderUri(id);
                 } else {
@@ -181,11 +392,17 @@ public class CurrencyConverterProvider extends ContentProvider {
                 
             case EXCHANGE_RATE_FROM_SOURCE_TO_DEST:
             case EXCHANGE_RATES_WITH_SOURCE:
+            case RATE_HISTORY_FROM_SOURCE_TO_DEST:
                 //not supported
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
+        mRateCache.invalidate();
+        if (changes != null) {
+        	changes.notifyChange(mNotifier);
+        } else {
+        	mNotifier.notifyChange(uri);
+        }
         
         return resultUri;
     }
@@ -194,12 +411,17 @@ public class CurrencyConverterProvider extends ContentProvider {
     @Override
     public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
         int updateCount = 0;
+        RateChangeSet changes = null;
+        values = normalizeCodes(values);
 
         switch (URI_MATCHER.match(uri)) {
             case EXCHANGE_RATES: {
-            	updateCount = updateTransaction(
-            			CurrencyConverterContract.ExchangeRateEntry.TABLE_NAME, 
-            			values, selection, selectionArgs);
+            	changes = newRateChangeSet();
+            	updateCount = updateRatePairs(values, selection, selectionArgs, changes);
+                if (updateCount != 0 && values.containsKey(
+                		CurrencyConverterContract.ExchangeRateEntry.COLUMN_EXCHANGE_RATE)) {
+                	notifyHistoryChange();
+                }
                 break;
             }
                 
@@ -211,13 +433,19 @@ public class CurrencyConverterProvider extends ContentProvider {
             
             case EXCHANGE_RATE_FROM_SOURCE_TO_DEST:
             case EXCHANGE_RATES_WITH_SOURCE:
+            case RATE_HISTORY_FROM_SOURCE_TO_DEST:
                 //unsupported updates
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         
         if (updateCount != 0) { //do not notify if nothing happens
-            getContext().getContentResolver().notifyChange(uri, null);
+            mRateCache.invalidate();
+            if (changes != null) {
+            	changes.notifyChange(mNotifier);
+            } else {
+            	mNotifier.notifyChange(uri);
+            }
         }
         
         return updateCount;
@@ -228,15 +456,25 @@ public class CurrencyConverterProvider extends ContentProvider {
     public int delete(Uri uri, String selection, String[] selectionArgs) {
         final SQLiteDatabase wDb = mDbHelper.getWritableDatabase();
         int deleteCount = 0;
+        RateChangeSet changes = null;
 
         if (selection == null){
             selection = "1"; //delete all rows.
         }
         
-        switch (URI_MATCHER.match(uri)) {
+        final int match = URI_MATCHER.match(uri);
+        switch (match) {
         	case EXCHANGE_RATES:
-                deleteCount = wDb.delete(CurrencyConverterContract.ExchangeRateEntry.TABLE_NAME,
-                                selection, selectionArgs);
+        		changes = newRateChangeSet();
+        		wDb.beginTransaction();
+        		try {
+        			addSelectedPairs(wDb, selection, selectionArgs, changes);
+        			deleteCount = wDb.delete(CurrencyConverterContract.RatePairEntry.TABLE_NAME,
+        					SELECTION_PAIRS_WHERE + selection + ")", selectionArgs);
+        			wDb.setTransactionSuccessful();
+        		} finally {
+        			wDb.endTransaction();
+        		}
                 break;
                 
         	case DISPLAY_ORDER:
@@ -246,13 +484,21 @@ public class CurrencyConverterProvider extends ContentProvider {
         		
             case EXCHANGE_RATE_FROM_SOURCE_TO_DEST:
             case EXCHANGE_RATES_WITH_SOURCE:
+            case RATE_HISTORY_FROM_SOURCE_TO_DEST:
                 //unsupported deletes
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         
         if (deleteCount != 0) { //do not notify if nothing happens.
-            getContext().getContentResolver().notifyChange(uri, null);
+            mRateCache.invalidate();
+            if (changes != null) {
+            	changes.notifyChange(mNotifier);
+            } else if (match == DISPLAY_ORDER) {
+            	notifyDisplayOrderDelete(uri);
+            } else {
+            	mNotifier.notifyChange(uri);
+            }
         }
         
         return deleteCount;
@@ -265,13 +511,22 @@ public class CurrencyConverterProvider extends ContentProvider {
         final int match = URI_MATCHER.match(uri);
         
         switch (match) {
-        	case EXCHANGE_RATES:
-        		return bulkTransactionInsert(
-        				CurrencyConverterContract.ExchangeRateEntry.TABLE_NAME, uri, values);
-        		
-        	case DISPLAY_ORDER:
-        		return bulkTransactionInsert(
-        				CurrencyConverterContract.DisplayOrderEntry.TABLE_NAME, uri, values);
+        	case EXCHANGE_RATES: 
+        	case DISPLAY_ORDER: {
+        		int count = 0;
+        		boolean successful = false;
+        		mNotifier.beginBatch();
+        		try {
+        			count = match == EXCHANGE_RATES && mRateUpsertEnabled ? 
+        					bulkRateUpsert(values) : 
+        					bulkTransactionInsert(match, uri, values);
+        			successful = true;
+        		} finally {
+        			mNotifier.endBatch(successful);
+        		}
+        		runRetentionIfDue();
+        		return count;
+        	}
              
         	case EXCHANGE_RATE_FROM_SOURCE_TO_DEST:
             case EXCHANGE_RATES_WITH_SOURCE:
@@ -283,6 +538,62 @@ public class CurrencyConverterProvider extends ContentProvider {
 
 	
 
+    /**
+     * Applies the operations in a single transaction, notifying each changed
+     * uri once after committing. 
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+    		throws OperationApplicationException {
+    	final SQLiteDatabase wDb = mDbHelper.getWritableDatabase();
+    	ContentProviderResult[] results = null;
+    	boolean successful = false;
+    	mNotifier.beginBatch();
+    	wDb.beginTransaction();
+    	try {
+    		results = super.applyBatch(operations);
+    		wDb.setTransactionSuccessful();
+    		successful = true;
+    	} finally {
+    		wDb.endTransaction();
+    		mRateCache.invalidate(); //again, now that the writes are visible
+    		mNotifier.endBatch(successful);
+    	}
+    	runRetentionIfDue();
+    	return results;
+    }
+
+    /**
+     * Enables or disables answering queries from the in-memory rate cache.
+     * Used for testing & benchmarking; enabled by default.
+     * @param enabled <code>true</code> to use the cache, <code>false</code> to
+     * always query the database.
+     */
+    void setRateCacheEnabled(boolean enabled) {
+    	mRateCache.invalidate();
+    	this.mRateCacheEnabled = enabled;
+    }
+
+    /**
+     * Sets the base currency through which missing rates are derived.
+     * Used for testing; defaults to <code>R.string.currConv_config_baseCurrency</code>.
+     * @param baseCode The base currency or <code>null</code> to only return stored rates.
+     */
+    void setBaseCurrency(String baseCode) {
+    	mRateCache.setBaseCurrency(baseCode);
+    }
+
+    /**
+     * Enables or disables the compiled upsert path of bulk rate inserts.
+     * Used for testing & benchmarking; enabled by default.
+     * @param enabled <code>true</code> to upsert, <code>false</code> to 
+     * insert row by row via {@link SQLiteDatabase#insert(String, String, ContentValues)}
+     * resolving the codes with a query each.
+     */
+    void setRateUpsertEnabled(boolean enabled) {
+    	this.mRateUpsertEnabled = enabled;
+    }
+
     /*  Used for in testing framework to run smoothly. See:
      * http://developer.android.com/reference/android/content/ContentProvider.html#shutdown() */
     @Override
@@ -298,32 +609,236 @@ public class CurrencyConverterProvider extends ContentProvider {
 
     /**
      * Bulk inserts given values in a transaction block and notifies the 
-     * {@link ContentResolver} via the uri, that the work is complete. 
-     * @param table
+     * {@link ContentResolver} via the uri (or the rates' source uris), 
+     * that the work is complete. 
+     * @param match Either {@link #EXCHANGE_RATES} or {@link #DISPLAY_ORDER}
      * @param uri
      * @param values
      * @return The count of records inserted.
      */
-    private int bulkTransactionInsert(String table, Uri uri, ContentValues[] values) {
+    private int bulkTransactionInsert(int match, Uri uri, ContentValues[] values) {
 		final SQLiteDatabase wDb = mDbHelper.getWritableDatabase();
+		final long timestamp = System.currentTimeMillis();
+		final RateChangeSet changes = newRateChangeSet();
 		wDb.beginTransaction();
 		int insertCount = 0;
 		try {
 		        for (ContentValues value : values) {
-		        	long id = wDb.insert(table, null, value);
+		        	value = normalizeCodes(value);
+		        	long id = match == EXCHANGE_RATES ? 
+		        			insertRatePair(wDb, value, timestamp) :
+		        			upsertDisplayOrder(wDb, value);
 		            
 		            if (id != -1) {
 		                insertCount++;
+		                if (match == EXCHANGE_RATES) {
+		                	changes.add(
+		                			value.getAsString(CurrencyConverterContract
+		                					.ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE), 
+		                			value.getAsString(CurrencyConverterContract
+		                					.ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE));
+		                }
 		            }
 		        }
 		        wDb.setTransactionSuccessful();
 		} finally {
 		    wDb.endTransaction();
+		    mRateCache.invalidate();
+		}
+		if (match == EXCHANGE_RATES) {
+			changes.notifyChange(mNotifier);
+			notifyHistoryChange();
+		} else {
+			mNotifier.notifyChange(uri);
 		}
-		getContext().getContentResolver().notifyChange(uri, null);
 		return insertCount;
 	}
     
+    /**
+     * Bulk upserts exchange rates in a transaction block, reusing compiled 
+     * statements for all rows and resolving each code to its id once. 
+     * Existing (source, dest) pairs are updated in place, keeping their _ID;
+     * new pairs are inserted. Notifies the {@link ContentResolver} via the
+     * uris of the pairs once the work is complete.
+     * 
+     * Each rate is appended to the history by a further compiled statement, 
+     * in the same transaction.
+     * 
+     * Rows missing any column are skipped.
+     * @param values
+     * @return The count of records updated or inserted.
+     */
+    private int bulkRateUpsert(ContentValues[] values) {
+    	final SQLiteDatabase wDb = mDbHelper.getWritableDatabase();
+    	int upsertCount = 0;
+    	wDb.beginTransaction();
+    	final CodeIdResolver resolver = new CodeIdResolver(wDb);
+    	final SQLiteStatement upsert = wDb.compileStatement(SQL_UPSERT_RATE_PAIR);
+    	final SQLiteStatement history = wDb.compileStatement(SQL_INSERT_HISTORY);
+    	final long timestamp = System.currentTimeMillis();
+    	final RateChangeSet changes = newRateChangeSet();
+    	try {
+    		for (ContentValues value : values) {
+    			final String source = value.getAsString(
+    					CurrencyConverterContract.ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE);
+    			final String dest = value.getAsString(
+    					CurrencyConverterContract.ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE);
+    			final Double rate = value.getAsDouble(
+    					CurrencyConverterContract.ExchangeRateEntry.COLUMN_EXCHANGE_RATE);
+    			
+    			if (source == null || dest == null || rate == null) {
+    				continue; //as would the NOT NULL constraints
+    			}
+    			
+    			final String sourceCode = toCurrencyCode(source);
+    			final long sourceId = resolver.getId(sourceCode);
+    			final String destCode = toCurrencyCode(dest);
+    			final long destId = resolver.getId(destCode);
+    			upsert.bindLong(1, sourceId);
+    			upsert.bindLong(2, destId);
+    			upsert.bindDouble(3, rate);
+    			if (upsert.executeInsert() != -1) {
+    				upsertCount++;
+    				history.bindLong(1, sourceId);
+    				history.bindLong(2, destId);
+    				history.bindDouble(3, rate);
+    				history.bindLong(4, timestamp);
+    				history.executeInsert();
+    				changes.add(sourceCode, destCode);
+    			}
+    		}
+    		wDb.setTransactionSuccessful();
+    	} finally {
+    		resolver.close();
+    		upsert.close();
+    		history.close();
+    		wDb.endTransaction();
+    		mRateCache.invalidate();
+    	}
+    	changes.notifyChange(mNotifier);
+    	notifyHistoryChange();
+    	return upsertCount;
+    }
+    
+    /**
+     * Inserts (or replaces) a single exchange rate, given in its verbose form,
+     * and appends it to the history. Must be called within a transaction.
+     * @param wDb The writable database
+     * @param values The normalized values of the exchange rate.
+     * @param timestamp The time of the rate in ms since epoch.
+     * @return The {@link CurrencyConverterContract.ExchangeRateEntry#_ID} or -1 on failure.
+     */
+    private static long insertRatePair(SQLiteDatabase wDb, ContentValues values, 
+    		long timestamp) {
+    	final String source = values.getAsString(
+				CurrencyConverterContract.ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE);
+		final String dest = values.getAsString(
+				CurrencyConverterContract.ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE);
+		final Double rate = values.getAsDouble(
+				CurrencyConverterContract.ExchangeRateEntry.COLUMN_EXCHANGE_RATE);
+		if (source == null || dest == null || rate == null) {
+			return -1;
+		}
+		final long sourceId = getCodeId(wDb, source);
+		final long destId = getCodeId(wDb, dest);
+		
+		ContentValues pair = new ContentValues();
+		pair.put(CurrencyConverterContract.RatePairEntry.COLUMN_SOURCE_ID, sourceId);
+		pair.put(CurrencyConverterContract.RatePairEntry.COLUMN_DEST_ID, destId);
+		pair.put(CurrencyConverterContract.RatePairEntry.COLUMN_RATE, rate);
+		if (wDb.insert(CurrencyConverterContract.RatePairEntry.TABLE_NAME, null, pair) == -1) {
+			return -1;
+		}
+		pair.put(CurrencyConverterContract.RateHistoryEntry.COLUMN_TIMESTAMP, timestamp);
+		wDb.insert(CurrencyConverterContract.RateHistoryEntry.TABLE_NAME, null, pair);
+		return CurrencyConverterContract.ExchangeRateEntry.buildExchangeRateId(sourceId, destId);
+    }
+    
+    /**
+     * Inserts a display order or, if the code exists, updates it in place so
+     * its _ID (and so its pairs) are kept. Must be called within a transaction.
+     * @param wDb The writable database
+     * @param values The normalized values of the display order.
+     * @return The {@link CurrencyConverterContract.DisplayOrderEntry#_ID} or -1 on failure.
+     */
+    private static long upsertDisplayOrder(SQLiteDatabase wDb, ContentValues values) {
+    	final String code = values.getAsString(
+    			CurrencyConverterContract.DisplayOrderEntry.COLUMN_CURRENCY_CODE);
+    	final long id = code == null ? -1 : findCodeId(wDb, code);
+    	if (id == -1) {
+    		return wDb.insert(CurrencyConverterContract.DisplayOrderEntry.TABLE_NAME, null, values);
+    	}
+    	ContentValues update = new ContentValues(values);
+    	update.remove(CurrencyConverterContract.DisplayOrderEntry._ID);
+    	wDb.update(CurrencyConverterContract.DisplayOrderEntry.TABLE_NAME, update, 
+    			CurrencyConverterContract.DisplayOrderEntry._ID + " = ? ", 
+    			new String[]{String.valueOf(id)});
+    	return id;
+    }
+    
+    /**
+     * Updates the exchange rates matching the selection in a transaction block.
+     * Codes within the values are resolved to their ids. 
+     * When the rate is updated, the updated pairs are appended to the history.
+     * @param values The verbose, normalized values to update.
+     * @param selection The selection upon {@link CurrencyConverterContract.ExchangeRateEntry}
+     * @param selectionArgs
+     * @param changes The set to add the updated pairs to.
+     * @return The number of records updated.
+     */
+    private int updateRatePairs(ContentValues values, String selection, String[] selectionArgs,
+    		RateChangeSet changes) {
+    	int updateCount = 0;
+		final SQLiteDatabase wDb = mDbHelper.getWritableDatabase();
+		wDb.beginTransaction();
+		try {
+			if (values.containsKey(CurrencyConverterContract.ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE) ||
+					values.containsKey(CurrencyConverterContract.ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE)) {
+				changes.addAll(); //pairs are moved, to & from anywhere
+			} else {
+				addSelectedPairs(wDb, selection, selectionArgs, changes);
+			}
+			ContentValues pair = new ContentValues();
+			if (values.containsKey(CurrencyConverterContract.ExchangeRateEntry.COLUMN_EXCHANGE_RATE)) {
+				pair.put(CurrencyConverterContract.RatePairEntry.COLUMN_RATE, 
+					values.getAsDouble(CurrencyConverterContract.ExchangeRateEntry.COLUMN_EXCHANGE_RATE));
+			}
+			final String source = values.getAsString(
+					CurrencyConverterContract.ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE);
+			if (source != null) {
+				pair.put(CurrencyConverterContract.RatePairEntry.COLUMN_SOURCE_ID, 
+						getCodeId(wDb, source));
+			}
+			final String dest = values.getAsString(
+					CurrencyConverterContract.ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE);
+			if (dest != null) {
+				pair.put(CurrencyConverterContract.RatePairEntry.COLUMN_DEST_ID, 
+						getCodeId(wDb, dest));
+			}
+			
+			final String where = selection == null ? 
+					null : SELECTION_PAIRS_WHERE + selection + ")";
+			updateCount = wDb.update(CurrencyConverterContract.RatePairEntry.TABLE_NAME, pair, 
+					where, selectionArgs);
+			
+			if (updateCount > 0 && 
+					pair.containsKey(CurrencyConverterContract.RatePairEntry.COLUMN_RATE)) {
+				final int argCount = selectionArgs == null ? 0 : selectionArgs.length;
+				Object[] historyArgs = new Object[argCount + 1];
+				historyArgs[0] = System.currentTimeMillis();
+				for (int index = 0; index < argCount; index++) {
+					historyArgs[index + 1] = selectionArgs[index];
+				}
+				wDb.execSQL(SQL_INSERT_HISTORY_FROM_PAIRS + 
+						(where == null ? "" : " WHERE " + where), historyArgs);
+			}
+			wDb.setTransactionSuccessful();
+		} finally {
+		    wDb.endTransaction();
+		}
+		return updateCount;
+    }
+    
     /**
      * Updates database in a transaction block, using the given values.
      * @param table
@@ -354,9 +869,20 @@ public class CurrencyConverterProvider extends ContentProvider {
      * @return The queried cursor.
      */
     private Cursor getRowFromSource(Uri uri, String[] projection, String sortOrder) {
-        String sourceCode = CurrencyConverterContract.ExchangeRateEntry.getSourceCurrencyFromUri(uri);
+        String sourceCode = toCurrencyCode(
+        		CurrencyConverterContract.ExchangeRateEntry.getSourceCurrencyFromUri(uri));
+        
+        if (mRateCacheEnabled) {
+        	Cursor cached = mRateCache.querySource(mDbHelper.getReadableDatabase(), 
+        			sourceCode, projection, sortOrder);
+        	if (cached != null) {
+        		return cached;
+        	} //otherwise, fall through to the database
+        }
+        final SQLiteDatabase db = mDbHelper.getReadableDatabase();
             	
-        return RATE_BY_SOURCE_BUILDER.query(mDbHelper.getReadableDatabase(),
+        return getRateBuilder(mRateCache.buildDerivedRatesQuery(db, sourceCode, null))
+        	.query(db,
                 projection,
                 SELECTION_SOURCE_CURRENCY,
                 new String[]{sourceCode},
@@ -374,10 +900,22 @@ public class CurrencyConverterProvider extends ContentProvider {
      * @return The queried cursor.
      */
     private Cursor getRowFromSourceToDest(Uri uri, String[] projection, String sortOrder) {
-        String sourceCode = CurrencyConverterContract.ExchangeRateEntry.getSourceCurrencyFromUri(uri);
-        String destCode = CurrencyConverterContract.ExchangeRateEntry.getDestCurrencyFromUri(uri);
+        String sourceCode = toCurrencyCode(
+        		CurrencyConverterContract.ExchangeRateEntry.getSourceCurrencyFromUri(uri));
+        String destCode = toCurrencyCode(
+        		CurrencyConverterContract.ExchangeRateEntry.getDestCurrencyFromUri(uri));
+        
+        if (mRateCacheEnabled) {
+        	Cursor cached = mRateCache.querySourceToDest(mDbHelper.getReadableDatabase(), 
+        			sourceCode, destCode, projection, sortOrder);
+        	if (cached != null) {
+        		return cached;
+        	} //otherwise, fall through to the database
+        }
+        final SQLiteDatabase db = mDbHelper.getReadableDatabase();
     	
-        return RATE_BY_SOURCE_BUILDER.query(mDbHelper.getReadableDatabase(),
+        return getRateBuilder(mRateCache.buildDerivedRatesQuery(db, sourceCode, destCode))
+        	.query(db,
                 projection,
                 SELECTION_SOURCE_TO_DEST,
                 new String[]{sourceCode, destCode},
@@ -387,6 +925,118 @@ public class CurrencyConverterProvider extends ContentProvider {
         );
     }
 
+    
+    /**
+     * @param derivedRates The select of the derived rates to union with the
+     * stored, in the columns of the view, or <code>null</code> if none.
+     * @return The builder of the rates joined with their display order; 
+     * {@link #RATE_BY_SOURCE_BUILDER} unless there are derived rates.
+     */
+    private static SQLiteQueryBuilder getRateBuilder(String derivedRates) {
+    	if (derivedRates == null) {
+    		return RATE_BY_SOURCE_BUILDER;
+    	}
+    	SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+    	builder.setTables("(SELECT * FROM " + 
+    			CurrencyConverterContract.ExchangeRateEntry.TABLE_NAME + 
+    			" UNION ALL " + derivedRates + ") AS " + 
+    			CurrencyConverterContract.ExchangeRateEntry.TABLE_NAME + RATE_JOIN_DISPLAY_ORDER);
+    	return builder;
+    }
+    
+    /**
+     * Get the history Cursor of source -> dest, between the optional
+     * from & to parameters of the uri.
+     * @param uri 
+     * @param projection
+     * @param sortOrder The order, or <code>null</code> for oldest first.
+     * @return The queried cursor.
+     */
+    private Cursor getHistoryFromSourceToDest(Uri uri, String[] projection, String sortOrder) {
+    	String sourceCode = toCurrencyCode(
+        		CurrencyConverterContract.ExchangeRateEntry.getSourceCurrencyFromUri(uri));
+        String destCode = toCurrencyCode(
+        		CurrencyConverterContract.ExchangeRateEntry.getDestCurrencyFromUri(uri));
+        final long from = CurrencyConverterContract.RateHistoryEntry.getTimeFromUri(uri, 
+        		CurrencyConverterContract.RateHistoryEntry.PARAM_FROM, 0);
+        final long to = CurrencyConverterContract.RateHistoryEntry.getTimeFromUri(uri, 
+        		CurrencyConverterContract.RateHistoryEntry.PARAM_TO, Long.MAX_VALUE);
+        
+        return RATE_HISTORY_BUILDER.query(mDbHelper.getReadableDatabase(),
+                projection,
+                SELECTION_HISTORY_SOURCE_TO_DEST_BETWEEN,
+                new String[]{sourceCode, destCode, String.valueOf(from), String.valueOf(to)},
+                null,
+                null,
+                sortOrder == null ? SORT_HISTORY_DEFAULT : sortOrder
+        );
+    }
+    
+    /** Notifies observers of the history that it has been appended to. */
+    private void notifyHistoryChange() {
+    	mNotifier.notifyChange(CurrencyConverterContract.RateHistoryEntry.CONTENT_URI);
+    }
+    
+    /** Notifies a delete of display order rows &amp; the rates &amp; history 
+     * its trigger deleted with them, as one batch. */
+    private void notifyDisplayOrderDelete(Uri uri) {
+    	mNotifier.beginBatch();
+    	try {
+    		mNotifier.notifyChange(uri);
+    		mNotifier.notifyChange(CurrencyConverterContract.ExchangeRateEntry.CONTENT_URI);
+    		notifyHistoryChange();
+    	} finally {
+    		mNotifier.endBatch(true);
+    	}
+    }
+    
+    /** @return A new, empty set of changes for the current mode. */
+    private RateChangeSet newRateChangeSet() {
+    	return new RateChangeSet(mRateCache.getBaseCurrency());
+    }
+    
+    /**
+     * Adds the pairs selected to the changes; stopping early once every rate is touched.
+     * Should be called in the write's transaction, before writing.
+     * @param db The database.
+     * @param selection The selection upon {@link CurrencyConverterContract.ExchangeRateEntry}
+     * or <code>null</code> for all.
+     * @param selectionArgs
+     * @param changes The changes to add to.
+     */
+    private static void addSelectedPairs(SQLiteDatabase db, String selection, 
+    		String[] selectionArgs, RateChangeSet changes) {
+    	if (selection == null) {
+    		changes.addAll();
+    		return;
+    	}
+    	Cursor cursor = db.query(CurrencyConverterContract.ExchangeRateEntry.TABLE_NAME, 
+    			new String[]{
+    				CurrencyConverterContract.ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE,
+    				CurrencyConverterContract.ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE}, 
+    			selection, selectionArgs, null, null, null);
+    	try {
+    		while (!changes.isAll() && cursor.moveToNext()) {
+    			changes.add(cursor.getString(0), cursor.getString(1));
+    		}
+    	} finally {
+    		cursor.close();
+    	}
+    }
+    
+    /** Runs the {@link RateHistoryRetention} if the interval has passed since the last run. 
+     * Must be called outside of any transaction; deferred while batching. */
+    private void runRetentionIfDue() {
+    	if (mNotifier.isBatching()) {
+    		return; //the batch runs it when done.
+    	}
+    	final long now = System.currentTimeMillis();
+    	if (now - mLastRetentionRun < RateHistoryRetention.RUN_INTERVAL) {
+    		return;
+    	}
+    	mLastRetentionRun = now;
+    	RateHistoryRetention.run(mDbHelper.getWritableDatabase(), now);
+    }
 
     /**
      * Gets <code>table</code>Cursor based on args.
@@ -417,6 +1067,141 @@ public class CurrencyConverterProvider extends ContentProvider {
     //// Utility methods
     ////////////////////////////////////////////////////////////////////////////////////////////////
 
+    /**
+     * @param code The currency code in any case.
+     * @return The currency code normalized to its stored form; uppercase.
+     */
+    private static String toCurrencyCode(String code) {
+    	return code.trim().toUpperCase(Locale.US);
+    }
+    
+    /**
+     * Normalizes the currency code columns of either table to uppercase. 
+     * @param values The values to normalize. Left untouched.
+     * @return Either the same values, if already normal, or a normalized copy.
+     */
+    private static ContentValues normalizeCodes(ContentValues values) {
+    	ContentValues result = values;
+    	for (String column : CODE_COLUMNS) {
+    		final String code = values.getAsString(column);
+    		if (code == null) {
+    			continue;
+    		}
+    		final String normalized = toCurrencyCode(code);
+    		if (!normalized.equals(code)) {
+    			if (result == values) { //copy on first change
+    				result = new ContentValues(values);
+    			}
+    			result.put(column, normalized);
+    		}
+    	}
+    	return result;
+    }
+    
+    /**
+     * @param db The database to query.
+     * @param code The normalized currency code.
+     * @return The {@link CurrencyConverterContract.DisplayOrderEntry#_ID} of the code 
+     * or -1 if not found.
+     */
+    private static long findCodeId(SQLiteDatabase db, String code) {
+    	Cursor cursor = db.rawQuery(SQL_SELECT_CODE_ID, new String[]{code});
+    	try {
+    		return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+    	} finally {
+    		cursor.close();
+    	}
+    }
+    
+    /**
+     * Finds the id of the code, registering it without order if required. 
+     * Must be called within a transaction.
+     * @param wDb The writable database.
+     * @param code The normalized currency code.
+     * @return The {@link CurrencyConverterContract.DisplayOrderEntry#_ID} of the code.
+     */
+    private static long getCodeId(SQLiteDatabase wDb, String code) {
+    	final long id = findCodeId(wDb, code);
+    	if (id != -1) {
+    		return id;
+    	}
+    	ContentValues values = new ContentValues();
+    	values.put(CurrencyConverterContract.DisplayOrderEntry.COLUMN_CURRENCY_CODE, code);
+    	values.put(CurrencyConverterContract.DisplayOrderEntry.COLUMN_DEF_DISPLAY_ORDER, -1);
+    	return wDb.insertOrThrow(CurrencyConverterContract.DisplayOrderEntry.TABLE_NAME, null, values);
+    }
+    
+    /**
+     * Builds the SQL used for {@link #EXCHANGE_RATES_WITH_SOURCE} when not cached.
+     * Used for verifying query plans.
+     * @param projection The columns to select.
+     * @param sortOrder The order or <code>null</code>
+     * @return The SQL, with one argument: the source code.
+     */
+    static String buildRateWithSourceQuery(String[] projection, String sortOrder) {
+    	return SQLiteQueryBuilder.buildQueryString(false, RATE_BY_SOURCE_BUILDER.getTables(), 
+    			projection, SELECTION_SOURCE_CURRENCY, null, null, sortOrder, null);
+    }
+    
+    /**
+     * Builds the SQL used for {@link #EXCHANGE_RATE_FROM_SOURCE_TO_DEST} when not cached.
+     * Used for verifying query plans.
+     * @param projection The columns to select.
+     * @param sortOrder The order or <code>null</code>
+     * @return The SQL, with two arguments: the source & dest codes.
+     */
+    static String buildRateFromSourceToDestQuery(String[] projection, String sortOrder) {
+    	return SQLiteQueryBuilder.buildQueryString(false, RATE_BY_SOURCE_BUILDER.getTables(), 
+    			projection, SELECTION_SOURCE_TO_DEST, null, null, sortOrder, null);
+    }
+
+
+    /** Maps the column to its qualified expression, as the column. */
+    private static void putHistoryColumn(HashMap<String, String> map, String column, 
+    		String expression) {
+    	map.put(column, expression + " AS " + column);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    //// Internal classes
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    
+    /** Resolves codes to their {@link CurrencyConverterContract.DisplayOrderEntry#_ID} 
+     * through compiled statements, registering unknown codes without order. 
+     * Each code is resolved once. Must be used and closed within a single transaction. */
+    private static class CodeIdResolver {
+    	final private SQLiteStatement mSelectId;
+    	final private SQLiteStatement mInsertCode;
+    	final private HashMap<String, Long> mIds = new HashMap<String, Long>();
+    	
+    	public CodeIdResolver(SQLiteDatabase wDb) {
+    		this.mSelectId = wDb.compileStatement(SQL_SELECT_CODE_ID);
+    		this.mInsertCode = wDb.compileStatement(SQL_INSERT_CODE);
+		}
+    	
+    	/** @param code The normalized code.
+    	 * @return The id of the code. */
+    	public long getId(String code) {
+    		Long id = mIds.get(code);
+    		if (id == null) {
+    			mSelectId.bindString(1, code);
+    			try {
+    				id = mSelectId.simpleQueryForLong();
+    			} catch (SQLiteDoneException notFound) {
+    				mInsertCode.bindString(1, code);
+    				id = mInsertCode.executeInsert();
+    			}
+    			mIds.put(code, id);
+    		}
+    		return id;
+    	}
+    	
+    	/** Releases the statements. */
+    	public void close() {
+    		mSelectId.close();
+    		mInsertCode.close();
+    	}
+    }
 
     /**
      * Builds the UriMatcher to match each Uri to their respective integer constants.
@@ -448,6 +1233,12 @@ public class CurrencyConverterProvider extends ContentProvider {
                 CurrencyConverterContract.DisplayOrderEntry.TABLE_NAME,  
                 DISPLAY_ORDER);
         
+        //exchange_rate_history/[source_currency_code]/[dest_currency_code]
+        uriMatcher.addURI(
+        		CurrencyConverterContract.CONTENT_AUTHORITY,
+        		CurrencyConverterContract.PATH_HISTORY + "/*/*",  
+        		RATE_HISTORY_FROM_SOURCE_TO_DEST);
+        
         return uriMatcher;
     }
 }
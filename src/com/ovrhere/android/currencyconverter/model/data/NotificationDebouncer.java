@@ -0,0 +1,153 @@
+/*
+ * Copyright 2015 Jason J. (iamovrhere)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.ovrhere.android.currencyconverter.model.data;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+
+/**
+ * <p>Coalesces {@link ContentResolver#notifyChange(Uri, android.database.ContentObserver)}
+ * calls made during a batch, so each uri is notified exactly once when the
+ * outermost batch ends. Uris already covered by a pending ancestor are dropped,
+ * as notifying the ancestor reaches every observer of its descendants.</p>
+ *
+ * <p>Batches are per thread: notifications from other threads are sent
+ * immediately, as are any made outside of a batch. Batches may nest.</p>
+ *
+ * @author Jason J.
+ * @version 0.1.0-20261018
+ */
+final class NotificationDebouncer {
+	final private ContentResolver mResolver;
+	/** The batch of the current thread, if any. */
+	final private ThreadLocal<Batch> mBatch = new ThreadLocal<Batch>();
+
+	/** @param resolver The resolver to notify through. */
+	public NotificationDebouncer(ContentResolver resolver) {
+		this.mResolver = resolver;
+	}
+
+	/** Begins (or nests) a batch on the current thread.
+	 * Must be paired with {@link #endBatch(boolean)}. */
+	public void beginBatch() {
+		Batch batch = mBatch.get();
+		if (batch == null) {
+			batch = new Batch();
+			mBatch.set(batch);
+		}
+		batch.depth++;
+	}
+
+	/** @return <code>true</code> if the current thread is within a batch. */
+	public boolean isBatching() {
+		return mBatch.get() != null;
+	}
+
+	/**
+	 * Ends the current batch. When the outermost batch ends,
+	 * the pending uris are notified if every nested batch was successful,
+	 * else they are discarded.
+	 * @param successful <code>false</code> if the batch's writes were rolled back.
+	 */
+	public void endBatch(boolean successful) {
+		final Batch batch = mBatch.get();
+		if (batch == null) {
+			throw new IllegalStateException("No batch to end");
+		}
+		batch.successful &= successful;
+		if (--batch.depth > 0) {
+			return;
+		}
+		mBatch.remove();
+		if (batch.successful) {
+			for (Uri uri : coalesce(batch.pending)) {
+				mResolver.notifyChange(uri, null);
+			}
+		}
+	}
+
+	/**
+	 * Notifies the uri; immediately or, if batching, once at the end of the batch.
+	 * @param uri The uri that has changed.
+	 */
+	public void notifyChange(Uri uri) {
+		final Batch batch = mBatch.get();
+		if (batch == null) {
+			mResolver.notifyChange(uri, null);
+		} else {
+			batch.pending.add(uri);
+		}
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Utility methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Removes the uris that have an ancestor (or are equal to one) within the set.
+	 * @param uris The unique uris, in order of notification.
+	 * @return The uris to notify, in order.
+	 */
+	static List<Uri> coalesce(LinkedHashSet<Uri> uris) {
+		List<Uri> results = new ArrayList<Uri>(uris.size());
+		for (Uri uri : uris) {
+			boolean covered = false;
+			for (Uri other : uris) {
+				if (other != uri && isAncestor(other, uri)) {
+					covered = true;
+					break;
+				}
+			}
+			if (!covered) {
+				results.add(uri);
+			}
+		}
+		return results;
+	}
+
+	/** @return <code>true</code> if the ancestor is a strict parent path of the uri,
+	 * under the same authority. Query parameters are ignored. */
+	static boolean isAncestor(Uri ancestor, Uri uri) {
+		if (!equals(ancestor.getAuthority(), uri.getAuthority())) {
+			return false;
+		}
+		final List<String> parent = ancestor.getPathSegments();
+		final List<String> child = uri.getPathSegments();
+		return parent.size() < child.size() &&
+				child.subList(0, parent.size()).equals(parent);
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Helper methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+
+	/** Null safe equals. */
+	private static boolean equals(String lhs, String rhs) {
+		return lhs == null ? rhs == null : lhs.equals(rhs);
+	}
+
+	/** The pending uris of a thread's batch. */
+	private static class Batch {
+		/** The unique uris in the order first notified. */
+		final LinkedHashSet<Uri> pending = new LinkedHashSet<Uri>();
+		int depth = 0;
+		boolean successful = true;
+	}
+}
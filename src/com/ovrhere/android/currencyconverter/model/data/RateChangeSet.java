@@ -0,0 +1,153 @@
+/*
+ * Copyright 2015 Jason J. (iamovrhere)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.ovrhere.android.currencyconverter.model.data;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import android.net.Uri;
+
+import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.ExchangeRateEntry;
+
+/**
+ * <p>Tracks the (source, dest) pairs touched by a write, to notify the
+ * narrowest uris covering them: <code>exchange_rate/SRC/DST</code> per pair,
+ * escalating to <code>exchange_rate/SRC</code> once a source has more than
+ * {@link #PAIR_THRESHOLD} pairs and to <code>exchange_rate</code> once more
+ * than {@link #SOURCE_THRESHOLD} sources are touched. Memory is bounded
+ * by the thresholds, however large the write.</p>
+ *
+ * <p>In base-currency mode, a change to a pair of the base changes every
+ * derived rate, so the whole table is touched; a change to any other
+ * stored pair also touches its derived reverse.</p>
+ *
+ * @author Jason J.
+ * @version 0.1.0-20261018
+ */
+final class RateChangeSet {
+	/** The pairs of a source beyond which the source's uri is used. */
+	final static public int PAIR_THRESHOLD = 8;
+	/** The sources beyond which the table's uri is used. */
+	final static public int SOURCE_THRESHOLD = 32;
+
+	/** The base currency (uppercase) or <code>null</code> if not deriving. */
+	final private String mBaseCurrency;
+	/** The dests by source; a <code>null</code> set is the whole source. */
+	final private LinkedHashMap<String, LinkedHashSet<String>> mPairs =
+			new LinkedHashMap<String, LinkedHashSet<String>>();
+	/** Whether every rate is touched. */
+	private boolean mAll = false;
+
+	/** @param baseCurrency The base currency (uppercase) or <code>null</code>
+	 * if not in base-currency mode. */
+	public RateChangeSet(String baseCurrency) {
+		this.mBaseCurrency = baseCurrency;
+	}
+
+	/**
+	 * Adds a touched pair.
+	 * @param sourceCode The normalized source or <code>null</code> if unknown.
+	 * @param destCode The normalized destination or <code>null</code> if unknown.
+	 */
+	public void add(String sourceCode, String destCode) {
+		if (mAll) {
+			return;
+		} else if (sourceCode == null ||
+				(mBaseCurrency != null && mBaseCurrency.equals(sourceCode))) {
+			addAll();
+			return;
+		}
+		addPair(sourceCode, destCode);
+		if (mBaseCurrency != null && destCode != null) {
+			addPair(destCode, sourceCode); //the reverse is derived from it
+		}
+	}
+
+	/** Touches every rate. */
+	public void addAll() {
+		mAll = true;
+		mPairs.clear();
+	}
+
+	/** @return <code>true</code> if every rate has been touched. */
+	public boolean isAll() {
+		return mAll;
+	}
+
+	/** @return <code>true</code> if nothing has been touched. */
+	public boolean isEmpty() {
+		return !mAll && mPairs.isEmpty();
+	}
+
+	/** @return The uris covering every touched pair, in order first touched. */
+	public List<Uri> getUris() {
+		List<Uri> uris = new ArrayList<Uri>();
+		if (mAll) {
+			uris.add(ExchangeRateEntry.CONTENT_URI);
+			return uris;
+		}
+		for (Map.Entry<String, LinkedHashSet<String>> entry : mPairs.entrySet()) {
+			if (entry.getValue() == null) {
+				uris.add(ExchangeRateEntry.buildExchangeRateWithSourceCurrency(entry.getKey()));
+				continue;
+			}
+			for (String dest : entry.getValue()) {
+				uris.add(ExchangeRateEntry.buildExchangeRateFromSourceToDest(entry.getKey(), dest));
+			}
+		}
+		return uris;
+	}
+
+	/**
+	 * Notifies each of the {@link #getUris()}.
+	 * @param notifier The notifier to notify through.
+	 */
+	public void notifyChange(NotificationDebouncer notifier) {
+		for (Uri uri : getUris()) {
+			notifier.notifyChange(uri);
+		}
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Helper methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+
+	/** Adds the pair, escalating as required. */
+	private void addPair(String sourceCode, String destCode) {
+		if (mAll) {
+			return;
+		}
+		final boolean known = mPairs.containsKey(sourceCode);
+		LinkedHashSet<String> dests = mPairs.get(sourceCode);
+		if (known && dests == null) {
+			return; //whole source
+		}
+		if (!known) {
+			if (mPairs.size() >= SOURCE_THRESHOLD) {
+				addAll();
+				return;
+			}
+			dests = new LinkedHashSet<String>();
+			mPairs.put(sourceCode, dests);
+		}
+		if (destCode == null || (dests.add(destCode) && dests.size() > PAIR_THRESHOLD)) {
+			mPairs.put(sourceCode, null);
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2015 Jason J. (iamovrhere)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.ovrhere.android.currencyconverter.model.data;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.RateHistoryEntry;
+
+/**
+ * <p>Keeps the {@link RateHistoryEntry} table bounded by downsampling old points.
+ * Raw points older than {@link #RAW_RETENTION} are averaged into hourly buckets,
+ * hourly buckets older than {@link #HOURLY_RETENTION} into daily buckets and
+ * daily buckets older than {@link #DAILY_RETENTION} are dropped.</p>
+ *
+ * <p>Each cutoff is floored to its bucket size, so only complete buckets are
+ * ever folded and a bucket is never written twice. A bucket's timestamp is
+ * its start.</p>
+ *
+ * @author Jason J.
+ * @version 0.1.0-20261018
+ */
+final class RateHistoryRetention {
+	/** One hour in ms. */
+	final static public long HOUR = 60 * 60 * 1000L;
+	/** One day in ms. */
+	final static public long DAY = 24 * HOUR;
+
+	/** How long raw points are kept, in ms. */
+	final static public long RAW_RETENTION = DAY;
+	/** How long hourly buckets are kept, in ms. */
+	final static public long HOURLY_RETENTION = 7 * DAY;
+	/** How long daily buckets are kept, in ms. */
+	final static public long DAILY_RETENTION = 365 * DAY;
+
+	/** The minimum time between runs, in ms. Nothing becomes due any sooner. */
+	final static public long RUN_INTERVAL = HOUR;
+
+	/** Folds points of resolution ? older than ? into buckets of size ? (x3) at resolution ?. */
+	final static private String SQL_DOWNSAMPLE =
+			"INSERT INTO " + RateHistoryEntry.TABLE_NAME + " (" +
+				RateHistoryEntry.COLUMN_SOURCE_ID + ", " +
+				RateHistoryEntry.COLUMN_DEST_ID + ", " +
+				RateHistoryEntry.COLUMN_RATE + ", " +
+				RateHistoryEntry.COLUMN_TIMESTAMP + ", " +
+				RateHistoryEntry.COLUMN_RESOLUTION +
+			") SELECT " +
+				RateHistoryEntry.COLUMN_SOURCE_ID + ", " +
+				RateHistoryEntry.COLUMN_DEST_ID + ", " +
+				"AVG(" + RateHistoryEntry.COLUMN_RATE + "), " +
+				"(" + RateHistoryEntry.COLUMN_TIMESTAMP + " / ?) * ?, " +
+				"? " +
+			" FROM " + RateHistoryEntry.TABLE_NAME +
+			" WHERE " + RateHistoryEntry.COLUMN_RESOLUTION + " = ? AND " +
+				RateHistoryEntry.COLUMN_TIMESTAMP + " < ? " +
+			" GROUP BY " +
+				RateHistoryEntry.COLUMN_SOURCE_ID + ", " +
+				RateHistoryEntry.COLUMN_DEST_ID + ", " +
+				RateHistoryEntry.COLUMN_TIMESTAMP + " / ?";
+
+	/** Selection. Points of resolution ? older than ? */
+	final static private String SELECTION_EXPIRED =
+			RateHistoryEntry.COLUMN_RESOLUTION + " = ? AND " +
+			RateHistoryEntry.COLUMN_TIMESTAMP + " < ? ";
+
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// End constants
+	////////////////////////////////////////////////////////////////////////////////////////////////
+
+	private RateHistoryRetention() {}
+
+	/**
+	 * Downsamples & drops expired history in a single transaction.
+	 * @param wDb The writable database
+	 * @param now The current time in ms since epoch.
+	 * @return The net count of rows removed.
+	 */
+	static int run(SQLiteDatabase wDb, long now) {
+		int removed = 0;
+		wDb.beginTransaction();
+		try {
+			removed += downsample(wDb, RateHistoryEntry.RESOLUTION_RAW,
+					RateHistoryEntry.RESOLUTION_HOURLY, HOUR, now - RAW_RETENTION);
+			removed += downsample(wDb, RateHistoryEntry.RESOLUTION_HOURLY,
+					RateHistoryEntry.RESOLUTION_DAILY, DAY, now - HOURLY_RETENTION);
+			removed += wDb.delete(RateHistoryEntry.TABLE_NAME, SELECTION_EXPIRED,
+					new String[]{
+						String.valueOf(RateHistoryEntry.RESOLUTION_DAILY),
+						String.valueOf(floor(now - DAILY_RETENTION, DAY))
+					});
+			wDb.setTransactionSuccessful();
+		} finally {
+			wDb.endTransaction();
+		}
+		return removed;
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Helper methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Averages all complete buckets before the cutoff into the coarser resolution,
+	 * then deletes the points folded. Must be called within a transaction.
+	 * @param wDb The writable database
+	 * @param from The resolution to fold.
+	 * @param to The resolution of the buckets.
+	 * @param bucketSize The size of the buckets in ms.
+	 * @param cutoff Points before this time are folded; floored to the bucket size.
+	 * @return The net count of rows removed.
+	 */
+	private static int downsample(SQLiteDatabase wDb, int from, int to, long bucketSize,
+			long cutoff) {
+		final long flooredCutoff = floor(cutoff, bucketSize);
+
+		wDb.execSQL(SQL_DOWNSAMPLE, new Object[]{
+				bucketSize, bucketSize, to, from, flooredCutoff, bucketSize});
+		//execSQL gives no count before API 11; ask the same connection instead.
+		final long bucketsAdded = DatabaseUtils.longForQuery(wDb, "SELECT changes()", null);
+
+		final int folded = wDb.delete(RateHistoryEntry.TABLE_NAME, SELECTION_EXPIRED,
+				new String[]{String.valueOf(from), String.valueOf(flooredCutoff)});
+		return folded - (int) bucketsAdded;
+	}
+
+	/** @return The time floored to the start of its bucket. */
+	private static long floor(long time, long bucketSize) {
+		return (time / bucketSize) * bucketSize;
+	}
+}
@@ -0,0 +1,604 @@
+/*
+ * Copyright 2015 Jason J. (iamovrhere)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.ovrhere.android.currencyconverter.model.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.ovrhere.android.currencyconverter.model.RateMatrix;
+import com.ovrhere.android.currencyconverter.model.currencyrequest.CodeRatePair;
+import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.DisplayOrderEntry;
+import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.ExchangeRateEntry;
+
+/**
+ * <p>Read-through, in-memory copy of the {@link ExchangeRateEntry} view joined with
+ * the {@link DisplayOrderEntry} table. The table is a small N&times;N matrix,
+ * so it is held as a {@link RateMatrix} indexed by currency ordinal
+ * and answered with {@link MatrixCursor}s instead of an INNER JOIN per query.
+ * Rate ids are not held; they are built of the codes' display order ids, as 
+ * the view's are.</p>
+ *
+ * <p>The matrix is loaded lazily on the first query and dropped by
+ * {@link #invalidate()}, which must be called after every committed write.
+ * A load that races with a write is never installed, so readers never
+ * see a matrix older than the last invalidation.</p>
+ * 
+ * <p>In base-currency mode (see {@link #setBaseCurrency(String)}) only the 
+ * base's row is expected to be stored; every other cell is derived on load, 
+ * from its stored reverse or as a cross rate through the base, rounded as 
+ * the stored rates are: 6 decimals, HALF_UP. Queries it cannot answer from 
+ * memory still get the derived rates, as SQL to union with the stored; see 
+ * {@link #buildDerivedRatesQuery(SQLiteDatabase, String, String)}.</p>
+ *
+ * @author Jason J.
+ * @version 0.4.0-20261018
+ */
+final class RateMatrixCache {
+	/** The column for the rate's _id, as qualified in projections. */
+	final static private String COLUMN_QUALIFIED_RATE_ID =
+			ExchangeRateEntry.TABLE_NAME + "." + ExchangeRateEntry._ID;
+	/** The column for the display order's _id, as qualified in projections. */
+	final static private String COLUMN_QUALIFIED_ORDER_ID =
+			DisplayOrderEntry.TABLE_NAME + "." + DisplayOrderEntry._ID;
+
+	/** The columns returned when given a <code>null</code> projection. */
+	final static private String[] DEFAULT_PROJECTION = new String[]{
+		ExchangeRateEntry._ID,
+		ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE,
+		ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE,
+		ExchangeRateEntry.COLUMN_EXCHANGE_RATE,
+		DisplayOrderEntry.COLUMN_CURRENCY_CODE,
+		DisplayOrderEntry.COLUMN_DEF_DISPLAY_ORDER
+	};
+
+	/** The most terms of a compound select, well under SQLite's default limit of 500. */
+	final static private int MAX_COMPOUND_TERMS = 100;
+
+	/** Column ids used to resolve projections & sort orders. */
+	final static private int COL_UNKNOWN = -1;
+	final static private int COL_RATE_ID = 0;
+	final static private int COL_SOURCE_CODE = 1;
+	final static private int COL_DEST_CODE = 2;
+	final static private int COL_EXCHANGE_RATE = 3;
+	final static private int COL_ORDER_ID = 4;
+	final static private int COL_CURRENCY_CODE = 5;
+	final static private int COL_DEF_DISPLAY_ORDER = 6;
+
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// End constants
+	////////////////////////////////////////////////////////////////////////////////////////////////
+
+	/** Lock guarding {@link #mGeneration} & installation of {@link #mMatrix}. */
+	final private Object mLock = new Object();
+	/** Incremented on every invalidation; used to discard stale loads. */
+	private long mGeneration = 0;
+	/** The current matrix or <code>null</code> if it must be (re)loaded. */
+	volatile private Matrix mMatrix = null;
+	/** The base currency to derive rates through or <code>null</code> to not derive. */
+	volatile private String mBaseCurrency = null;
+
+	/**
+	 * Sets the base currency, the pivot of base-currency mode. When set, rates 
+	 * missing from the database are derived from the stored ones. 
+	 * @param baseCode The base currency code (case insensitive) or 
+	 * <code>null</code> to only return stored rates. 
+	 */
+	public void setBaseCurrency(String baseCode) {
+		synchronized (mLock) {
+			mBaseCurrency = baseCode == null ? null : toKey(baseCode);
+			mGeneration++;
+			mMatrix = null;
+		}
+	}
+
+	/** @return The base currency code (uppercase) or <code>null</code> if not deriving. */
+	public String getBaseCurrency() {
+		return mBaseCurrency;
+	}
+
+	/** Drops the current matrix. Call after every committed write to either table. */
+	public void invalidate() {
+		synchronized (mLock) {
+			mGeneration++;
+			mMatrix = null;
+		}
+	}
+
+	/**
+	 * Answers the equivalent of
+	 * {@link CurrencyConverterProvider#EXCHANGE_RATES_WITH_SOURCE} from memory.
+	 * @param db The database to load from, if required.
+	 * @param sourceCode The source currency code (case insensitive).
+	 * @param projection The columns to return or <code>null</code> for all.
+	 * @param sortOrder The sort order or <code>null</code> for insertion order.
+	 * @return The cursor or <code>null</code> if the projection or sort order
+	 * cannot be answered from memory; the caller should then query the database.
+	 */
+	public Cursor querySource(SQLiteDatabase db, String sourceCode,
+			String[] projection, String sortOrder) {
+		return query(db, sourceCode, null, projection, sortOrder);
+	}
+
+	/**
+	 * Answers the equivalent of
+	 * {@link CurrencyConverterProvider#EXCHANGE_RATE_FROM_SOURCE_TO_DEST} from memory.
+	 * @param db The database to load from, if required.
+	 * @param sourceCode The source currency code (case insensitive).
+	 * @param destCode The destination currency code (case insensitive).
+	 * @param projection The columns to return or <code>null</code> for all.
+	 * @param sortOrder The sort order or <code>null</code>.
+	 * @return The cursor or <code>null</code> if the projection or sort order
+	 * cannot be answered from memory; the caller should then query the database.
+	 */
+	public Cursor querySourceToDest(SQLiteDatabase db, String sourceCode, String destCode,
+			String[] projection, String sortOrder) {
+		return query(db, sourceCode, destCode, projection, sortOrder);
+	}
+
+	/**
+	 * Builds the rates derived from the source, and optionally to the dest, 
+	 * as SQL; for a query of the database the cache cannot answer, 
+	 * to union with the stored rates. The rates are those the cache would answer.
+	 * @param db The database to load from, if required.
+	 * @param sourceCode The source currency code (case insensitive).
+	 * @param destCode The destination currency code (case insensitive) or 
+	 * <code>null</code> for all destinations.
+	 * @return A compound select of the derived rates, in the columns of the 
+	 * {@link ExchangeRateEntry} view, or <code>null</code> if none are derived.
+	 */
+	public String buildDerivedRatesQuery(SQLiteDatabase db, String sourceCode, 
+			String destCode) {
+		if (mBaseCurrency == null) {
+			return null;
+		}
+		final Matrix matrix = getMatrix(db);
+		final int src = matrix.rates.indexOf(sourceCode);
+		if (src < 0) {
+			return null;
+		}
+		final int first = destCode == null ? 0 : matrix.rates.indexOf(destCode);
+		final int last = destCode == null ? matrix.rates.size() - 1 : first;
+		if (first < 0) {
+			return null;
+		}
+		final List<String> selects = new ArrayList<String>();
+		for (int dst = first; dst <= last; dst++) {
+			if (matrix.isDerived(src, dst)) {
+				selects.add(matrix.buildSelect(src, dst));
+			}
+		}
+		return selects.isEmpty() ? null : compound(selects);
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Helper methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Builds the cursor for the source, and optionally dest, from the matrix.
+	 * @param destCode The destination or <code>null</code> for all destinations.
+	 * @return The cursor or <code>null</code> if not answerable from memory.
+	 */
+	private Cursor query(SQLiteDatabase db, String sourceCode, String destCode,
+			String[] projection, String sortOrder) {
+		if (projection == null) {
+			projection = DEFAULT_PROJECTION;
+		}
+		final int[] columns = resolveColumns(projection);
+		final int[] sortColumns = resolveSortOrder(sortOrder);
+		if (columns == null || sortColumns == null) {
+			return null;
+		}
+
+		final Matrix matrix = getMatrix(db);
+		final int src = matrix.rates.indexOf(sourceCode);
+
+		Integer[] rows = new Integer[0];
+		if (src >= 0) {
+			if (destCode == null) {
+				rows = matrix.rowsFrom(src);
+			} else {
+				final int dst = matrix.rates.indexOf(destCode);
+				if (dst >= 0 && matrix.isJoined(src, dst)) {
+					rows = new Integer[]{dst};
+				}
+			}
+		}
+		if (sortColumns.length > 0) {
+			Arrays.sort(rows, new RowComparator(matrix, Math.max(src, 0), sortColumns));
+		}
+
+		MatrixCursor cursor = new MatrixCursor(projection, rows.length);
+		final int COLUMN_COUNT = columns.length;
+		for (Integer dst : rows) {
+			Object[] values = new Object[COLUMN_COUNT];
+			for (int index = 0; index < COLUMN_COUNT; index++) {
+				values[index] = matrix.valueOf(src, dst, columns[index]);
+			}
+			cursor.addRow(values);
+		}
+		return cursor;
+	}
+
+	/** @return The current matrix, loading it if required. */
+	private Matrix getMatrix(SQLiteDatabase db) {
+		Matrix matrix = mMatrix;
+		if (matrix != null) {
+			return matrix;
+		}
+		final long generation;
+		final String baseCode;
+		synchronized (mLock) {
+			generation = mGeneration;
+			baseCode = mBaseCurrency;
+		}
+		matrix = Matrix.load(db, baseCode);
+		synchronized (mLock) {
+			if (generation == mGeneration) { //no writes since we started.
+				mMatrix = matrix;
+			}
+		}
+		return matrix;
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Utility methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+
+	/** @return The selects joined by UNION ALL, nested so no compound 
+	 * has more than {@link #MAX_COMPOUND_TERMS}. */
+	private static String compound(List<String> selects) {
+		if (selects.size() <= MAX_COMPOUND_TERMS) {
+			StringBuilder sql = new StringBuilder();
+			for (String select : selects) {
+				if (sql.length() > 0) {
+					sql.append(" UNION ALL ");
+				}
+				sql.append(select);
+			}
+			return sql.toString();
+		}
+		final List<String> nested = new ArrayList<String>();
+		for (int start = 0; start < selects.size(); start += MAX_COMPOUND_TERMS) {
+			nested.add("SELECT * FROM (" + compound(selects.subList(start, 
+					Math.min(start + MAX_COMPOUND_TERMS, selects.size()))) + ")");
+		}
+		return compound(nested);
+	}
+
+	/** @return The code as a matrix key; uppercase. */
+	private static String toKey(String code) {
+		return code.trim().toUpperCase(Locale.US);
+	}
+	
+	/** @return The column id of the given projection column, or {@link #COL_UNKNOWN}. */
+	private static int resolveColumn(String column) {
+		if (column.equals(ExchangeRateEntry._ID) || column.equals(COLUMN_QUALIFIED_RATE_ID)) {
+			return COL_RATE_ID;
+		} else if (column.equals(ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE)) {
+			return COL_SOURCE_CODE;
+		} else if (column.equals(ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE)) {
+			return COL_DEST_CODE;
+		} else if (column.equals(ExchangeRateEntry.COLUMN_EXCHANGE_RATE)) {
+			return COL_EXCHANGE_RATE;
+		} else if (column.equals(COLUMN_QUALIFIED_ORDER_ID)) {
+			return COL_ORDER_ID;
+		} else if (column.equals(DisplayOrderEntry.COLUMN_CURRENCY_CODE)) {
+			return COL_CURRENCY_CODE;
+		} else if (column.equals(DisplayOrderEntry.COLUMN_DEF_DISPLAY_ORDER)) {
+			return COL_DEF_DISPLAY_ORDER;
+		}
+		return COL_UNKNOWN;
+	}
+
+	/** @return The resolved column ids or <code>null</code> if any are unknown. */
+	private static int[] resolveColumns(String[] projection) {
+		final int SIZE = projection.length;
+		int[] columns = new int[SIZE];
+		for (int index = 0; index < SIZE; index++) {
+			columns[index] = resolveColumn(projection[index]);
+			if (columns[index] == COL_UNKNOWN) {
+				return null;
+			}
+		}
+		return columns;
+	}
+
+	/**
+	 * Resolves simple sort orders of the form <code>col [ASC|DESC], ...</code>
+	 * @return The column ids, negated (minus one) for descending,
+	 * an empty array for no sort order or <code>null</code> if not understood.
+	 */
+	private static int[] resolveSortOrder(String sortOrder) {
+		if (sortOrder == null || sortOrder.trim().isEmpty()) {
+			return new int[0];
+		}
+		final String[] terms = sortOrder.split(",");
+		final int SIZE = terms.length;
+		int[] columns = new int[SIZE];
+		for (int index = 0; index < SIZE; index++) {
+			String[] parts = terms[index].trim().split("\\s+");
+			if (parts.length > 2) {
+				return null;
+			}
+			int column = resolveColumn(parts[0]);
+			if (column == COL_UNKNOWN) {
+				return null;
+			}
+			if (parts.length == 2) {
+				if (parts[1].equalsIgnoreCase("DESC")) {
+					column = -column - 1;
+				} else if (!parts[1].equalsIgnoreCase("ASC")) {
+					return null;
+				}
+			}
+			columns[index] = column;
+		}
+		return columns;
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Internal classes
+	////////////////////////////////////////////////////////////////////////////////////////////////
+
+	/** Immutable, dense copy of both tables. Indexed by currency ordinal, 
+	 * the index of the code in {@link #rates}. */
+	final private static class Matrix {
+		/** The rates, from the source's ordinal to the destination's; 
+		 * {@link Double#NaN} when not stored (or derived). */
+		final RateMatrix.Snapshot rates;
+		/** The rates as stored; the same as {@link #rates} if none are derived. */
+		final RateMatrix.Snapshot stored;
+		/** The {@link DisplayOrderEntry#_ID} by ordinal or -1 if without order 
+		 * (either no entry or an order of -1). */
+		final long[] orderIds;
+		/** The {@link DisplayOrderEntry#_ID} by ordinal, regardless of order. */
+		final long[] codeIds;
+		/** The {@link DisplayOrderEntry#COLUMN_CURRENCY_CODE} as stored, by ordinal. */
+		final String[] orderCodes;
+		/** The {@link DisplayOrderEntry#COLUMN_DEF_DISPLAY_ORDER} by ordinal. */
+		final int[] displayOrders;
+		/** The codes as stored in the {@link ExchangeRateEntry} table, by ordinal. */
+		final String[] rateCodes;
+
+		private Matrix(RateMatrix.Snapshot rates, RateMatrix.Snapshot stored, long[] orderIds, 
+				long[] codeIds, String[] orderCodes, int[] displayOrders, String[] rateCodes) {
+			this.rates = rates;
+			this.stored = stored;
+			this.orderIds = orderIds;
+			this.codeIds = codeIds;
+			this.orderCodes = orderCodes;
+			this.displayOrders = displayOrders;
+			this.rateCodes = rateCodes;
+		}
+
+		/** @return <code>true</code> if the pair would appear in the INNER JOIN. */
+		boolean isJoined(int src, int dst) {
+			return !Double.isNaN(rates.get(src, dst)) && orderIds[dst] >= 0;
+		}
+		
+		/** @return <code>true</code> if the rate of the pair was derived, not stored. */
+		boolean isDerived(int src, int dst) {
+			return Double.isNaN(stored.get(src, dst)) && !Double.isNaN(rates.get(src, dst));
+		}
+		
+		/** @return The select of the pair's row, in the columns of the view. */
+		String buildSelect(int src, int dst) {
+			return "SELECT " + 
+					rateId(src, dst) + " AS " + ExchangeRateEntry._ID + ", " + 
+					DatabaseUtils.sqlEscapeString(rateCodes[src]) + 
+						" AS " + ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE + ", " +
+					DatabaseUtils.sqlEscapeString(rateCodes[dst]) + 
+						" AS " + ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE + ", " +
+					rates.get(src, dst) + " AS " + ExchangeRateEntry.COLUMN_EXCHANGE_RATE + ", " +
+					codeIds[src] + " AS " + ExchangeRateEntry.COLUMN_SOURCE_ID + ", " +
+					codeIds[dst] + " AS " + ExchangeRateEntry.COLUMN_DEST_ID;
+		}
+		
+		/** @return The {@link ExchangeRateEntry#_ID} of the pair, as the view builds it. */
+		long rateId(int src, int dst) {
+			return ExchangeRateEntry.buildExchangeRateId(codeIds[src], codeIds[dst]);
+		}
+
+		/** @return The destination ordinals for the source, in order of _ID. */
+		Integer[] rowsFrom(final int src) {
+			final int SIZE = rates.size();
+			Integer[] rows = new Integer[SIZE];
+			int count = 0;
+			for (int dst = 0; dst < SIZE; dst++) {
+				if (isJoined(src, dst)) {
+					rows[count++] = dst;
+				}
+			}
+			rows = Arrays.copyOf(rows, count);
+			//mimic the primary key scan of the join; order of (source id, dest id).
+			Arrays.sort(rows, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer lhs, Integer rhs) {
+					long diff = rateId(src, lhs) - rateId(src, rhs);
+					return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+				}
+			});
+			return rows;
+		}
+
+		/** @return The boxed value of the given column for the [src][dst] pair. */
+		Object valueOf(int src, int dst, int column) {
+			switch (column) {
+				case COL_RATE_ID:
+					return rateId(src, dst);
+				case COL_SOURCE_CODE:
+					return rateCodes[src];
+				case COL_DEST_CODE:
+					return rateCodes[dst];
+				case COL_EXCHANGE_RATE:
+					return rates.get(src, dst);
+				case COL_ORDER_ID:
+					return orderIds[dst];
+				case COL_CURRENCY_CODE:
+					return orderCodes[dst];
+				case COL_DEF_DISPLAY_ORDER:
+					return displayOrders[dst];
+				default:
+					throw new IllegalArgumentException("Unknown column: " + column);
+			}
+		}
+
+		/** Loads both tables into a new matrix.
+		 * @param db The database to read. 
+		 * @param baseCode The base currency key to derive the missing rates 
+		 * through or <code>null</code> to not derive. */
+		static Matrix load(SQLiteDatabase db, String baseCode) {
+			final String[] ORDER_COLUMNS = new String[]{
+					DisplayOrderEntry._ID,
+					DisplayOrderEntry.COLUMN_CURRENCY_CODE,
+					DisplayOrderEntry.COLUMN_DEF_DISPLAY_ORDER
+			};
+			final String[] RATE_COLUMNS = new String[]{
+					ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE,
+					ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE,
+					ExchangeRateEntry.COLUMN_EXCHANGE_RATE
+			};
+			Cursor orders = db.query(DisplayOrderEntry.TABLE_NAME, ORDER_COLUMNS,
+					null, null, null, null, null);
+			Cursor rates = db.query(ExchangeRateEntry.TABLE_NAME, RATE_COLUMNS,
+					null, null, null, null, null);
+			try {
+				//first pass: build the dictionary of all codes.
+				final RateMatrix matrix = new RateMatrix(orders.getCount());
+				while (orders.moveToNext()) {
+					matrix.addCode(orders.getString(1));
+				}
+				while (rates.moveToNext()) {
+					matrix.addCode(rates.getString(0));
+					matrix.addCode(rates.getString(1));
+				}
+
+				//second pass: fill the matrix
+				final int SIZE = matrix.size();
+				final long[] orderIds = new long[SIZE];
+				final long[] codeIds = new long[SIZE];
+				final String[] orderCodes = new String[SIZE];
+				final int[] displayOrders = new int[SIZE];
+				final String[] rateCodes = new String[SIZE];
+				Arrays.fill(orderIds, -1);
+				for (int index = 0; index < SIZE; index++) {
+					rateCodes[index] = matrix.getCode(index);
+				}
+				for (orders.moveToPosition(-1); orders.moveToNext();) {
+					final int index = matrix.indexOf(orders.getString(1));
+					codeIds[index] = orders.getLong(0);
+					if (orders.getInt(2) < 0) {
+						continue; //registered code without order; excluded from the join.
+					}
+					orderIds[index] = orders.getLong(0);
+					orderCodes[index] = orders.getString(1);
+					displayOrders[index] = orders.getInt(2);
+				}
+				for (rates.moveToPosition(-1); rates.moveToNext();) {
+					final int src = matrix.indexOf(rates.getString(0));
+					final int dst = matrix.indexOf(rates.getString(1));
+					matrix.set(src, dst, rates.getDouble(2));
+					rateCodes[src] = rates.getString(0);
+					rateCodes[dst] = rates.getString(1);
+				}
+				final RateMatrix.Snapshot stored = matrix.snapshot();
+				if (baseCode != null) {
+					deriveRates(matrix, baseCode);
+				}
+				return new Matrix(matrix.snapshot(), stored, orderIds, codeIds, orderCodes, 
+						displayOrders, rateCodes);
+			} finally {
+				orders.close();
+				rates.close();
+			}
+		}
+
+		/**
+		 * Fills the rates missing from the database; using the stored reverse
+		 * rate if present or else the cross rate through the base currency. 
+		 * Self rates through the base are 1.
+		 * @param matrix The stored rates, to fill.
+		 * @param baseCode The base currency key. 
+		 */
+		private static void deriveRates(RateMatrix matrix, String baseCode) {
+			final int base = matrix.indexOf(baseCode);
+			final int SIZE = matrix.size();
+			//derive from the stored rates only, not from other derived rates; 
+			//the snapshot keeps them as the matrix is written.
+			final RateMatrix.Snapshot stored = matrix.snapshot();
+			for (int src = 0; src < SIZE; src++) {
+				for (int dst = 0; dst < SIZE; dst++) {
+					if (!Double.isNaN(stored.get(src, dst))) {
+						continue;
+					}
+					double rate = Double.NaN;
+					final double reverse = stored.get(dst, src);
+					if (!Double.isNaN(reverse) && reverse != 0) {
+						rate = CodeRatePair.roundTo6(1.0d / reverse);
+					} else if (base >= 0) {
+						final double from = src == base ? 1.0d : stored.get(base, src);
+						final double to = dst == base ? 1.0d : stored.get(base, dst);
+						if (!Double.isNaN(from) && !Double.isNaN(to) && from != 0) {
+							rate = CodeRatePair.roundTo6(to / from);
+						}
+					}
+					if (!Double.isNaN(rate)) {
+						matrix.set(src, dst, rate);
+					}
+				}
+			}
+		}
+	}
+
+	/** Compares destination ordinals of a single source by the resolved sort columns. */
+	final private static class RowComparator implements Comparator<Integer> {
+		final private Matrix mMatrix;
+		final private int mSource;
+		final private int[] mSortColumns;
+
+		public RowComparator(Matrix matrix, int source, int[] sortColumns) {
+			this.mMatrix = matrix;
+			this.mSource = source;
+			this.mSortColumns = sortColumns;
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		@Override
+		public int compare(Integer lhs, Integer rhs) {
+			for (int sortColumn : mSortColumns) {
+				final boolean descending = sortColumn < 0;
+				final int column = descending ? -sortColumn - 1 : sortColumn;
+
+				Comparable left = (Comparable) mMatrix.valueOf(mSource, lhs, column);
+				Comparable right = (Comparable) mMatrix.valueOf(mSource, rhs, column);
+				int result = left.compareTo(right);
+				if (result != 0) {
+					return descending ? -result : result;
+				}
+			}
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2015 Jason J. (iamovrhere)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.ovrhere.android.currencyconverter.model.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources;
+
+/**
+ * <p>A compact, binary snapshot of every exchange rate: the matrix of rates 
+ * between a table of currency codes, as of a single update time. Read in 
+ * place from a (memory mapped) buffer; rates are not copied out until asked for.</p>
+ * 
+ * <p>The format, version {@value #VERSION}, is big-endian:</p>
+ * <pre>
+ * offset  size     
+ * 0       4        magic, "CCRS"
+ * 4       2        version
+ * 6       2        code count, n
+ * 8       8        update time, ms since epoch
+ * 16      3n       code table; n ascii codes of 3 letters, in matrix order
+ * ...     0-7      zero padding, so the matrix is 8 byte aligned
+ * m       8n&sup2;      matrix; float64, row-major, from row's code to column's code; 
+ *                  NaN where there is no rate
+ * m+8n&sup2;   4        CRC-32 of every byte before it
+ * </pre>
+ * 
+ * <p>A snapshot is read through a single buffer, so must be under 2GB; 
+ * at most {@value #MAX_CODE_COUNT} codes, though the count could hold more.</p>
+ * 
+ * <p>Snapshots are written by {@link RateSnapshotWriter} &amp; loaded into the 
+ * provider by {@link RateSnapshotLoader}. Instances are immutable, so thread-safe.</p>
+ *
+ * @author Jason J.
+ * @version 0.1.1-20261018
+ */
+public final class RateSnapshot {
+	/** The version of the format written &amp; the only one read. */
+	final static public int VERSION = 1;
+	/** The magic number every snapshot begins with: "CCRS". */
+	final static int MAGIC = 0x43435253;
+	/** The length of every currency code. */
+	final static int CODE_LENGTH = 3;
+	/** The bytes of the header, before the code table. */
+	final static int HEADER_SIZE = 16;
+	/** The bytes of the checksum, after the matrix. */
+	final static int CHECKSUM_SIZE = 4;
+	/** The most codes held; the most whose snapshot is within 
+	 * {@link Integer#MAX_VALUE} bytes, so addressable by a buffer. */
+	final static int MAX_CODE_COUNT = 16383;
+	
+	/////////////////////////////////////////////////////////////////////////////////////////////////
+	/// End constants
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** The whole snapshot, read-only. */
+	final private ByteBuffer mBuffer;
+	/** The codes, in matrix order. */
+	final private String[] mCodes;
+	/** The offset of the matrix in {@link #mBuffer}. */
+	final private int mMatrixOffset;
+	final private long mUpdateTime;
+	
+	private RateSnapshot(ByteBuffer buffer, String[] codes, int matrixOffset, long updateTime) {
+		this.mBuffer = buffer;
+		this.mCodes = codes;
+		this.mMatrixOffset = matrixOffset;
+		this.mUpdateTime = updateTime;
+	}
+	
+	/**
+	 * Reads a snapshot in place; the buffer is not copied, so must not change after.
+	 * @param buffer The snapshot, from its position to its limit.
+	 * @return The snapshot, validated.
+	 * @throws IOException If not a snapshot, of another version, truncated 
+	 * or failing its checksum.
+	 */
+	public static RateSnapshot read(ByteBuffer buffer) throws IOException {
+		final ByteBuffer snapshot = buffer.slice().asReadOnlyBuffer();
+		snapshot.order(ByteOrder.BIG_ENDIAN);
+		final int length = snapshot.remaining();
+		if (length < HEADER_SIZE + CHECKSUM_SIZE || snapshot.getInt(0) != MAGIC) {
+			throw new IOException("Not a rate snapshot");
+		}
+		final int version = snapshot.getShort(4) & 0xffff;
+		if (version != VERSION) {
+			throw new IOException("Unsupported snapshot version: " + version);
+		}
+		final int count = snapshot.getShort(6) & 0xffff;
+		if (count > MAX_CODE_COUNT) {
+			throw new IOException("Snapshot of too many codes: " + count);
+		}
+		final int matrixOffset = getMatrixOffset(count);
+		if (length != getSize(count)) {
+			throw new IOException("Snapshot of " + count + " codes is " + length + 
+					" bytes, not " + getSize(count));
+		}
+		final int checksumOffset = length - CHECKSUM_SIZE;
+		if (snapshot.getInt(checksumOffset) != (int) checksum(snapshot, checksumOffset)) {
+			throw new IOException("Snapshot checksum failed");
+		}
+		
+		final String[] codes = new String[count];
+		final char[] code = new char[CODE_LENGTH];
+		for (int index = 0; index < count; index++) {
+			for (int offset = 0; offset < CODE_LENGTH; offset++) {
+				code[offset] = (char) (snapshot.get(HEADER_SIZE + index * CODE_LENGTH + offset) & 0xff);
+			}
+			codes[index] = new String(code);
+		}
+		return new RateSnapshot(snapshot, codes, matrixOffset, snapshot.getLong(8));
+	}
+	
+	/**
+	 * Maps &amp; reads a snapshot file.
+	 * @param file The snapshot, as written by {@link RateSnapshotWriter}.
+	 * @return The snapshot, validated.
+	 * @throws IOException If the file cannot be mapped or is not a valid snapshot.
+	 */
+	public static RateSnapshot map(File file) throws IOException {
+		final FileInputStream in = new FileInputStream(file);
+		try {
+			final FileChannel channel = in.getChannel();
+			return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} finally {
+			in.close(); //the mapping outlives the channel
+		}
+	}
+	
+	/**
+	 * Opens &amp; reads a raw resource snapshot; mapped if the resource is stored
+	 * uncompressed, otherwise read whole into memory.
+	 * @param res The resources to open from.
+	 * @param rawId The raw resource id of the snapshot.
+	 * @return The snapshot, validated.
+	 * @throws IOException If the resource cannot be read or is not a valid snapshot.
+	 */
+	public static RateSnapshot open(Resources res, int rawId) throws IOException {
+		AssetFileDescriptor descriptor = null;
+		try {
+			descriptor = res.openRawResourceFd(rawId);
+		} catch (Resources.NotFoundException compressed) {} //cannot be mapped
+		if (descriptor == null) {
+			return read(ByteBuffer.wrap(readFully(res.openRawResource(rawId))));
+		}
+		try {
+			final FileInputStream in = descriptor.createInputStream();
+			try {
+				return read(in.getChannel().map(FileChannel.MapMode.READ_ONLY, 
+						descriptor.getStartOffset(), descriptor.getLength()));
+			} finally {
+				in.close();
+			}
+		} finally {
+			descriptor.close();
+		}
+	}
+	
+	/** @return The time of the rates, in ms since epoch. */
+	public long getUpdateTime() {
+		return mUpdateTime;
+	}
+	
+	/** @return The number of codes; the matrix is this square. */
+	public int getCodeCount() {
+		return mCodes.length;
+	}
+	
+	/**
+	 * @param index The index of the code, in matrix order.
+	 * @return The code; 3 letters. 
+	 */
+	public String getCode(int index) {
+		return mCodes[index];
+	}
+	
+	/**
+	 * @param code The code to find, in any case.
+	 * @return The index of the code, in matrix order, or -1 if not held.
+	 */
+	public int indexOf(String code) {
+		for (int index = 0; index < mCodes.length; index++) {
+			if (mCodes[index].equalsIgnoreCase(code)) {
+				return index;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * @param source The index of the source code.
+	 * @param dest The index of the destination code.
+	 * @return The rate from source to destination or NaN if there is none.
+	 * @throws IndexOutOfBoundsException If either index is not of a code.
+	 */
+	public double getRate(int source, int dest) {
+		final int count = mCodes.length;
+		if (source < 0 || source >= count || dest < 0 || dest >= count) {
+			throw new IndexOutOfBoundsException("No pair: " + source + ", " + dest);
+		}
+		return mBuffer.getDouble((int) (mMatrixOffset + ((long) source * count + dest) * 8));
+	}
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Utility methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** @return The offset of the matrix of a snapshot of the given codes. */
+	static int getMatrixOffset(int codeCount) {
+		return (HEADER_SIZE + codeCount * CODE_LENGTH + 7) & ~7;
+	}
+	
+	/** @return The size in bytes of a snapshot of the given codes; 
+	 * over {@link Integer#MAX_VALUE} for more than {@link #MAX_CODE_COUNT}. */
+	static long getSize(int codeCount) {
+		return getMatrixOffset(codeCount) + (long) codeCount * codeCount * 8 + CHECKSUM_SIZE;
+	}
+	
+	/** @return The CRC-32 of the first bytes of the buffer; its position is unchanged. */
+	static long checksum(ByteBuffer buffer, int length) {
+		final CRC32 crc = new CRC32();
+		final byte[] chunk = new byte[8 * 1024];
+		final ByteBuffer view = buffer.duplicate();
+		view.position(0);
+		for (int offset = 0; offset < length; offset += chunk.length) {
+			final int count = Math.min(chunk.length, length - offset);
+			view.get(chunk, 0, count);
+			crc.update(chunk, 0, count);
+		}
+		return crc.getValue();
+	}
+	
+	/** @return Every byte of the stream, which is closed. */
+	private static byte[] readFully(InputStream in) throws IOException {
+		try {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[8 * 1024];
+			int read = 0;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+}
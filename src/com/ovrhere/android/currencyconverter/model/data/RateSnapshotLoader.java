@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015 Jason J. (iamovrhere)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.ovrhere.android.currencyconverter.model.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.os.RemoteException;
+
+import com.ovrhere.android.currencyconverter.model.RateMatrix;
+import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.ExchangeRateEntry;
+
+/**
+ * Loads {@link RateSnapshot}s into the provider; either seeding it, over what is 
+ * there, or restoring it, in place of what is there. Cells without a rate are skipped.
+ * Snapshots are read into a {@link RateMatrix}, a row at a time.
+ * 
+ * @author Jason J.
+ * @version 0.2.0-20261018
+ */
+public final class RateSnapshotLoader {
+	
+	private RateSnapshotLoader() {}
+	
+	/**
+	 * Inserts or updates the rates of the snapshot, in one bulk insert.
+	 * @param resolver The resolver to insert with.
+	 * @param snapshot The snapshot to seed from.
+	 * @param baseCurrency The base currency, to seed only its rates, 
+	 * or <code>null</code> for every rate.
+	 * @return The number of rates inserted or updated.
+	 */
+	public static int seed(ContentResolver resolver, RateSnapshot snapshot, String baseCurrency) {
+		final ContentValues[] values = toContentValues(snapshot, baseCurrency);
+		if (values.length == 0) {
+			return 0;
+		}
+		return resolver.bulkInsert(ExchangeRateEntry.CONTENT_URI, values);
+	}
+	
+	/**
+	 * Replaces every rate with those of the snapshot, atomically; 
+	 * if it fails, the previous rates remain.
+	 * @param resolver The resolver to apply with.
+	 * @param snapshot The snapshot to restore.
+	 * @return The number of rates restored.
+	 * @throws IOException If the provider could not apply the restore.
+	 */
+	public static int restore(ContentResolver resolver, RateSnapshot snapshot) throws IOException {
+		final ContentValues[] values = toContentValues(snapshot, null);
+		final ArrayList<ContentProviderOperation> operations = 
+				new ArrayList<ContentProviderOperation>(values.length + 1);
+		operations.add(ContentProviderOperation.newDelete(ExchangeRateEntry.CONTENT_URI).build());
+		for (ContentValues pair : values) {
+			operations.add(ContentProviderOperation.newInsert(ExchangeRateEntry.CONTENT_URI)
+					.withValues(pair).build());
+		}
+		try {
+			resolver.applyBatch(CurrencyConverterContract.CONTENT_AUTHORITY, operations);
+		} catch (RemoteException e) {
+			throw new IOException("Restore failed: " + e.getMessage());
+		} catch (OperationApplicationException e) {
+			throw new IOException("Restore failed: " + e.getMessage());
+		}
+		return values.length;
+	}
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Utility methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** @return The rates of the snapshot; only those from the base, if not <code>null</code>. */
+	static ContentValues[] toContentValues(RateSnapshot snapshot, String baseCurrency) {
+		final RateMatrix.Snapshot rates = toRateMatrix(snapshot).snapshot();
+		if (baseCurrency == null) {
+			return rates.toContentValues();
+		}
+		final int base = rates.indexOf(baseCurrency);
+		return base < 0 ? new ContentValues[0] : rates.toContentValues(base);
+	}
+	
+	/** @return The rates of the snapshot, each row as of its update time. */
+	static RateMatrix toRateMatrix(RateSnapshot snapshot) {
+		final int count = snapshot.getCodeCount();
+		final RateMatrix matrix = new RateMatrix(count);
+		final int[] indices = new int[count];
+		for (int index = 0; index < count; index++) {
+			indices[index] = matrix.addCode(snapshot.getCode(index));
+		}
+		final double[] row = new double[matrix.size()]; //fewer, if codes repeat
+		for (int source = 0; source < count; source++) {
+			Arrays.fill(row, Double.NaN);
+			for (int dest = 0; dest < count; dest++) {
+				row[indices[dest]] = snapshot.getRate(source, dest);
+			}
+			matrix.replaceRow(indices[source], row, snapshot.getUpdateTime());
+		}
+		return matrix;
+	}
+}
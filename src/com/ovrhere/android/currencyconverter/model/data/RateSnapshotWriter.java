@@ -0,0 +1,131 @@
+/*
+ * Copyright 2015 Jason J. (iamovrhere)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.ovrhere.android.currencyconverter.model.data;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+
+import com.ovrhere.android.currencyconverter.model.RateMatrix;
+import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.DisplayOrderEntry;
+import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.ExchangeRateEntry;
+
+/**
+ * Writes {@link RateSnapshot}s; of given rates or of the provider's contents,
+ * gathered in a {@link RateMatrix}.
+ * 
+ * @author Jason J.
+ * @version 0.2.1-20261018
+ */
+public final class RateSnapshotWriter {
+	/** The columns of the rates exported. */
+	final static private String[] RATE_PROJECTION = new String[]{
+		ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE,
+		ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE,
+		ExchangeRateEntry.COLUMN_EXCHANGE_RATE
+	};
+	
+	private RateSnapshotWriter() {}
+	
+	/**
+	 * Exports every rate of the provider; codes in display order, then any 
+	 * others in the order first seen. Pairs without a rate are written as NaN.
+	 * @param resolver The resolver to query.
+	 * @param out The stream to write to; not closed.
+	 * @param updateTime The time of the rates, in ms since epoch.
+	 * @return The number of rates written.
+	 * @throws IOException If writing fails or there are too many codes.
+	 */
+	public static int export(ContentResolver resolver, OutputStream out, long updateTime) 
+			throws IOException {
+		final RateMatrix matrix = new RateMatrix();
+		Cursor cursor = resolver.query(DisplayOrderEntry.CONTENT_URI, 
+				new String[]{DisplayOrderEntry.COLUMN_CURRENCY_CODE}, null, null, 
+				DisplayOrderEntry.COLUMN_DEF_DISPLAY_ORDER + " ASC");
+		if (cursor != null) {
+			try {
+				while (cursor.moveToNext()) {
+					matrix.addCode(cursor.getString(0));
+				}
+			} finally {
+				cursor.close();
+			}
+		}
+		
+		int count = 0;
+		cursor = resolver.query(ExchangeRateEntry.CONTENT_URI, RATE_PROJECTION, null, null, null);
+		if (cursor != null) {
+			try {
+				count = matrix.putAll(cursor, updateTime);
+			} finally {
+				cursor.close();
+			}
+		}
+		
+		final RateMatrix.Snapshot rates = matrix.snapshot();
+		write(out, rates.getCodes(), rates.toArray(), updateTime);
+		return count;
+	}
+	
+	/**
+	 * Writes a snapshot of the given rates.
+	 * @param out The stream to write to; not closed.
+	 * @param codes The codes, in matrix order; 3 ascii letters each.
+	 * @param matrix The rates, row-major; from row's code to column's code. NaN for none.
+	 * @param updateTime The time of the rates, in ms since epoch.
+	 * @throws IOException If writing fails.
+	 * @throws IllegalArgumentException If a code is not of 3 ascii characters, 
+	 * there are too many or the matrix is not of every pair.
+	 */
+	public static void write(OutputStream out, String[] codes, double[] matrix, long updateTime) 
+			throws IOException {
+		final int count = codes.length;
+		if (count > RateSnapshot.MAX_CODE_COUNT) {
+			throw new IllegalArgumentException("Too many codes: " + count);
+		} else if (matrix.length != count * count) {
+			throw new IllegalArgumentException("Expected a matrix of " + count * count + 
+					" rates, not " + matrix.length);
+		}
+		final ByteBuffer snapshot = ByteBuffer.allocate((int) RateSnapshot.getSize(count));
+		snapshot.putInt(RateSnapshot.MAGIC)
+			.putShort((short) RateSnapshot.VERSION)
+			.putShort((short) count)
+			.putLong(updateTime);
+		for (String code : codes) {
+			if (code.length() != RateSnapshot.CODE_LENGTH) {
+				throw new IllegalArgumentException("Not a currency code: " + code);
+			}
+			for (int offset = 0; offset < RateSnapshot.CODE_LENGTH; offset++) {
+				final char letter = code.charAt(offset);
+				if (letter > 0x7f) {
+					throw new IllegalArgumentException("Not a currency code: " + code);
+				}
+				snapshot.put((byte) letter);
+			}
+		}
+		snapshot.position(RateSnapshot.getMatrixOffset(count)); //zero padded
+		for (double rate : matrix) {
+			snapshot.putDouble(rate);
+		}
+		snapshot.putInt((int) RateSnapshot.checksum(snapshot, snapshot.position()));
+		
+		out.write(snapshot.array(), 0, snapshot.position());
+		out.flush();
+	}
+}
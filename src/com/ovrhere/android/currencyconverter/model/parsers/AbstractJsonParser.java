@@ -24,13 +24,17 @@ import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonToken;
 
 /** The basic outline to a JSON parser. Requires GSON library. 
- * Compatible 2.3.3 and up.
+ * Compatible 2.3.3 and up. Parsers that do not read through a JsonReader 
+ * implement {@link JsonStreamParser} alone.
+ * 
+ * <p>Parsers are not thread-safe; each should be confined to a thread, where it
+ * may be reused for parse after parse.</p>
  * 
  * @author Jason J.
- * @version 0.2.0-20150523
+ * @version 0.4.1-20261018
  * @param <R1> The return data type for {@link #parseJsonStream(Reader)}.
  */
-abstract public class AbstractJsonParser <R1>{
+abstract public class AbstractJsonParser <R1> implements JsonStreamParser<R1> {
 	/** The tag for debugging purposes. */
 	@SuppressWarnings("unused")
 	final static private String LOGTAG = AbstractJsonParser.class
@@ -49,11 +53,13 @@ abstract public class AbstractJsonParser <R1>{
 	}
 	
 	/** Parses the JSON stream and returns it described return type.
-	 * Note that this method initializes and safely closes the reader.
+	 * Note that this method initializes and safely closes the reader, 
+	 * which is not kept after.
 	 * @param reader The input reading
 	 * @return R1, the parsed data.
 	 * @throws IOException Re-thrown exception from reader
 	 */
+	@Override
 	public R1 parseJsonStream(Reader reader) throws IOException {
 		mJsonReader =  new JsonReader(reader);
 		try {
@@ -62,16 +68,18 @@ abstract public class AbstractJsonParser <R1>{
 			try {
 				mJsonReader.close();
 			} catch (IOException e) {}
+			mJsonReader = null;
 		}
 	}
 	
 	/** Convenience method to call {@link #parseJsonStream(Reader)}.
-	 * @param in The input stream
+	 * @param in The input stream; UTF-8, as json is
 	 * @return R1, the parsed data. 
 	 * @throws IOException Re-thrown exception from reader 
 	 */
+	@Override
 	public R1 parseJsonStream(InputStream in) throws IOException {
-		InputStreamReader reader = new InputStreamReader(in);
+		InputStreamReader reader = new InputStreamReader(in, "UTF-8");
 		return parseJsonStream(reader);
 	}
 	
@@ -28,8 +28,12 @@ import android.util.Log;
 
 
 /** The basic outline for an xml parser. 
+ * 
+ * <p>Every parser shares one {@link XmlPullParserFactory}, made on first use.
+ * Parsers are not thread-safe; each should be confined to a thread, where it
+ * may be reused for parse after parse, as setting the input resets it.</p>
  * @author Jason J.
- * @version 0.3.0-20150523
+ * @version 0.4.0-20261018
  * @param R1 The return value to use for {@link #parseXmlStream(Reader)}
  */
 abstract public class AbstractXmlParser <R1> {
@@ -44,8 +48,10 @@ abstract public class AbstractXmlParser <R1> {
 	/// End contants
 	////////////////////////////////////////////////////////////////////////////////////////////////
 	
-	/** The {@link XmlPullParser} factory for this object. */
-	private XmlPullParserFactory mFactory = null;
+	/** The {@link XmlPullParser} factory shared by every parser; 
+	 * guarded by the class. */
+	private static XmlPullParserFactory sFactory = null;
+	
 	/** The pull parser for this object. */
 	protected XmlPullParser mPullParser = null;
 	
@@ -59,8 +65,7 @@ abstract public class AbstractXmlParser <R1> {
 	 * to be created. */
 	public AbstractXmlParser() throws XmlPullParserException {
 		try {
-			this.mFactory = XmlPullParserFactory.newInstance();
-			this.mPullParser = mFactory.newPullParser();
+			this.mPullParser = newPullParser();
 		} catch (XmlPullParserException e) {
 			Log.e(LOGTAG, "Unexpected error creating parser: " + e);
 			throw e;
@@ -122,6 +127,15 @@ abstract public class AbstractXmlParser <R1> {
 	////////////////////////////////////////////////////////////////////////////////////////////////
 	
 	
+	/** @return A new pull parser of the shared factory, made if need be.
+	 * @throws XmlPullParserException If the factory or parser fails to be created. */
+	private static synchronized XmlPullParser newPullParser() throws XmlPullParserException {
+		if (sFactory == null) {
+			sFactory = XmlPullParserFactory.newInstance();
+		}
+		return sFactory.newPullParser();
+	}
+	
 	/** Checks if #pullParser is <code>null</code>, if so throw.
 	 * @throws XmlPullParserException If the pull parser not previously initialized.	 */
 	final protected void parserNullCheck() throws XmlPullParserException {
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2015 Jason J. (iamovrhere)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.ovrhere.android.currencyconverter.model.parsers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+/** The entry points of a JSON parser, however it reads the JSON; 
+ * see {@link AbstractJsonParser} for one reading through a JsonReader.
+ * 
+ * @author Jason J.
+ * @version 0.1.0-20261018
+ * @param <R1> The return data type of the parse.
+ */
+public interface JsonStreamParser <R1> {
+	/** Parses the JSON stream and returns it described return type, 
+	 * safely closing the reader.
+	 * @param reader The input reading
+	 * @return R1, the parsed data.
+	 * @throws IOException Re-thrown exception from reader
+	 */
+	public R1 parseJsonStream(Reader reader) throws IOException;
+	
+	/** Parses the JSON stream and returns it described return type, 
+	 * safely closing the stream.
+	 * @param in The input stream; UTF-8, as json is
+	 * @return R1, the parsed data. 
+	 * @throws IOException Re-thrown exception from the stream 
+	 */
+	public R1 parseJsonStream(InputStream in) throws IOException;
+}
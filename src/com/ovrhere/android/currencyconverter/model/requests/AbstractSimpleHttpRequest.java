@@ -22,6 +22,9 @@ import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 import android.net.Uri;
 import android.util.Log;
@@ -32,8 +35,25 @@ import android.util.Log;
  * blocks. Default timeout is {@value #DEFAULT_TIMEOUT}ms. 
  * <p>Do not forget to 
  * call {@link #setOnRequestEventListener(OnRequestEventListener)}.</p>
+ * <p>Requests are conditional: the validators of the last 200 are kept in a 
+ * {@link HttpValidatorCache} and sent back. A 304 is a successful no-op; 
+ * the listener receives the response code &amp; {@link OnRequestEventListener#onComplete()}
+ * but not {@link OnRequestEventListener#onStart(InputStream)}. A listener that 
+ * cannot use a body may veto its validators; see {@link #discardValidators()}.</p>
+ * <p>Responses are requested compressed (gzip or deflate) and decoded as 
+ * they are read. The bytes read before & after decoding are given to any
+ * {@link OnTransferEventListener}.</p>
+ * <p>Connections are opened &amp; released through a {@link RequestClient}; 
+ * by default {@link KeepAliveRequestClient}, so connections that complete normally
+ * are kept alive for the next request to the same host.</p>
+ * <p>{@link #cancel()} may be called from any thread; it aborts the connection 
+ * in flight &amp; interrupts the thread running the request. To run requests 
+ * asynchronously, see {@link RequestExecutor}.</p>
+ * <p>If {@link #setPipelined(boolean) pipelined}, the body is downloaded &amp; 
+ * decoded on another thread, a {@link ReadAheadInputStream}, while the listener
+ * parses it on this one; so network stalls &amp; parsing overlap.</p>
  * @author Jason J.
- * @version 0.3.0-20150521
+ * @version 0.8.1-20261018
  */
 public abstract class AbstractSimpleHttpRequest implements Runnable {
 	/** The logtag for debugging. */
@@ -45,19 +65,53 @@ public abstract class AbstractSimpleHttpRequest implements Runnable {
 	/** The default timeout period in milliseconds. */ 
 	final static protected int DEFAULT_TIMEOUT = 10000; //ms
 	
+	/** The request header for the encodings accepted. */
+	final static private String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+	/** The encodings accepted; decoded in {@link #decode(InputStream, String)}. */
+	final static private String VALUE_ACCEPT_ENCODING = "gzip, deflate";
+	/** The encoding of gzip. */
+	final static private String ENCODING_GZIP = "gzip";
+	/** The encoding of zlib (deflate). */
+	final static private String ENCODING_DEFLATE = "deflate";
+	
 	/////////////////////////////////////////////////////////////////////////////////////////////////
 	/// End constants
 	////////////////////////////////////////////////////////////////////////////////////////////////
 	/** Lock for {@link #run()} to synchronize on. */
 	final private Object reqLock = new Object();
+	/** Lock guarding {@link #runner} & its interruption. */
+	final private Object runnerLock = new Object();
+	
+	/** The thread running the request, if any. */
+	private Thread runner = null;
+	/** Whether the request has been cancelled; once cancelled it does not run again. */
+	volatile private boolean cancelled = false;
+	/** Whether the validators were discarded during the run, so are not stored after. */
+	volatile private boolean validatorsDiscarded = false;
 	
 	/** The request timeout period in milliseconds. */
 	private int requestTimeout = DEFAULT_TIMEOUT;
 	
 	/** The urlConntection used in #run(). */
-	private HttpURLConnection urlConnection = null;
+	volatile private HttpURLConnection urlConnection = null;
 	/** The input stream used in #run(). */
 	private InputStream input = null;
+	/** The body as received, used in #run(). */
+	private InputStream rawInput = null;
+	/** Counts the bytes of the body as received, in #run(). */
+	private CountingInputStream encodedCounter = null;
+	/** Counts the bytes of the body once decoded, in #run(). */
+	private CountingInputStream decodedCounter = null;
+	/** Reads the body ahead of the listener, in #run(), if pipelined. */
+	private ReadAheadInputStream readAhead = null;
+	
+	/** Whether the body is read ahead, on another thread. */
+	volatile private boolean pipelined = false;
+	
+	/** The validators to make requests conditional with or <code>null</code> for none. */
+	volatile private HttpValidatorCache validatorCache = HttpValidatorCache.getDefault();
+	/** The client to open & release connections with. */
+	volatile private RequestClient requestClient = KeepAliveRequestClient.getDefault();
 			
 	/** The required listener for the request. */
 	volatile protected OnRequestEventListener mRequestEventListener = null;	
@@ -87,15 +141,74 @@ public abstract class AbstractSimpleHttpRequest implements Runnable {
 		return requestTimeout;
 	}
 	
-	/** Note this will cancel the entire thread, causing it to throw an
-	 * {@link InterruptedException}.
-	 *  Will <code>null</code> all {@link InputStream}s.*/
+	/** Sets the cache of validators used to make requests conditional.
+	 * @param validatorCache The cache, {@link HttpValidatorCache#getDefault()} by default,
+	 * or <code>null</code> to always request unconditionally. */
+	public void setValidatorCache(HttpValidatorCache validatorCache) {
+		this.validatorCache = validatorCache;
+	}
+	
+	/** Sets the client used to open & release connections. Will not take effect
+	 * during a request.
+	 * @param requestClient The client, {@link KeepAliveRequestClient#getDefault()} 
+	 * by default. */
+	public void setRequestClient(RequestClient requestClient) {
+		if (requestClient == null) {
+			throw new NullPointerException("Client cannot be null");
+		}
+		this.requestClient = requestClient;
+	}
+	
+	/** Sets whether the body is downloaded &amp; decoded on another thread, 
+	 * ahead of the listener, or as the listener reads it. Will not take effect
+	 * during a request. 
+	 * @param pipelined <code>true</code> to read ahead, by up to 
+	 * {@value ReadAheadInputStream#DEFAULT_CHUNK_COUNT} chunks of 
+	 * {@value ReadAheadInputStream#DEFAULT_CHUNK_SIZE} bytes; 
+	 * <code>false</code> by default. */
+	public void setPipelined(boolean pipelined) {
+		this.pipelined = pipelined;
+	}
+	
+	/** @return <code>true</code> if the body is read ahead, on another thread. */
+	public boolean isPipelined() {
+		return pipelined;
+	}
+	
+	/** Forgets the validators of this request, so the next is unconditional.
+	 * Call when the body of a response could not be used; e.g. failed parsing. 
+	 * If called during the run, such as from 
+	 * {@link OnRequestEventListener#onStart(InputStream)}, the validators of
+	 * its response are not stored either. */
+	public void discardValidators() {
+		validatorsDiscarded = true;
+		final HttpValidatorCache cache = validatorCache;
+		if (cache != null) {
+			cache.remove(getUriRequest().toString());
+		}
+	}
+	
+	/** Cancels the request from any thread. The connection in flight (if any) is 
+	 * torn down, so blocking reads fail at once, and the thread running the 
+	 * request is interrupted. The listener is sent no further events; 
+	 * not even {@link OnRequestEventListener#onException(Exception)}.
+	 * Once cancelled, {@link #run()} returns immediately. */
 	public void cancel(){
-		Thread t =Thread.currentThread();
-		synchronized (t) {
-			disconnect();
-			t.interrupt();
+		cancelled = true;
+		final HttpURLConnection connection = urlConnection;
+		if (connection != null) {
+			connection.disconnect();
 		}
+		synchronized (runnerLock) {
+			if (runner != null) {
+				runner.interrupt();
+			}
+		}
+	}
+	
+	/** @return <code>true</code> if {@link #cancel()} has been called. */
+	public boolean isCancelled() {
+		return cancelled;
 	}
 	
 	
@@ -118,18 +231,30 @@ public abstract class AbstractSimpleHttpRequest implements Runnable {
 		synchronized (reqLock) {
 			final int QUERY_TIMEOUT = requestTimeout;
 			final String preparedRequest = getUriRequest().toString();
+			final HttpValidatorCache cache = validatorCache;
+			final RequestClient client = requestClient;
+			final boolean pipeline = pipelined;
 			
 			int responseCode = 0;
-			if (Thread.interrupted()){
+			boolean reusable = false;
+			if (Thread.interrupted() || cancelled){
 				return;
 			}
+			validatorsDiscarded = false;
+			synchronized (runnerLock) {
+				runner = Thread.currentThread();
+			}
 			try {
 				URL url = new URL(preparedRequest);
-				urlConnection = (HttpURLConnection) url.openConnection();
+				urlConnection = client.open(url);
 				urlConnection.setConnectTimeout((int) QUERY_TIMEOUT);
 				urlConnection.setReadTimeout((int) QUERY_TIMEOUT);
 				urlConnection.setRequestMethod("GET");
 				urlConnection.setDoInput(true);
+				//set explicitly, so we decode (& count) on every version
+				urlConnection.setRequestProperty(HEADER_ACCEPT_ENCODING, VALUE_ACCEPT_ENCODING);
+				final boolean conditional = cache != null && 
+						cache.applyTo(preparedRequest, urlConnection);
 			    // Start query
 				urlConnection.connect();
 				responseCode = urlConnection.getResponseCode();
@@ -137,16 +262,51 @@ public abstract class AbstractSimpleHttpRequest implements Runnable {
 				if (Thread.interrupted()){
 					return;
 				}
-				input = new BufferedInputStream(urlConnection.getInputStream());
+				if (conditional && responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+					cache.onNotModified(preparedRequest);
+					rawInput = getEmptyBody(urlConnection);
+					reusable = true;
+					if (mRequestEventListener != null){
+						mRequestEventListener.onResponseCode(responseCode);
+						mRequestEventListener.onComplete(); //nothing has changed
+					}
+					return;
+				}
+				rawInput = urlConnection.getInputStream();
+				encodedCounter = new CountingInputStream(rawInput);
+				decodedCounter = new CountingInputStream(
+						decode(encodedCounter, urlConnection.getContentEncoding()));
+				if (pipeline) {
+					readAhead = new ReadAheadInputStream(decodedCounter);
+					input = readAhead;
+				} else {
+					input = new BufferedInputStream(decodedCounter);
+				}
 				
 				if (mRequestEventListener != null){
 					mRequestEventListener.onResponseCode(responseCode);
 					mRequestEventListener.onStart(input);
 				}
+				if (readAhead != null) {
+					readAhead.stop(); //counts are final once it leaves the body
+				}
 				if (Thread.interrupted()){
 					return;
 				}
+				final OnTransferEventListener transferListener = 
+						mRequestEventListener instanceof OnTransferEventListener ?
+						(OnTransferEventListener) mRequestEventListener : null;
+				if (transferListener != null) {
+					transferListener.onTransfer(
+							encodedCounter.getCount(), decodedCounter.getCount());
+				}
+				if (cache != null && responseCode == HttpURLConnection.HTTP_OK && 
+						!validatorsDiscarded) {
+					//only once the body has been consumed without error or veto
+					cache.store(preparedRequest, urlConnection);
+				}
 								
+				reusable = true;
 				if (mRequestEventListener != null){
 					mRequestEventListener.onComplete();	
 				}
@@ -174,12 +334,18 @@ public abstract class AbstractSimpleHttpRequest implements Runnable {
 				if (DEBUG){
 					Log.w(LOGTAG, "Unexpected error occurred: " + e);
 				}
-				if (mRequestEventListener != null){
+				if (mRequestEventListener != null && !cancelled){
 					mRequestEventListener.onException(e);
 				}
 				
 			} finally {
-				disconnect();
+				release(client, reusable && !cancelled);
+				synchronized (runnerLock) {
+					runner = null;
+					if (cancelled) {
+						Thread.interrupted(); //do not leak into the thread's next task
+					}
+				}
 			}
 		}
 		
@@ -191,24 +357,69 @@ public abstract class AbstractSimpleHttpRequest implements Runnable {
 	
 	/** Processes the exception requests safely. */
 	private void onException(int responseCode, IOException e) {
-		if (mRequestEventListener != null){
+		if (mRequestEventListener != null && !cancelled){
 			mRequestEventListener.onResponseCode(responseCode);
 			mRequestEventListener.onException(e);
 		}
 	}
 	
-	/** Disconnect cleanup. */
-	private void disconnect() {
+	/**
+	 * Wraps the stream to decode it as it is read.
+	 * @param in The stream as received.
+	 * @param contentEncoding The <code>Content-Encoding</code> or <code>null</code>.
+	 * @return The decoding stream or the stream itself if not encoded.
+	 * @throws IOException If the gzip header cannot be read.
+	 */
+	private static InputStream decode(InputStream in, String contentEncoding) 
+			throws IOException {
+		if (contentEncoding == null) {
+			return in;
+		}
+		final String encoding = contentEncoding.trim().toLowerCase(Locale.US);
+		if (ENCODING_GZIP.equals(encoding)) {
+			return new GZIPInputStream(in);
+		} else if (ENCODING_DEFLATE.equals(encoding)) {
+			return new InflaterInputStream(in);
+		}
+		return in;
+	}
+	
+	/** @return The body of a response without one; or <code>null</code> if unavailable. */
+	private static InputStream getEmptyBody(HttpURLConnection connection) {
 		try {
-			if (urlConnection != null ){
-				urlConnection.disconnect();
-				urlConnection = null;
-			}
-			if (input != null){
-				input.close();
-				input = null;
+			return connection.getInputStream();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+	
+	/** Releases the connection to the client & clears the streams.
+	 * @param client The client the connection was opened with.
+	 * @param reusable <code>true</code> if the connection may be kept alive. */
+	private void release(RequestClient client, boolean reusable) {
+		final HttpURLConnection connection = urlConnection;
+		final InputStream body = rawInput;
+		final InputStream decoded = input;
+		if (readAhead != null) {
+			if (!reusable && connection != null) {
+				connection.disconnect(); //so any read in flight fails at once
 			}
-		} catch (IOException e) {}
+			readAhead.stop(); //before the body is drained or closed here
+		}
+		urlConnection = null;
+		rawInput = null;
+		input = null;
+		encodedCounter = null;
+		decodedCounter = null;
+		readAhead = null;
+		if (connection != null) {
+			client.release(connection, body, reusable);
+		}
+		if (decoded != null) {
+			try {
+				decoded.close(); //after release; frees any inflater
+			} catch (IOException e) {}
+		}
 	}
 	
 	
@@ -234,11 +445,24 @@ public abstract class AbstractSimpleHttpRequest implements Runnable {
 		 * @param responseCode The HTTP response codes or 0.		 */
 		public void onResponseCode(int responseCode);
 		/** Sent when the request starts
-		 * @param in The input stream being used		 */
+		 * @param in The input stream being used; if the request is pipelined,
+		 * filled by another thread, though still read on this one.		 */
 		public void onStart(InputStream in);
 		/** When the request run has been concluded successfully. */
 		public void onComplete();
 	}
+	
+	/** Optionally implemented by a {@link OnRequestEventListener} to be told 
+	 * the size of the body received, before &amp; after decoding.
+	 *  @version 0.1.0-20261018	 */
+	public interface OnTransferEventListener extends OnRequestEventListener {
+		/** Sent after {@link #onStart(InputStream)} returns, before 
+		 * {@link #onComplete()}. Only the bytes the listener read are counted; 
+		 * or read ahead for it, if pipelined.
+		 * @param encodedBytes The bytes received; compressed, if the response was.
+		 * @param decodedBytes The bytes given to the listener, after decoding. */
+		public void onTransfer(long encodedBytes, long decodedBytes);
+	}
 
 }
 
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2015 Jason J. (iamovrhere)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.ovrhere.android.currencyconverter.model.requests;
+
+import android.os.SystemClock;
+
+/**
+ * <p>Stops requests to a failing service for a while, rather than adding to its 
+ * load and draining the battery. After {@link #getFailureThreshold()} failures 
+ * in a row the breaker opens and every request is refused for 
+ * {@link #getOpenDuration()} ms. Then a single trial is allowed (half open): 
+ * success closes the breaker, failure opens it again.</p>
+ * 
+ * <p>Thread safe.</p>
+ *
+ * @author Jason J.
+ * @version 0.1.0-20261018
+ */
+public class CircuitBreaker {
+	/** The default number of failures in a row that open the breaker. */
+	final static public int DEFAULT_FAILURE_THRESHOLD = 3;
+	/** The default time the breaker stays open. */
+	final static public long DEFAULT_OPEN_DURATION = 10 * 60 * 1000; //ms
+	
+	/** The states of the breaker. */
+	public enum State { 
+		/** Requests are allowed. */
+		CLOSED, 
+		/** Requests are refused. */
+		OPEN, 
+		/** A single trial request is allowed. */
+		HALF_OPEN 
+	}
+	
+	/////////////////////////////////////////////////////////////////////////////////////////////////
+	/// End constants
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	final private int mFailureThreshold;
+	final private long mOpenDuration;
+	
+	private State mState = State.CLOSED;
+	/** The failures in a row. */
+	private int mFailureCount = 0;
+	/** The time the breaker last opened, by {@link #now()}. */
+	private long mOpenedAt = 0;
+	/** Whether the trial of the half open breaker is in progress. */
+	private boolean mTrialInProgress = false;
+	/** The count of requests refused. */
+	private long mRejectedCount = 0;
+	
+	/** Uses the defaults. */
+	public CircuitBreaker() {
+		this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_DURATION);
+	}
+	
+	/**
+	 * @param failureThreshold The number of failures in a row that open the 
+	 * breaker; at least 1.
+	 * @param openDuration The time in milliseconds the breaker stays open.
+	 */
+	public CircuitBreaker(int failureThreshold, long openDuration) {
+		if (failureThreshold < 1) {
+			throw new IllegalArgumentException("Threshold must be at least 1 failure");
+		}
+		this.mFailureThreshold = failureThreshold;
+		this.mOpenDuration = openDuration;
+	}
+	
+	/**
+	 * Asks to make a request. Every allowed request must be followed by one of 
+	 * {@link #onSuccess()}, {@link #onFailure()} or {@link #onAbandoned()}, 
+	 * or a trial is never ended.
+	 * @return <code>true</code> if the request may be made, 
+	 * <code>false</code> if it is refused.
+	 */
+	public synchronized boolean allowRequest() {
+		if (mState == State.OPEN && now() - mOpenedAt >= mOpenDuration) {
+			mState = State.HALF_OPEN;
+			mTrialInProgress = false;
+		}
+		switch (mState) {
+			case CLOSED:
+				return true;
+			case HALF_OPEN:
+				if (!mTrialInProgress) {
+					mTrialInProgress = true;
+					return true;
+				}
+				//fall through; only the one trial
+			default:
+				mRejectedCount++;
+				return false;
+		}
+	}
+	
+	/** Records a successful request; closes the breaker. */
+	public synchronized void onSuccess() {
+		mState = State.CLOSED;
+		mFailureCount = 0;
+		mTrialInProgress = false;
+	}
+	
+	/** Records a failed request; opens the breaker if at the threshold or on trial. */
+	public synchronized void onFailure() {
+		mFailureCount++;
+		mTrialInProgress = false;
+		if (mState == State.HALF_OPEN || mFailureCount >= mFailureThreshold) {
+			mState = State.OPEN;
+			mOpenedAt = now();
+		}
+	}
+	
+	/** Records a request abandoned before its outcome was known, e.g. cancelled;
+	 * a trial may be made again. */
+	public synchronized void onAbandoned() {
+		mTrialInProgress = false;
+	}
+	
+	/** @return The current state; an open breaker past its duration is 
+	 * reported half open. */
+	public synchronized State getState() {
+		if (mState == State.OPEN && now() - mOpenedAt >= mOpenDuration) {
+			return State.HALF_OPEN;
+		}
+		return mState;
+	}
+	
+	/** @return The failures in a row. */
+	public synchronized int getFailureCount() {
+		return mFailureCount;
+	}
+	
+	/** @return The count of requests refused. */
+	public synchronized long getRejectedCount() {
+		return mRejectedCount;
+	}
+	
+	/** @return The number of failures in a row that open the breaker. */
+	public int getFailureThreshold() {
+		return mFailureThreshold;
+	}
+	
+	/** @return The time in milliseconds the breaker stays open. */
+	public long getOpenDuration() {
+		return mOpenDuration;
+	}
+	
+	/** @return The current time in milliseconds; monotonic. Overridden for testing. */
+	protected long now() {
+		return SystemClock.elapsedRealtime();
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2015 Jason J. (iamovrhere)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.ovrhere.android.currencyconverter.model.requests;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the bytes read (or skipped) through it. Marks are not supported,
+ * so every byte is counted once.
+ *
+ * @author Jason J.
+ * @version 0.1.0-20261018
+ */
+public class CountingInputStream extends FilterInputStream {
+	/** The bytes read thus far. */
+	volatile private long count = 0;
+
+	/** @param in The stream to count. */
+	public CountingInputStream(InputStream in) {
+		super(in);
+	}
+
+	/** @return The bytes read or skipped thus far. */
+	public long getCount() {
+		return count;
+	}
+
+	@Override
+	public int read() throws IOException {
+		final int result = super.read();
+		if (result != -1) {
+			count++;
+		}
+		return result;
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int length) throws IOException {
+		final int result = super.read(buffer, offset, length);
+		if (result > 0) {
+			count += result;
+		}
+		return result;
+	}
+
+	@Override
+	public long skip(long byteCount) throws IOException {
+		final long result = super.skip(byteCount);
+		count += result;
+		return result;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {}
+
+	@Override
+	public synchronized void reset() throws IOException {
+		throw new IOException("Mark not supported");
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2015 Jason J. (iamovrhere)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.ovrhere.android.currencyconverter.model.requests;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.Random;
+
+/**
+ * <p>A {@link RetryPolicy} of exponential backoff with full jitter: the wait 
+ * before retry <var>n</var> is uniformly random between 0 and 
+ * <code>min(maxDelay, baseDelay * 2^(n - 1))</code>. The jitter spreads the 
+ * retries of many clients, so they do not return in lockstep.</p>
+ * 
+ * <p>Retryable failures are those that may pass: no response (a connection 
+ * failure or timeout), <code>408</code>, <code>429</code>, a <code>5xx</code> 
+ * other than <code>501</code> &amp; <code>505</code>, and a body cut short 
+ * (an {@link IOException} on a <code>2xx</code>). Any other response, or a 
+ * body that did not parse, would fail the same way again.</p>
+ *
+ * @author Jason J.
+ * @version 0.1.0-20261018
+ */
+public class ExponentialBackoffPolicy implements RetryPolicy {
+	/** The default cap of the first wait. */
+	final static public long DEFAULT_BASE_DELAY = 500; //ms
+	/** The default cap of any wait. */
+	final static public long DEFAULT_MAX_DELAY = 30 * 1000; //ms
+	/** The default number of retries. */
+	final static public int DEFAULT_MAX_RETRIES = 3;
+	
+	/** Too many requests; from RFC 6585, not in {@link HttpURLConnection}. */
+	final static private int HTTP_TOO_MANY_REQUESTS = 429;
+	
+	/////////////////////////////////////////////////////////////////////////////////////////////////
+	/// End constants
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	final private long mBaseDelay;
+	final private long mMaxDelay;
+	final private int mMaxRetries;
+	final private Random mRandom;
+	
+	/** Uses the defaults. */
+	public ExponentialBackoffPolicy() {
+		this(DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY, DEFAULT_MAX_RETRIES);
+	}
+	
+	/**
+	 * @param baseDelay The cap of the first wait in milliseconds.
+	 * @param maxDelay The cap of any wait in milliseconds.
+	 * @param maxRetries The number of retries; 0 for none.
+	 */
+	public ExponentialBackoffPolicy(long baseDelay, long maxDelay, int maxRetries) {
+		this(baseDelay, maxDelay, maxRetries, new Random());
+	}
+	
+	/** As {@link #ExponentialBackoffPolicy(long, long, int)}, with the given source of jitter. */
+	ExponentialBackoffPolicy(long baseDelay, long maxDelay, int maxRetries, Random random) {
+		if (baseDelay < 0 || maxDelay < baseDelay || maxRetries < 0) {
+			throw new IllegalArgumentException("Delays & retries must be positive; " +
+					"the max delay no less than the base");
+		}
+		this.mBaseDelay = baseDelay;
+		this.mMaxDelay = maxDelay;
+		this.mMaxRetries = maxRetries;
+		this.mRandom = random;
+	}
+	
+	@Override
+	public boolean isRetryable(int responseCode, Exception error) {
+		if (responseCode <= 0) {
+			return error == null || error instanceof IOException;
+		} else if (responseCode >= 200 && responseCode < 300) {
+			return error instanceof IOException; //cut short
+		}
+		switch (responseCode) {
+			case HttpURLConnection.HTTP_CLIENT_TIMEOUT:
+			case HTTP_TOO_MANY_REQUESTS:
+				return true;
+			case HttpURLConnection.HTTP_NOT_IMPLEMENTED:
+			case HttpURLConnection.HTTP_VERSION:
+				return false;
+			default:
+				return responseCode >= 500 && responseCode < 600;
+		}
+	}
+	
+	@Override
+	public long getBackoff(int retry) {
+		if (retry < 1 || retry > mMaxRetries) {
+			return -1;
+		}
+		final long cap = getCap(retry);
+		synchronized (mRandom) {
+			return (long) (mRandom.nextDouble() * (cap + 1));
+		}
+	}
+	
+	/** @return The number of retries. */
+	public int getMaxRetries() {
+		return mMaxRetries;
+	}
+	
+	/**
+	 * @param retry The retry about to be made; 1 for the first.
+	 * @return The longest wait before the retry in milliseconds.
+	 */
+	public long getCap(int retry) {
+		//stop doubling once capped; avoids overflow
+		long cap = mBaseDelay;
+		for (int index = 1; index < retry && cap < mMaxDelay; index++) {
+			cap *= 2;
+		}
+		return Math.min(cap, mMaxDelay);
+	}
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2015 Jason J. (iamovrhere)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.ovrhere.android.currencyconverter.model.requests;
+
+import java.net.HttpURLConnection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Holds the validators (<code>ETag</code> &amp; <code>Last-Modified</code>) of
+ * the last successful response per request uri, so the next request can be
+ * made conditional. Also counts the 304s received and the bytes they saved,
+ * as given by the <code>Content-Length</code> of the response they validated.
+ *
+ * <p>Held in memory, least recently used first out, up to {@value #MAX_ENTRIES}
+ * uris. Thread safe.</p>
+ *
+ * @author Jason J.
+ * @version 0.1.0-20261018
+ */
+public class HttpValidatorCache {
+	/** The maximum number of uris to hold validators for. */
+	final static public int MAX_ENTRIES = 64;
+
+	/** The request header for the entity tag. */
+	final static private String HEADER_IF_NONE_MATCH = "If-None-Match";
+	/** The request header for the last modified date. */
+	final static private String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+	/** The response header for the entity tag. */
+	final static private String HEADER_ETAG = "ETag";
+	/** The response header for the last modified date. */
+	final static private String HEADER_LAST_MODIFIED = "Last-Modified";
+
+	/** The process wide cache. */
+	final static private HttpValidatorCache sDefault = new HttpValidatorCache();
+
+	/////////////////////////////////////////////////////////////////////////////////////////////////
+	/// End constants
+	////////////////////////////////////////////////////////////////////////////////////////////////
+
+	/** The validators by uri, in access order. */
+	final private LinkedHashMap<String, Validators> mEntries =
+			new LinkedHashMap<String, Validators>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, Validators> eldest) {
+					return size() > MAX_ENTRIES;
+				}
+			};
+
+	private long mNotModifiedCount = 0;
+	private long mBytesSaved = 0;
+
+	/** @return The process wide cache, used by requests by default. */
+	public static HttpValidatorCache getDefault() {
+		return sDefault;
+	}
+
+	/**
+	 * Sets the conditional headers on the connection, if there are validators
+	 * for the uri. Must be called before connecting.
+	 * @param uri The request uri.
+	 * @param connection The unconnected connection.
+	 * @return <code>true</code> if the request was made conditional.
+	 */
+	public boolean applyTo(String uri, HttpURLConnection connection) {
+		final Validators validators;
+		synchronized (mEntries) {
+			validators = mEntries.get(uri);
+		}
+		if (validators == null) {
+			return false;
+		}
+		if (validators.eTag != null) {
+			connection.setRequestProperty(HEADER_IF_NONE_MATCH, validators.eTag);
+		}
+		if (validators.lastModified != null) {
+			connection.setRequestProperty(HEADER_IF_MODIFIED_SINCE, validators.lastModified);
+		}
+		return true;
+	}
+
+	/**
+	 * Stores the validators of a successful (200) response, replacing any before.
+	 * Responses without validators remove the uri's entry.
+	 * @param uri The request uri.
+	 * @param connection The connected connection.
+	 */
+	public void store(String uri, HttpURLConnection connection) {
+		final String eTag = connection.getHeaderField(HEADER_ETAG);
+		final String lastModified = connection.getHeaderField(HEADER_LAST_MODIFIED);
+		synchronized (mEntries) {
+			if (eTag == null && lastModified == null) {
+				mEntries.remove(uri);
+			} else {
+				mEntries.put(uri,
+						new Validators(eTag, lastModified, connection.getContentLength()));
+			}
+		}
+	}
+
+	/**
+	 * Records a 304 for the uri.
+	 * @param uri The request uri.
+	 */
+	public void onNotModified(String uri) {
+		synchronized (mEntries) {
+			final Validators validators = mEntries.get(uri);
+			mNotModifiedCount++;
+			if (validators != null && validators.contentLength > 0) {
+				mBytesSaved += validators.contentLength;
+			}
+		}
+	}
+
+	/**
+	 * Removes the validators of the uri; its next request will be unconditional.
+	 * @param uri The request uri.
+	 */
+	public void remove(String uri) {
+		synchronized (mEntries) {
+			mEntries.remove(uri);
+		}
+	}
+
+	/** @return The count of 304s received. */
+	public long getNotModifiedCount() {
+		synchronized (mEntries) {
+			return mNotModifiedCount;
+		}
+	}
+
+	/** @return The body bytes not downloaded due to 304s. */
+	public long getBytesSaved() {
+		synchronized (mEntries) {
+			return mBytesSaved;
+		}
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////////
+	/// Internal classes
+	////////////////////////////////////////////////////////////////////////////////////////////////
+
+	/** The validators of a response. */
+	private static class Validators {
+		final String eTag;
+		final String lastModified;
+		/** The length of the body validated or -1 if unknown. */
+		final int contentLength;
+
+		public Validators(String eTag, String lastModified, int contentLength) {
+			this.eTag = eTag;
+			this.lastModified = lastModified;
+			this.contentLength = contentLength;
+		}
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015 Jason J. (iamovrhere)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.ovrhere.android.currencyconverter.model.requests;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * <p>A {@link RequestClient} that returns connections to the platform's 
+ * keep-alive pool, instead of tearing them down. {@link HttpURLConnection} 
+ * pools a socket once its body has been read to the end and closed; 
+ * {@link HttpURLConnection#disconnect()} closes the socket. So a reusable 
+ * connection is drained (up to {@value #MAX_DRAIN_BYTES} bytes) &amp; closed, 
+ * any other is disconnected.</p>
+ * 
+ * <p>The pool itself belongs to the platform and is process wide. Its size 
+ * (idle connections kept) and idle eviction time are configured through the 
+ * <code>http.maxConnections</code> &amp; <code>http.keepAliveDuration</code> 
+ * system properties, which {@link #configurePool(int, long)} sets. They are 
+ * read when the pool is first used, so configure before the first request.</p>
+ *
+ * @author Jason J.
+ * @version 0.1.0-20261018
+ */
+public class KeepAliveRequestClient implements RequestClient {
+	/** The default number of idle connections kept. */
+	final static public int DEFAULT_POOL_SIZE = 5;
+	/** The default time an idle connection is kept, in milliseconds. */
+	final static public long DEFAULT_KEEP_ALIVE_DURATION = 5 * 60 * 1000; //ms
+	
+	/** The most bytes read to reach the end of an unread body; larger bodies 
+	 * are cheaper to discard with their connection. */
+	final static private int MAX_DRAIN_BYTES = 64 * 1024;
+	
+	/** The system property enabling keep-alive. */
+	final static private String PROPERTY_KEEP_ALIVE = "http.keepAlive";
+	/** The system property of the pool size. */
+	final static private String PROPERTY_MAX_CONNECTIONS = "http.maxConnections";
+	/** The system property of the idle eviction time, in ms. */
+	final static private String PROPERTY_KEEP_ALIVE_DURATION = "http.keepAliveDuration";
+	
+	/** The process wide client. */
+	final static private KeepAliveRequestClient sDefault = new KeepAliveRequestClient();
+	
+	/////////////////////////////////////////////////////////////////////////////////////////////////
+	/// End constants
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** @return The process wide client, used by requests by default. */
+	public static KeepAliveRequestClient getDefault() {
+		return sDefault;
+	}
+	
+	/**
+	 * Enables keep-alive and configures the platform's connection pool.
+	 * @param poolSize The maximum number of idle connections kept; at least 1.
+	 * @param keepAliveDuration The time in milliseconds before an idle 
+	 * connection is evicted.
+	 */
+	public static void configurePool(int poolSize, long keepAliveDuration) {
+		if (poolSize < 1) {
+			throw new IllegalArgumentException("Pool must hold at least 1 connection");
+		}
+		System.setProperty(PROPERTY_KEEP_ALIVE, "true");
+		System.setProperty(PROPERTY_MAX_CONNECTIONS, String.valueOf(poolSize));
+		System.setProperty(PROPERTY_KEEP_ALIVE_DURATION, String.valueOf(keepAliveDuration));
+	}
+	
+	@Override
+	public HttpURLConnection open(URL url) throws IOException {
+		return (HttpURLConnection) url.openConnection();
+	}
+	
+	@Override
+	public void release(HttpURLConnection connection, InputStream body, boolean reusable) {
+		if (reusable && body != null && drain(body)) {
+			return; //pooled
+		}
+		connection.disconnect();
+	}
+	
+	/////////////////////////////////////////////////////////////////////////////////////////////////
+	/// Helper methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** Reads the body to its end & closes it, returning its connection to the pool.
+	 * @return <code>true</code> if drained, <code>false</code> if too large or failed. */
+	private static boolean drain(InputStream body) {
+		try {
+			final byte[] buffer = new byte[4096];
+			int drained = 0;
+			int read = 0;
+			while ((read = body.read(buffer)) != -1) {
+				drained += read;
+				if (drained > MAX_DRAIN_BYTES) {
+					return false;
+				}
+			}
+			body.close();
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,354 @@
+/*
+ * Copyright 2015 Jason J. (iamovrhere)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.ovrhere.android.currencyconverter.model.requests;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Reads a stream ahead of its reader, on another thread. The other thread 
+ * reads the source into a bounded ring of byte chunks, allocated once &amp; 
+ * reused, while the reader of this stream takes them from the ring; so a 
+ * slow source &amp; a slow reader wait on each other only when the ring is 
+ * empty or full.</p>
+ * 
+ * <p>Every read of the source is handed on as it returns, so the reader sees 
+ * bytes as soon as they arrive. A failure of the source is thrown to the 
+ * reader once it has read every byte before it.</p>
+ * 
+ * <p>{@link #close()} stops the read ahead, waits for the other thread to 
+ * leave the source &amp; then closes it; {@link #stop()} leaves it open.
+ * A read of the source in flight is waited on, so tear down the source 
+ * first (e.g. disconnect) to stop at once. The reader of this stream must 
+ * be a single thread.</p>
+ *
+ * @author Jason J.
+ * @version 0.1.0-20261018
+ */
+public class ReadAheadInputStream extends InputStream {
+	/** The default size of each chunk, in bytes. */
+	final static public int DEFAULT_CHUNK_SIZE = 8 * 1024;
+	/** The default number of chunks in the ring. */
+	final static public int DEFAULT_CHUNK_COUNT = 8;
+	
+	/** The threads reading ahead; made as needed &amp; kept while in use. */
+	final static private ExecutorService sReaders = 
+			Executors.newCachedThreadPool(new ReaderThreadFactory());
+	
+	/////////////////////////////////////////////////////////////////////////////////////////////////
+	/// End constants
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** The stream read ahead. */
+	final private InputStream mSource;
+	/** The chunks; those from {@link #mHead} to {@link #mHead} + {@link #mCount} 
+	 * are filled, the rest free. Guarded by the ring itself. */
+	final private Chunk[] mRing;
+	private int mHead = 0;
+	private int mCount = 0;
+	/** Whether the source has ended. */
+	private boolean mEnded = false;
+	/** The failure of the source, if any. */
+	private Exception mError = null;
+	/** Whether the stream has been stopped or closed. */
+	volatile private boolean mClosed = false;
+	/** Whether the source has been closed. */
+	private boolean mSourceClosed = false;
+	/** Whether the other thread has left the source. */
+	private boolean mReaderDone = false;
+	
+	/** The times the reader waited on an empty ring. */
+	private int mEmptyWaits = 0;
+	/** The times the source waited on a full ring. */
+	private int mFullWaits = 0;
+	
+	/** The chunk being read, at {@link #mHead}, or <code>null</code>. Reader only. */
+	private Chunk mCurrent = null;
+	/** The position in {@link #mCurrent}. Reader only. */
+	private int mPosition = 0;
+	
+	/**
+	 * Starts reading ahead, in chunks of {@value #DEFAULT_CHUNK_SIZE} bytes 
+	 * up to {@value #DEFAULT_CHUNK_COUNT} chunks ahead. 
+	 * @param source The stream to read ahead.
+	 */
+	public ReadAheadInputStream(InputStream source) {
+		this(source, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNK_COUNT);
+	}
+	
+	/**
+	 * Starts reading ahead.
+	 * @param source The stream to read ahead.
+	 * @param chunkSize The size of each chunk; at least 1.
+	 * @param chunkCount The number of chunks to read ahead; at least 2, so that 
+	 * one may be filled while another is read.
+	 */
+	public ReadAheadInputStream(InputStream source, int chunkSize, int chunkCount) {
+		if (chunkSize < 1 || chunkCount < 2) {
+			throw new IllegalArgumentException("Must have at least 2 chunks of at least 1 byte");
+		}
+		this.mSource = source;
+		this.mRing = new Chunk[chunkCount];
+		for (int index = 0; index < chunkCount; index++) {
+			mRing[index] = new Chunk(chunkSize);
+		}
+		sReaders.execute(new Runnable() {
+			@Override
+			public void run() {
+				readAhead();
+			}
+		});
+	}
+	
+	/** @return The times the reader of this stream waited on the source. */
+	public int getEmptyWaitCount() {
+		synchronized (mRing) {
+			return mEmptyWaits;
+		}
+	}
+	
+	/** @return The times the source was read ahead as far as allowed &amp; 
+	 * waited on the reader of this stream. */
+	public int getFullWaitCount() {
+		synchronized (mRing) {
+			return mFullWaits;
+		}
+	}
+	
+	/////////////////////////////////////////////////////////////////////////////////////////////////
+	/// Override methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	@Override
+	public int read() throws IOException {
+		if (!nextChunk()) {
+			return -1;
+		}
+		final int result = mCurrent.data[mPosition++] & 0xff;
+		finishChunk();
+		return result;
+	}
+	
+	@Override
+	public int read(byte[] buffer, int offset, int length) throws IOException {
+		if (offset < 0 || length < 0 || length > buffer.length - offset) {
+			throw new IndexOutOfBoundsException();
+		} else if (length == 0) {
+			return 0;
+		} else if (!nextChunk()) {
+			return -1;
+		}
+		final int count = Math.min(length, mCurrent.length - mPosition);
+		System.arraycopy(mCurrent.data, mPosition, buffer, offset, count);
+		mPosition += count;
+		finishChunk();
+		return count;
+	}
+	
+	@Override
+	public long skip(long byteCount) throws IOException {
+		if (byteCount <= 0 || !nextChunk()) {
+			return 0;
+		}
+		final int count = (int) Math.min(byteCount, mCurrent.length - mPosition);
+		mPosition += count;
+		finishChunk();
+		return count;
+	}
+	
+	/** @return The bytes read ahead &amp; not yet read. */
+	@Override
+	public int available() throws IOException {
+		synchronized (mRing) {
+			if (mClosed) {
+				throw new IOException("Stream closed");
+			}
+			int available = 0;
+			for (int index = 0; index < mCount; index++) {
+				available += mRing[(mHead + index) % mRing.length].length;
+			}
+			return available - (mCurrent != null ? mPosition : 0);
+		}
+	}
+	
+	/** Stops reading ahead, waits for the source to be left &amp; closes it. 
+	 * @throws IOException Re-thrown from the source. */
+	@Override
+	public void close() throws IOException {
+		stop();
+		final boolean sourceOpen;
+		synchronized (mRing) {
+			sourceOpen = !mSourceClosed;
+			mSourceClosed = true;
+		}
+		if (sourceOpen) {
+			mSource.close();
+		}
+	}
+	
+	/** Stops reading ahead &amp; waits for the source to be left, without 
+	 * closing it; the source is free to be read (or drained) from wherever it 
+	 * was left. Any read after throws. May be called from any thread. */
+	public void stop() {
+		boolean interrupted = false;
+		synchronized (mRing) {
+			mClosed = true;
+			mRing.notifyAll();
+			while (!mReaderDone) {
+				try {
+					mRing.wait();
+				} catch (InterruptedException e) {
+					interrupted = true; //the read in flight must still end
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Helper methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** Makes {@link #mCurrent} the next chunk with bytes to read, waiting if need be.
+	 * @return <code>false</code> at the end of the source.
+	 * @throws IOException The failure of the source, once every byte before it 
+	 * has been read, or {@link InterruptedIOException} if interrupted waiting. */
+	private boolean nextChunk() throws IOException {
+		if (mClosed) {
+			throw new IOException("Stream closed");
+		} else if (mCurrent != null) {
+			return true;
+		}
+		synchronized (mRing) {
+			if (mCount == 0 && !mEnded) {
+				mEmptyWaits++;
+			}
+			while (mCount == 0 && !mEnded) {
+				try {
+					mRing.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted waiting on the source");
+				}
+			}
+			if (mClosed) {
+				throw new IOException("Stream closed");
+			} else if (mCount > 0) {
+				mCurrent = mRing[mHead];
+				mPosition = 0;
+				return true;
+			} else if (mError instanceof IOException) {
+				throw (IOException) mError;
+			} else if (mError != null) {
+				throw new IOException(mError);
+			}
+			return false;
+		}
+	}
+	
+	/** Frees {@link #mCurrent} to be filled again, if every byte has been read. */
+	private void finishChunk() {
+		if (mPosition < mCurrent.length) {
+			return;
+		}
+		mCurrent = null;
+		synchronized (mRing) {
+			mHead = (mHead + 1) % mRing.length;
+			mCount--;
+			mRing.notifyAll();
+		}
+	}
+	
+	/** Reads the source into free chunks until it ends, fails or this is closed.
+	 * Run on a reader thread. */
+	private void readAhead() {
+		try {
+			while (true) {
+				final Chunk chunk;
+				synchronized (mRing) {
+					if (mCount == mRing.length && !mClosed) {
+						mFullWaits++;
+					}
+					while (mCount == mRing.length && !mClosed) {
+						mRing.wait();
+					}
+					if (mClosed) {
+						return;
+					}
+					chunk = mRing[(mHead + mCount) % mRing.length];
+				}
+				//the chunk is free; neither side holds it but here
+				final int read = mSource.read(chunk.data, 0, chunk.data.length);
+				synchronized (mRing) {
+					if (read < 0) {
+						mEnded = true;
+						return;
+					} else if (read > 0) {
+						chunk.length = read;
+						mCount++;
+					}
+					mRing.notifyAll();
+				}
+			}
+		} catch (Exception e) {
+			synchronized (mRing) {
+				mError = e;
+				mEnded = true;
+			}
+		} finally {
+			synchronized (mRing) {
+				mEnded = true;
+				mReaderDone = true;
+				mRing.notifyAll();
+			}
+		}
+	}
+	
+	/////////////////////////////////////////////////////////////////////////////////////////////////
+	/// Internal classes
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** A reusable chunk of the ring. */
+	private static class Chunk {
+		final byte[] data;
+		/** The bytes filled. */
+		int length = 0;
+		
+		public Chunk(int size) {
+			this.data = new byte[size];
+		}
+	}
+	
+	/** Creates named, daemon threads. */
+	private static class ReaderThreadFactory implements ThreadFactory {
+		final private AtomicInteger mThreadCount = new AtomicInteger();
+		
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, 
+					"ReadAheadInputStream-" + mThreadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2015 Jason J. (iamovrhere)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.ovrhere.android.currencyconverter.model.requests;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Opens &amp; releases the connections of {@link AbstractSimpleHttpRequest}s;
+ * deciding whether the connection may be kept alive for the next request.
+ *
+ * @author Jason J.
+ * @version 0.1.0-20261018
+ * @see KeepAliveRequestClient
+ */
+public interface RequestClient {
+	/**
+	 * Opens an unconnected connection to the url.
+	 * @param url The url to request.
+	 * @return The connection, to be configured &amp; connected by the caller.
+	 * @throws IOException If the connection cannot be opened.
+	 */
+	public HttpURLConnection open(URL url) throws IOException;
+	
+	/**
+	 * Releases the connection once the request is done with it. Must be called 
+	 * exactly once per {@link #open(URL)}.
+	 * @param connection The connection to release.
+	 * @param body The body as received or <code>null</code> if never opened.
+	 * @param reusable <code>true</code> if the exchange completed normally, 
+	 * so the connection may be kept for the next request; <code>false</code> if 
+	 * it failed or was cancelled, so it must be torn down.
+	 */
+	public void release(HttpURLConnection connection, InputStream body, boolean reusable);
+}
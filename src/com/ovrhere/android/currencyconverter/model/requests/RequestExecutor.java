@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015 Jason J. (iamovrhere)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.ovrhere.android.currencyconverter.model.requests;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Runs {@link AbstractSimpleHttpRequest}s asynchronously on a bounded pool 
+ * of threads. {@link #submit(AbstractSimpleHttpRequest)} returns at once with 
+ * a {@link RequestFuture} to wait on or cancel; any number of requests may be 
+ * submitted, at most {@link #getThreadCount()} are in flight at once and 
+ * the rest wait their turn.</p>
+ * 
+ * <p>Threads are daemons so an idle executor never holds up the process.</p>
+ *
+ * @author Jason J.
+ * @version 0.1.0-20261018
+ */
+public class RequestExecutor {
+	/** The default number of requests in flight at once. */
+	final static public int DEFAULT_THREAD_COUNT = 4;
+	
+	/** The process wide executor. */
+	final static private RequestExecutor sDefault = new RequestExecutor(DEFAULT_THREAD_COUNT);
+	
+	/////////////////////////////////////////////////////////////////////////////////////////////////
+	/// End constants
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	final private ExecutorService mExecutor;
+	final private int mThreadCount;
+	
+	/** @return The process wide executor; it is never shut down. */
+	public static RequestExecutor getDefault() {
+		return sDefault;
+	}
+	
+	/** @param threadCount The maximum number of requests in flight at once; at least 1. */
+	public RequestExecutor(int threadCount) {
+		if (threadCount < 1) {
+			throw new IllegalArgumentException("Executor must have at least 1 thread");
+		}
+		this.mThreadCount = threadCount;
+		this.mExecutor = Executors.newFixedThreadPool(threadCount, new RequestThreadFactory());
+	}
+	
+	/** @return The maximum number of requests in flight at once. */
+	public int getThreadCount() {
+		return mThreadCount;
+	}
+	
+	/**
+	 * Queues the request to run.
+	 * @param request The request to run.
+	 * @return The handle to wait on or cancel the request with.
+	 * @throws java.util.concurrent.RejectedExecutionException If shut down.
+	 */
+	public RequestFuture submit(AbstractSimpleHttpRequest request) {
+		final RequestFuture future = new RequestFuture(request);
+		mExecutor.execute(future);
+		return future;
+	}
+	
+	/** Stops accepting requests; those already submitted still run. */
+	public void shutdown() {
+		mExecutor.shutdown();
+	}
+	
+	/////////////////////////////////////////////////////////////////////////////////////////////////
+	/// Internal classes
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** Creates named, daemon threads. */
+	private static class RequestThreadFactory implements ThreadFactory {
+		final private static AtomicInteger sPoolCount = new AtomicInteger();
+		final private int mPool = sPoolCount.incrementAndGet();
+		final private AtomicInteger mThreadCount = new AtomicInteger();
+		
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, 
+					"RequestExecutor-" + mPool + "-" + mThreadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015 Jason J. (iamovrhere)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.ovrhere.android.currencyconverter.model.requests;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The handle of a request submitted to a {@link RequestExecutor}. 
+ * Cancelling it, before or during the request, aborts the request; 
+ * a request in flight has its connection torn down rather than being 
+ * left to finish or time out. The request's listener still receives its 
+ * events as usual; this only adds a way to wait on &amp; cancel it.
+ * 
+ * <p>{@link #get()} returns as soon as the future is cancelled, while an aborted 
+ * request may still be finishing its listener's events; {@link #awaitDone()} 
+ * waits until the request has stopped.</p>
+ *
+ * @author Jason J.
+ * @version 0.2.0-20261018
+ */
+public class RequestFuture extends FutureTask<Void> {
+	/** The request has neither run nor been cancelled. */
+	final static private int STATE_PENDING = 0;
+	/** The request is running. */
+	final static private int STATE_RUNNING = 1;
+	/** The request has run or never will. */
+	final static private int STATE_DONE = 2;
+	
+	/** The request being run. */
+	final private AbstractSimpleHttpRequest mRequest;
+	/** One of the states; pending until run or cancelled. */
+	final private AtomicInteger mState = new AtomicInteger(STATE_PENDING);
+	/** Released once the state is done. */
+	final private CountDownLatch mDone = new CountDownLatch(1);
+	
+	/** @param request The request to run. */
+	RequestFuture(AbstractSimpleHttpRequest request) {
+		super(request, null);
+		this.mRequest = request;
+	}
+	
+	/** @return The request being run. */
+	public AbstractSimpleHttpRequest getRequest() {
+		return mRequest;
+	}
+	
+	/**
+	 * Cancels the request, aborting it if in flight.
+	 * @param mayInterruptIfRunning Ignored; a running request is always aborted, 
+	 * as it cannot otherwise be stopped.
+	 */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		//the request interrupts its own thread, only while it runs
+		final boolean cancelled = super.cancel(false);
+		if (cancelled) {
+			mRequest.cancel();
+			if (mState.compareAndSet(STATE_PENDING, STATE_DONE)) {
+				mDone.countDown(); //never to run
+			}
+		}
+		return cancelled;
+	}
+	
+	@Override
+	public void run() {
+		if (!mState.compareAndSet(STATE_PENDING, STATE_RUNNING)) {
+			return; //cancelled before it started
+		}
+		try {
+			super.run();
+		} finally {
+			mState.set(STATE_DONE);
+			mDone.countDown();
+		}
+	}
+	
+	/**
+	 * Waits until the request has stopped; run to its end, aborted or 
+	 * cancelled before it started. Unlike {@link #get()}, a cancelled request 
+	 * still running its listener is waited on.
+	 * @throws InterruptedException If interrupted while waiting.
+	 */
+	public void awaitDone() throws InterruptedException {
+		mDone.await();
+	}
+}
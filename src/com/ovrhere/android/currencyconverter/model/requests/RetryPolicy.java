@@ -0,0 +1,41 @@
+/*
+ * Copyright 2015 Jason J. (iamovrhere)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.ovrhere.android.currencyconverter.model.requests;
+
+/**
+ * Decides whether &amp; when a failed request is retried.
+ *
+ * @author Jason J.
+ * @version 0.1.0-20261018
+ * @see ExponentialBackoffPolicy
+ */
+public interface RetryPolicy {
+	/**
+	 * @param responseCode The response code of the failed attempt or 0 if 
+	 * no response was received.
+	 * @param error The failure of the attempt or <code>null</code> if unknown.
+	 * @return <code>true</code> if the failure may be transient and worth retrying,
+	 * <code>false</code> if a retry would fail the same way.
+	 */
+	public boolean isRetryable(int responseCode, Exception error);
+	
+	/**
+	 * @param retry The retry about to be made; 1 for the first.
+	 * @return The time in milliseconds to wait before the retry or -1 if 
+	 * no more retries are to be made.
+	 */
+	public long getBackoff(int retry);
+}
@@ -27,7 +27,7 @@ import com.ovrhere.android.currencyconverter.R;
  * Has ability to set defaults. Requires <code>preference_info.xml</code> and
  * <code>preference_defaults.xml</code>.
  * @author Jason J.
- * @version 0.7.0-2010528
+ * @version 0.8.0-20261018
  */
 public class PreferenceUtils {
 	/* The class name. */
@@ -40,6 +40,14 @@ public class PreferenceUtils {
 	@Deprecated
 	final static protected boolean VALUE_PREFERENCES_SET	 = true;
 	
+	/** The request format value to request &amp; parse XML. As in
+	 * <code>R.array.currConv_pref_requestFormat_values</code>. */
+	final static public String REQUEST_FORMAT_XML = "xml";
+	/** The request format value to request JSON &amp; read it with a JsonReader. */
+	final static public String REQUEST_FORMAT_JSON = "json";
+	/** The request format value to request JSON &amp; scan its bytes. */
+	final static public String REQUEST_FORMAT_JSON_SCANNER = "json_scanner";
+	
 	/**
 	 * Used to initialise preferences on the first run. Call in your MainActivity
 	 * @param context The activity context.
@@ -53,6 +61,7 @@ public class PreferenceUtils {
 			resetToDefault(context); 
 			checkAndTransferOldToNew(context, prefs);
 		}
+		migrateRequestFormat(context, prefs);
 	}
 	
 	/** Used to determine if {@link #resetToDefault(Context)} or {@link #initPreferences(Context)}
@@ -140,6 +149,25 @@ public class PreferenceUtils {
 		editor.commit();
 	}
 	
+	/**
+	 * Gets the request format; one of {@link #REQUEST_FORMAT_XML}, 
+	 * {@link #REQUEST_FORMAT_JSON} or {@link #REQUEST_FORMAT_JSON_SCANNER}.
+	 * Reads the boolean the preference once was, if not yet migrated.
+	 * @param context The context of the value.
+	 * @return The request format.
+	 */
+	public static String getRequestFormat(Context context) {
+		SharedPreferences pref = PreferenceManager.getDefaultSharedPreferences(context);
+		final String key = context.getString(R.string.currConv_pref_KEY_USE_JSON_REQUEST);
+		final String defaultFormat = 
+				context.getString(R.string.currConv_pref_DEF_VALUE_REQUEST_FORMAT);
+		try {
+			return pref.getString(key, defaultFormat);
+		} catch (ClassCastException useJson) {
+			return toRequestFormat(context, pref.getBoolean(key, true));
+		}
+	}
+	
 	/////////////////////////////////////////////////////////////////////////////////////////////////
 	/// Utility functions
 	////////////////////////////////////////////////////////////////////////////////////////////////
@@ -188,9 +216,10 @@ public class PreferenceUtils {
 				""+oldPrefs.getInt(res.getString(R.string.currConv_pref_OLDKEY_UPDATE_CURRENCY_INTERVAL), 0)
 		);
 		
-		prefs.putBoolean(
+		prefs.putString(
 				res.getString(R.string.currConv_pref_KEY_USE_JSON_REQUEST),
-				oldPrefs.getBoolean(res.getString(R.string.currConv_pref_KEY_USE_JSON_REQUEST), true)
+				toRequestFormat(context, 
+					oldPrefs.getBoolean(res.getString(R.string.currConv_pref_KEY_USE_JSON_REQUEST), true))
 		);
 		
 		prefs.commit();
@@ -199,4 +228,29 @@ public class PreferenceUtils {
 		return true;
 	}
 
+	/**
+	 * Migrates the request format from the boolean it once was, "use json",
+	 * to the format it now is; json is now scanned by default.
+	 * @param context The current context.
+	 * @param prefs The preferences to migrate.
+	 * @return <code>true</code> if migrated, <code>false</code> if there was nothing to migrate.
+	 */
+	private static boolean migrateRequestFormat(Context context, SharedPreferences prefs) {
+		final String key = context.getString(R.string.currConv_pref_KEY_USE_JSON_REQUEST);
+		if (!(prefs.getAll().get(key) instanceof Boolean)) {
+			return false;
+		}
+		prefs.edit()
+			.putString(key, toRequestFormat(context, prefs.getBoolean(key, true)))
+			.commit();
+		return true;
+	}
+	
+	/** @return The request format of the former "use json" boolean. */
+	private static String toRequestFormat(Context context, boolean useJson) {
+		return useJson ?
+				context.getString(R.string.currConv_pref_DEF_VALUE_REQUEST_FORMAT) :
+				REQUEST_FORMAT_XML;
+	}
+
 }
@@ -39,7 +39,7 @@ import com.ovrhere.android.currencyconverter.utils.ToastManager;
  * <a href="https://github.com/kolavar/android-support-v4-preferencefragment" 
  * target="_blank">android-support-v4-preferencefragment</a>
  * @author Jason J.
- * @version 0.3.0-20150526
+ * @version 0.4.0-20261018
  */
 public class SettingsFragment extends PreferenceFragment implements 
 	OnPreferenceClickListener, OnPreferenceChangeListener {
@@ -102,8 +102,10 @@ public class SettingsFragment extends PreferenceFragment implements
 	/** Sets preference to null before attaching settings. */
 	private void refreshPreferences(){
 		setPreferenceScreen(null);
+		PreferenceUtils.initPreferences(getActivity()); //migrated, if restored without main
 		addPreferencesFromResource(R.xml.settings);
 		initUpdateInterval();
+		initRequestFormat();
 		initNonSettings();
 	}
 	
@@ -118,6 +120,15 @@ public class SettingsFragment extends PreferenceFragment implements
 	}
 
 	
+	/** Initializes the request format, including label. */
+	private void initRequestFormat(){
+		final String prefKey = getString(R.string.currConv_pref_KEY_USE_JSON_REQUEST);
+		
+		Preference requestFormat = getPreferenceManager().findPreference(prefKey);
+		
+		bindPreferenceSummaryToValue((ListPreference) requestFormat, this);
+	}
+	
 	/** Initializes software version & reset settings. */
 	private void initNonSettings() {
 		getPreferenceManager().findPreference(
@@ -0,0 +1,314 @@
+package com.ovrhere.android.currencyconverter.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.ExchangeRateEntry;
+
+public class TestRateMatrix extends AndroidTestCase {
+	final static private String LOGTAG = TestRateMatrix.class.getSimpleName();
+	/** The currencies of the benchmarks; 900 pairs. */
+	final static private int BENCHMARK_CURRENCY_COUNT = 30;
+	/** The lookups per benchmark run. */
+	final static private int BENCHMARK_LOOKUP_COUNT = 1000000;
+	/** The row replacements per benchmark run. */
+	final static private int BENCHMARK_ROW_COUNT = 20000;
+
+	@Test
+	public void testGet() {
+		RateMatrix matrix = new RateMatrix();
+		final int usd = matrix.addCode("USD");
+		final int cad = matrix.addCode("cad");
+		assertEquals(0, usd);
+		assertEquals(1, cad);
+		assertEquals("Expected codes case insensitive", usd, matrix.addCode("usd"));
+		assertEquals(2, matrix.size());
+		assertEquals("CAD", matrix.getCode(cad));
+		assertEquals(-1, matrix.indexOf("EUR"));
+
+		assertTrue("Expected unknown rates NaN", Double.isNaN(matrix.get(usd, cad)));
+		matrix.set(usd, cad, 1.2307d);
+		assertEquals(1.2307d, matrix.get(usd, cad));
+		assertEquals(1.2307d, matrix.get("Usd", "CAD"));
+		assertTrue(Double.isNaN(matrix.get("USD", "EUR")));
+		assertEquals("Expected a set to leave the row's time", 0, matrix.getRowTime(usd));
+		try {
+			matrix.get(usd, 2);
+			fail("Expected no rate outside the codes");
+		} catch (IndexOutOfBoundsException expected) {}
+	}
+
+	@Test
+	public void testReplaceRow() {
+		RateMatrix matrix = buildMatrix(3);
+		matrix.replaceRow(1, new double[]{0.5d, 1.0d, Double.NaN}, 1000L);
+		assertEquals(0.5d, matrix.get(1, 0));
+		assertTrue(Double.isNaN(matrix.get(1, 2)));
+		assertEquals(1000L, matrix.getRowTime(1));
+		assertEquals("Expected other rows untouched", 0L, matrix.getRowTime(0));
+		assertEquals(rateOf(0, 2), matrix.get(0, 2));
+		try {
+			matrix.replaceRow(0, new double[2], 0);
+			fail("Expected a rate for every code");
+		} catch (IllegalArgumentException expected) {}
+	}
+
+	@Test
+	public void testGrowthKeepsRates() {
+		RateMatrix matrix = new RateMatrix(2);
+		for (int index = 0; index < 40; index++) {
+			matrix.addCode(codeOf(index));
+			matrix.set(index, 0, rateOf(index, 0));
+			matrix.set(0, index, rateOf(0, index));
+		}
+		for (int index = 0; index < 40; index++) {
+			assertEquals(rateOf(index, 0), matrix.get(codeOf(index), codeOf(0)));
+			assertEquals(rateOf(0, index), matrix.get(0, index));
+		}
+		assertTrue(Double.isNaN(matrix.get(39, 38)));
+	}
+
+	@Test
+	public void testSnapshotCopiedOnWrite() {
+		RateMatrix matrix = buildMatrix(3);
+		RateMatrix.Snapshot snapshot = matrix.snapshot();
+		assertSame("Expected the snapshot reused until written", snapshot, matrix.snapshot());
+
+		matrix.set(0, 1, 99d);
+		matrix.replaceRow(2, new double[]{1d, 2d, 3d}, 500L);
+		matrix.addCode("NEW");
+		assertEquals("Expected the snapshot unchanged", rateOf(0, 1), snapshot.get(0, 1));
+		assertEquals(rateOf(2, 2), snapshot.get("C02", "C02"));
+		assertEquals(0L, snapshot.getRowTime(2));
+		assertEquals(3, snapshot.size());
+		assertEquals(-1, snapshot.indexOf("NEW"));
+
+		RateMatrix.Snapshot next = matrix.snapshot();
+		assertNotSame(snapshot, next);
+		assertEquals(99d, next.get(0, 1));
+		assertEquals(500L, next.getRowTime(2));
+		assertEquals(4, next.size());
+	}
+
+	@Test
+	public void testSnapshotsReadConcurrently() throws InterruptedException {
+		final int SIZE = 10;
+		final RateMatrix matrix = buildMatrix(SIZE);
+		final RateMatrix.Snapshot[] latest = new RateMatrix.Snapshot[]{matrix.snapshot()};
+		final String[] failure = new String[1];
+		Thread[] readers = new Thread[4];
+		for (int index = 0; index < readers.length; index++) {
+			readers[index] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int read = 0; read < 2000; read++) {
+						RateMatrix.Snapshot snapshot;
+						synchronized (latest) {
+							snapshot = latest[0];
+						}
+						//every row is replaced whole, so a row is all of one version
+						final double first = snapshot.get(read % SIZE, 0);
+						for (int dest = 1; dest < SIZE; dest++) {
+							if (snapshot.get(read % SIZE, dest) != first) {
+								failure[0] = "Torn row " + read % SIZE;
+								return;
+							}
+						}
+					}
+				}
+			});
+		}
+		double[] row = new double[SIZE];
+		for (int index = 0; index < SIZE; index++) {
+			Arrays.fill(row, 0d);
+			matrix.replaceRow(index, row, 1L);
+		}
+		synchronized (latest) {
+			latest[0] = matrix.snapshot();
+		}
+		for (Thread reader : readers) {
+			reader.start();
+		}
+		for (int version = 1; version < 500; version++) {
+			Arrays.fill(row, version);
+			matrix.replaceRow(version % SIZE, row, version);
+			synchronized (latest) {
+				latest[0] = matrix.snapshot();
+			}
+		}
+		for (Thread reader : readers) {
+			reader.join();
+		}
+		assertNull(failure[0], failure[0]);
+	}
+
+	@Test
+	public void testToContentValues() {
+		RateMatrix matrix = buildMatrix(3);
+		matrix.set(1, 2, Double.NaN);
+		ContentValues[] values = matrix.snapshot().toContentValues();
+		assertEquals("Expected every known rate", 8, values.length);
+		assertEquals("C01", values[3].getAsString(ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE));
+		assertEquals("C00", values[3].getAsString(ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE));
+		assertEquals(rateOf(2, 0), values[5].getAsDouble(ExchangeRateEntry.COLUMN_EXCHANGE_RATE));
+	}
+
+	@Test
+	public void testRowContentValuesAndArray() {
+		RateMatrix matrix = buildMatrix(3);
+		matrix.set(1, 2, Double.NaN);
+		RateMatrix.Snapshot snapshot = matrix.snapshot();
+		ContentValues[] row = snapshot.toContentValues(1);
+		assertEquals("Expected the row's known rates", 2, row.length);
+		assertEquals("C01", row[1].getAsString(ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE));
+		
+		double[] rates = snapshot.toArray();
+		assertEquals(9, rates.length);
+		assertEquals(rateOf(2, 1), rates[2 * 3 + 1]);
+		assertTrue(Double.isNaN(rates[1 * 3 + 2]));
+		assertEquals("C02", snapshot.getCodes()[2]);
+	}
+
+	@Test
+	public void testCursorRoundTrip() {
+		RateMatrix matrix = buildMatrix(4);
+		matrix.set(3, 1, Double.NaN);
+		Cursor cursor = matrix.snapshot().toCursor();
+		try {
+			assertEquals(15, cursor.getCount());
+			RateMatrix read = RateMatrix.fromCursor(cursor, 2000L);
+			assertEquals(4, read.size());
+			assertEquals(rateOf(2, 3), read.get("C02", "C03"));
+			assertTrue(Double.isNaN(read.get("C03", "C01")));
+			assertEquals(2000L, read.getRowTime(read.indexOf("C03")));
+		} finally {
+			cursor.close();
+		}
+	}
+
+	@Test
+	public void testLookupBenchmark() {
+		final int SIZE = BENCHMARK_CURRENCY_COUNT;
+		final RateMatrix matrix = buildMatrix(SIZE);
+		final RateMatrix.Snapshot snapshot = matrix.snapshot();
+		//as the parsers give them, indexed by pair so lookups are not linear
+		final ContentValues[] values = snapshot.toContentValues();
+		final Map<String, ContentValues> byPair = new HashMap<String, ContentValues>();
+		for (ContentValues cvPair : values) {
+			byPair.put(cvPair.getAsString(ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE) + 
+					cvPair.getAsString(ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE), cvPair);
+		}
+		final String[] codes = new String[SIZE];
+		for (int index = 0; index < SIZE; index++) {
+			codes[index] = codeOf(index);
+		}
+
+		double sum = 0;
+		long start = System.nanoTime();
+		for (int lookup = 0; lookup < BENCHMARK_LOOKUP_COUNT; lookup++) {
+			sum += byPair.get(codes[lookup % SIZE] + codes[(lookup / SIZE) % SIZE])
+					.getAsDouble(ExchangeRateEntry.COLUMN_EXCHANGE_RATE);
+		}
+		final long contentValues = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int lookup = 0; lookup < BENCHMARK_LOOKUP_COUNT; lookup++) {
+			sum -= snapshot.get(codes[lookup % SIZE], codes[(lookup / SIZE) % SIZE]);
+		}
+		final long byCode = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int lookup = 0; lookup < BENCHMARK_LOOKUP_COUNT; lookup++) {
+			sum += snapshot.get(lookup % SIZE, (lookup / SIZE) % SIZE);
+		}
+		final long byIndex = System.nanoTime() - start;
+
+		Log.i(LOGTAG, String.format("%d lookups of %d pairs; ContentValues: %dms, " +
+				"matrix by code: %dms, by index: %dms", BENCHMARK_LOOKUP_COUNT, SIZE * SIZE, 
+				contentValues / 1000000, byCode / 1000000, byIndex / 1000000));
+		assertFalse(Double.isNaN(sum));
+		assertTrue("Expected lookups by index to be faster", byIndex < contentValues);
+		assertTrue("Expected lookups by code to be faster", byCode < contentValues);
+	}
+
+	@Test
+	public void testRowReplacementBenchmark() {
+		final int SIZE = BENCHMARK_CURRENCY_COUNT;
+		final RateMatrix matrix = buildMatrix(SIZE);
+		final ContentValues[] values = matrix.snapshot().toContentValues();
+		final double[] row = new double[SIZE];
+		final String[] codes = new String[SIZE];
+		for (int index = 0; index < SIZE; index++) {
+			codes[index] = codeOf(index);
+		}
+
+		long start = System.nanoTime();
+		for (int replace = 0; replace < BENCHMARK_ROW_COUNT; replace++) {
+			final int source = replace % SIZE;
+			for (int dest = 0; dest < SIZE; dest++) {
+				ContentValues cvPair = new ContentValues(3);
+				cvPair.put(ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE, codes[source]);
+				cvPair.put(ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE, codes[dest]);
+				cvPair.put(ExchangeRateEntry.COLUMN_EXCHANGE_RATE, (double) replace);
+				values[source * SIZE + dest] = cvPair;
+			}
+		}
+		final long contentValues = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int replace = 0; replace < BENCHMARK_ROW_COUNT; replace++) {
+			Arrays.fill(row, replace);
+			matrix.replaceRow(replace % SIZE, row, replace);
+		}
+		final long replaced = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int replace = 0; replace < BENCHMARK_ROW_COUNT; replace++) {
+			Arrays.fill(row, replace);
+			matrix.replaceRow(replace % SIZE, row, replace);
+			matrix.snapshot(); //so every replacement copies
+		}
+		final long copied = System.nanoTime() - start;
+
+		Log.i(LOGTAG, String.format("%d rows of %d rates; ContentValues: %dms, " +
+				"matrix: %dms, matrix with a snapshot per row: %dms", BENCHMARK_ROW_COUNT, SIZE, 
+				contentValues / 1000000, replaced / 1000000, copied / 1000000));
+		assertEquals((double) BENCHMARK_ROW_COUNT - 1, matrix.get((BENCHMARK_ROW_COUNT - 1) % SIZE, 0));
+		assertTrue("Expected rows replaced in place to be faster", replaced < contentValues);
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Helper methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+
+	/** @return A matrix of every rate between synthetic codes. */
+	private static RateMatrix buildMatrix(int count) {
+		RateMatrix matrix = new RateMatrix();
+		for (int index = 0; index < count; index++) {
+			matrix.addCode(codeOf(index));
+		}
+		for (int source = 0; source < count; source++) {
+			for (int dest = 0; dest < count; dest++) {
+				matrix.set(source, dest, rateOf(source, dest));
+			}
+		}
+		return matrix;
+	}
+
+	/** @return The synthetic code: C00, C01, ... */
+	private static String codeOf(int index) {
+		return String.format("C%02d", index);
+	}
+
+	private static double rateOf(int source, int dest) {
+		return source * 100 + dest + 0.5d;
+	}
+}
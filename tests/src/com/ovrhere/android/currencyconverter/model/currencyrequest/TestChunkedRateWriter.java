@@ -0,0 +1,160 @@
+package com.ovrhere.android.currencyconverter.model.currencyrequest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import android.database.Cursor;
+import android.test.ProviderTestCase2;
+
+import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.ExchangeRateEntry;
+import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterProvider;
+import com.ovrhere.android.currencyconverter.model.requests.ExponentialBackoffPolicy;
+import com.ovrhere.android.currencyconverter.test.UtilityTestMethods;
+
+public class TestChunkedRateWriter extends ProviderTestCase2<CurrencyConverterProvider> {
+	
+	public TestChunkedRateWriter() {
+		super(	CurrencyConverterProvider.class, 
+				CurrencyConverterProvider.class.getPackage().toString());
+	}
+	
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		UtilityTestMethods.deleteDatabaseByContentResolver(mContext);
+	}
+	
+	@After
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		UtilityTestMethods.deleteDatabaseByContentResolver(mContext);
+	}
+	
+	@Test
+	public void testWritesInChunks() {
+		ChunkedRateWriter writer = newWriter(4);
+		
+		writer.open();
+		for (int index = 0; index < 10; index++) {
+			writer.onRate(new CodeRatePair(String.format("C%02dUSD", index), 1.5d));
+		}
+		assertEquals("Expected only full chunks written while open", 20, countRates());
+		writer.close(true);
+		
+		assertEquals("Expected every pair, both ways", 20, writer.getInsertedCount());
+		assertEquals(5, writer.getInsertCount());
+		assertEquals(20, countRates());
+	}
+	
+	@Test
+	public void testPartialChunkFlushedOnClose() {
+		ChunkedRateWriter writer = newWriter(8);
+		
+		writer.open();
+		writer.onRate(new CodeRatePair("USDCAD", 1.2315d));
+		assertEquals("Expected the partial chunk held", 0, countRates());
+		writer.close(true);
+		
+		assertEquals(2, countRates());
+		assertEquals(1, writer.getInsertCount());
+	}
+	
+	@Test
+	public void testUnchangedSkipped() {
+		ChunkedRateWriter writer = newWriter(4);
+		writer.open();
+		writer.onRate(new CodeRatePair("USDCAD", 1.2315d));
+		writer.close(true);
+		
+		writer.open();
+		writer.onRate(new CodeRatePair("USDCAD", 1.2315d));
+		writer.onRate(new CodeRatePair("USDCAD", 1.2315d));
+		writer.close(true);
+		
+		assertEquals("Expected nothing written", 0, writer.getInsertCount());
+	}
+	
+	@Test
+	public void testCloseWithoutFlushDrops() {
+		ChunkedRateWriter writer = newWriter(8);
+		
+		writer.open();
+		writer.onRate(new CodeRatePair("USDCAD", 1.2315d));
+		writer.close(false);
+		
+		assertEquals("Expected the buffer dropped", 0, countRates());
+		assertEquals(0, writer.getInsertCount());
+	}
+	
+	@Test
+	public void testClosedIgnoresRates() {
+		ChunkedRateWriter writer = newWriter(1);
+		writer.onRate(new CodeRatePair("USDCAD", 1.2315d));
+		
+		writer.open();
+		writer.close(true);
+		writer.onRate(new CodeRatePair("USDJPY", 118.45d));
+		
+		assertEquals("Expected rates given while closed ignored", 0, countRates());
+		assertEquals(0, writer.getInsertCount());
+	}
+	
+	@Test
+	public void testStreamedFetch() throws Exception {
+		final int CHUNK_SIZE = 50;
+		final String[] codes = buildCodes(30);
+		Map<String, Double> rates = new HashMap<String, Double>();
+		for (int source = 0; source < codes.length; source++) {
+			for (int dest = source + 1; dest < codes.length; dest++) {
+				rates.put(codes[source] + codes[dest], 1.0d + dest / 100.0d);
+			}
+		}
+		ShardedRateFetcher fetcher = new ShardedRateFetcher(new LocalRateSource(rates), 
+				codes, codes, true);
+		fetcher.setRetryPolicy(new ExponentialBackoffPolicy(0, 0, 0));
+		fetcher.setValidatorCache(null);
+		ChunkedRateWriter writer = newWriter(CHUNK_SIZE);
+		
+		writer.open();
+		assertEquals("Expected nothing merged", 0, fetcher.fetch(writer).length);
+		writer.close(true);
+		
+		final int PAIRS = 30 * 29;
+		assertEquals("Expected every pair, both ways", PAIRS, countRates());
+		assertEquals(PAIRS / 2, fetcher.getRateCount());
+		assertEquals((PAIRS + CHUNK_SIZE - 1) / CHUNK_SIZE, writer.getInsertCount());
+	}
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Helper methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	private ChunkedRateWriter newWriter(int chunkSize) {
+		return new ChunkedRateWriter(mContext.getContentResolver(), 
+				new RateChangeDetector(mContext.getContentResolver()), true, chunkSize);
+	}
+	
+	/** @return The count of stored rates. */
+	private int countRates() {
+		Cursor cursor = mContext.getContentResolver().query(ExchangeRateEntry.CONTENT_URI, 
+				null, null, null, null);
+		try {
+			return cursor.getCount();
+		} finally {
+			cursor.close();
+		}
+	}
+	
+	/** @return The synthetic codes: C00, C01, ... */
+	private static String[] buildCodes(int count) {
+		String[] codes = new String[count];
+		for (int index = 0; index < count; index++) {
+			codes[index] = String.format("C%02d", index);
+		}
+		return codes;
+	}
+}
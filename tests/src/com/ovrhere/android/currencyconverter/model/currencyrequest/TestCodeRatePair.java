@@ -1,13 +1,24 @@
 package com.ovrhere.android.currencyconverter.model.currencyrequest;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
 import org.junit.Test;
 
 import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.ExchangeRateEntry;
 
 import android.content.ContentValues;
+import android.util.Log;
 import junit.framework.TestCase;
 
 public class TestCodeRatePair extends TestCase {
+	final static private String LOGTAG = TestCodeRatePair.class.getSimpleName();
+	
+	/** The millionths whose ties are checked exhaustively; rates up to 1000. */
+	final static private int EQUIVALENCE_TIES = 1000000000 / 1000;
+	/** The iterations of each benchmark. */
+	final static private int BENCHMARK_ITERATIONS = 200000;
 
 	@Test
 	public void testCodeRatePair() {
@@ -64,4 +75,128 @@ public class TestCodeRatePair extends TestCase {
 				1.234568d, cv.getAsDouble(ExchangeRateEntry.COLUMN_EXCHANGE_RATE));
 	}
 
+	@Test
+	public void testSharedCodes() {
+		CurrencyCodes.register("USD", "CAD");
+		CodeRatePair usdCad = new CodeRatePair("usdcad", 1.2315d);
+		CodeRatePair cadUsd = new CodeRatePair("CADUSD", 0.812018d);
+		
+		assertSame("Expected the interned code", usdCad.srcCode, cadUsd.destCode);
+		assertEquals(usdCad.srcId, cadUsd.destId);
+		assertEquals(usdCad.destId, cadUsd.srcId);
+		assertEquals("USD", usdCad.srcCode);
+		
+		CodeRatePair unregistered = new CodeRatePair("usd#zz", 1.5d);
+		assertEquals("#ZZ", unregistered.destCode);
+		assertEquals(CurrencyCodes.NONE, unregistered.destId);
+		assertSame("Expected the registered code still interned", 
+				usdCad.srcCode, unregistered.srcCode);
+	}
+	
+	@Test
+	public void testWriteToReused() {
+		ContentValues cv = new ContentValues();
+		new CodeRatePair("USDCAD", 1.2315d).writeTo(cv);
+		new CodeRatePair("EURJPY", 130.25d).writeReverseTo(cv);
+		
+		assertEquals("JPY", cv.getAsString(ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE));
+		assertEquals("EUR", cv.getAsString(ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE));
+		assertEquals(0.007678d, cv.getAsDouble(ExchangeRateEntry.COLUMN_EXCHANGE_RATE));
+	}
+	
+	@Test
+	public void testRoundTo6EquivalentAtTies() {
+		//every tie of the 6th decimal & its neighbouring doubles, either sign
+		for (int millionths = 0; millionths < EQUIVALENCE_TIES; millionths++) {
+			final double tie = (millionths + 0.5d) / 1000000d;
+			assertRoundsAsBigDecimal(tie);
+			assertRoundsAsBigDecimal(Math.nextUp(tie));
+			assertRoundsAsBigDecimal(Math.nextAfter(tie, 0));
+			assertRoundsAsBigDecimal(-tie);
+			assertRoundsAsBigDecimal(millionths / 1000000d);
+		}
+	}
+	
+	@Test
+	public void testRoundTo6EquivalentAtEveryMagnitude() {
+		for (int exponent = -330; exponent <= 10; exponent++) {
+			final double scale = Math.pow(10, exponent);
+			for (int step = 0; step < 1000; step++) {
+				final double value = (step + 0.5d) * scale;
+				assertRoundsAsBigDecimal(value);
+				assertRoundsAsBigDecimal(Math.nextUp(value));
+				assertRoundsAsBigDecimal(-Math.nextAfter(value, 0));
+			}
+		}
+		final Random random = new Random(20261018);
+		for (int index = 0; index < 1000000; index++) {
+			final double value = Double.longBitsToDouble(random.nextLong());
+			if (!Double.isNaN(value) && !Double.isInfinite(value)) {
+				assertRoundsAsBigDecimal(value);
+			}
+		}
+		assertRoundsAsBigDecimal(0.0d);
+		assertRoundsAsBigDecimal(-0.0d);
+		assertRoundsAsBigDecimal(Double.MIN_VALUE);
+		assertRoundsAsBigDecimal(-0.0000005d);
+		assertRoundsAsBigDecimal(Math.nextAfter(9.0e9d, 0));
+		assertRoundsAsBigDecimal(9.0e9d);
+		assertRoundsAsBigDecimal(Double.MAX_VALUE);
+		try {
+			CodeRatePair.roundTo6(Double.NaN);
+			fail("Expected NaN to throw, as BigDecimal");
+		} catch (NumberFormatException expected) {}
+	}
+	
+	@Test
+	public void testRoundTo6Benchmark() {
+		double expected = 0;
+		long start = System.nanoTime();
+		for (int index = 0; index < BENCHMARK_ITERATIONS; index++) {
+			expected += roundTo6WithBigDecimal(index * 1.2345e-3d);
+		}
+		final long bigDecimal = System.nanoTime() - start;
+		
+		double sum = 0;
+		start = System.nanoTime();
+		for (int index = 0; index < BENCHMARK_ITERATIONS; index++) {
+			sum += CodeRatePair.roundTo6(index * 1.2345e-3d);
+		}
+		final long fast = System.nanoTime() - start;
+		
+		Log.i(LOGTAG, String.format("roundTo6, %d iterations; BigDecimal: %dns/op, fast: %dns/op", 
+				BENCHMARK_ITERATIONS, bigDecimal / BENCHMARK_ITERATIONS, fast / BENCHMARK_ITERATIONS));
+		assertEquals("Expected the same sums", expected, sum);
+		assertTrue("Expected the fast path to be faster", fast < bigDecimal);
+	}
+	
+	@Test
+	public void testParseBenchmark() {
+		final String[] ids = new String[]{"USDCAD", "usdjpy", "EURGBP", "CADJPY"};
+		long start = System.nanoTime();
+		for (int index = 0; index < BENCHMARK_ITERATIONS; index++) {
+			new CodeRatePair(ids[index & 3], (index + 1) * 1.2345e-3d).toReverseContentValues();
+		}
+		final long time = System.nanoTime() - start;
+		
+		Log.i(LOGTAG, String.format("CodeRatePair & reverse, %d iterations: %dns/op", 
+				BENCHMARK_ITERATIONS, time / BENCHMARK_ITERATIONS));
+	}
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Helper methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** The reference rounding. */
+	private static double roundTo6WithBigDecimal(double value) {
+		return new BigDecimal(value).setScale(6, RoundingMode.HALF_UP).doubleValue();
+	}
+	
+	private static void assertRoundsAsBigDecimal(double value) {
+		final double expected = roundTo6WithBigDecimal(value);
+		final double actual = CodeRatePair.roundTo6(value);
+		if (Double.doubleToRawLongBits(expected) != Double.doubleToRawLongBits(actual)) {
+			fail("Rounding of " + value + "; expected: " + expected + ", was: " + actual);
+		}
+	}
 }
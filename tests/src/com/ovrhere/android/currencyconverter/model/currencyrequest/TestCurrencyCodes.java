@@ -0,0 +1,88 @@
+package com.ovrhere.android.currencyconverter.model.currencyrequest;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+public class TestCurrencyCodes extends TestCase {
+	
+	@Test
+	public void testIdOf() {
+		CurrencyCodes.register("USD", "cad");
+		final int usd = CurrencyCodes.idOf("USD");
+		
+		assertEquals("Expected the same id, any case", usd, CurrencyCodes.idOf("usd"));
+		assertEquals("Expected the code in place", usd, CurrencyCodes.idOf("CADUsD", 3));
+		assertEquals("USD", CurrencyCodes.codeOf(usd));
+		assertEquals("CAD", CurrencyCodes.codeOf(CurrencyCodes.idOf("CAD")));
+		assertTrue(usd < CurrencyCodes.size());
+		assertFalse(usd == CurrencyCodes.idOf("CAD"));
+	}
+	
+	@Test
+	public void testRegisteredIdsKept() {
+		final int COUNT = 36 * 36;
+		final String[] codes = new String[COUNT];
+		for (int index = 0; index < COUNT; index++) {
+			codes[index] = buildCode(index);
+		}
+		CurrencyCodes.register(codes[0]);
+		final int first = CurrencyCodes.idOf(codes[0]);
+		CurrencyCodes.register(codes);
+		CurrencyCodes.register(codes[1].toLowerCase(), codes[0]); //no new ids
+		
+		for (int index = 0; index < COUNT; index++) {
+			assertEquals("Expected ids in order registered, kept once grown", 
+					first + index, CurrencyCodes.idOf(codes[index]));
+			assertSame(CurrencyCodes.codeOf(first + index), 
+					CurrencyCodes.toCode(codes[index].toLowerCase(), 0));
+		}
+		assertEquals(first + COUNT, CurrencyCodes.size());
+	}
+	
+	@Test
+	public void testUnregisteredNotInterned() {
+		final int size = CurrencyCodes.size();
+		
+		assertEquals(CurrencyCodes.NONE, CurrencyCodes.idOf("#ab"));
+		final String code = CurrencyCodes.toCode("x#ab", 1);
+		assertEquals("#AB", code);
+		assertNotSame("Expected a copy each time", code, CurrencyCodes.toCode("#ab", 0));
+		assertEquals("Expected nothing interned", size, CurrencyCodes.size());
+	}
+	
+	@Test
+	public void testNonAscii() {
+		assertEquals(CurrencyCodes.NONE, CurrencyCodes.idOf("\u00e9UR"));
+		assertEquals("\u00c9UR", CurrencyCodes.toCode("\u00e9UR", 0));
+		try {
+			CurrencyCodes.register("\u00e9UR");
+			fail("Expected only ascii codes registered");
+		} catch (IllegalArgumentException expected) {}
+	}
+	
+	@Test
+	public void testInvalid() {
+		try {
+			CurrencyCodes.idOf("USDC");
+			fail("Expected only 3 characters");
+		} catch (IllegalArgumentException expected) {}
+		try {
+			CurrencyCodes.register("USDC");
+			fail("Expected only 3 characters");
+		} catch (IllegalArgumentException expected) {}
+		try {
+			CurrencyCodes.codeOf(-1);
+			fail("Expected no such id");
+		} catch (IndexOutOfBoundsException expected) {}
+	}
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Helper methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** @return A synthetic code unlike any real one: ~00, ~01, ... ~ZZ */
+	private static String buildCode(int index) {
+		return "~" + Character.forDigit(index / 36, 36) + Character.forDigit(index % 36, 36);
+	}
+}
@@ -0,0 +1,48 @@
+package com.ovrhere.android.currencyconverter.model.currencyrequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import android.test.AndroidTestCase;
+
+public class TestJsonRateParser extends AndroidTestCase {
+	private static final String TEST_JSON_RATES = 
+			"{\"source\":\"test\",\"rates\":{\"USDCAD\":1.2315,\"usdjpy\":\"121.505\"," +
+			"\"CADJPY\":98.6602,\"BAD\":1.0,\"CADEUR\":null,\"CADGBP\":\"n/a\"}," +
+			"\"time\":{\"at\":0}}";
+	
+	@Test
+	public void testParse() throws IOException {
+		final List<CodeRatePair> pairs = new ArrayList<CodeRatePair>();
+		int count = new JsonRateParser(new RateSource.OnRateListener() {
+			@Override
+			public void onRate(CodeRatePair pair) {
+				pairs.add(pair);
+			}
+		}).parseJsonStream(new ByteArrayInputStream(TEST_JSON_RATES.getBytes()));
+		
+		assertEquals("Expected the bad id, null & unparsable rate skipped", 3, count);
+		assertEquals(3, pairs.size());
+		assertEquals("USD", pairs.get(0).srcCode);
+		assertEquals("CAD", pairs.get(0).destCode);
+		assertEquals(1.2315d, pairs.get(0).rate);
+		assertEquals("Expected uppercase", "JPY", pairs.get(1).destCode);
+		assertEquals("Expected quoted rates", 121.505d, pairs.get(1).rate);
+		assertEquals(98.6602d, pairs.get(2).rate);
+	}
+	
+	@Test
+	public void testNoRates() throws IOException {
+		int count = new JsonRateParser(new RateSource.OnRateListener() {
+			@Override
+			public void onRate(CodeRatePair pair) {
+				fail("Expected no rate");
+			}
+		}).parseJsonStream(new ByteArrayInputStream("{\"rates\":null}".getBytes()));
+		assertEquals(0, count);
+	}
+}
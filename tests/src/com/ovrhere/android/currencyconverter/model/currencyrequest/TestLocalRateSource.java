@@ -0,0 +1,126 @@
+package com.ovrhere.android.currencyconverter.model.currencyrequest;
+
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+import org.junit.Test;
+
+import android.content.ContentValues;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.ExchangeRateEntry;
+import com.ovrhere.android.currencyconverter.model.requests.ExponentialBackoffPolicy;
+
+public class TestLocalRateSource extends AndroidTestCase {
+	final static private String LOGTAG = TestLocalRateSource.class.getSimpleName();
+	
+	/** The currencies of the load test; 4950 pairs. */
+	final static private int LOAD_CURRENCY_COUNT = 100;
+	
+	@Test
+	public void testFetchesKnownPairs() throws Exception {
+		Map<String, Double> rates = new HashMap<String, Double>();
+		rates.put("USDCAD", 1.2315d);
+		rates.put("usdjpy", 121.505d);
+		LocalRateSource source = new LocalRateSource(rates);
+		
+		ShardedRateFetcher fetcher = newFetcher(source, new String[]{"USD", "CAD", "JPY"});
+		ContentValues[] results = fetcher.fetch();
+		
+		assertEquals("Expected the known pairs, both ways; CADJPY unknown", 4, results.length);
+		assertEquals("USD", results[0].getAsString(ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE));
+		assertEquals(1.2315d, results[0].getAsDouble(ExchangeRateEntry.COLUMN_EXCHANGE_RATE));
+		assertEquals(0, fetcher.getFailedShardCount());
+		assertEquals(1, source.getRequestCount());
+	}
+	
+	@Test
+	public void testFromStream() throws Exception {
+		LocalRateSource source = LocalRateSource.fromStream(new ByteArrayInputStream(
+				"{\"rates\":{\"USDCAD\":1.2315,\"USDJPY\":121.505,\"CADJPY\":98.6602}}"
+				.getBytes()));
+		
+		ContentValues[] results = 
+				newFetcher(source, new String[]{"USD", "CAD", "JPY"}).fetch();
+		
+		assertEquals("Expected every pair, both ways", 6, results.length);
+	}
+	
+	@Test
+	public void testCancelDuringLatency() throws Exception {
+		final LocalRateSource source = new LocalRateSource(buildRates(buildCodes(10)));
+		source.setLatency(10000);
+		final ShardedRateFetcher fetcher = newFetcher(source, buildCodes(10));
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {}
+				fetcher.cancel();
+			}
+		}).start();
+		
+		final long start = System.currentTimeMillis();
+		try {
+			fetcher.fetch();
+			fail("Expected the fetch cancelled");
+		} catch (CancellationException expected) {}
+		final long time = System.currentTimeMillis() - start;
+		
+		assertTrue("Expected the fetch aborted: " + time + "ms", time < 5000);
+		assertEquals("Expected nothing answered", 0, source.getRequestCount());
+	}
+	
+	@Test
+	public void testLoad() throws Exception {
+		final String[] codes = buildCodes(LOAD_CURRENCY_COUNT);
+		LocalRateSource source = new LocalRateSource(buildRates(codes));
+		source.setLatency(20);
+		ShardedRateFetcher fetcher = newFetcher(source, codes);
+		
+		final long start = System.currentTimeMillis();
+		ContentValues[] results = fetcher.fetch();
+		final long time = System.currentTimeMillis() - start;
+		
+		Log.i(LOGTAG, String.format("%d currencies, %d requests: %dms", 
+				LOAD_CURRENCY_COUNT, fetcher.getShardCount(), time));
+		assertEquals("Expected every pair, both ways", 
+				LOAD_CURRENCY_COUNT * (LOAD_CURRENCY_COUNT - 1), results.length);
+		assertEquals(fetcher.getShardCount(), source.getRequestCount());
+	}
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Helper methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	private static ShardedRateFetcher newFetcher(RateSource source, String[] codes) {
+		ShardedRateFetcher fetcher = new ShardedRateFetcher(source, codes, codes, true);
+		fetcher.setRetryPolicy(new ExponentialBackoffPolicy(0, 0, 0));
+		fetcher.setValidatorCache(null);
+		return fetcher;
+	}
+	
+	/** @return The synthetic codes: C00, C01, ... */
+	private static String[] buildCodes(int count) {
+		String[] codes = new String[count];
+		for (int index = 0; index < count; index++) {
+			codes[index] = String.format("C%02d", index);
+		}
+		return codes;
+	}
+	
+	/** @return A rate for every pair of the codes, one way. */
+	private static Map<String, Double> buildRates(String[] codes) {
+		Map<String, Double> rates = new HashMap<String, Double>();
+		for (int source = 0; source < codes.length; source++) {
+			for (int dest = source + 1; dest < codes.length; dest++) {
+				rates.put(codes[source] + codes[dest], 1.0d + dest / 100.0d);
+			}
+		}
+		return rates;
+	}
+}
@@ -0,0 +1,318 @@
+package com.ovrhere.android.currencyconverter.model.currencyrequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import android.content.ContentValues;
+import android.test.AndroidTestCase;
+
+import com.ovrhere.android.currencyconverter.model.currencyrequest.RateAggregator.Mode;
+import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.ExchangeRateEntry;
+import com.ovrhere.android.currencyconverter.model.requests.AbstractSimpleHttpRequest;
+import com.ovrhere.android.currencyconverter.model.requests.ExponentialBackoffPolicy;
+import com.ovrhere.android.currencyconverter.model.requests.HttpValidatorCache;
+import com.ovrhere.android.currencyconverter.test.StubHttpServer;
+
+public class TestRateAggregator extends AndroidTestCase {
+	final static private String[] CODES = new String[]{"USD", "CAD", "JPY"};
+	
+	/** The latency of a source too slow to wait on. */
+	final static private long SLOW = 10000; //ms
+	
+	/** Matches the pair ids of a query: "USDCAD" */
+	final static private Pattern PAIR_ID = Pattern.compile("\"([A-Z0-9]{6})\"");
+	
+	@Test
+	public void testSingleSource() throws Exception {
+		RateAggregator aggregator = newAggregator(newSource(1.25d, 0));
+		
+		assertEquals("Expected the known pairs, both ways", 6, aggregator.fetch().length);
+		assertTrue(aggregator.isComplete());
+		assertEquals(1, aggregator.getStartedCount());
+		assertEquals(0, aggregator.getWinningSource());
+	}
+	
+	@Test
+	public void testHedgedFastFirstNotHedged() throws Exception {
+		LocalRateSource first = newSource(1.25d, 0);
+		LocalRateSource second = newSource(1.5d, 0);
+		RateAggregator aggregator = newAggregator(first, second);
+		aggregator.setRateSources(Mode.HEDGED, first, second);
+		aggregator.setHedgeDelay(SLOW);
+		
+		ContentValues[] results = aggregator.fetch();
+		
+		assertEquals(1.25d, getRate(results, "USD", "CAD"));
+		assertEquals("Expected no hedge", 1, aggregator.getStartedCount());
+		assertEquals(0, second.getRequestCount());
+	}
+	
+	@Test
+	public void testHedgedSlowFirstHedged() throws Exception {
+		LocalRateSource first = newSource(1.25d, SLOW);
+		LocalRateSource second = newSource(1.5d, 0);
+		RateAggregator aggregator = newAggregator(first);
+		aggregator.setRateSources(Mode.HEDGED, first, second);
+		aggregator.setHedgeDelay(100);
+		
+		final long start = System.currentTimeMillis();
+		ContentValues[] results = aggregator.fetch();
+		final long time = System.currentTimeMillis() - start;
+		
+		assertTrue("Expected the slow source not waited on: " + time + "ms", time < SLOW / 2);
+		assertEquals(1.5d, getRate(results, "USD", "CAD"));
+		assertEquals(2, aggregator.getStartedCount());
+		assertEquals(1, aggregator.getWinningSource());
+		assertTrue(aggregator.isComplete());
+	}
+	
+	@Test
+	public void testHedgedFailedFirstHedgedAtOnce() throws Exception {
+		RateSource failing = new FailingSource(newSource(1.25d, 0));
+		LocalRateSource second = newSource(1.5d, 0);
+		RateAggregator aggregator = newAggregator(failing);
+		aggregator.setRateSources(Mode.HEDGED, failing, second);
+		aggregator.setHedgeDelay(SLOW);
+		
+		final long start = System.currentTimeMillis();
+		ContentValues[] results = aggregator.fetch();
+		final long time = System.currentTimeMillis() - start;
+		
+		assertTrue("Expected the failure not waited out: " + time + "ms", time < SLOW / 2);
+		assertEquals(1.5d, getRate(results, "USD", "CAD"));
+		assertEquals(1, aggregator.getWinningSource());
+		assertFalse(aggregator.isFailed());
+	}
+	
+	@Test
+	public void testHedgedAllFailed() throws Exception {
+		RateSource failing = new FailingSource(newSource(1.25d, 0));
+		RateAggregator aggregator = newAggregator(failing);
+		aggregator.setRateSources(Mode.HEDGED, failing, failing);
+		
+		assertEquals(0, aggregator.fetch().length);
+		assertTrue(aggregator.isFailed());
+		assertFalse(aggregator.isComplete());
+		assertEquals(2, aggregator.getStartedCount());
+	}
+	
+	@Test
+	public void testQuorumMedian() throws Exception {
+		LocalRateSource low = newSource(1.2d, 0);
+		LocalRateSource mid = newSource(1.3d, 0);
+		LocalRateSource high = newSource(5.0d, 0);
+		RateAggregator aggregator = newAggregator(low);
+		aggregator.setRateSources(Mode.QUORUM, high, low, mid);
+		
+		ContentValues[] results = aggregator.fetch();
+		
+		assertEquals("Expected each pair once, both ways", 6, results.length);
+		assertEquals("Expected the median, not the outlier", 1.3d, getRate(results, "USD", "CAD"));
+		assertEquals(1, low.getRequestCount());
+		assertEquals(1, high.getRequestCount());
+		assertEquals(3, aggregator.getStartedCount());
+		assertTrue(aggregator.isComplete());
+	}
+	
+	@Test
+	public void testQuorumDropsPairsBelowQuorum() throws Exception {
+		Map<String, Double> rates = new HashMap<String, Double>();
+		rates.put("USDCAD", 1.2d);
+		LocalRateSource partial = new LocalRateSource(rates);
+		LocalRateSource full = newSource(1.3d, 0);
+		RateAggregator aggregator = newAggregator(partial);
+		aggregator.setRateSources(Mode.QUORUM, partial, full);
+		aggregator.setQuorum(2);
+		
+		ContentValues[] results = aggregator.fetch();
+		
+		assertEquals("Expected only USDCAD, both ways", 2, results.length);
+		assertEquals("Expected the mean of the middle two", 1.25d, getRate(results, "USD", "CAD"));
+		assertEquals(4, aggregator.getDroppedPairCount());
+	}
+	
+	@Test
+	public void testQuorumMajorityByDefault() throws Exception {
+		Map<String, Double> rates = new HashMap<String, Double>();
+		rates.put("USDCAD", 1.2d);
+		LocalRateSource partial = new LocalRateSource(rates);
+		LocalRateSource full = newSource(1.3d, 0);
+		RateAggregator aggregator = newAggregator(partial);
+		aggregator.setRateSources(Mode.QUORUM, partial, partial, full);
+		
+		ContentValues[] results = aggregator.fetch();
+		
+		assertEquals("Expected only USDCAD, given by 2 of 3, both ways", 2, results.length);
+		assertEquals(1.2d, getRate(results, "USD", "CAD"));
+		assertEquals(4, aggregator.getDroppedPairCount());
+	}
+	
+	@Test
+	public void testQuorumNotModifiedSourceStillVotes() throws Exception {
+		final RateResponder unchanged = new RateResponder(1.5d);
+		final RateResponder first = new RateResponder(1.5d);
+		final RateResponder second = new RateResponder(1.5d);
+		final StubHttpServer[] servers = new StubHttpServer[]{ 
+				new StubHttpServer(unchanged), new StubHttpServer(first), 
+				new StubHttpServer(second)};
+		try {
+			final RateSource[] sources = new RateSource[servers.length];
+			for (int index = 0; index < servers.length; index++) {
+				servers[index].setValidators("\"v1\"", null);
+				sources[index] = new YahooRateSource(true, servers[index].getBaseUrl());
+			}
+			RateAggregator aggregator = newAggregator(sources);
+			aggregator.setValidatorCache(new HttpValidatorCache());
+			aggregator.setRateSources(Mode.QUORUM, sources);
+			assertEquals(1.5d, getRate(aggregator.fetch(), "USD", "CAD"));
+			
+			first.mRate = 2.0d;
+			servers[1].setValidators("\"v2\"", null);
+			second.mRate = 2.1d;
+			servers[2].setValidators("\"v2\"", null);
+			ContentValues[] results = aggregator.fetch();
+			
+			assertEquals("Expected every pair, both ways", 6, results.length);
+			assertEquals("Expected the unchanged source to vote", 
+					2.0d, getRate(results, "USD", "CAD"));
+			assertEquals(0, aggregator.getDroppedPairCount());
+			assertEquals("Expected no conditional request", 0, servers[0].getNotModifiedCount());
+		} finally {
+			for (StubHttpServer server : servers) {
+				server.shutdown();
+			}
+		}
+	}
+	
+	@Test
+	public void testMedian() {
+		assertEquals(2.0d, RateAggregator.median(new ArrayList<Double>(Arrays.asList(3.0d, 1.0d, 2.0d))));
+		assertEquals(2.5d, RateAggregator.median(new ArrayList<Double>(Arrays.asList(4.0d, 1.0d, 2.0d, 3.0d))));
+		assertEquals(7.0d, RateAggregator.median(new ArrayList<Double>(Arrays.asList(7.0d))));
+	}
+	
+	@Test
+	public void testCancel() throws Exception {
+		final LocalRateSource first = newSource(1.25d, SLOW);
+		final LocalRateSource second = newSource(1.5d, SLOW);
+		final RateAggregator aggregator = newAggregator(first);
+		aggregator.setRateSources(Mode.QUORUM, first, second);
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {}
+				aggregator.cancel();
+			}
+		}).start();
+		
+		final long start = System.currentTimeMillis();
+		try {
+			aggregator.fetch();
+			fail("Expected the fetch cancelled");
+		} catch (CancellationException expected) {}
+		final long time = System.currentTimeMillis() - start;
+		
+		assertTrue("Expected every source aborted: " + time + "ms", time < SLOW / 2);
+		assertTrue(aggregator.isCancelled());
+		assertEquals(0, first.getRequestCount());
+		assertEquals(0, second.getRequestCount());
+	}
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Helper methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	private static RateAggregator newAggregator(RateSource... sources) {
+		RateAggregator aggregator = new RateAggregator(sources[0], CODES, CODES, true);
+		aggregator.setRetryPolicy(new ExponentialBackoffPolicy(0, 0, 0));
+		aggregator.setValidatorCache(null);
+		return aggregator;
+	}
+	
+	/** @return A source of every pair of {@link #CODES} at the rate. */
+	private static LocalRateSource newSource(double rate, long latency) {
+		Map<String, Double> rates = new HashMap<String, Double>();
+		rates.put("USDCAD", rate);
+		rates.put("USDJPY", rate);
+		rates.put("CADJPY", rate);
+		LocalRateSource source = new LocalRateSource(rates);
+		source.setLatency(latency);
+		return source;
+	}
+	
+	/** @return The rate of the pair in the results. */
+	private static double getRate(ContentValues[] results, String source, String dest) {
+		for (ContentValues values : results) {
+			if (source.equals(values.getAsString(ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE)) &&
+					dest.equals(values.getAsString(ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE))) {
+				return values.getAsDouble(ExchangeRateEntry.COLUMN_EXCHANGE_RATE);
+			}
+		}
+		fail("Expected the pair " + source + dest);
+		return 0;
+	}
+	
+	/** Answers every pair of the yql query with a json rate. */
+	private static class RateResponder implements StubHttpServer.Responder {
+		volatile private double mRate;
+		
+		public RateResponder(double rate) {
+			this.mRate = rate;
+		}
+		
+		@Override
+		public String respond(String target) {
+			String query = null;
+			try {
+				query = URLDecoder.decode(target, "UTF-8");
+			} catch (UnsupportedEncodingException e) {
+				return null;
+			}
+			StringBuilder rates = new StringBuilder();
+			int count = 0;
+			Matcher matcher = PAIR_ID.matcher(query);
+			while (matcher.find()) {
+				if (count++ > 0) {
+					rates.append(",");
+				}
+				rates.append("{\"id\":\"").append(matcher.group(1))
+					.append("\",\"Rate\":\"").append(mRate).append("\"}");
+			}
+			return "{\"query\":{\"count\":" + count + ",\"results\":{\"rate\":[" +
+					rates + "]}}}";
+		}
+	}
+	
+	/** A source whose every response fails to parse. */
+	private static class FailingSource implements RateSource {
+		final private RateSource mSource;
+		
+		public FailingSource(RateSource source) {
+			this.mSource = source;
+		}
+		
+		@Override
+		public AbstractSimpleHttpRequest newRequest(List<String> pairIds) {
+			return mSource.newRequest(pairIds);
+		}
+		
+		@Override
+		public void parse(InputStream in, OnRateListener listener) throws IOException {
+			throw new IOException("Unparsable");
+		}
+	}
+}
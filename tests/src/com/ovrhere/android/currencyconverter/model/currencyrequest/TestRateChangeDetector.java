@@ -0,0 +1,71 @@
+package com.ovrhere.android.currencyconverter.model.currencyrequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import android.content.ContentValues;
+import android.test.ProviderTestCase2;
+
+import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.ExchangeRateEntry;
+import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterProvider;
+import com.ovrhere.android.currencyconverter.test.UtilityTestMethods;
+
+public class TestRateChangeDetector extends ProviderTestCase2<CurrencyConverterProvider> {
+
+	public TestRateChangeDetector() {
+		super(	CurrencyConverterProvider.class, 
+				CurrencyConverterProvider.class.getPackage().toString());
+	}
+	
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		UtilityTestMethods.deleteDatabaseByContentResolver(mContext);
+	}
+	
+	@After
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		UtilityTestMethods.deleteDatabaseByContentResolver(mContext);
+	}
+	
+	@Test
+	public void testAllNewWhenEmpty() {
+		RateChangeDetector detector = new RateChangeDetector(mContext.getContentResolver());
+		ContentValues[] values = new ContentValues[]{
+				new CodeRatePair("USDCAD", 1.2315d).toContentValues(),
+				new CodeRatePair("USDJPY", 121.505d).toContentValues()
+		};
+		
+		assertEquals("Expected every row to be written", 2, detector.detect(values).length);
+		assertEquals(2, detector.getNewCount());
+		assertEquals(0, detector.getChangedCount());
+		assertEquals(0, detector.getUnchangedCount());
+	}
+	
+	@Test
+	public void testOnlyChangedWritten() {
+		mContext.getContentResolver().bulkInsert(ExchangeRateEntry.CONTENT_URI, 
+				new ContentValues[]{
+					new CodeRatePair("USDCAD", 1.2315d).toContentValues(),
+					new CodeRatePair("USDJPY", 121.505d).toContentValues()
+				});
+		
+		RateChangeDetector detector = new RateChangeDetector(mContext.getContentResolver());
+		ContentValues changed = new CodeRatePair("USDJPY", 121.6d).toContentValues();
+		ContentValues added = new CodeRatePair("CADJPY", 98.6602d).toContentValues();
+		ContentValues[] results = detector.detect(new ContentValues[]{
+				new CodeRatePair("usdcad", 1.23150004d).toContentValues(), //below the rounding
+				changed,
+				added
+		});
+		
+		assertEquals("Expected only the changed & new rows", 2, results.length);
+		assertSame(changed, results[0]);
+		assertSame(added, results[1]);
+		assertEquals(1, detector.getChangedCount());
+		assertEquals(1, detector.getUnchangedCount());
+		assertEquals(1, detector.getNewCount());
+	}
+}
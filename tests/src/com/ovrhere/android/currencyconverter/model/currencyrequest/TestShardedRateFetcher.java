@@ -0,0 +1,335 @@
+package com.ovrhere.android.currencyconverter.model.currencyrequest;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Test;
+
+import android.content.ContentValues;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.ovrhere.android.currencyconverter.model.requests.ExponentialBackoffPolicy;
+import com.ovrhere.android.currencyconverter.model.requests.HttpValidatorCache;
+import com.ovrhere.android.currencyconverter.model.requests.RetryPolicy;
+import com.ovrhere.android.currencyconverter.test.StubHttpServer;
+
+public class TestShardedRateFetcher extends AndroidTestCase {
+	final static private String LOGTAG = TestShardedRateFetcher.class.getSimpleName();
+
+	/** The currencies of the benchmark; 435 pairs. */
+	final static private int BENCHMARK_CURRENCY_COUNT = 30;
+	/** The delay of every benchmark response. */
+	final static private long BENCHMARK_DELAY = 200; //ms
+
+	/** Matches the pair ids of a query: "USDCAD" */
+	final static private Pattern PAIR_ID = Pattern.compile("\"([A-Z0-9]{6})\"");
+
+	private StubHttpServer mServer = null;
+
+	@After
+	protected void tearDown() throws Exception {
+		if (mServer != null) {
+			mServer.shutdown();
+		}
+		super.tearDown();
+	}
+
+	@Test
+	public void testShard() {
+		List<List<String>> shards = ShardedRateFetcher.shard(
+				Arrays.asList("USDCAD", "USDJPY", "USDEUR", "CADJPY", "CADEUR"), 2);
+		assertEquals("Unexpected shard count", 3, shards.size());
+		assertEquals(Arrays.asList("USDCAD", "USDJPY"), shards.get(0));
+		assertEquals(Arrays.asList("CADEUR"), shards.get(2));
+	}
+
+	@Test
+	public void testFetchMergesShards() throws Exception {
+		mServer = new StubHttpServer(new RateResponder(null));
+		ShardedRateFetcher fetcher = newFetcher(buildCodes(10), 10, 4);
+
+		ContentValues[] results = fetcher.fetch();
+
+		assertEquals("Expected a request per shard", 5, mServer.getRequestCount());
+		assertEquals("Expected every pair, both ways", 90, results.length);
+		assertEquals(0, fetcher.getFailedShardCount());
+	}
+
+	@Test
+	public void testFailedShardRetried() throws Exception {
+		final Set<String> seen = new HashSet<String>();
+		mServer = new StubHttpServer(new RateResponder(null) {
+			@Override
+			public String respond(String target) {
+				synchronized (seen) {
+					if (seen.add(target)) {
+						return null; //fail every first attempt
+					}
+				}
+				return super.respond(target);
+			}
+		});
+		ShardedRateFetcher fetcher = newFetcher(buildCodes(10), 10, 4);
+
+		ContentValues[] results = fetcher.fetch();
+
+		assertEquals("Expected every shard twice", 10, mServer.getRequestCount());
+		assertEquals("Expected every pair, both ways", 90, results.length);
+		assertEquals(0, fetcher.getFailedShardCount());
+		assertEquals(10, fetcher.getAttemptCount());
+	}
+
+	@Test
+	public void testNonRetryableNotRetried() throws Exception {
+		mServer = new StubHttpServer(new RateResponder("C0"));
+		mServer.setErrorStatus(404);
+		ShardedRateFetcher fetcher = newFetcher(buildCodes(10), 10, 4);
+
+		assertEquals(0, fetcher.fetch().length);
+
+		assertEquals("Expected no shard retried", 5, mServer.getRequestCount());
+		assertEquals(5, fetcher.getAttemptCount());
+		assertEquals(5, fetcher.getFailedShardCount());
+		assertEquals(0, fetcher.getBackoffTime());
+	}
+
+	@Test
+	public void testBackoffTimed() throws Exception {
+		final long BACKOFF = 100; //ms
+		mServer = new StubHttpServer(new RateResponder("C00C01"));
+		ShardedRateFetcher fetcher = newFetcher(buildCodes(10), 10, 4);
+		fetcher.setRetryPolicy(new RetryPolicy() {
+			@Override
+			public boolean isRetryable(int responseCode, Exception error) {
+				return true;
+			}
+			@Override
+			public long getBackoff(int retry) {
+				return retry <= 2 ? BACKOFF : -1;
+			}
+		});
+
+		fetcher.fetch();
+
+		assertEquals("Expected the failing shard tried 3 times", 7, fetcher.getAttemptCount());
+		assertTrue("Expected both backoffs waited: " + fetcher.getBackoffTime(), 
+				fetcher.getBackoffTime() >= 2 * BACKOFF);
+		assertEquals(1, fetcher.getFailedShardCount());
+	}
+
+	@Test
+	public void testFailedShardCounted() throws Exception {
+		mServer = new StubHttpServer(new RateResponder("C00C01"));
+		ShardedRateFetcher fetcher = newFetcher(buildCodes(10), 10, 4);
+
+		ContentValues[] results = fetcher.fetch();
+
+		assertEquals("Expected the failing shard to be skipped", 70, results.length);
+		assertEquals(1, fetcher.getFailedShardCount());
+	}
+
+	@Test
+	public void testNotModifiedShards() throws Exception {
+		mServer = new StubHttpServer(new RateResponder(null));
+		mServer.setValidators("\"v1\"", null);
+		ShardedRateFetcher fetcher = newFetcher(buildCodes(10), 10, 4);
+		fetcher.setValidatorCache(new HttpValidatorCache());
+		
+		assertEquals("Expected every pair, both ways", 90, fetcher.fetch().length);
+		assertEquals(0, fetcher.getNotModifiedShardCount());
+		
+		assertEquals("Expected nothing to parse", 0, fetcher.fetch().length);
+		assertEquals("Expected every shard not modified", 5, fetcher.getNotModifiedShardCount());
+		assertEquals(0, fetcher.getFailedShardCount());
+		assertEquals(5, mServer.getNotModifiedCount());
+	}
+
+	@Test
+	public void testDiscardValidators() throws Exception {
+		mServer = new StubHttpServer(new RateResponder(null));
+		mServer.setValidators("\"v1\"", null);
+		ShardedRateFetcher fetcher = newFetcher(buildCodes(10), 10, 4);
+		fetcher.setValidatorCache(new HttpValidatorCache());
+		assertEquals(90, fetcher.fetch().length);
+		
+		fetcher.discardValidators();
+		
+		assertEquals("Expected every shard in full", 90, fetcher.fetch().length);
+		assertEquals(0, fetcher.getNotModifiedShardCount());
+		assertEquals(0, mServer.getNotModifiedCount());
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		mServer = new StubHttpServer(new RateResponder(null));
+		mServer.setDelay(10000);
+		final ShardedRateFetcher fetcher = newFetcher(buildCodes(10), 10, 4);
+		Thread canceller = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (mServer.getRequestCount() < 4) {
+					try {
+						Thread.sleep(10);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				fetcher.cancel();
+			}
+		});
+		canceller.start();
+		
+		final long start = System.currentTimeMillis();
+		try {
+			fetcher.fetch();
+			fail("Expected the fetch cancelled");
+		} catch (CancellationException expected) {}
+		final long time = System.currentTimeMillis() - start;
+		
+		assertTrue("Expected the fetch aborted, not waited on: " + time + "ms", time < 5000);
+		assertTrue(fetcher.isCancelled());
+		assertEquals("Expected no shard retried or started after", 4, mServer.getRequestCount());
+	}
+
+	@Test
+	public void testCancelBeforeFetch() throws Exception {
+		mServer = new StubHttpServer(new RateResponder(null));
+		final ShardedRateFetcher fetcher = newFetcher(buildCodes(10), 10, 4);
+		fetcher.cancel();
+
+		try {
+			fetcher.fetch();
+			fail("Expected the pending cancel to abort the fetch");
+		} catch (CancellationException expected) {}
+		assertTrue(fetcher.isCancelled());
+		assertEquals("Expected no request made", 0, mServer.getRequestCount());
+
+		assertEquals("Expected the cancel spent", 90, fetcher.fetch().length);
+		assertFalse(fetcher.isCancelled());
+	}
+
+	@Test
+	public void testThreadsKeptBetweenFetches() throws Exception {
+		mServer = new StubHttpServer(new RateResponder(null));
+		final ShardedRateFetcher fetcher = newFetcher(buildCodes(10), 10, 4);
+		final Set<String> first = new HashSet<String>();
+		final Set<String> second = new HashSet<String>();
+		try {
+			fetcher.fetch(new ThreadRecorder(first));
+			fetcher.fetch(new ThreadRecorder(second));
+		} finally {
+			fetcher.shutdown();
+		}
+
+		assertFalse(first.isEmpty());
+		assertTrue("Expected the threads of the first fetch reused: " + first + ", " + second,
+				first.containsAll(second));
+	}
+
+	@Test
+	public void testParallelFetchTime() throws Exception {
+		mServer = new StubHttpServer(new RateResponder(null));
+		mServer.setDelay(BENCHMARK_DELAY);
+		final String[] codes = buildCodes(BENCHMARK_CURRENCY_COUNT);
+
+		long serial = timeFetch(newFetcher(codes, ShardedRateFetcher.DEFAULT_SHARD_SIZE, 1));
+		long parallel = timeFetch(newFetcher(codes, ShardedRateFetcher.DEFAULT_SHARD_SIZE,
+				ShardedRateFetcher.DEFAULT_PARALLELISM));
+
+		Log.i(LOGTAG, String.format("%d currencies, %dms per response; serial: %dms, parallel: %dms",
+				BENCHMARK_CURRENCY_COUNT, BENCHMARK_DELAY, serial, parallel));
+		assertTrue("Expected concurrent shards to be faster", parallel < serial);
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Helper methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+
+	private ShardedRateFetcher newFetcher(String[] codes, int shardSize, int parallelism) {
+		ShardedRateFetcher fetcher = new ShardedRateFetcher(
+				new YahooRateSource(true, mServer.getBaseUrl()), codes, codes, true);
+		fetcher.setShardSize(shardSize);
+		fetcher.setParallelism(parallelism);
+		fetcher.setRetryPolicy(new ExponentialBackoffPolicy(0, 0, 3));
+		return fetcher;
+	}
+
+	/** @return The time in ms to fetch, having checked every pair was returned. */
+	private static long timeFetch(ShardedRateFetcher fetcher) throws InterruptedException {
+		final long start = System.currentTimeMillis();
+		ContentValues[] results = fetcher.fetch();
+		final long time = System.currentTimeMillis() - start;
+		assertEquals("Expected every pair, both ways",
+				BENCHMARK_CURRENCY_COUNT * (BENCHMARK_CURRENCY_COUNT - 1), results.length);
+		return time;
+	}
+
+	/** @return The synthetic codes: C00, C01, ... */
+	private static String[] buildCodes(int count) {
+		String[] codes = new String[count];
+		for (int index = 0; index < count; index++) {
+			codes[index] = String.format("C%02d", index);
+		}
+		return codes;
+	}
+
+	/** Records the threads giving rates. */
+	private static class ThreadRecorder implements RateSource.OnRateListener {
+		final private Set<String> mThreads;
+
+		public ThreadRecorder(Set<String> threads) {
+			this.mThreads = threads;
+		}
+
+		@Override
+		public void onRate(CodeRatePair pair) {
+			synchronized (mThreads) {
+				mThreads.add(Thread.currentThread().getName());
+			}
+		}
+	}
+
+	/** Answers every pair of the yql query with a json rate of 1.5. */
+	private static class RateResponder implements StubHttpServer.Responder {
+		/** The pair whose shard always fails, if any. */
+		final private String mFailingPair;
+
+		public RateResponder(String failingPair) {
+			this.mFailingPair = failingPair;
+		}
+
+		@Override
+		public String respond(String target) {
+			String query = null;
+			try {
+				query = URLDecoder.decode(target, "UTF-8");
+			} catch (UnsupportedEncodingException e) {
+				return null;
+			}
+			if (mFailingPair != null && query.contains(mFailingPair)) {
+				return null;
+			}
+			StringBuilder rates = new StringBuilder();
+			int count = 0;
+			Matcher matcher = PAIR_ID.matcher(query);
+			while (matcher.find()) {
+				if (count++ > 0) {
+					rates.append(",");
+				}
+				rates.append("{\"id\":\"").append(matcher.group(1))
+					.append("\",\"Rate\":\"1.5\"}");
+			}
+			return "{\"query\":{\"count\":" + count + ",\"results\":{\"rate\":[" +
+					rates + "]}}}";
+		}
+	}
+}
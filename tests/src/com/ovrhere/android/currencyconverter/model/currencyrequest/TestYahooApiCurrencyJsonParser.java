@@ -3,6 +3,7 @@ package com.ovrhere.android.currencyconverter.model.currencyrequest;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 
 import org.junit.Test;
 
@@ -69,5 +70,40 @@ public class TestYahooApiCurrencyJsonParser extends TestCase {
 		
 		UtilityTestMethods.validateContentValues("Mismatch found for xml", TEST_EXPECTED_RATES, results);		
 	}
+	
+	@Test
+	public void testParseJsonStreamWithoutReverse() throws IOException {
+		final InputStream fakeJsonStream = new ByteArrayInputStream(TEST_JSON_RATES.getBytes());
+		
+		//the first half are the rates as given; the second are manufactured.
+		final ContentValues[] expected = 
+				Arrays.copyOf(TEST_EXPECTED_RATES, TEST_EXPECTED_RATES.length / 2);
+		ContentValues[] results = new YahooApiCurrencyJsonParser(false).parseJsonStream(fakeJsonStream);
+		
+		assertEquals("Did not get the expected number of results", expected.length, results.length);
+		
+		UtilityTestMethods.validateContentValues("Mismatch found for json", expected, results);		
+	}
+
+	@Test
+	public void testUnavailableRateSkipped() throws IOException {
+		final String json = "{\"query\":{\"count\":2,\"results\":{\"rate\":[" +
+				"{\"id\":\"USDXXX\",\"Name\":\"N/A\",\"Rate\":\"N/A\",\"Date\":\"N/A\"}," +
+				"{\"id\":\"USDCAD\",\"Rate\":\"1.2283\"}]}}}";
+		ContentValues[] results = new YahooApiCurrencyJsonParser(false)
+				.parseJsonStream(new ByteArrayInputStream(json.getBytes()));
+		
+		assertEquals("Expected the pair after the unavailable rate", 1, results.length);
+		assertEquals(TEST_EXPECTED_RATES[1], results[0]);
+	}
+	
+	@Test
+	public void testNoResults() throws IOException {
+		final String json = "{\"query\":{\"count\":0,\"created\":\"2015-05-24T05:17:00Z\",\"results\":null}}";
+		ContentValues[] results = new YahooApiCurrencyJsonParser()
+				.parseJsonStream(new ByteArrayInputStream(json.getBytes()));
+		
+		assertEquals(0, results.length);
+	}
 
 }
@@ -0,0 +1,334 @@
+package com.ovrhere.android.currencyconverter.model.currencyrequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+import android.content.ContentValues;
+import android.util.Log;
+import junit.framework.TestCase;
+
+import com.ovrhere.android.currencyconverter.test.UtilityTestMethods;
+
+public class TestYahooApiCurrencyJsonScanner extends TestCase {
+	final static private String LOGTAG = TestYahooApiCurrencyJsonScanner.class.getSimpleName();
+	
+	/** The pair counts of the benchmark responses. */
+	final static private int[] BENCHMARK_PAIR_COUNTS = new int[]{100, 1000, 30000};
+	/** The parses of each benchmark response timed, after as many to warm up. */
+	final static private int BENCHMARK_ITERATIONS = 10;
+	
+	//Source: http://query.yahooapis.com/v1/public/yql/?q=select * from yahoo.finance.xchange where pair in ("USDBBD", "USDCAD", "USDJPY")&env=store://datatables.org/alltableswithkeys&format=json
+	//Retrieved: 2015-05-24
+	private static final String TEST_JSON_RATES = "{\"query\":{\"count\":3,\"created\":\"2015-05-24T05:17:00Z\",\"lang\":\"en-US\",\"results\":{\"rate\":[{\"id\":\"USDBBD\",\"Name\":\"USD/BBD\",\"Rate\":\"2.0000\",\"Date\":\"5/23/2015\",\"Time\":\"12:55pm\",\"Ask\":\"2.0000\",\"Bid\":\"2.0000\"},{\"id\":\"USDCAD\",\"Name\":\"USD/CAD\",\"Rate\":\"1.2283\",\"Date\":\"5/23/2015\",\"Time\":\"12:55pm\",\"Ask\":\"1.2292\",\"Bid\":\"1.2283\"},{\"id\":\"USDJPY\",\"Name\":\"USD/JPY\",\"Rate\":\"121.5350\",\"Date\":\"5/23/2015\",\"Time\":\"12:55pm\",\"Ask\":\"121.6000\",\"Bid\":\"121.5350\"}]}}}";
+	
+	private static final ContentValues[] TEST_EXPECTED_RATES = new ContentValues[] {
+		new CodeRatePair("USDBBD",	2.0d).toContentValues(),
+		new CodeRatePair("BBDUSD",	0.5d).toContentValues(),
+		new CodeRatePair("USDCAD",	1.2283d).toContentValues(),
+		new CodeRatePair("CADUSD",	0.814133d).toContentValues(),
+		new CodeRatePair("USDJPY",	121.535d).toContentValues(),
+		new CodeRatePair("JPYUSD",	0.008228d).toContentValues(),
+	};
+	
+	/** Payloads on the edges of the grammar, each parsed the same by both parsers. */
+	private static final String[] TEST_EDGE_PAYLOADS = new String[] {
+		//whitespace throughout
+		"{ \"query\" :\n {\r\n\t\"count\" : 2 , \"results\" : { \"rate\" : [\n" +
+			"  { \"id\" : \"USDCAD\" , \"Rate\" : \"1.2283\" } ,\n" +
+			"  { \"id\" : \"USDJPY\" , \"Rate\" : \"121.5350\" }\n ] } } }",
+		//rate first, duplicates, nulls & missing values
+		"{\"query\":{\"results\":{\"rate\":[" +
+			"{\"Rate\":\"1.5\",\"id\":\"USDCAD\"}," +
+			"{\"id\":\"USDEUR\",\"Rate\":\"1.5\",\"id\":\"USDGBP\",\"Rate\":\"2.5\"}," +
+			"{\"id\":null,\"Rate\":\"1.5\"}," +
+			"{\"id\":\"USDJPY\",\"Rate\":null}," +
+			"{\"id\":\"EURJPY\",\"Rate\":\"3.5\",\"Rate\":null}," +
+			"{\"id\":\"EURCAD\"}," +
+			"{\"Rate\":\"1.5\"}," +
+			"{}]}}}",
+		//escapes & skipped strings that look like structure
+		"{\"query\":{\"results\":{\"rate\":[" +
+			"{\"id\":\"USD\\u0043AD\",\"Name\":\"a \\\"}]{,: b\\\\\",\"Rate\":\"1.5\"}," +
+			"{\"\\u0069d\":\"USDJPY\",\"R\\u0061te\":\"2.5\"}," +
+			"{\"id\":\"USD\\/EU\",\"Rate\":\"0.5\"}," +
+			"{\"id\":\"USDGBP\",\"Rate\":\"\\u0031.25\"}]}}}",
+		//unquoted numbers & rates of more digits than a double
+		"{\"query\":{\"results\":{\"rate\":[" +
+			"{\"id\":\"USDCAD\",\"Rate\":1.5}," +
+			"{\"id\":\"USDJPY\",\"Rate\":121}," +
+			"{\"id\":\"USDEUR\",\"Rate\":-0}," +
+			"{\"id\":\"USDGBP\",\"Rate\":1.5e-3}," +
+			"{\"id\":\"EURCAD\",\"Rate\":\"1.23456789012345678901\"}," +
+			"{\"id\":\"EURJPY\",\"Rate\":\"98765432109876543210.5\"}," +
+			"{\"id\":\"EURGBP\",\"Rate\":\"  0.75 \"}," +
+			"{\"id\":\"GBPCAD\",\"Rate\":\"1.\"}," +
+			"{\"id\":\"GBPJPY\",\"Rate\":\".5\"}," +
+			"{\"id\":\"CADJPY\",\"Rate\":\"+2\"}," +
+			"{\"id\":123456,\"Rate\":\"2\"}]}}}",
+		//nested values skipped
+		"{\"lang\":[1,{\"query\":{}}],\"query\":{\"created\":{\"a\":[1,{\"b\":null}],\"c\":true}," +
+			"\"results\":{\"count\":[[],{}],\"rate\":[" +
+			"{\"id\":\"USDCAD\",\"extra\":{\"Rate\":\"9\"},\"Rate\":\"1.5\",\"more\":[false,\"]\"]}]}}}",
+		//several results, several queries; the last query's
+		"{\"query\":{\"results\":{\"rate\":[{\"id\":\"USDCAD\",\"Rate\":\"1.5\"}]}}," +
+			"\"query\":{\"results\":{\"rate\":[{\"id\":\"USDJPY\",\"Rate\":\"120\"}]}," +
+			"\"results\":{\"rate\":[{\"id\":\"USDEUR\",\"Rate\":\"0.9\"}],\"rate\":null}," +
+			"\"results\":null},\"query\":null}",
+		//nothing
+		"{}",
+		"{\"query\":null}",
+		"{\"query\":{\"count\":0,\"results\":null}}",
+		"{\"query\":{\"results\":{\"rate\":[]}}}",
+		//pairs that are not
+		"{\"query\":{\"results\":{\"rate\":[" +
+			"{\"id\":\"usdcad\",\"Rate\":\"1.5\"}," +
+			"{\"id\":\"USDCADX\",\"Rate\":\"1.5\"}," +
+			"{\"id\":\"USD\",\"Rate\":\"1.5\"}," +
+			"{\"id\":\"\u00e9URUSD\",\"Rate\":\"1.5\"}," +
+			"{\"id\":\"USDJPY\",\"Rate\":\"N/A\"}," +
+			"{\"id\":\"USDEUR\",\"Rate\":\"\"}," +
+			"{\"id\":\"USDGBP\",\"Rate\":\"N/A\",\"Rate\":\"1.5\"}," +
+			"{\"id\":\"EURGBP\",\"Rate\":\"0.7\"}]}}}",
+	};
+	
+	/** Payloads both parsers must reject. */
+	private static final String[] TEST_MALFORMED_PAYLOADS = new String[] {
+		"",
+		"{\"query\":{\"results\":{\"rate\":[{\"id\":\"USDCAD\",\"Rate\":\"1.5\"}",
+		"{\"query\":{\"results\":{\"rate\":[{\"id\":\"USDCAD\",\"Rate\":\"NaN\"}]}}}",
+		"{\"query\":{\"results\":{\"rate\":[{\"id\":\"USDCAD\",\"Rate\":\"1e400\"}]}}}",
+		"{\"query\":{\"results\":{\"rate\":[{\"id\":\"USDCAD\",\"Rate\":01.5}]}}}",
+		"{\"query\":{\"results\":{\"rate\":[{\"id\":\"USDCAD\" \"Rate\":\"1.5\"}]}}}",
+	};
+	
+	@Test
+	public void testParseJsonStreamInputStream() throws IOException {
+		ContentValues[] results = new YahooApiCurrencyJsonScanner().parseJsonStream(toStream(TEST_JSON_RATES));
+		
+		assertEquals("Did not get the expected number of results", TEST_EXPECTED_RATES.length, results.length);
+		UtilityTestMethods.validateContentValues("Mismatch found for json", TEST_EXPECTED_RATES, results);
+		for (int index = 0; index < results.length; index++) {
+			assertEquals("Expected each rate followed by its reverse", TEST_EXPECTED_RATES[index], results[index]);
+		}
+	}
+	
+	@Test
+	public void testParseJsonStreamWithoutReverse() throws IOException {
+		ContentValues[] results = new YahooApiCurrencyJsonScanner(false).parseJsonStream(toStream(TEST_JSON_RATES));
+		
+		assertEquals("Did not get the expected number of results", 3, results.length);
+		assertEquals(TEST_EXPECTED_RATES[0], results[0]);
+		assertEquals(TEST_EXPECTED_RATES[2], results[1]);
+		assertEquals(TEST_EXPECTED_RATES[4], results[2]);
+	}
+	
+	@Test
+	public void testSameAsJsonParser() throws IOException {
+		assertSameAsJsonParser(TEST_JSON_RATES);
+		for (String payload : TEST_EDGE_PAYLOADS) {
+			assertSameAsJsonParser(payload);
+		}
+		for (int count : BENCHMARK_PAIR_COUNTS) {
+			assertSameAsJsonParser(buildPayload(count, new Random(count)));
+		}
+	}
+	
+	@Test
+	public void testStreamedSameAsJsonParser() throws IOException {
+		for (String payload : TEST_EDGE_PAYLOADS) {
+			List<CodeRatePair> expected = new ArrayList<CodeRatePair>();
+			YahooApiCurrencyJsonParser parser = new YahooApiCurrencyJsonParser();
+			parser.setOnRateListener(collect(expected));
+			assertEquals(0, parser.parseJsonStream(toStream(payload)).length);
+			
+			List<CodeRatePair> actual = new ArrayList<CodeRatePair>();
+			YahooApiCurrencyJsonScanner scanner = new YahooApiCurrencyJsonScanner();
+			scanner.setOnRateListener(collect(actual));
+			assertEquals(0, scanner.parseJsonStream(toStream(payload)).length);
+			
+			assertEquals("Mismatch streaming: " + payload, expected.size(), actual.size());
+			for (int index = 0; index < expected.size(); index++) {
+				assertEquals(expected.get(index).srcId, actual.get(index).srcId);
+				assertEquals(expected.get(index).destId, actual.get(index).destId);
+				assertEquals(expected.get(index).rate, actual.get(index).rate);
+			}
+		}
+	}
+	
+	@Test
+	public void testUnavailableRateSkipped() throws IOException {
+		final String payload = TEST_EDGE_PAYLOADS[TEST_EDGE_PAYLOADS.length - 1];
+		ContentValues[] results = new YahooApiCurrencyJsonScanner(false).parseJsonStream(toStream(payload));
+		
+		//usdcad, \u00e9URUSD & EURGBP
+		assertEquals("Expected the pairs after an unavailable rate", 3, results.length);
+		assertEquals(new CodeRatePair("EURGBP", 0.7d).toContentValues(), results[2]);
+	}
+	
+	@Test
+	public void testMalformedRejected() {
+		for (String payload : TEST_MALFORMED_PAYLOADS) {
+			try {
+				new YahooApiCurrencyJsonParser().parseJsonStream(toStream(payload));
+				fail("Expected the json parser to reject: " + payload);
+			} catch (IOException expected) {}
+			try {
+				new YahooApiCurrencyJsonScanner().parseJsonStream(toStream(payload));
+				fail("Expected the scanner to reject: " + payload);
+			} catch (IOException expected) {}
+		}
+	}
+	
+	@Test
+	public void testParseDecimal() {
+		final String[] decimals = new String[] {
+			"0", "-0", "1", "0.1", "0.7876", "121.5350", "-1.5", "9007199254740992", 
+			"9007199254740993", "0.30000000000000004", "1.0000000000000000000001", 
+			"123456789.123456789", "1e5", "1E-5", "1.", ".5", "+1", "-", "", "N/A", 
+			"1.2.3", "0x10", " 1", "1d", "Infinity", "NaN"
+		};
+		for (String decimal : decimals) {
+			assertParsesAsDouble(decimal);
+		}
+		Random random = new Random(42);
+		for (int index = 0; index < 200000; index++) {
+			final int digits = 1 + random.nextInt(20);
+			StringBuilder decimal = new StringBuilder();
+			if (random.nextBoolean()) {
+				decimal.append('-');
+			}
+			for (int digit = 0; digit < digits; digit++) {
+				decimal.append((char) ('0' + random.nextInt(10)));
+			}
+			decimal.insert(decimal.length() - random.nextInt(digits), '.');
+			assertParsesAsDouble(decimal.toString());
+		}
+	}
+	
+	@Test
+	public void testParseBenchmark() throws IOException {
+		for (int count : BENCHMARK_PAIR_COUNTS) {
+			final byte[] payload = buildPayload(count, new Random(count)).getBytes("UTF-8");
+			
+			//warm up
+			for (int index = 0; index < BENCHMARK_ITERATIONS; index++) {
+				new YahooApiCurrencyJsonParser().parseJsonStream(new ByteArrayInputStream(payload));
+				new YahooApiCurrencyJsonScanner().parseJsonStream(new ByteArrayInputStream(payload));
+			}
+			
+			long start = System.nanoTime();
+			for (int index = 0; index < BENCHMARK_ITERATIONS; index++) {
+				new YahooApiCurrencyJsonParser().parseJsonStream(new ByteArrayInputStream(payload));
+			}
+			final long reader = (System.nanoTime() - start) / BENCHMARK_ITERATIONS;
+			
+			start = System.nanoTime();
+			for (int index = 0; index < BENCHMARK_ITERATIONS; index++) {
+				new YahooApiCurrencyJsonScanner().parseJsonStream(new ByteArrayInputStream(payload));
+			}
+			final long scanner = (System.nanoTime() - start) / BENCHMARK_ITERATIONS;
+			
+			Log.i(LOGTAG, String.format(Locale.US, 
+					"%d pairs, %d bytes; JsonReader: %dus/parse, scanner: %dus/parse", 
+					count, payload.length, reader / 1000, scanner / 1000));
+			if (count == BENCHMARK_PAIR_COUNTS[BENCHMARK_PAIR_COUNTS.length - 1]) {
+				assertTrue("Expected the scanner to be faster", scanner < reader);
+			}
+		}
+	}
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Helper methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	private static InputStream toStream(String payload) {
+		try {
+			return new ByteArrayInputStream(payload.getBytes("UTF-8"));
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+	}
+	
+	private static RateSource.OnRateListener collect(final List<CodeRatePair> pairs) {
+		return new RateSource.OnRateListener() {
+			@Override
+			public void onRate(CodeRatePair pair) {
+				pairs.add(pair);
+			}
+		};
+	}
+	
+	/** Asserts both parsers give the same values, in the same order, either way. */
+	private static void assertSameAsJsonParser(String payload) throws IOException {
+		for (boolean reverse : new boolean[]{true, false}) {
+			ContentValues[] expected = new YahooApiCurrencyJsonParser(reverse)
+					.parseJsonStream(toStream(payload));
+			ContentValues[] actual = new YahooApiCurrencyJsonScanner(reverse)
+					.parseJsonStream(toStream(payload));
+			
+			assertEquals("Mismatch in count: " + payload, expected.length, actual.length);
+			for (int index = 0; index < expected.length; index++) {
+				assertEquals("Mismatch at " + index + ": " + payload, expected[index], actual[index]);
+			}
+		}
+	}
+	
+	private static void assertParsesAsDouble(String decimal) {
+		Double expected = null;
+		try {
+			expected = Double.parseDouble(decimal);
+		} catch (NumberFormatException e) {}
+		Double actual = null;
+		try {
+			final byte[] bytes = (" " + decimal).getBytes();
+			actual = YahooApiCurrencyJsonScanner.parseDecimal(bytes, 1, bytes.length - 1);
+		} catch (NumberFormatException e) {}
+		
+		if (expected == null || actual == null) {
+			assertEquals("Parse of \"" + decimal + "\"", expected, actual);
+		} else if (Double.doubleToRawLongBits(expected) != Double.doubleToRawLongBits(actual)) {
+			fail("Parse of \"" + decimal + "\"; expected: " + expected + ", was: " + actual);
+		}
+	}
+	
+	/** @return A response in the form of the yahoo api, of the count of pairs;
+	 * rates to 4 decimals, as the api gives. */
+	private static String buildPayload(int count, Random random) {
+		final int codeCount = (int) Math.ceil(Math.sqrt(count)) + 1;
+		StringBuilder rates = new StringBuilder();
+		int pairs = 0;
+		for (int src = 0; src < codeCount && pairs < count; src++) {
+			for (int dest = 0; dest < codeCount && pairs < count; dest++) {
+				if (src == dest) {
+					continue;
+				}
+				final String srcCode = toCode(src);
+				final String destCode = toCode(dest);
+				final String rate = String.format(Locale.US, "%.4f", random.nextDouble() * 200);
+				if (pairs++ > 0) {
+					rates.append(',');
+				}
+				rates.append("{\"id\":\"").append(srcCode).append(destCode)
+					.append("\",\"Name\":\"").append(srcCode).append('/').append(destCode)
+					.append("\",\"Rate\":\"").append(rate)
+					.append("\",\"Date\":\"5/23/2015\",\"Time\":\"12:55pm\",\"Ask\":\"")
+					.append(rate).append("\",\"Bid\":\"").append(rate).append("\"}");
+			}
+		}
+		return "{\"query\":{\"count\":" + pairs + ",\"created\":\"2015-05-24T05:17:00Z\"," +
+				"\"lang\":\"en-US\",\"results\":{\"rate\":[" + rates + "]}}}";
+	}
+	
+	/** @return The synthetic code of the index: AAA, AAB, ... */
+	private static String toCode(int index) {
+		return new String(new char[]{
+				(char) ('A' + index / 676 % 26), (char) ('A' + index / 26 % 26), (char) ('A' + index % 26)});
+	}
+}
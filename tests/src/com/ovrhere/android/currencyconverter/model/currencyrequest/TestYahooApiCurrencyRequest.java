@@ -132,6 +132,26 @@ public class TestYahooApiCurrencyRequest extends AndroidTestCase {
 		assertFalse("Should not contain json query", builtUri2.toString().contains("format=json"));
 	}
 	
+	@Test
+	public void testBaseCurrencyUriBuilding() {
+		final String[] source = new String[] {"USD"};
+		final String[] dest = new String[] {"USD", "GBP", "CAD", "BBD"};
+		final int EXPECTED_COUNT = 3; // N - 1; the rest are derived.
+		
+		YahooApiCurrencyRequest request = new YahooApiCurrencyRequest(source, dest, null);
+		Uri builtUri = request.getUriRequest();
+		
+		Matcher matches  = Pattern.compile("%22USD[A-Z]{3}%22").matcher(builtUri.toString());
+		int pairCount = 0;
+		while(matches.find()){
+			pairCount++;
+		}
+		assertEquals("Should contain only base currency pairs (" +builtUri.toString() +")", 
+				EXPECTED_COUNT, pairCount);
+		assertFalse("Should not contain other pairs (" +builtUri.toString() +")", 
+				Pattern.compile("%22(GBP|CAD|BBD)[A-Z]{3}%22").matcher(builtUri.toString()).find());
+	}
+	
 	
 	//for testing the event listener
 	private static class BrokenAPI extends YahooApiCurrencyRequest {
@@ -3,6 +3,7 @@ package com.ovrhere.android.currencyconverter.model.currencyrequest;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 
 import junit.framework.TestCase;
 
@@ -74,6 +75,20 @@ public class TestYahooApiCurrencyXmlParser extends TestCase {
 		
 		UtilityTestMethods.validateContentValues("Mismatch found for xml", TEST_EXPECTED_RATES, results);		
 	}
+	
+	@Test
+	public void testParseXmlStreamWithoutReverse() throws XmlPullParserException, IOException {
+		final InputStream fakeXmlStream = new ByteArrayInputStream(TEST_XML_RATES.getBytes());
+		
+		//the first half are the rates as given; the second are manufactured.
+		final ContentValues[] expected = 
+				Arrays.copyOf(TEST_EXPECTED_RATES, TEST_EXPECTED_RATES.length / 2);
+		ContentValues[] results = new YahooApiCurrencyXmlParser(false).parseXmlStream(fakeXmlStream);
+		
+		assertEquals("Did not get the expected number of results", expected.length, results.length);
+		
+		UtilityTestMethods.validateContentValues("Mismatch found for xml", expected, results);		
+	}
 
 
 
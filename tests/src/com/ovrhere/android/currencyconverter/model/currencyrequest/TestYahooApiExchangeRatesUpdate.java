@@ -2,6 +2,10 @@ package com.ovrhere.android.currencyconverter.model.currencyrequest;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.After;
 import org.junit.Before;
@@ -13,6 +17,10 @@ import android.test.ProviderTestCase2;
 
 import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.ExchangeRateEntry;
 import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterProvider;
+import com.ovrhere.android.currencyconverter.model.requests.CircuitBreaker;
+import com.ovrhere.android.currencyconverter.model.requests.ExponentialBackoffPolicy;
+import com.ovrhere.android.currencyconverter.model.requests.HttpValidatorCache;
+import com.ovrhere.android.currencyconverter.test.StubHttpServer;
 import com.ovrhere.android.currencyconverter.test.UtilityTestContentObserver;
 import com.ovrhere.android.currencyconverter.test.UtilityTestMethods;
 
@@ -115,6 +123,96 @@ public class TestYahooApiExchangeRatesUpdate extends ProviderTestCase2<CurrencyC
 		assertEquals("Did not get the number of records expected", EXPECTED_COUNT, cursor.getCount());
 	}
 
+	@Test
+	public void testCircuitBreakerSuppresses() throws Exception {
+		StubHttpServer server = new StubHttpServer(new StubHttpServer.Responder() {
+			@Override
+			public String respond(String target) {
+				return null; //always fail
+			}
+		});
+		try {
+			CircuitBreaker breaker = new CircuitBreaker(2, 60 * 1000);
+			YahooApiExchangeRatesUpdate update = 
+					new YahooApiExchangeRatesUpdate(
+							mContext.getContentResolver(),
+							TEST_CURRENCIES,
+							true);
+			update.setApiBase(server.getBaseUrl());
+			update.setRetryPolicy(new ExponentialBackoffPolicy(0, 0, 1));
+			update.setCircuitBreaker(breaker);
+			
+			update.run();
+			update.run();
+			assertFalse(update.isUpdateSuccessful());
+			assertEquals("Expected each update tried twice", 4, server.getRequestCount());
+			assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+			
+			update.run();
+			assertTrue("Expected the update skipped", update.isSuppressed());
+			assertFalse(update.isUpdateSuccessful());
+			assertEquals("Expected no request made", 4, server.getRequestCount());
+		} finally {
+			server.shutdown();
+		}
+	}
+
+	@Test
+	public void testCancelledRatesRefetched() throws Exception {
+		final AtomicInteger requests = new AtomicInteger();
+		final CountDownLatch stalled = new CountDownLatch(1);
+		StubHttpServer server = new StubHttpServer(new StubHttpServer.Responder() {
+			@Override
+			public String respond(String target) {
+				if (requests.incrementAndGet() == 3) {
+					stalled.countDown();
+					try {
+						Thread.sleep(10000); //until cancelled
+					} catch (InterruptedException e) {}
+				}
+				return respondWithPairs(target);
+			}
+		});
+		server.setValidators("\"v1\"", null);
+		try {
+			final YahooApiExchangeRatesUpdate update = 
+					new YahooApiExchangeRatesUpdate(
+							mContext.getContentResolver(),
+							TEST_CURRENCIES,
+							true);
+			update.setApiBase(server.getBaseUrl());
+			update.setRetryPolicy(new ExponentialBackoffPolicy(0, 0, 1));
+			update.setCircuitBreaker(new CircuitBreaker());
+			update.setValidatorCache(new HttpValidatorCache());
+			update.setSharding(1, 1); //a pair at a time
+			update.setChunkSize(100); //so every rate is still buffered
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						stalled.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					update.cancel();
+				}
+			}).start();
+			
+			update.run();
+			assertFalse(update.isUpdateSuccessful());
+			assertEquals("Expected the buffered rates dropped", 0, countRates());
+			
+			update.run();
+			assertTrue(update.isUpdateSuccessful());
+			assertEquals("Expected the dropped rates refetched, not 304", 0, 
+					server.getNotModifiedCount());
+			assertEquals("Expected every rate, both ways", 
+					TEST_CURRENCIES.length * 2, countRates());
+		} finally {
+			server.shutdown();
+		}
+	}
+
 	@Test
 	public void testOnStart() {
 		// convert String into InputStream
@@ -157,4 +255,65 @@ public class TestYahooApiExchangeRatesUpdate extends ProviderTestCase2<CurrencyC
 		cursor.close();		
 	}
 
+	@Test
+	public void testOnStartSkipsUnchanged() {
+		YahooApiExchangeRatesUpdate update = 
+				new YahooApiExchangeRatesUpdate(
+						mContext.getContentResolver(),
+						TEST_CURRENCIES,
+						true);
+		update.onStart(new ByteArrayInputStream(TEST_JSON_RATES.getBytes()));
+		assertEquals("Expected every rate to be new", 
+				TEST_EXPECTED_RATES.length, update.getNewCount());
+		
+		update.onStart(new ByteArrayInputStream(TEST_JSON_RATES.getBytes()));
+		assertEquals("Expected no rate to be new", 0, update.getNewCount());
+		assertEquals("Expected no rate to change", 0, update.getChangedCount());
+		assertEquals("Expected every rate to be skipped", 
+				TEST_EXPECTED_RATES.length, update.getUnchangedCount());
+	}
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Helper methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** @return The count of rates stored. */
+	private int countRates() {
+		Cursor cursor = mContext.getContentResolver()
+				.query(ExchangeRateEntry.CONTENT_URI, null, null, null, null);
+		try {
+			return cursor.getCount();
+		} finally {
+			cursor.close();
+		}
+	}
+	
+	/** @return The json rates of the {@link #TEST_EXPECTED_RATES} pairs in the 
+	 * yql query, or <code>null</code> if it cannot be decoded. */
+	private static String respondWithPairs(String target) {
+		String query = null;
+		try {
+			query = URLDecoder.decode(target, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			return null;
+		}
+		StringBuilder rates = new StringBuilder();
+		int count = 0;
+		for (ContentValues values : TEST_EXPECTED_RATES) {
+			final String pairId = 
+					values.getAsString(ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE) +
+					values.getAsString(ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE);
+			if (!query.contains("\"" + pairId + "\"")) {
+				continue;
+			}
+			if (count++ > 0) {
+				rates.append(",");
+			}
+			rates.append("{\"id\":\"").append(pairId).append("\",\"Rate\":\"")
+				.append(values.getAsDouble(ExchangeRateEntry.COLUMN_EXCHANGE_RATE)).append("\"}");
+		}
+		return "{\"query\":{\"count\":" + count + ",\"results\":{\"rate\":[" +
+				rates + "]}}}";
+	}
+
 }
@@ -0,0 +1,158 @@
+package com.ovrhere.android.currencyconverter.model.currencyrequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.xmlpull.v1.XmlPullParserException;
+
+import android.content.ContentValues;
+
+public class TestYahooApiParsers extends TestCase {
+
+	/** The first payload, parsed to a listener. */
+	private static final String TEST_JSON_FIRST = "{\"query\":{\"results\":{\"rate\":[" +
+			"{\"id\":\"USDCAD\",\"Rate\":\"1.2283\"},{\"id\":\"USDJPY\",\"Rate\":\"121.5350\"}]}}}";
+	/** Fails part way through a pair; its id &amp; rate were read, not used. */
+	private static final String TEST_JSON_TRUNCATED = "{\"query\":{\"results\":{\"rate\":[" +
+			"{\"id\":\"USDEUR\",\"Rate\":\"0.9\"},{\"id\":\"USDGBP\",\"Rate\":\"0.6";
+	/** Pairs without an id or rate; a leaked id or rate would fill them. */
+	private static final String TEST_JSON_SECOND = "{\"query\":{\"results\":{\"rate\":[" +
+			"{\"Rate\":\"1.5\"},{\"id\":\"EURCAD\"},{\"id\":\"EURJPY\",\"Rate\":\"130.25\"}]}}}";
+
+	private static final String TEST_XML_FIRST = "<query><results>" +
+			"<rate id=\"USDCAD\"><Rate>1.2283</Rate></rate>" +
+			"<rate id=\"USDJPY\"><Rate>121.5350</Rate></rate></results></query>";
+	private static final String TEST_XML_TRUNCATED = "<query><results>" +
+			"<rate id=\"USDEUR\"><Rate>0.9</Rate></rate><rate id=\"USDGBP\"><Rate>0.6";
+	private static final String TEST_XML_SECOND = "<query><results>" +
+			"<rate id=\"EURJPY\"><Rate>130.25</Rate></rate></results></query>";
+
+	@Test
+	public void testSameParserPerThread() throws Exception {
+		final YahooApiCurrencyJsonScanner scanner = YahooApiParsers.jsonScanner(true);
+		assertSame(scanner, YahooApiParsers.jsonScanner(true));
+		assertSame(YahooApiParsers.jsonParser(false), YahooApiParsers.jsonParser(false));
+		assertNotSame("Expected a parser per reverse flag",
+				scanner, YahooApiParsers.jsonScanner(false));
+
+		final Object[] other = new Object[1];
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				other[0] = YahooApiParsers.jsonScanner(true);
+			}
+		});
+		thread.start();
+		thread.join();
+		assertNotNull(other[0]);
+		assertNotSame("Expected a parser per thread", scanner, other[0]);
+	}
+
+	@Test
+	public void testScannerReusedWithoutLeaks() throws IOException {
+		final List<CodeRatePair> pairs = new ArrayList<CodeRatePair>();
+		YahooApiCurrencyJsonScanner scanner = YahooApiParsers.jsonScanner(true);
+		scanner.setOnRateListener(collect(pairs));
+		assertEquals(0, scanner.parseJsonStream(toStream(TEST_JSON_FIRST)).length);
+		assertEquals(2, pairs.size());
+
+		assertSame(scanner, YahooApiParsers.jsonScanner(true));
+		try {
+			scanner.parseJsonStream(toStream(TEST_JSON_TRUNCATED));
+			fail("Expected the truncated payload rejected");
+		} catch (IOException expected) {}
+		assertEquals("Expected the listener dropped on reuse", 2, pairs.size());
+
+		assertSame(scanner, YahooApiParsers.jsonScanner(true));
+		assertValuesEqual(new YahooApiCurrencyJsonScanner(true).parseJsonStream(
+				toStream(TEST_JSON_SECOND)), scanner.parseJsonStream(toStream(TEST_JSON_SECOND)));
+		assertEquals(2, pairs.size());
+	}
+
+	@Test
+	public void testJsonParserReusedWithoutLeaks() throws IOException {
+		final List<CodeRatePair> pairs = new ArrayList<CodeRatePair>();
+		YahooApiCurrencyJsonParser parser = YahooApiParsers.jsonParser(true);
+		parser.setOnRateListener(collect(pairs));
+		assertEquals(0, parser.parseJsonStream(toStream(TEST_JSON_FIRST)).length);
+		assertEquals(2, pairs.size());
+
+		assertSame(parser, YahooApiParsers.jsonParser(true));
+		try {
+			parser.parseJsonStream(toStream(TEST_JSON_TRUNCATED));
+			fail("Expected the truncated payload rejected");
+		} catch (IOException expected) {}
+		assertEquals("Expected the listener dropped on reuse", 2, pairs.size());
+
+		assertSame(parser, YahooApiParsers.jsonParser(true));
+		assertValuesEqual(new YahooApiCurrencyJsonParser(true).parseJsonStream(
+				toStream(TEST_JSON_SECOND)), parser.parseJsonStream(toStream(TEST_JSON_SECOND)));
+		assertEquals(2, pairs.size());
+	}
+
+	@Test
+	public void testXmlParserReusedWithoutLeaks() throws XmlPullParserException, IOException {
+		final List<CodeRatePair> pairs = new ArrayList<CodeRatePair>();
+		YahooApiCurrencyXmlParser parser = YahooApiParsers.xmlParser(true);
+		parser.setOnRateListener(collect(pairs));
+		assertEquals(0, parser.parseXmlStream(toStream(TEST_XML_FIRST)).length);
+		assertEquals(2, pairs.size());
+
+		assertSame(parser, YahooApiParsers.xmlParser(true));
+		try {
+			parser.parseXmlStream(toStream(TEST_XML_TRUNCATED));
+			fail("Expected the truncated payload rejected");
+		} catch (XmlPullParserException expected) {}
+		assertEquals("Expected the listener dropped on reuse", 2, pairs.size());
+
+		assertSame(parser, YahooApiParsers.xmlParser(true));
+		assertValuesEqual(new YahooApiCurrencyXmlParser(true).parseXmlStream(
+				toStream(TEST_XML_SECOND)), parser.parseXmlStream(toStream(TEST_XML_SECOND)));
+		assertEquals(2, pairs.size());
+	}
+
+	@Test
+	public void testRateSourceDropsListener() throws Exception {
+		final List<CodeRatePair> pairs = new ArrayList<CodeRatePair>();
+		new YahooRateSource(true, true, null).parse(toStream(TEST_JSON_FIRST), collect(pairs));
+		assertEquals(2, pairs.size());
+
+		assertEquals("Expected the rates returned, not streamed to the last listener", 
+				2, YahooApiParsers.jsonScanner(false).parseJsonStream(toStream(TEST_JSON_FIRST)).length);
+		assertEquals(2, pairs.size());
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Helper methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+
+	private static InputStream toStream(String payload) {
+		try {
+			return new ByteArrayInputStream(payload.getBytes("UTF-8"));
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	private static RateSource.OnRateListener collect(final List<CodeRatePair> pairs) {
+		return new RateSource.OnRateListener() {
+			@Override
+			public void onRate(CodeRatePair pair) {
+				pairs.add(pair);
+			}
+		};
+	}
+
+	private static void assertValuesEqual(ContentValues[] expected, ContentValues[] actual) {
+		assertEquals("Mismatch in count", expected.length, actual.length);
+		for (int index = 0; index < expected.length; index++) {
+			assertEquals("Mismatch at " + index, expected[index], actual[index]);
+		}
+	}
+}
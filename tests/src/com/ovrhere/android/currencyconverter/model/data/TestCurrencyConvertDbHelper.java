@@ -2,6 +2,7 @@ package com.ovrhere.android.currencyconverter.model.data;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 import org.junit.After;
 import org.junit.Before;
@@ -9,18 +10,50 @@ import org.junit.Test;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
 import android.test.AndroidTestCase;
 import android.test.RenamingDelegatingContext;
+import android.util.Log;
 
 import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.DisplayOrderEntry;
 import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.ExchangeRateEntry;
+import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.RateHistoryEntry;
+import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.RatePairEntry;
 import com.ovrhere.android.currencyconverter.test.UtilityTestMethods;
 
 public class TestCurrencyConvertDbHelper extends AndroidTestCase {
-
+	/** Class name for debugging purposes. */
+	final static private String LOGTAG = TestCurrencyConvertDbHelper.class
+			.getSimpleName();
+	
+	/** The number of currencies to compare schemas with; all pairs are stored. */
+	final static private int BENCHMARK_CURRENCY_COUNT = 170;
+	/** The number of times to query every source when comparing schemas. */
+	final static private int BENCHMARK_QUERY_ROUNDS = 5;
+	
+	/** The version 3 schema, storing the codes of every pair. Used for comparison. */
+	final static private String[] LEGACY_SCHEMA = new String[]{
+		"CREATE TABLE display_order (_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+			"currency_code TEXT NOT NULL, def_display_order INTEGER NOT NULL, " +
+			" UNIQUE (currency_code) ON CONFLICT REPLACE );",
+		"CREATE INDEX display_order_code_idx ON display_order (currency_code, def_display_order);",
+		"CREATE TABLE exchange_rate (_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+			"source_code TEXT NOT NULL, dest_code TEXT NOT NULL, exchange_rate REAL NOT NULL, " +
+			" FOREIGN KEY (dest_code) REFERENCES display_order (currency_code), " +
+			" UNIQUE (source_code, dest_code) ON CONFLICT REPLACE);",
+		"CREATE INDEX exchange_rate_source_dest_idx ON exchange_rate " +
+			"(source_code, dest_code, exchange_rate);"
+	};
+	/** The version 3 query of exchange_rate/SRC. */
+	final static private String LEGACY_SOURCE_QUERY = 
+			"SELECT exchange_rate._id, def_display_order, dest_code, exchange_rate " +
+			"FROM exchange_rate INNER JOIN display_order " +
+			"ON exchange_rate.dest_code = display_order.currency_code " +
+			"WHERE source_code = ? ORDER BY def_display_order ASC ";
 	
-			
 	
 	@Before
 	protected void setUp() throws Exception {
@@ -42,11 +75,14 @@ public class TestCurrencyConvertDbHelper extends AndroidTestCase {
         assertTrue("Database should be open", db.isOpen());
         
         //check to see if tables were in fact created
-        Cursor cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type='table'", null);
+        Cursor cursor = db.rawQuery(
+        		"SELECT name FROM sqlite_master WHERE type IN ('table', 'view')", null);
         
         ArrayList<String> tables = new ArrayList<String>();
         tables.add(DisplayOrderEntry.TABLE_NAME);
         tables.add(ExchangeRateEntry.TABLE_NAME);
+        tables.add(RatePairEntry.TABLE_NAME);
+        tables.add(RateHistoryEntry.TABLE_NAME);
         
         validateColumnNames(
         		"Our database has not been created correctly", 
@@ -78,13 +114,48 @@ public class TestCurrencyConvertDbHelper extends AndroidTestCase {
         exchangeRateCols.add(ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE);
         exchangeRateCols.add(ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE);
         exchangeRateCols.add(ExchangeRateEntry.COLUMN_EXCHANGE_RATE);
+        exchangeRateCols.add(ExchangeRateEntry.COLUMN_SOURCE_ID);
+        exchangeRateCols.add(ExchangeRateEntry.COLUMN_DEST_ID);
 
         validateColumnNames(
         		"Failed to query the database for table information.",
-        		"ExchangeRateEntry Table does not contain all required columns", 
+        		"ExchangeRateEntry view does not contain all required columns", 
         		exchangeRateCols, 
         		cursor);
         
+        //checking our RatePairEntry columns
+        cursor = db.rawQuery("PRAGMA table_info(" + RatePairEntry.TABLE_NAME + ")",
+                null);        
+        
+        final ArrayList<String> ratePairCols = new ArrayList<String>();
+        ratePairCols.add(RatePairEntry.COLUMN_SOURCE_ID);
+        ratePairCols.add(RatePairEntry.COLUMN_DEST_ID);
+        ratePairCols.add(RatePairEntry.COLUMN_RATE);
+
+        validateColumnNames(
+        		"Failed to query the database for table information.",
+        		"RatePairEntry Table does not contain all required columns", 
+        		ratePairCols, 
+        		cursor);
+        
+        //checking our RateHistoryEntry columns
+        cursor = db.rawQuery("PRAGMA table_info(" + RateHistoryEntry.TABLE_NAME + ")",
+                null);        
+        
+        final ArrayList<String> historyCols = new ArrayList<String>();
+        historyCols.add(RateHistoryEntry._ID);
+        historyCols.add(RateHistoryEntry.COLUMN_SOURCE_ID);
+        historyCols.add(RateHistoryEntry.COLUMN_DEST_ID);
+        historyCols.add(RateHistoryEntry.COLUMN_RATE);
+        historyCols.add(RateHistoryEntry.COLUMN_TIMESTAMP);
+        historyCols.add(RateHistoryEntry.COLUMN_RESOLUTION);
+
+        validateColumnNames(
+        		"Failed to query the database for table information.",
+        		"RateHistoryEntry Table does not contain all required columns", 
+        		historyCols, 
+        		cursor);
+        
         cursor.close();
         db.close();
 	}
@@ -103,11 +174,16 @@ public class TestCurrencyConvertDbHelper extends AndroidTestCase {
         inputs.put(DisplayOrderEntry.COLUMN_CURRENCY_CODE, "USD" );
         inputs.put(DisplayOrderEntry.COLUMN_DEF_DISPLAY_ORDER, 3);
         
-        wDb.insert(DisplayOrderEntry.TABLE_NAME, null, inputs);
+        //codes are updated in place, never replaced, as their ids key the rate pairs.
+        long replaced = wDb.insert(DisplayOrderEntry.TABLE_NAME, null, inputs);
+        assertEquals("Record should not be replaced.", -1, replaced);
+        
         Cursor result = wDb.query(DisplayOrderEntry.TABLE_NAME, 
         		null, null, null, null, null, null, null);
         
-        assertEquals("Record did not replaced as expected.", 3, result.getColumnCount() );
+        assertEquals("Unexpected column count.", 3, result.getColumnCount() );
+        assertEquals("Unexpected record count.", 3, result.getCount() );
+        result.close();
         
 		wDb.close();
 	}
@@ -118,61 +194,75 @@ public class TestCurrencyConvertDbHelper extends AndroidTestCase {
 		CurrencyConverterDbHelper dbHelper = new CurrencyConverterDbHelper(getTestContext());
         SQLiteDatabase wDb = dbHelper.getWritableDatabase();        
         		
-        insertDisplayOrderEntry(wDb, "usd", 0);
-		insertDisplayOrderEntry(wDb, "cad", 1);
-		insertDisplayOrderEntry(wDb, "jpy", 2);
+        final long usd = insertDisplayOrderEntry(wDb, "usd", 0);
+        final long cad = insertDisplayOrderEntry(wDb, "cad", 1);
+        final long jpy = insertDisplayOrderEntry(wDb, "jpy", 2);
+        final long eur = insertDisplayOrderEntry(wDb, "eur", 3);
 		
         ContentValues inputs1 = new ContentValues();
         inputs1.put(ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE, "usd");
         inputs1.put(ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE, "eur");
         inputs1.put(ExchangeRateEntry.COLUMN_EXCHANGE_RATE, 0.7750d); //old value
         
-        ContentValues inputs2 = new ContentValues();
-        inputs2.put(ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE, "usd");
-        inputs2.put(ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE, "cad");
-        inputs2.put(ExchangeRateEntry.COLUMN_EXCHANGE_RATE, 0.8050d); //old value
-        
-        ContentValues inputs3 = new ContentValues();
-        inputs3.put(ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE, "cad");
-        inputs3.put(ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE, "jpy");
-        inputs3.put(ExchangeRateEntry.COLUMN_EXCHANGE_RATE, 1.6050d); //old value
-        
-        ContentValues badInput = new ContentValues(); //no matching foreign key
-        inputs3.put(ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE, "bbd");
-        inputs3.put(ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE, "bbd");
-        inputs3.put(ExchangeRateEntry.COLUMN_EXCHANGE_RATE, 1d); //old value
-
+        ContentValues badInput = new ContentValues(); //missing every column
         
-        // Insert ContentValues into database and get a row ID back        
-	    long rowId1 = wDb.insert(ExchangeRateEntry.TABLE_NAME, null, inputs1);        
+        // Insert pair into database and get a row ID back        
+	    long rowId1 = insertRatePair(wDb, usd, eur, 0.7750d);        
         assertFalse("Problem inserting record.", rowId1 == -1 );
         
+        //the view returns the verbose form
         Cursor result = wDb.query(  ExchangeRateEntry.TABLE_NAME, null,
                 null, null, null, null, null, null);
 
         UtilityTestMethods.validateCursor("Expected matching cursor and content", inputs1, result);
+        assertTrue(result.moveToFirst());
+        assertEquals("Unexpected derived _id", 
+        		ExchangeRateEntry.buildExchangeRateId(usd, eur), 
+        		result.getLong(result.getColumnIndex(ExchangeRateEntry._ID)));
         result.close();
         
         // Insert ContentValues into database and get -1        
-	    long badRow = wDb.insert(ExchangeRateEntry.TABLE_NAME, null, badInput);        
-        assertTrue("Record should fail; no foreign key in DisplayOrderEntry table", badRow == -1 );
+	    long badRow = wDb.insert(RatePairEntry.TABLE_NAME, null, badInput);        
+        assertTrue("Record should fail; missing required columns", badRow == -1 );
         
         wDb.beginTransaction();
-        	badRow = wDb.insert(ExchangeRateEntry.TABLE_NAME, null, inputs1);
-        	long rowId2 = wDb.insert(ExchangeRateEntry.TABLE_NAME, null, inputs2);
-        	long rowId3 = wDb.insert(ExchangeRateEntry.TABLE_NAME, null, inputs3);
+        	badRow = insertRatePair(wDb, usd, eur, 0.7751d);
+        	long rowId2 = insertRatePair(wDb, usd, cad, 0.8050d);
+        	long rowId3 = insertRatePair(wDb, cad, jpy, 1.6050d);
         wDb.setTransactionSuccessful();
         wDb.endTransaction();
         
-        wDb.close();
-        
         assertFalse("Problem inserting records", rowId2 == -1 || rowId3 == -1 );
         
-        SQLiteDatabase rDb = dbHelper.getReadableDatabase();
-        result = rDb.query(  ExchangeRateEntry.TABLE_NAME, null,
+        ContentValues history = new ContentValues();
+        history.put(RateHistoryEntry.COLUMN_SOURCE_ID, cad);
+        history.put(RateHistoryEntry.COLUMN_DEST_ID, jpy);
+        history.put(RateHistoryEntry.COLUMN_RATE, 1.6050d);
+        history.put(RateHistoryEntry.COLUMN_TIMESTAMP, 0L);
+        assertFalse("Problem inserting history", 
+        		wDb.insert(RateHistoryEntry.TABLE_NAME, null, history) == -1);
+        
+        result = wDb.query(  ExchangeRateEntry.TABLE_NAME, null,
                 null, null, null, null, null, null);
         
         assertEquals("Inserted redundant record, instead of replacing", 3, result.getCount());        
+        result.close();
+        
+        //removing a currency removes its pairs
+        wDb.delete(DisplayOrderEntry.TABLE_NAME, DisplayOrderEntry._ID + " = ? ", 
+        		new String[]{String.valueOf(jpy)});
+        wDb.close();
+        
+        SQLiteDatabase rDb = dbHelper.getReadableDatabase();
+        result = rDb.query(  RatePairEntry.TABLE_NAME, null,
+                null, null, null, null, null, null);
+        
+        assertEquals("Pairs of deleted currency were kept", 2, result.getCount());
+        result.close();
+        
+        result = rDb.query(  RateHistoryEntry.TABLE_NAME, null,
+                null, null, null, null, null, null);
+        assertEquals("History of deleted currency was kept", 0, result.getCount());
 
         // Finally, close the cursor and database
         result.close();
@@ -180,6 +270,115 @@ public class TestCurrencyConvertDbHelper extends AndroidTestCase {
         
     }
 	
+	@Test
+	public void testConnectionTuning() {
+		SQLiteDatabase wDb = new CurrencyConverterDbHelper(getTestContext()).getWritableDatabase();
+		
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+			assertEquals("Expected write-ahead logging", "wal", 
+					DatabaseUtils.stringForQuery(wDb, "PRAGMA journal_mode", null)
+						.toLowerCase(Locale.US));
+		}
+		assertEquals("Expected synchronous=NORMAL", 1, 
+				DatabaseUtils.longForQuery(wDb, "PRAGMA synchronous", null));
+		assertEquals("Unexpected page cache size", 
+				CurrencyConverterDbHelper.CACHE_SIZE_KIB * 1024L / wDb.getPageSize(), 
+				DatabaseUtils.longForQuery(wDb, "PRAGMA cache_size", null));
+		wDb.close();
+	}
+	
+	@Test
+	public void testRateQueriesUseIndexes() {
+		SQLiteDatabase rDb = new CurrencyConverterDbHelper(getTestContext()).getReadableDatabase();
+		
+		final String[] projection = new String[]{
+				ExchangeRateEntry.TABLE_NAME + "." + ExchangeRateEntry._ID,
+				DisplayOrderEntry.COLUMN_DEF_DISPLAY_ORDER,
+				ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE,
+				ExchangeRateEntry.COLUMN_EXCHANGE_RATE
+		};
+		
+		validateQueryPlanUsesIndexes("exchange_rate/SRC", rDb, 
+				CurrencyConverterProvider.buildRateWithSourceQuery(projection, 
+						DisplayOrderEntry.COLUMN_DEF_DISPLAY_ORDER + " ASC "), 
+				new String[]{"USD"});
+		validateQueryPlanUsesIndexes("exchange_rate/SRC/DST", rDb, 
+				CurrencyConverterProvider.buildRateFromSourceToDestQuery(projection, null), 
+				new String[]{"USD", "CAD"});
+		
+		rDb.close();
+	}
+	
+	@Test
+	public void testDisplayOrderDeleteUsesIndexes() {
+		SQLiteDatabase rDb = new CurrencyConverterDbHelper(getTestContext()).getReadableDatabase();
+	
+		//the pair delete of the display order trigger.
+		Cursor plan = rDb.rawQuery("EXPLAIN QUERY PLAN DELETE FROM " + RatePairEntry.TABLE_NAME +
+				" WHERE " + RatePairEntry.COLUMN_SOURCE_ID + " = ? OR " +
+				RatePairEntry.COLUMN_DEST_ID + " = ?", new String[]{"1", "1"});
+		final int detailIndex = plan.getColumnIndex("detail");
+	
+		assertTrue("Expected a query plan", plan.moveToFirst());
+		boolean destIndexUsed = false;
+		do {
+			final String detail = plan.getString(detailIndex);
+			assertFalse("Delete scans a table: " + detail, detail.startsWith("SCAN"));
+			destIndexUsed |= detail.contains(CurrencyConverterDbHelper.INDEX_RATE_PAIR_DEST);
+		} while (plan.moveToNext());
+		plan.close();
+		rDb.close();
+	
+		assertTrue("Expected the destination index to be used", destIndexUsed);
+	}
+	
+	@Test
+	public void testCompactSchemaBenchmark() {
+		final String[] codes = buildSyntheticCodes(BENCHMARK_CURRENCY_COUNT);
+		final String[] projection = new String[]{
+				ExchangeRateEntry.TABLE_NAME + "." + ExchangeRateEntry._ID,
+				DisplayOrderEntry.COLUMN_DEF_DISPLAY_ORDER,
+				ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE,
+				ExchangeRateEntry.COLUMN_EXCHANGE_RATE
+		};
+		
+		SQLiteDatabase legacyDb = SQLiteDatabase.create(null);
+		SQLiteDatabase compactDb = SQLiteDatabase.create(null);
+		try {
+			for (String sql : LEGACY_SCHEMA) {
+				legacyDb.execSQL(sql);
+			}
+			new CurrencyConverterDbHelper(getTestContext()).onCreate(compactDb);
+			
+			fillRates(legacyDb, codes, 
+					"INSERT INTO exchange_rate (source_code, dest_code, exchange_rate) " +
+					"VALUES (?, ?, ?)", true);
+			fillRates(compactDb, codes, 
+					"INSERT INTO " + RatePairEntry.TABLE_NAME + " VALUES (?, ?, ?)", false);
+			
+			final long legacySize = getDatabaseSize(legacyDb);
+			final long compactSize = getDatabaseSize(compactDb);
+			
+			final long legacyTime = timeSourceQueries(legacyDb, LEGACY_SOURCE_QUERY, codes);
+			final long compactTime = timeSourceQueries(compactDb, 
+					CurrencyConverterProvider.buildRateWithSourceQuery(projection, 
+						DisplayOrderEntry.COLUMN_DEF_DISPLAY_ORDER + " ASC "), 
+					codes);
+			
+			Log.i(LOGTAG, "Schema comparison at " + codes.length + " currencies (" + 
+					(codes.length * codes.length) + " pairs): " +
+					"verbose " + legacySize + " bytes, " + legacyTime + "ms; " +
+					"compact " + compactSize + " bytes, " + compactTime + "ms " +
+					"(" + (BENCHMARK_QUERY_ROUNDS * codes.length) + " source queries)");
+			
+			assertTrue("Compact schema should be smaller (" + compactSize + " >= " + 
+					legacySize + ")", compactSize < legacySize);
+		} finally {
+			legacyDb.close();
+			compactDb.close();
+		}
+	}
+	
 	////////////////////////////////////////////////////////////////////////////////////////////////
 	//// Helper methods
 	////////////////////////////////////////////////////////////////////////////////////////////////
@@ -194,6 +393,25 @@ public class TestCurrencyConvertDbHelper extends AndroidTestCase {
 		getTestContext().deleteDatabase(CurrencyConverterDbHelper.DATABASE_NAME);
 	}
 	
+	/** Runs the source query for every code, reading every row. 
+	 * @return The time taken in ms. */
+	private static long timeSourceQueries(SQLiteDatabase db, String sql, String[] codes) {
+		final long start = System.currentTimeMillis();
+		for (int round = 0; round < BENCHMARK_QUERY_ROUNDS; round++) {
+			for (String code : codes) {
+				Cursor cursor = db.rawQuery(sql, new String[]{code});
+				while (cursor.moveToNext()) {
+					cursor.getLong(0);
+					cursor.getString(2);
+					cursor.getDouble(3);
+				}
+				assertEquals("Unexpected rates for " + code, codes.length, cursor.getCount());
+				cursor.close();
+			}
+		}
+		return System.currentTimeMillis() - start;
+	}
+	
 	////////////////////////////////////////////////////////////////////////////////////////////////
 	//// Utility methods
 	////////////////////////////////////////////////////////////////////////////////////////////////
@@ -218,6 +436,111 @@ public class TestCurrencyConvertDbHelper extends AndroidTestCase {
         assertTrue(messageColumns, expectedColumnNames.isEmpty());
 	}
 	
+	/**
+	 * Runs <code>EXPLAIN QUERY PLAN</code> and ensures no table is scanned; 
+	 * i.e. every table is searched using an index or its primary key.
+	 * @param message The message to give on failure.
+	 * @param db The database to explain against.
+	 * @param sql The query to explain
+	 * @param args The query arguments.
+	 */
+	private static void validateQueryPlanUsesIndexes(String message, SQLiteDatabase db, 
+			String sql, String[] args) {
+		Cursor plan = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+		final int detailIndex = plan.getColumnIndex("detail");
+		
+		assertTrue("Expected a query plan for " + message, plan.moveToFirst());
+		int tablesSearched = 0;
+		do {
+			final String detail = plan.getString(detailIndex);
+			if (detail.contains("TEMP B-TREE")) {
+				continue; //sorting is not a table access.
+			}
+			assertFalse(message + " scans a table: " + detail, detail.startsWith("SCAN"));
+			assertTrue(message + " does not use an index: " + detail, 
+					detail.contains("INDEX") || detail.contains("PRIMARY KEY"));
+			tablesSearched++;
+		} while (plan.moveToNext());
+		plan.close();
+		
+		//the pairs, their source & dest codes and the display order.
+		assertEquals("Expected all tables to be searched for " + message, 4, tablesSearched);
+	}
+	
+	/**
+	 * @param count The number of codes to build
+	 * @return Unique, 3 letter codes: AAA, AAB, ...
+	 */
+	private static String[] buildSyntheticCodes(int count) {
+		String[] codes = new String[count];
+		for (int index = 0; index < count; index++) {
+			codes[index] = new String(new char[]{
+					(char) ('A' + index / (26 * 26)), 
+					(char) ('A' + (index / 26) % 26), 
+					(char) ('A' + index % 26)
+				});
+		}
+		return codes;
+	}
+	
+	/**
+	 * Inserts display orders for the codes & every pair of codes in a transaction.
+	 * @param db The database to fill
+	 * @param codes The codes to insert, in display order.
+	 * @param insertPairSql The insert taking (source, dest, rate).
+	 * @param verbose <code>true</code> to bind codes, <code>false</code> to bind the 
+	 * display order ids.
+	 */
+	private static void fillRates(SQLiteDatabase db, String[] codes, String insertPairSql, 
+			boolean verbose) {
+		db.beginTransaction();
+		SQLiteStatement insertPair = db.compileStatement(insertPairSql);
+		try {
+			final long[] ids = new long[codes.length];
+			for (int index = 0; index < codes.length; index++) {
+				ContentValues order = new ContentValues();
+				order.put(DisplayOrderEntry.COLUMN_CURRENCY_CODE, codes[index]);
+				order.put(DisplayOrderEntry.COLUMN_DEF_DISPLAY_ORDER, index);
+				ids[index] = db.insert(DisplayOrderEntry.TABLE_NAME, null, order);
+			}
+			for (int src = 0; src < codes.length; src++) {
+				for (int dst = 0; dst < codes.length; dst++) {
+					if (verbose) {
+						insertPair.bindString(1, codes[src]);
+						insertPair.bindString(2, codes[dst]);
+					} else {
+						insertPair.bindLong(1, ids[src]);
+						insertPair.bindLong(2, ids[dst]);
+					}
+					insertPair.bindDouble(3, 1d + src / (double) (dst + 1));
+					insertPair.executeInsert();
+				}
+			}
+			db.setTransactionSuccessful();
+		} finally {
+			insertPair.close();
+			db.endTransaction();
+		}
+	}
+	
+	/** @return The size of the database in bytes; pages in use. */
+	private static long getDatabaseSize(SQLiteDatabase db) {
+		return DatabaseUtils.longForQuery(db, "PRAGMA page_count", null) * db.getPageSize();
+	}
+	
+	/**
+	 * Inserts a rate pair directly.
+	 * @return The row id, or -1 on failure.
+	 */
+	private static long insertRatePair(SQLiteDatabase wDb, long sourceId, long destId, 
+			double rate) {
+		ContentValues inputs = new ContentValues();
+		inputs.put(RatePairEntry.COLUMN_SOURCE_ID, sourceId);
+		inputs.put(RatePairEntry.COLUMN_DEST_ID, destId);
+		inputs.put(RatePairEntry.COLUMN_RATE, rate);
+		return wDb.insert(RatePairEntry.TABLE_NAME, null, inputs);
+	}
+	
 	/**
 	 * Inserts and tests each display order entry.
 	 * @param wDb
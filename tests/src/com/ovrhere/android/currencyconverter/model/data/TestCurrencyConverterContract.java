@@ -5,6 +5,7 @@ import java.util.Locale;
 import org.junit.Test;
 
 import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.ExchangeRateEntry;
+import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.RateHistoryEntry;
 
 import android.net.Uri;
 import android.test.AndroidTestCase;
@@ -54,5 +55,26 @@ public class TestCurrencyConverterContract extends AndroidTestCase {
     			TEST_CURRENCY2.toLowerCase(Locale.US), 
     			ExchangeRateEntry.getSourceCurrencyFromUri(exchangeUri));    	
     }
+    
+    @Test
+    public void testBuildRateHistoryUri() {
+    	Uri historyUri = 
+    			RateHistoryEntry.buildRateHistoryUri(TEST_CURRENCY1, TEST_CURRENCY3, 10L, 20L);
+    	
+    	assertNotNull("Error: Null Uri returned. ", historyUri);
+    	
+    	assertEquals("Error: Cannot extract the destination currency code from the uri",
+    			TEST_CURRENCY3.toLowerCase(Locale.US), 
+    			ExchangeRateEntry.getDestCurrencyFromUri(historyUri));
+    	
+    	assertEquals("Error: Cannot extract the from time",
+    			10L, RateHistoryEntry.getTimeFromUri(historyUri, RateHistoryEntry.PARAM_FROM, -1));
+    	assertEquals("Error: Cannot extract the to time",
+    			20L, RateHistoryEntry.getTimeFromUri(historyUri, RateHistoryEntry.PARAM_TO, -1));
+    	
+    	Uri openUri = RateHistoryEntry.buildRateHistoryUri(TEST_CURRENCY1, TEST_CURRENCY3);
+    	assertEquals("Error: Expected the default when no time is given",
+    			-1L, RateHistoryEntry.getTimeFromUri(openUri, RateHistoryEntry.PARAM_FROM, -1));
+    }
 
 }
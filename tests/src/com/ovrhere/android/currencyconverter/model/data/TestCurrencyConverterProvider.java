@@ -1,7 +1,11 @@
 package com.ovrhere.android.currencyconverter.model.data;
 
+import java.util.ArrayList;
+
 import android.annotation.SuppressLint;
 import android.content.ComponentName;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.UriMatcher;
@@ -11,14 +15,23 @@ import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
 import android.test.ProviderTestCase2;
+import android.util.Log;
 
 import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.DisplayOrderEntry;
 import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.ExchangeRateEntry;
+import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.RateHistoryEntry;
 import com.ovrhere.android.currencyconverter.test.UtilityTestContentObserver;
 import com.ovrhere.android.currencyconverter.test.UtilityTestMethods;
 
 public class TestCurrencyConverterProvider extends ProviderTestCase2<CurrencyConverterProvider> {
-
+	/** Logtag for benchmark results. */
+	final static private String LOGTAG = TestCurrencyConverterProvider.class.getSimpleName();
+	/** The number of queries to run per benchmark. */
+	final static private int BENCHMARK_QUERY_COUNT = 500;
+	/** The number of synthetic pairs to bulk insert per benchmark. */
+	final static private int[] BENCHMARK_INSERT_COUNTS = new int[]{10000, 100000};
+	/** The number of synthetic pairs to bulk insert while querying. */
+	final static private int BENCHMARK_CONCURRENT_INSERT_COUNT = 20000;
 
 
 	public TestCurrencyConverterProvider() {
@@ -86,6 +99,10 @@ public class TestCurrencyConverterProvider extends ProviderTestCase2<CurrencyCon
         assertEquals("The XCHANGE_RATE_FROM_SOURCE_TO_DEST URI does not match.",
                 testMatcher.match(TEST_EXCHANGE_RATES_WITH_SOURCE), 
                 	CurrencyConverterProvider.EXCHANGE_RATE_FROM_SOURCE_TO_DEST);
+        
+        assertEquals("The RATE_HISTORY_FROM_SOURCE_TO_DEST URI does not match.",
+                testMatcher.match(RateHistoryEntry.buildRateHistoryUri("usd", "bbd", 0, 1)), 
+                	CurrencyConverterProvider.RATE_HISTORY_FROM_SOURCE_TO_DEST);
     }
         
 	
@@ -117,6 +134,12 @@ public class TestCurrencyConverterProvider extends ProviderTestCase2<CurrencyCon
         // vnd.android.cursor.dir/com.ovrhere.android.currencyconverter/display_order/
         assertEquals("Error: Should return DisplayOrderEntry.CONTENT_TYPE",
         		DisplayOrderEntry.CONTENT_TYPE, mimeType);
+        
+        // content://com.ovrhere.android.currencyconverter/exchange_rate_history/usd/cad
+        mimeType = mContext.getContentResolver().getType(
+        		RateHistoryEntry.buildRateHistoryUri("usd", "cad"));
+        assertEquals("Error: Should return RateHistoryEntry.CONTENT_TYPE",
+        		RateHistoryEntry.CONTENT_TYPE, mimeType);
                 
 	}
 
@@ -183,7 +206,7 @@ public class TestCurrencyConverterProvider extends ProviderTestCase2<CurrencyCon
                 null,
                 null,
                 null,
-                null
+                DisplayOrderEntry.COLUMN_DEF_DISPLAY_ORDER + " ASC "
         );
         
         assertEquals("Expected different count for dir query", 2, resultCursor.getCount());
@@ -394,8 +417,11 @@ public class TestCurrencyConverterProvider extends ProviderTestCase2<CurrencyCon
         
 		assertEquals("Did not insert all records as expected", RECORD_COUNT, insertCount);
 		
+		//pairs are stored by id, not insertion; sort to match the order above.
 		Cursor cursor = mContext.getContentResolver()
-				.query(ExchangeRateEntry.CONTENT_URI, null, null, null, null);
+				.query(ExchangeRateEntry.CONTENT_URI, null, null, null, 
+						ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE + " DESC, " +
+						ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE + " DESC");
 		
 		cursor.moveToFirst();
         for ( int i = 0; i < RECORD_COUNT; i++, cursor.moveToNext() ) {
@@ -408,9 +434,482 @@ public class TestCurrencyConverterProvider extends ProviderTestCase2<CurrencyCon
 	
 	
 	
+	public void testRateCacheMatchesDatabase() {
+		testBulkInsertContent();
+		final Uri[] uris = new Uri[]{
+			ExchangeRateEntry.buildExchangeRateWithSourceCurrency("USD"),
+			ExchangeRateEntry.buildExchangeRateWithSourceCurrency("cad"),
+			ExchangeRateEntry.buildExchangeRateWithSourceCurrency("JPY"),
+			ExchangeRateEntry.buildExchangeRateFromSourceToDest("CAD", "GBP"),
+			ExchangeRateEntry.buildExchangeRateFromSourceToDest("usd", "bbd")
+		};
+		final String[] projection = new String[]{
+			ExchangeRateEntry.TABLE_NAME + "." + ExchangeRateEntry._ID,
+			DisplayOrderEntry.COLUMN_DEF_DISPLAY_ORDER,
+			ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE,
+			ExchangeRateEntry.COLUMN_EXCHANGE_RATE
+		};
+		final String sortOrder = DisplayOrderEntry.COLUMN_DEF_DISPLAY_ORDER + " ASC ";
+		
+		for (Uri uri : uris) {
+			getProvider().setRateCacheEnabled(false);
+			Cursor expected = mContext.getContentResolver()
+					.query(uri, projection, null, null, sortOrder);
+			getProvider().setRateCacheEnabled(true);
+			Cursor actual = mContext.getContentResolver()
+					.query(uri, projection, null, null, sortOrder);
+			
+			assertEquals("Cached count differs for " + uri, expected.getCount(), actual.getCount());
+			while (expected.moveToNext() && actual.moveToNext()) {
+				for (int col = 0; col < projection.length; col++) {
+					assertEquals("Cached value differs for " + uri + " at column " + projection[col],
+							expected.getString(col), actual.getString(col));
+				}
+			}
+			expected.close();
+			actual.close();
+		}
+	}
+	
+	public void testRateCacheInvalidation() {
+		testBulkInsertContent();
+		
+		Uri uri = ExchangeRateEntry.buildExchangeRateFromSourceToDest("USD", "CAD");
+		Cursor before = mContext.getContentResolver().query(uri, null, null, null, null);
+		UtilityTestMethods.validateCursor("Cache did not load", getTestInputs_USD_CAD(), before);
+		
+		ContentValues updated = getTestInputs_USD_CAD();
+		updated.put(ExchangeRateEntry.COLUMN_EXCHANGE_RATE, 1.2345d);
+		mContext.getContentResolver().bulkInsert(ExchangeRateEntry.CONTENT_URI, 
+				new ContentValues[]{updated});
+		
+		Cursor after = mContext.getContentResolver().query(uri, null, null, null, null);
+		UtilityTestMethods.validateCursor("Cache was not invalidated by write", updated, after);
+	}
+	
+	public void testRateCacheQueryBenchmark() {
+		final String[] codes = new String[]{"USD", "CAD", "EUR", "GBP", "JPY", "BBD", "AUD", "CHF"};
+		insertRateMatrix(codes);
+		
+		final String sortOrder = DisplayOrderEntry.COLUMN_DEF_DISPLAY_ORDER + " ASC ";
+		
+		getProvider().setRateCacheEnabled(false);
+		final long uncached = timeSourceQueries(codes, sortOrder);
+		getProvider().setRateCacheEnabled(true);
+		final long cached = timeSourceQueries(codes, sortOrder);
+		
+		Log.i(LOGTAG, String.format("%d source queries (%dx%d): database %dms, cache %dms", 
+				BENCHMARK_QUERY_COUNT, codes.length, codes.length, uncached, cached));
+	}
+	
+	
+	public void testBulkRateUpsertKeepsIds() {
+		testBulkInsertContent();
+		
+		Cursor before = mContext.getContentResolver().query(
+				ExchangeRateEntry.buildExchangeRateFromSourceToDest("USD", "CAD"), 
+				null, null, null, null);
+		assertTrue("Expected USD -> CAD", before.moveToFirst());
+		final long id = before.getLong(before.getColumnIndex(ExchangeRateEntry._ID));
+		before.close();
+		
+		ContentValues updated = getTestInputs_USD_CAD();
+		updated.put(ExchangeRateEntry.COLUMN_EXCHANGE_RATE, 1.2345d);
+		int count = mContext.getContentResolver().bulkInsert(ExchangeRateEntry.CONTENT_URI, 
+				new ContentValues[]{updated, getTestInputs_CAD_GBP()});
+		assertEquals("Expected both rows to be upserted", 2, count);
+		
+		Cursor after = mContext.getContentResolver().query(
+				ExchangeRateEntry.buildExchangeRateFromSourceToDest("USD", "CAD"), 
+				null, null, null, null);
+		assertTrue("Expected USD -> CAD", after.moveToFirst());
+		assertEquals("Expected the row to be updated in place", 
+				id, after.getLong(after.getColumnIndex(ExchangeRateEntry._ID)));
+		UtilityTestMethods.validateSingleCursor("Expected the rate to update", updated, after);
+		after.close();
+		
+		Cursor all = mContext.getContentResolver().query(
+				ExchangeRateEntry.CONTENT_URI, null, null, null, null);
+		assertEquals("Expected no redundant records", 4, all.getCount());
+		all.close();
+	}
+	
+	public void testBaseCurrencyDerivedRates() {
+		getProvider().setBaseCurrency("USD");
+		
+		insertDisplayOrderEntry("USD", 0);
+		insertDisplayOrderEntry("CAD", 1);
+		insertDisplayOrderEntry("EUR", 2);
+		//only the N - 1 rates from the base are stored.
+		int count = mContext.getContentResolver().bulkInsert(ExchangeRateEntry.CONTENT_URI, 
+				new ContentValues[]{getTestInputs_USD_EUR(), getTestInputs_USD_CAD()});
+		assertEquals("Expected both base rates to be stored", 2, count);
+		
+		Cursor cursor = mContext.getContentResolver().query(
+				ExchangeRateEntry.buildExchangeRateWithSourceCurrency("CAD"), 
+				new String[]{
+					ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE, 
+					ExchangeRateEntry.COLUMN_EXCHANGE_RATE}, 
+				null, null, 
+				DisplayOrderEntry.COLUMN_DEF_DISPLAY_ORDER + " ASC ");
+		
+		final String[] expectedCodes = new String[]{"USD", "CAD", "EUR"};
+		final double[] expectedRates = new double[]{
+				1.242236d, // 1 / 0.8050 
+				1.0d, // self
+				0.962733d // 0.7750 / 0.8050
+			};
+		assertEquals("Expected every rate from CAD to be derived", 
+				expectedCodes.length, cursor.getCount());
+		for (int index = 0; cursor.moveToNext(); index++) {
+			assertEquals("Unexpected dest at " + index, expectedCodes[index], cursor.getString(0));
+			assertEquals("Unexpected derived rate to " + expectedCodes[index], 
+					expectedRates[index], cursor.getDouble(1), 0d);
+		}
+		cursor.close();
+		
+		cursor = mContext.getContentResolver().query(
+				ExchangeRateEntry.buildExchangeRateFromSourceToDest("EUR", "CAD"), 
+				null, null, null, null);
+		assertTrue("Expected EUR -> CAD to be derived", cursor.moveToFirst());
+		assertEquals("Unexpected cross rate", 1.03871d, // 0.8050 / 0.7750 
+				cursor.getDouble(cursor.getColumnIndex(ExchangeRateEntry.COLUMN_EXCHANGE_RATE)), 0d);
+		cursor.close();
+		
+		Cursor stored = mContext.getContentResolver().query(
+				ExchangeRateEntry.CONTENT_URI, null, null, null, null);
+		assertEquals("Expected derived rates not to be stored", 2, stored.getCount());
+		stored.close();
+	}
+	
+	public void testBaseCurrencyDerivedRatesUnsupportedSort() {
+		getProvider().setBaseCurrency("USD");
+		
+		insertDisplayOrderEntry("USD", 0);
+		insertDisplayOrderEntry("CAD", 1);
+		insertDisplayOrderEntry("EUR", 2);
+		mContext.getContentResolver().bulkInsert(ExchangeRateEntry.CONTENT_URI, 
+				new ContentValues[]{getTestInputs_USD_EUR(), getTestInputs_USD_CAD()});
+		
+		//not understood by the cache; so answered by the database
+		Cursor cursor = mContext.getContentResolver().query(
+				ExchangeRateEntry.buildExchangeRateWithSourceCurrency("CAD"), 
+				new String[]{
+					ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE, 
+					ExchangeRateEntry.COLUMN_EXCHANGE_RATE}, 
+				null, null, 
+				ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE + " COLLATE NOCASE DESC");
+		
+		final String[] expectedCodes = new String[]{"USD", "EUR", "CAD"};
+		final double[] expectedRates = new double[]{
+				1.242236d, // 1 / 0.8050 
+				0.962733d, // 0.7750 / 0.8050
+				1.0d // self
+			};
+		assertEquals("Expected every rate from CAD to be derived", 
+				expectedCodes.length, cursor.getCount());
+		for (int index = 0; cursor.moveToNext(); index++) {
+			assertEquals("Unexpected dest at " + index, expectedCodes[index], cursor.getString(0));
+			assertEquals("Unexpected derived rate to " + expectedCodes[index], 
+					expectedRates[index], cursor.getDouble(1), 0d);
+		}
+		cursor.close();
+		
+		getProvider().setRateCacheEnabled(false);
+		cursor = mContext.getContentResolver().query(
+				ExchangeRateEntry.buildExchangeRateFromSourceToDest("EUR", "CAD"), 
+				null, null, null, null);
+		getProvider().setRateCacheEnabled(true);
+		assertTrue("Expected EUR -> CAD to be derived without the cache", cursor.moveToFirst());
+		assertEquals("Unexpected cross rate", 1.03871d, // 0.8050 / 0.7750 
+				cursor.getDouble(cursor.getColumnIndex(ExchangeRateEntry.COLUMN_EXCHANGE_RATE)), 0d);
+		assertEquals(1, cursor.getCount());
+		cursor.close();
+	}
+	
+	public void testBulkInsertNotifiesPairs() {
+		insertDisplayOrderEntry("CAD", 1);
+		
+		UtilityTestContentObserver observer = UtilityTestContentObserver.newTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+        		ExchangeRateEntry.buildExchangeRateFromSourceToDest("USD", "CAD"), false, observer);
+        
+        mContext.getContentResolver().bulkInsert(ExchangeRateEntry.CONTENT_URI, 
+        		new ContentValues[]{getTestInputs_USD_CAD()});
+        
+        observer.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(observer);
+	}
+	
+	public void testDisplayOrderDeleteNotifiesRates() {
+		insertDisplayOrderEntry("CAD", 1);
+		mContext.getContentResolver().bulkInsert(ExchangeRateEntry.CONTENT_URI, 
+        		new ContentValues[]{getTestInputs_USD_CAD()});
+		
+		UtilityTestContentObserver rateObserver = UtilityTestContentObserver.newTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+        		ExchangeRateEntry.CONTENT_URI, true, rateObserver);
+		UtilityTestContentObserver historyObserver = UtilityTestContentObserver.newTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+        		RateHistoryEntry.CONTENT_URI, true, historyObserver);
+        
+        mContext.getContentResolver().delete(DisplayOrderEntry.CONTENT_URI, 
+        		DisplayOrderEntry.COLUMN_CURRENCY_CODE + " = ?", new String[]{"CAD"});
+        
+        rateObserver.waitForNotificationOrFail();
+        historyObserver.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(rateObserver);
+        mContext.getContentResolver().unregisterContentObserver(historyObserver);
+	}
+	
+	public void testApplyBatch() throws Exception {
+		ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+		operations.add(ContentProviderOperation.newInsert(DisplayOrderEntry.CONTENT_URI)
+				.withValue(DisplayOrderEntry.COLUMN_CURRENCY_CODE, "CAD")
+				.withValue(DisplayOrderEntry.COLUMN_DEF_DISPLAY_ORDER, 1)
+				.build());
+		operations.add(ContentProviderOperation.newInsert(DisplayOrderEntry.CONTENT_URI)
+				.withValue(DisplayOrderEntry.COLUMN_CURRENCY_CODE, "EUR")
+				.withValue(DisplayOrderEntry.COLUMN_DEF_DISPLAY_ORDER, 2)
+				.build());
+		operations.add(ContentProviderOperation.newInsert(ExchangeRateEntry.CONTENT_URI)
+				.withValues(getTestInputs_USD_CAD()).build());
+		operations.add(ContentProviderOperation.newInsert(ExchangeRateEntry.CONTENT_URI)
+				.withValues(getTestInputs_USD_EUR()).build());
+		operations.add(ContentProviderOperation.newUpdate(ExchangeRateEntry.CONTENT_URI)
+				.withValue(ExchangeRateEntry.COLUMN_EXCHANGE_RATE, 0.7751d)
+				.withSelection(ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE + " = ? ", 
+						new String[]{"EUR"})
+				.build());
+		
+		UtilityTestContentObserver observer = UtilityTestContentObserver.newTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+        		ExchangeRateEntry.buildExchangeRateWithSourceCurrency("USD"), true, observer);
+        
+		ContentProviderResult[] results = mContext.getContentResolver()
+				.applyBatch(CurrencyConverterContract.CONTENT_AUTHORITY, operations);
+		
+		observer.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(observer);
+        
+		assertEquals("Expected a result per operation", operations.size(), results.length);
+		assertEquals("Expected a single update", 1, results[4].count.intValue());
+		
+		Cursor cursor = mContext.getContentResolver().query(
+				ExchangeRateEntry.buildExchangeRateWithSourceCurrency("USD"), 
+				new String[]{ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE, 
+						ExchangeRateEntry.COLUMN_EXCHANGE_RATE}, 
+				null, null, DisplayOrderEntry.COLUMN_DEF_DISPLAY_ORDER + " ASC ");
+		assertEquals("Expected both rates from the batch", 2, cursor.getCount());
+		assertTrue(cursor.moveToPosition(1));
+		assertEquals("Expected the update within the batch", 0.7751d, cursor.getDouble(1), 0d);
+		cursor.close();
+	}
+	
+	public void testRateHistoryAppendedOnWrite() {
+		final long start = System.currentTimeMillis();
+		testBulkInsertContent();
+		
+		ContentValues upserted = getTestInputs_USD_CAD();
+		upserted.put(ExchangeRateEntry.COLUMN_EXCHANGE_RATE, 1.2345d);
+		mContext.getContentResolver().bulkInsert(ExchangeRateEntry.CONTENT_URI, 
+				new ContentValues[]{upserted});
+		
+		ContentValues updated = new ContentValues();
+		updated.put(ExchangeRateEntry.COLUMN_EXCHANGE_RATE, 1.3456d);
+		mContext.getContentResolver().update(ExchangeRateEntry.CONTENT_URI, updated, 
+				ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE + " = ? AND " + 
+				ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE + " = ? ", 
+				new String[]{"USD", "CAD"});
+		final long end = System.currentTimeMillis();
+		
+		Cursor cursor = mContext.getContentResolver().query(
+				RateHistoryEntry.buildRateHistoryUri("usd", "cad"), 
+				new String[]{
+					ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE,
+					ExchangeRateEntry.COLUMN_EXCHANGE_RATE, 
+					RateHistoryEntry.COLUMN_TIMESTAMP},
+				null, null, null);
+		
+		final double[] expectedRates = new double[]{0.8050d, 1.2345d, 1.3456d};
+		assertEquals("Expected every write to be kept", expectedRates.length, cursor.getCount());
+		for (int index = 0; cursor.moveToNext(); index++) {
+			assertEquals("Unexpected source code", "USD", cursor.getString(0));
+			assertEquals("Unexpected rate at " + index, expectedRates[index], 
+					cursor.getDouble(1), 0d);
+			final long timestamp = cursor.getLong(2);
+			assertTrue("Unexpected timestamp", start <= timestamp && timestamp <= end);
+		}
+		cursor.close();
+		
+		cursor = mContext.getContentResolver().query(
+				RateHistoryEntry.buildRateHistoryUri("usd", "cad", 0, start - 1), 
+				null, null, null, null);
+		assertEquals("Expected no history before the first write", 0, cursor.getCount());
+		cursor.close();
+		
+		cursor = mContext.getContentResolver().query(
+				RateHistoryEntry.buildRateHistoryUri("cad", "gbp", start, end), 
+				null, null, null, null);
+		assertEquals("Expected the single CAD -> GBP write", 1, cursor.getCount());
+		cursor.close();
+	}
+	
+	public void testBulkInsertBenchmark() {
+		for (int count : BENCHMARK_INSERT_COUNTS) {
+			ContentValues[] values = buildSyntheticRates(count);
+			
+			getProvider().setRateUpsertEnabled(false);
+			final long insertFresh = timeBulkInsert(values);
+			final long insertExisting = timeBulkInsert(values);
+			UtilityTestMethods.deleteDatabaseByContentResolver(mContext);
+			
+			getProvider().setRateUpsertEnabled(true);
+			final long upsertFresh = timeBulkInsert(values);
+			final long upsertExisting = timeBulkInsert(values);
+			UtilityTestMethods.deleteDatabaseByContentResolver(mContext);
+			
+			Log.i(LOGTAG, String.format("%d pairs; insert: %dms (fresh) %dms (replace), " +
+					"upsert: %dms (fresh) %dms (update)", 
+					count, insertFresh, insertExisting, upsertFresh, upsertExisting));
+		}
+	}
+	
+	
+	public void testQueryLatencyDuringBulkInsert() throws InterruptedException {
+		final String[] codes = new String[]{"USD", "CAD", "EUR"};
+		insertRateMatrix(codes);
+		getProvider().setRateCacheEnabled(false); //always read the database
+		final ContentValues[] values = buildSyntheticRates(BENCHMARK_CONCURRENT_INSERT_COUNT);
+		
+		final long[] idleLatency = timeSourceQueryLatencies("USD", codes.length, null);
+		
+		final int[] insertCount = new int[1];
+		final long[] insertTime = new long[1];
+		Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				final long start = System.nanoTime();
+				insertCount[0] = mContext.getContentResolver()
+						.bulkInsert(ExchangeRateEntry.CONTENT_URI, values);
+				insertTime[0] = (System.nanoTime() - start) / 1000000;
+			}
+		});
+		writer.start();
+		final long[] busyLatency = timeSourceQueryLatencies("USD", codes.length, writer);
+		writer.join();
+		
+		assertEquals("Expected all records to be written", values.length, insertCount[0]);
+		Log.i(LOGTAG, String.format("Source query latency; idle: %dus avg %dus max, " +
+				"during %d pair insert (%dms): %dus avg %dus max over %d queries", 
+				idleLatency[0], idleLatency[1], values.length, insertTime[0],
+				busyLatency[0], busyLatency[1], busyLatency[2]));
+	}
+	
+	
 	////////////////////////////////////////////////////////////////////////////////////////////////
 	//// Utility methods
 	////////////////////////////////////////////////////////////////////////////////////////////////
+	/**
+	 * Repeatedly queries the source, asserting every query returns the expected rows. 
+	 * @param sourceCode The source to query.
+	 * @param expectedCount The expected count of rates from the source.
+	 * @param whileAlive Queries until this thread is done or, if <code>null</code>,
+	 * {@link #BENCHMARK_QUERY_COUNT} times.
+	 * @return The average & max latency in microseconds, and the query count.
+	 */
+	private long[] timeSourceQueryLatencies(String sourceCode, int expectedCount, 
+			Thread whileAlive) {
+		final Uri uri = ExchangeRateEntry.buildExchangeRateWithSourceCurrency(sourceCode);
+		long total = 0;
+		long max = 0;
+		int queries = 0;
+		do {
+			final long start = System.nanoTime();
+			Cursor cursor = mContext.getContentResolver().query(uri, null, null, null, null);
+			assertEquals("Unexpected rates from " + sourceCode, expectedCount, cursor.getCount());
+			cursor.close();
+			final long latency = (System.nanoTime() - start) / 1000;
+			total += latency;
+			max = Math.max(max, latency);
+			queries++;
+		} while (whileAlive != null ? whileAlive.isAlive() : queries < BENCHMARK_QUERY_COUNT);
+		return new long[]{total / queries, max, queries};
+	}
+	
+	/**
+	 * Bulk inserts the values & asserts they were all inserted.
+	 * @return The time taken in milliseconds.
+	 */
+	private long timeBulkInsert(ContentValues[] values) {
+		final long start = System.nanoTime();
+		int count = mContext.getContentResolver().bulkInsert(ExchangeRateEntry.CONTENT_URI, values);
+		final long time = (System.nanoTime() - start) / 1000000;
+		assertEquals("Expected all records to be written", values.length, count);
+		return time;
+	}
+	
+	/**
+	 * Builds synthetic rates for distinct pairs of made up 3 letter codes. 
+	 * @param count The number of pairs to build.
+	 * @return The synthetic pairs.
+	 */
+	private static ContentValues[] buildSyntheticRates(int count) {
+		final int codeCount = (int) Math.ceil(Math.sqrt(count));
+		String[] codes = new String[codeCount];
+		for (int index = 0; index < codeCount; index++) {
+			codes[index] = new String(new char[]{
+					(char) ('A' + index / (26 * 26) % 26), 
+					(char) ('A' + index / 26 % 26), 
+					(char) ('A' + index % 26) });
+		}
+		ContentValues[] values = new ContentValues[count];
+		for (int index = 0; index < count; index++) {
+			ContentValues cv = new ContentValues();
+			cv.put(ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE, codes[index / codeCount]);
+			cv.put(ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE, codes[index % codeCount]);
+			cv.put(ExchangeRateEntry.COLUMN_EXCHANGE_RATE, 1.0d + index / (double) count);
+			values[index] = cv;
+		}
+		return values;
+	}
+	
+	/**
+	 * Inserts the full matrix of rates (including self conversions) for the codes.
+	 * @param codes The codes to insert both display orders and rates for.
+	 */
+	private void insertRateMatrix(String[] codes) {
+		final int SIZE = codes.length;
+		ContentValues[] rates = new ContentValues[SIZE * SIZE];
+		for (int src = 0; src < SIZE; src++) {
+			insertDisplayOrderEntry(codes[src], src);
+			for (int dst = 0; dst < SIZE; dst++) {
+				ContentValues cv = new ContentValues();
+				cv.put(ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE, codes[src]);
+				cv.put(ExchangeRateEntry.COLUMN_DEST_CURRENCY_CODE, codes[dst]);
+				cv.put(ExchangeRateEntry.COLUMN_EXCHANGE_RATE, (src + 1.0d) / (dst + 1.0d));
+				rates[src * SIZE + dst] = cv;
+			}
+		}
+		mContext.getContentResolver().bulkInsert(ExchangeRateEntry.CONTENT_URI, rates);
+	}
+	
+	/**
+	 * Runs {@link #BENCHMARK_QUERY_COUNT} source queries, cycling through the codes.
+	 * @return The time taken in milliseconds.
+	 */
+	private long timeSourceQueries(String[] codes, String sortOrder) {
+		final long start = System.nanoTime();
+		for (int index = 0; index < BENCHMARK_QUERY_COUNT; index++) {
+			Cursor cursor = mContext.getContentResolver().query(
+					ExchangeRateEntry.buildExchangeRateWithSourceCurrency(codes[index % codes.length]),
+					null, null, null, sortOrder);
+			assertEquals("Unexpected row count", codes.length, cursor.getCount());
+			cursor.close();
+		}
+		return (System.nanoTime() - start) / 1000000;
+	}
+	
 	/**
 	 * Inserts and tests each display order entry.
 	 * @param values
@@ -0,0 +1,105 @@
+package com.ovrhere.android.currencyconverter.model.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.test.mock.MockContentResolver;
+
+import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.ExchangeRateEntry;
+import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.RateHistoryEntry;
+
+public class TestNotificationDebouncer extends AndroidTestCase {
+	
+	final static private Uri USD_RATES = ExchangeRateEntry.buildExchangeRateWithSourceCurrency("USD");
+	final static private Uri CAD_RATES = ExchangeRateEntry.buildExchangeRateWithSourceCurrency("CAD");
+	
+	private RecordingContentResolver mResolver = null;
+	private NotificationDebouncer mDebouncer = null;
+	
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		mResolver = new RecordingContentResolver();
+		mDebouncer = new NotificationDebouncer(mResolver);
+	}
+	
+	@Test
+	public void testNotifiesImmediatelyOutsideBatch() {
+		assertFalse("Expected no batch", mDebouncer.isBatching());
+		mDebouncer.notifyChange(USD_RATES);
+		mDebouncer.notifyChange(USD_RATES);
+		assertEquals("Expected every notification outside of a batch", 2, mResolver.notified.size());
+	}
+	
+	@Test
+	public void testBatchNotifiesEachUriOnce() {
+		mDebouncer.beginBatch();
+		assertTrue("Expected a batch", mDebouncer.isBatching());
+		mDebouncer.notifyChange(USD_RATES);
+		mDebouncer.notifyChange(RateHistoryEntry.CONTENT_URI);
+		mDebouncer.notifyChange(USD_RATES);
+		mDebouncer.notifyChange(CAD_RATES);
+		assertTrue("Expected no notifications before the batch ends", mResolver.notified.isEmpty());
+		mDebouncer.endBatch(true);
+		
+		assertFalse("Expected the batch to end", mDebouncer.isBatching());
+		List<Uri> expected = new ArrayList<Uri>();
+		expected.add(USD_RATES);
+		expected.add(RateHistoryEntry.CONTENT_URI);
+		expected.add(CAD_RATES);
+		assertEquals("Expected each uri once, in order", expected, mResolver.notified);
+	}
+	
+	@Test
+	public void testAncestorCoversDescendants() {
+		mDebouncer.beginBatch();
+		mDebouncer.notifyChange(USD_RATES);
+		mDebouncer.notifyChange(ExchangeRateEntry.buildExchangeRateFromSourceToDest("CAD", "USD"));
+		mDebouncer.notifyChange(ExchangeRateEntry.CONTENT_URI);
+		mDebouncer.notifyChange(RateHistoryEntry.CONTENT_URI);
+		mDebouncer.endBatch(true);
+		
+		List<Uri> expected = new ArrayList<Uri>();
+		expected.add(ExchangeRateEntry.CONTENT_URI);
+		expected.add(RateHistoryEntry.CONTENT_URI);
+		assertEquals("Expected the table uri to cover its sources", expected, mResolver.notified);
+	}
+	
+	@Test
+	public void testNestedBatches() {
+		mDebouncer.beginBatch();
+		mDebouncer.beginBatch();
+		mDebouncer.notifyChange(USD_RATES);
+		mDebouncer.endBatch(true);
+		assertTrue("Expected the outer batch to hold notifications", mResolver.notified.isEmpty());
+		mDebouncer.endBatch(true);
+		assertEquals("Expected a single notification", 1, mResolver.notified.size());
+		
+		mResolver.notified.clear();
+		mDebouncer.beginBatch();
+		mDebouncer.beginBatch();
+		mDebouncer.notifyChange(USD_RATES);
+		mDebouncer.endBatch(false);
+		mDebouncer.endBatch(true);
+		assertTrue("Expected a failed batch to discard notifications", mResolver.notified.isEmpty());
+	}
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Internal classes
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** Records the uris notified, in order. */
+	private static class RecordingContentResolver extends MockContentResolver {
+		final List<Uri> notified = new ArrayList<Uri>();
+		
+		@Override
+		public void notifyChange(Uri uri, ContentObserver observer, boolean syncToNetwork) {
+			notified.add(uri);
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package com.ovrhere.android.currencyconverter.model.data;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.ExchangeRateEntry;
+
+public class TestRateChangeSet extends AndroidTestCase {
+
+	@Test
+	public void testNotifiesTouchedPairs() {
+		RateChangeSet changes = new RateChangeSet(null);
+		assertTrue("Expected no changes", changes.isEmpty());
+		changes.add("USD", "CAD");
+		changes.add("USD", "EUR");
+		changes.add("USD", "CAD");
+		changes.add("CAD", "USD");
+		
+		List<Uri> uris = changes.getUris();
+		assertEquals("Expected each pair once", 3, uris.size());
+		assertEquals(ExchangeRateEntry.buildExchangeRateFromSourceToDest("USD", "CAD"), uris.get(0));
+		assertEquals(ExchangeRateEntry.buildExchangeRateFromSourceToDest("USD", "EUR"), uris.get(1));
+		assertEquals(ExchangeRateEntry.buildExchangeRateFromSourceToDest("CAD", "USD"), uris.get(2));
+	}
+	
+	@Test
+	public void testEscalatesToSource() {
+		RateChangeSet changes = new RateChangeSet(null);
+		for (int index = 0; index <= RateChangeSet.PAIR_THRESHOLD; index++) {
+			changes.add("USD", "D" + index);
+		}
+		changes.add("CAD", "USD");
+		
+		List<Uri> uris = changes.getUris();
+		assertEquals("Expected the source and the single pair", 2, uris.size());
+		assertEquals(ExchangeRateEntry.buildExchangeRateWithSourceCurrency("USD"), uris.get(0));
+		assertEquals(ExchangeRateEntry.buildExchangeRateFromSourceToDest("CAD", "USD"), uris.get(1));
+	}
+	
+	@Test
+	public void testEscalatesToTable() {
+		RateChangeSet changes = new RateChangeSet(null);
+		for (int index = 0; index <= RateChangeSet.SOURCE_THRESHOLD; index++) {
+			changes.add("S" + index, "USD");
+		}
+		assertTrue("Expected every rate to be touched", changes.isAll());
+		
+		List<Uri> uris = changes.getUris();
+		assertEquals("Expected only the table", 1, uris.size());
+		assertEquals(ExchangeRateEntry.CONTENT_URI, uris.get(0));
+		
+		changes = new RateChangeSet(null);
+		changes.add(null, null);
+		assertTrue("Expected an unknown source to touch every rate", changes.isAll());
+	}
+	
+	@Test
+	public void testBaseCurrencyMode() {
+		RateChangeSet changes = new RateChangeSet("USD");
+		changes.add("CAD", "EUR");
+		
+		List<Uri> uris = changes.getUris();
+		assertEquals("Expected the pair and its derived reverse", 2, uris.size());
+		assertEquals(ExchangeRateEntry.buildExchangeRateFromSourceToDest("CAD", "EUR"), uris.get(0));
+		assertEquals(ExchangeRateEntry.buildExchangeRateFromSourceToDest("EUR", "CAD"), uris.get(1));
+		
+		changes.add("USD", "CAD");
+		assertTrue("Expected a base rate to touch every derived rate", changes.isAll());
+	}
+}
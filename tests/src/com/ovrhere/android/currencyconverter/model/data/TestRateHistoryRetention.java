@@ -0,0 +1,147 @@
+package com.ovrhere.android.currencyconverter.model.data;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.test.RenamingDelegatingContext;
+
+import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.DisplayOrderEntry;
+import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.RateHistoryEntry;
+
+public class TestRateHistoryRetention extends AndroidTestCase {
+	/** A fixed "now"; half an hour into a day, so cutoffs fall between points. */
+	final static private long NOW = 1000 * RateHistoryRetention.DAY +
+			RateHistoryRetention.HOUR / 2;
+
+	private SQLiteDatabase mDb = null;
+	private long mSourceId = -1;
+	private long mDestId = -1;
+
+	@Before
+	protected void setUp() throws Exception {
+		deleteDatabase(); //always start test with clean slate.
+		mDb = new CurrencyConverterDbHelper(getTestContext()).getWritableDatabase();
+		mSourceId = insertDisplayOrderEntry("USD", 0);
+		mDestId = insertDisplayOrderEntry("CAD", 1);
+	}
+
+	@After
+	protected void tearDown() throws Exception {
+		mDb.close();
+		deleteDatabase();
+		super.tearDown();
+	}
+
+	@Test
+	public void testRawDownsampledIntoHourly() {
+		final long oldHour = NOW - 2 * RateHistoryRetention.DAY;
+		final long oldHourStart =
+				(oldHour / RateHistoryRetention.HOUR) * RateHistoryRetention.HOUR;
+		insertHistory(1.0d, oldHourStart + 1, RateHistoryEntry.RESOLUTION_RAW);
+		insertHistory(2.0d, oldHourStart + 2, RateHistoryEntry.RESOLUTION_RAW);
+		insertHistory(5.0d, NOW - 60 * 1000, RateHistoryEntry.RESOLUTION_RAW); //recent
+
+		assertEquals("Expected 2 raw points folded into 1 bucket",
+				1, RateHistoryRetention.run(mDb, NOW));
+
+		Cursor cursor = queryHistory();
+		assertEquals("Unexpected history count", 2, cursor.getCount());
+
+		assertTrue(cursor.moveToFirst());
+		assertEquals("Expected the hourly average", 1.5d, cursor.getDouble(0), 0d);
+		assertEquals("Expected the bucket to start on the hour", oldHourStart, cursor.getLong(1));
+		assertEquals(RateHistoryEntry.RESOLUTION_HOURLY, cursor.getInt(2));
+
+		assertTrue(cursor.moveToNext());
+		assertEquals("Expected the recent point to be kept", 5.0d, cursor.getDouble(0), 0d);
+		assertEquals(RateHistoryEntry.RESOLUTION_RAW, cursor.getInt(2));
+		cursor.close();
+	}
+
+	@Test
+	public void testHourlyDownsampledIntoDailyAndExpired() {
+		final long oldDay = NOW - 10 * RateHistoryRetention.DAY;
+		final long oldDayStart =
+				(oldDay / RateHistoryRetention.DAY) * RateHistoryRetention.DAY;
+		insertHistory(1.0d, oldDayStart, RateHistoryEntry.RESOLUTION_HOURLY);
+		insertHistory(3.0d, oldDayStart + RateHistoryRetention.HOUR,
+				RateHistoryEntry.RESOLUTION_HOURLY);
+		insertHistory(9.0d, NOW - 400 * RateHistoryRetention.DAY,
+				RateHistoryEntry.RESOLUTION_DAILY); //expired
+
+		assertEquals("Expected 2 hourly folded into 1, and 1 expired",
+				2, RateHistoryRetention.run(mDb, NOW));
+
+		Cursor cursor = queryHistory();
+		assertEquals("Unexpected history count", 1, cursor.getCount());
+		assertTrue(cursor.moveToFirst());
+		assertEquals("Expected the daily average", 2.0d, cursor.getDouble(0), 0d);
+		assertEquals("Expected the bucket to start on the day", oldDayStart, cursor.getLong(1));
+		assertEquals(RateHistoryEntry.RESOLUTION_DAILY, cursor.getInt(2));
+		cursor.close();
+	}
+
+	@Test
+	public void testRepeatedRunChangesNothing() {
+		insertHistory(1.0d, NOW - 3 * RateHistoryRetention.DAY, RateHistoryEntry.RESOLUTION_RAW);
+		insertHistory(2.0d, NOW - 60 * 1000, RateHistoryEntry.RESOLUTION_RAW);
+		RateHistoryRetention.run(mDb, NOW);
+
+		assertEquals("Expected nothing more to downsample",
+				0, RateHistoryRetention.run(mDb, NOW));
+		Cursor cursor = queryHistory();
+		assertEquals("Unexpected history count", 2, cursor.getCount());
+		cursor.close();
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Helper methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+
+	private RenamingDelegatingContext getTestContext() {
+		return new RenamingDelegatingContext(getContext(), "test_");
+	}
+
+	 /** Deletes the database, simply. */
+	private void deleteDatabase(){
+		getTestContext().deleteDatabase(CurrencyConverterDbHelper.DATABASE_NAME);
+	}
+
+	/** @return The rate, timestamp & resolution of the history, oldest first. */
+	private Cursor queryHistory() {
+		return mDb.query(RateHistoryEntry.TABLE_NAME,
+				new String[]{
+					RateHistoryEntry.COLUMN_RATE,
+					RateHistoryEntry.COLUMN_TIMESTAMP,
+					RateHistoryEntry.COLUMN_RESOLUTION},
+				null, null, null, null,
+				RateHistoryEntry.COLUMN_TIMESTAMP + " ASC");
+	}
+
+	/** Inserts a USD -> CAD history point. */
+	private void insertHistory(double rate, long timestamp, int resolution) {
+		ContentValues inputs = new ContentValues();
+		inputs.put(RateHistoryEntry.COLUMN_SOURCE_ID, mSourceId);
+		inputs.put(RateHistoryEntry.COLUMN_DEST_ID, mDestId);
+		inputs.put(RateHistoryEntry.COLUMN_RATE, rate);
+		inputs.put(RateHistoryEntry.COLUMN_TIMESTAMP, timestamp);
+		inputs.put(RateHistoryEntry.COLUMN_RESOLUTION, resolution);
+		assertFalse("Problem inserting history",
+				mDb.insert(RateHistoryEntry.TABLE_NAME, null, inputs) == -1);
+	}
+
+	/** @return The id of the inserted display order. */
+	private long insertDisplayOrderEntry(String code, int order) {
+		ContentValues inputs = new ContentValues();
+        inputs.put(DisplayOrderEntry.COLUMN_CURRENCY_CODE, code);
+        inputs.put(DisplayOrderEntry.COLUMN_DEF_DISPLAY_ORDER, order);
+        final long id = mDb.insert(DisplayOrderEntry.TABLE_NAME, null, inputs);
+        assertFalse("Problem inserting record.", id == -1);
+        return id;
+	}
+}
@@ -0,0 +1,156 @@
+package com.ovrhere.android.currencyconverter.model.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import android.content.ContentValues;
+import android.test.AndroidTestCase;
+
+import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.ExchangeRateEntry;
+
+public class TestRateSnapshot extends AndroidTestCase {
+	final static private String[] TEST_CODES = new String[]{"USD", "CAD", "JPY"};
+	final static private double[] TEST_MATRIX = new double[]{
+		1.0d, 1.2307d, 121.7695d,
+		0.8125d, 1.0d, Double.NaN,
+		0.0082d, 0.0101d, 1.0d
+	};
+	final static private long TEST_UPDATE_TIME = 1432614447000L;
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		RateSnapshot snapshot = RateSnapshot.read(ByteBuffer.wrap(write()));
+		assertEquals(TEST_UPDATE_TIME, snapshot.getUpdateTime());
+		assertEquals(3, snapshot.getCodeCount());
+		assertEquals("JPY", snapshot.getCode(2));
+		assertEquals(1, snapshot.indexOf("cad"));
+		assertEquals(-1, snapshot.indexOf("EUR"));
+		for (int index = 0; index < TEST_MATRIX.length; index++) {
+			assertEquals("Mismatch at " + index, 
+					Double.doubleToLongBits(TEST_MATRIX[index]), 
+					Double.doubleToLongBits(snapshot.getRate(index / 3, index % 3)));
+		}
+		try {
+			snapshot.getRate(3, 0);
+			fail("Expected no rate outside the matrix");
+		} catch (IndexOutOfBoundsException expected) {}
+	}
+
+	@Test
+	public void testMatrixAligned() throws IOException {
+		final byte[] bytes = write();
+		assertEquals(RateSnapshot.getSize(3), bytes.length);
+		assertEquals("Expected the matrix 8 byte aligned", 0, RateSnapshot.getMatrixOffset(3) % 8);
+		assertEquals(RateSnapshot.getMatrixOffset(3), RateSnapshot.getMatrixOffset(0) + 16);
+	}
+
+	@Test
+	public void testCorruptionRejected() throws IOException {
+		final byte[] bytes = write();
+		bytes[RateSnapshot.getMatrixOffset(3) + 10] ^= 0x01;
+		assertRejected("Expected the checksum to fail", bytes);
+	}
+
+	@Test
+	public void testVersionRejected() throws IOException {
+		final byte[] bytes = write();
+		bytes[5] = (byte) (RateSnapshot.VERSION + 1);
+		assertRejected("Expected another version rejected", bytes);
+
+		assertRejected("Expected a truncated snapshot rejected", 
+				ByteBuffer.wrap(write(), 0, (int) RateSnapshot.getSize(3) - 1));
+		assertRejected("Expected a non-snapshot rejected", new byte[64]);
+	}
+
+	@Test
+	public void testBadInputRejected() throws IOException {
+		try {
+			RateSnapshotWriter.write(new ByteArrayOutputStream(), TEST_CODES, new double[4], 0);
+			fail("Expected a matrix of every pair");
+		} catch (IllegalArgumentException expected) {}
+		try {
+			RateSnapshotWriter.write(new ByteArrayOutputStream(), 
+					new String[]{"USDX"}, new double[1], 0);
+			fail("Expected codes of 3 letters");
+		} catch (IllegalArgumentException expected) {}
+	}
+
+	@Test
+	public void testSizeBounded() throws IOException {
+		assertTrue("Expected the most codes to fit a buffer", 
+				RateSnapshot.getSize(RateSnapshot.MAX_CODE_COUNT) <= Integer.MAX_VALUE);
+		assertTrue("Expected a code more not to", 
+				RateSnapshot.getSize(RateSnapshot.MAX_CODE_COUNT + 1) > Integer.MAX_VALUE);
+		assertEquals("Expected the size not to overflow", 
+				RateSnapshot.getMatrixOffset(0xffff) + 8L * 0xffff * 0xffff + 4, 
+				RateSnapshot.getSize(0xffff));
+		try {
+			RateSnapshotWriter.write(new ByteArrayOutputStream(), 
+					new String[RateSnapshot.MAX_CODE_COUNT + 1], new double[0], 0);
+			fail("Expected too many codes rejected");
+		} catch (IllegalArgumentException expected) {}
+		
+		final byte[] bytes = write();
+		bytes[6] = (byte) 0xff; //a count of 0xffff
+		bytes[7] = (byte) 0xff;
+		assertRejected("Expected a count of too many codes rejected", bytes);
+	}
+
+	@Test
+	public void testMapped() throws IOException {
+		File file = File.createTempFile("rates", ".bin");
+		try {
+			FileOutputStream out = new FileOutputStream(file);
+			try {
+				RateSnapshotWriter.write(out, TEST_CODES, TEST_MATRIX, TEST_UPDATE_TIME);
+			} finally {
+				out.close();
+			}
+			RateSnapshot snapshot = RateSnapshot.map(file);
+			assertEquals(TEST_UPDATE_TIME, snapshot.getUpdateTime());
+			assertEquals(121.7695d, snapshot.getRate(0, 2));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testContentValues() throws IOException {
+		RateSnapshot snapshot = RateSnapshot.read(ByteBuffer.wrap(write()));
+		ContentValues[] values = RateSnapshotLoader.toContentValues(snapshot, null);
+		assertEquals("Expected every rate but the NaN", 8, values.length);
+		assertEquals("CAD", values[4].getAsString(ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE));
+		assertEquals("JPY", values[5].getAsString(ExchangeRateEntry.COLUMN_SOURCE_CURRENCY_CODE));
+
+		values = RateSnapshotLoader.toContentValues(snapshot, "jpy");
+		assertEquals("Expected only the base's rates", 3, values.length);
+		assertEquals(0.0101d, values[1].getAsDouble(ExchangeRateEntry.COLUMN_EXCHANGE_RATE));
+		assertEquals(0, RateSnapshotLoader.toContentValues(snapshot, "EUR").length);
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Helper methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+
+	private static byte[] write() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		RateSnapshotWriter.write(out, TEST_CODES, TEST_MATRIX, TEST_UPDATE_TIME);
+		return out.toByteArray();
+	}
+
+	private static void assertRejected(String message, byte[] bytes) {
+		assertRejected(message, ByteBuffer.wrap(bytes));
+	}
+
+	private static void assertRejected(String message, ByteBuffer buffer) {
+		try {
+			RateSnapshot.read(buffer);
+			fail(message);
+		} catch (IOException expected) {}
+	}
+}
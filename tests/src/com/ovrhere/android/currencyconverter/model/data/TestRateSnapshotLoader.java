@@ -0,0 +1,134 @@
+package com.ovrhere.android.currencyconverter.model.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.test.ProviderTestCase2;
+
+import com.ovrhere.android.currencyconverter.model.RateMatrix;
+import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.DisplayOrderEntry;
+import com.ovrhere.android.currencyconverter.model.data.CurrencyConverterContract.ExchangeRateEntry;
+import com.ovrhere.android.currencyconverter.test.UtilityTestMethods;
+
+public class TestRateSnapshotLoader extends ProviderTestCase2<CurrencyConverterProvider> {
+	final static private String[] TEST_CODES = new String[]{"USD", "CAD", "EUR"};
+	final static private double[] TEST_MATRIX = new double[]{
+		1.0d, 1.2307d, 0.9134d,
+		0.8125d, 1.0d, 0.7421d,
+		1.0948d, 1.3475d, 1.0d
+	};
+
+	public TestRateSnapshotLoader() {
+		super(	CurrencyConverterProvider.class, 
+				CurrencyConverterProvider.class.getPackage().toString());
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		UtilityTestMethods.deleteDatabaseByContentResolver(mContext);
+	}
+	
+	@Override
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		UtilityTestMethods.deleteDatabaseByContentResolver(mContext);
+	}
+
+	@Test
+	public void testSeed() throws IOException {
+		final ContentResolver resolver = mContext.getContentResolver();
+		assertEquals(9, RateSnapshotLoader.seed(resolver, snapshotOf(TEST_MATRIX), null));
+		assertEquals(9, countRates());
+		assertRate("CAD", "EUR", 0.7421d);
+
+		//seeding again updates in place
+		assertEquals(3, RateSnapshotLoader.seed(resolver, snapshotOf(scaled(2)), "EUR"));
+		assertEquals(9, countRates());
+		assertRate("EUR", "USD", 2 * 1.0948d);
+		assertRate("CAD", "EUR", 0.7421d);
+	}
+
+	@Test
+	public void testToRateMatrix() throws IOException {
+		RateMatrix matrix = RateSnapshotLoader.toRateMatrix(snapshotOf(TEST_MATRIX));
+		assertEquals(3, matrix.size());
+		assertEquals(0.7421d, matrix.get("cad", "EUR"));
+		assertEquals(1.0948d, matrix.get(2, 0));
+		assertEquals("Expected the rows as of the snapshot", 
+				snapshotOf(TEST_MATRIX).getUpdateTime(), matrix.getRowTime(1));
+		assertEquals("Expected only the base's row", 3, 
+				RateSnapshotLoader.toContentValues(snapshotOf(TEST_MATRIX), "CAD").length);
+	}
+
+	@Test
+	public void testExportRestoreRoundTrip() throws IOException {
+		final ContentResolver resolver = mContext.getContentResolver();
+		ContentValues order = new ContentValues();
+		order.put(DisplayOrderEntry.COLUMN_CURRENCY_CODE, "EUR");
+		order.put(DisplayOrderEntry.COLUMN_DEF_DISPLAY_ORDER, 0);
+		resolver.insert(DisplayOrderEntry.CONTENT_URI, order);
+		RateSnapshotLoader.seed(resolver, snapshotOf(TEST_MATRIX), null);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertEquals(9, RateSnapshotWriter.export(resolver, out, 1000L));
+		RateSnapshot exported = RateSnapshot.read(ByteBuffer.wrap(out.toByteArray()));
+		assertEquals(1000L, exported.getUpdateTime());
+		assertEquals("Expected codes in display order first", "EUR", exported.getCode(0));
+		assertEquals(0.7421d, exported.getRate(exported.indexOf("CAD"), exported.indexOf("EUR")));
+
+		//replace every rate with fewer, then restore
+		resolver.delete(ExchangeRateEntry.CONTENT_URI, null, null);
+		RateSnapshotLoader.seed(resolver, snapshotOf(scaled(3)), "USD");
+		assertEquals(9, RateSnapshotLoader.restore(resolver, exported));
+		assertEquals(9, countRates());
+		assertRate("USD", "CAD", 1.2307d);
+		assertRate("EUR", "CAD", 1.3475d);
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Helper methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+
+	private static RateSnapshot snapshotOf(double[] matrix) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		RateSnapshotWriter.write(out, TEST_CODES, matrix, 0);
+		return RateSnapshot.read(ByteBuffer.wrap(out.toByteArray()));
+	}
+
+	private static double[] scaled(double factor) {
+		double[] matrix = new double[TEST_MATRIX.length];
+		for (int index = 0; index < matrix.length; index++) {
+			matrix[index] = TEST_MATRIX[index] * factor;
+		}
+		return matrix;
+	}
+
+	private int countRates() {
+		Cursor cursor = mContext.getContentResolver().query(
+				ExchangeRateEntry.CONTENT_URI, null, null, null, null);
+		try {
+			return cursor.getCount();
+		} finally {
+			cursor.close();
+		}
+	}
+
+	private void assertRate(String source, String dest, double expected) {
+		Cursor cursor = mContext.getContentResolver().query(
+				ExchangeRateEntry.buildExchangeRateFromSourceToDest(source, dest), 
+				new String[]{ExchangeRateEntry.COLUMN_EXCHANGE_RATE}, null, null, null);
+		try {
+			assertTrue("Expected a rate for " + source + dest, cursor.moveToFirst());
+			assertEquals(expected, cursor.getDouble(0), 0.000001d);
+		} finally {
+			cursor.close();
+		}
+	}
+}
@@ -0,0 +1,291 @@
+package com.ovrhere.android.currencyconverter.model.requests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.google.gson.stream.JsonReader;
+
+import com.ovrhere.android.currencyconverter.test.StubHttpServer;
+
+public class TestAbstractSimpleHttpRequest extends AndroidTestCase {
+	final static private String LOGTAG = TestAbstractSimpleHttpRequest.class.getSimpleName();
+	
+	/** A repetitive body; as rate payloads are. */
+	final static private String TEST_BODY = buildBody(200);
+	
+	/** The rates of the benchmark body; ~128KB. */
+	final static private int BENCHMARK_RATE_COUNT = 4000;
+	/** The latency of every benchmark response. */
+	final static private long BENCHMARK_LATENCY = 100; //ms
+	/** The throttled bandwidth of benchmark responses; bytes per second. */
+	final static private int BENCHMARK_BANDWIDTH = 512 * 1024;
+	/** The cost of handling each rate, standing in for the device's slower 
+	 * parsing &amp; its database writes. */
+	final static private long BENCHMARK_RATE_COST = 50000; //ns
+	/** The requests timed per mode, after one to warm up. */
+	final static private int BENCHMARK_ITERATIONS = 3;
+	
+	private String mBody = TEST_BODY;
+	private StubHttpServer mServer = null;
+	
+	@Before
+	protected void setUp() throws Exception {
+		super.setUp();
+		mServer = new StubHttpServer(new StubHttpServer.Responder() {
+			@Override
+			public String respond(String target) {
+				return mBody;
+			}
+		});
+	}
+	
+	@After
+	protected void tearDown() throws Exception {
+		mServer.shutdown();
+		super.tearDown();
+	}
+	
+	@Test
+	public void testIdentity() {
+		RecordingListener listener = runRequest();
+		assertEquals(TEST_BODY, listener.body);
+		assertEquals(TEST_BODY.length(), listener.encodedBytes);
+		assertEquals(TEST_BODY.length(), listener.decodedBytes);
+	}
+	
+	@Test
+	public void testGzip() {
+		mServer.setEncoding("gzip");
+		RecordingListener listener = runRequest();
+		assertEquals("Expected the body decoded", TEST_BODY, listener.body);
+		assertEquals(TEST_BODY.length(), listener.decodedBytes);
+		assertTrue("Expected fewer bytes transferred", 
+				listener.encodedBytes < listener.decodedBytes);
+		Log.i(LOGTAG, String.format("gzip: %d bytes for %d", 
+				listener.encodedBytes, listener.decodedBytes));
+	}
+	
+	@Test
+	public void testDeflate() {
+		mServer.setEncoding("deflate");
+		RecordingListener listener = runRequest();
+		assertEquals("Expected the body decoded", TEST_BODY, listener.body);
+		assertTrue("Expected fewer bytes transferred", 
+				listener.encodedBytes < listener.decodedBytes);
+	}
+	
+	@Test
+	public void testPipelined() {
+		mBody = buildBody(5000); //larger than the ring
+		RecordingListener listener = runRequest(true);
+		assertEquals(mBody, listener.body);
+		assertEquals(mBody.length(), listener.encodedBytes);
+		assertEquals(mBody.length(), listener.decodedBytes);
+	}
+	
+	@Test
+	public void testPipelinedGzip() {
+		mBody = buildBody(5000);
+		mServer.setEncoding("gzip");
+		RecordingListener listener = runRequest(true);
+		assertEquals("Expected the body decoded", mBody, listener.body);
+		assertEquals(mBody.length(), listener.decodedBytes);
+		assertTrue("Expected fewer bytes transferred", 
+				listener.encodedBytes < listener.decodedBytes);
+	}
+	
+	@Test
+	public void testPipelinedConnectionReused() {
+		runRequest(true);
+		runRequest(true);
+		runRequest(false);
+		assertEquals("Expected one connection for every request", 1, mServer.getConnectionCount());
+	}
+	
+	@Test
+	public void testPipelinedCancel() throws Exception {
+		mServer.setBandwidth(1024); //~8s for the body
+		final TestRequest request = new TestRequest(mServer.getBaseUrl());
+		final RecordingListener listener = new RecordingListener();
+		request.setValidatorCache(null);
+		request.setPipelined(true);
+		request.setOnRequestEventListener(listener);
+		Thread runner = new Thread(request);
+		runner.start();
+		Thread.sleep(500);
+		request.cancel();
+		runner.join(5000);
+		assertFalse("Expected the request aborted, not waited on", runner.isAlive());
+		assertFalse(listener.completed);
+		assertNull(listener.body);
+	}
+	
+	@Test
+	public void testPipelinedThroughput() {
+		mBody = buildBody(BENCHMARK_RATE_COUNT);
+		mServer.setDelay(BENCHMARK_LATENCY);
+		mServer.setBandwidth(BENCHMARK_BANDWIDTH);
+		final long serial = timeRequests(false, BENCHMARK_RATE_COST);
+		final long pipelined = timeRequests(true, BENCHMARK_RATE_COST);
+		final long serialFree = timeRequests(false, 0);
+		final long pipelinedFree = timeRequests(true, 0);
+		
+		Log.i(LOGTAG, String.format("%d bytes, %dms latency, %dKB/s; " +
+				"%dns per rate, serial: %dms, pipelined: %dms; " +
+				"parse only, serial: %dms, pipelined: %dms", 
+				mBody.length(), BENCHMARK_LATENCY, BENCHMARK_BANDWIDTH / 1024, 
+				BENCHMARK_RATE_COST, serial, pipelined, serialFree, pipelinedFree));
+		assertTrue("Expected the download & parsing overlapped", pipelined < serial);
+	}
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Helper methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** @return The events of an unconditional request to the server. */
+	private RecordingListener runRequest() {
+		return runRequest(false);
+	}
+	
+	/** @return The events of an unconditional request to the server. */
+	private RecordingListener runRequest(boolean pipelined) {
+		RecordingListener listener = new RecordingListener();
+		TestRequest request = new TestRequest(mServer.getBaseUrl());
+		request.setValidatorCache(null);
+		request.setPipelined(pipelined);
+		request.setOnRequestEventListener(listener);
+		request.run();
+		assertNull("Unexpected exception: " + listener.exception, listener.exception);
+		assertTrue(listener.completed);
+		return listener;
+	}
+	
+	/** @return The mean time in ms of a request parsed by a {@link ParsingListener}. */
+	private long timeRequests(boolean pipelined, long rateCost) {
+		long total = 0;
+		for (int iteration = 0; iteration <= BENCHMARK_ITERATIONS; iteration++) {
+			ParsingListener listener = new ParsingListener(rateCost);
+			TestRequest request = new TestRequest(mServer.getBaseUrl());
+			request.setValidatorCache(null);
+			request.setPipelined(pipelined);
+			request.setOnRequestEventListener(listener);
+			final long start = System.nanoTime();
+			request.run();
+			final long time = System.nanoTime() - start;
+			assertNull("Unexpected exception: " + listener.exception, listener.exception);
+			assertEquals(BENCHMARK_RATE_COUNT, listener.rateCount);
+			if (iteration > 0) { //the first warms up
+				total += time;
+			}
+		}
+		return total / BENCHMARK_ITERATIONS / 1000000;
+	}
+	
+	/** @return A json array of the given number of rates. */
+	private static String buildBody(int count) {
+		StringBuilder body = new StringBuilder("[");
+		for (int index = 0; index < count; index++) {
+			if (index > 0) {
+				body.append(",");
+			}
+			body.append("{\"id\":\"USDCAD\",\"Rate\":\"1.2315\"}");
+		}
+		return body.append("]").toString();
+	}
+	
+	/** A request to a fixed url. */
+	private static class TestRequest extends AbstractSimpleHttpRequest {
+		final private String mUrl;
+		public TestRequest(String url) {
+			this.mUrl = url;
+		}
+		@Override
+		protected Uri getUriRequest() {
+			return Uri.parse(mUrl + "/rates");
+		}
+	}
+	
+	/** Parses the rates of the body as they are read, spending a set time on each. */
+	private static class ParsingListener implements 
+		AbstractSimpleHttpRequest.OnRequestEventListener {
+		final private long mRateCost;
+		int rateCount = 0;
+		Exception exception = null;
+		
+		public ParsingListener(long rateCost) {
+			this.mRateCost = rateCost;
+		}
+		
+		@Override public void onException(Exception e) {
+			exception = e;
+		}
+		@Override public void onResponseCode(int responseCode) {}
+		@Override public void onStart(InputStream in) {
+			try {
+				JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+				reader.beginArray();
+				while (reader.hasNext()) {
+					reader.beginObject();
+					while (reader.hasNext()) {
+						reader.nextName();
+						reader.nextString();
+					}
+					reader.endObject();
+					rateCount++;
+					final long end = System.nanoTime() + mRateCost;
+					while (System.nanoTime() < end) {} //busy, as parsing is
+				}
+				reader.endArray();
+				reader.close();
+			} catch (IOException e) {
+				exception = e;
+			}
+		}
+		@Override public void onComplete() {}
+	}
+	
+	/** Records the body & byte counts of a request. */
+	private static class RecordingListener implements 
+		AbstractSimpleHttpRequest.OnTransferEventListener {
+		String body = null;
+		long encodedBytes = -1;
+		long decodedBytes = -1;
+		boolean completed = false;
+		Exception exception = null;
+		
+		@Override public void onException(Exception e) {
+			exception = e;
+		}
+		@Override public void onResponseCode(int responseCode) {}
+		@Override public void onStart(InputStream in) {
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			byte[] bytes = new byte[1024];
+			try {
+				int read = 0;
+				while ((read = in.read(bytes)) != -1) {
+					buffer.write(bytes, 0, read);
+				}
+				body = buffer.toString("UTF-8");
+			} catch (IOException e) {
+				exception = e;
+			}
+		}
+		@Override public void onTransfer(long encodedBytes, long decodedBytes) {
+			this.encodedBytes = encodedBytes;
+			this.decodedBytes = decodedBytes;
+		}
+		@Override public void onComplete() {
+			completed = true;
+		}
+	}
+}
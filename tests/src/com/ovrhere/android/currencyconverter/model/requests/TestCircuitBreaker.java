@@ -0,0 +1,98 @@
+package com.ovrhere.android.currencyconverter.model.requests;
+
+import org.junit.Test;
+
+import android.test.AndroidTestCase;
+
+import com.ovrhere.android.currencyconverter.model.requests.CircuitBreaker.State;
+
+public class TestCircuitBreaker extends AndroidTestCase {
+	final static private long OPEN_DURATION = 1000; //ms
+	
+	@Test
+	public void testOpensAtThreshold() {
+		TestBreaker breaker = new TestBreaker();
+		breaker.onFailure();
+		breaker.onFailure();
+		assertEquals(State.CLOSED, breaker.getState());
+		assertTrue(breaker.allowRequest());
+		
+		breaker.onFailure();
+		assertEquals(State.OPEN, breaker.getState());
+		assertFalse(breaker.allowRequest());
+		assertEquals(1, breaker.getRejectedCount());
+	}
+	
+	@Test
+	public void testSuccessResetsCount() {
+		TestBreaker breaker = new TestBreaker();
+		breaker.onFailure();
+		breaker.onFailure();
+		breaker.onSuccess();
+		breaker.onFailure();
+		assertEquals(State.CLOSED, breaker.getState());
+		assertEquals(1, breaker.getFailureCount());
+	}
+	
+	@Test
+	public void testSingleTrialOnceHalfOpen() {
+		TestBreaker breaker = openBreaker();
+		breaker.time += OPEN_DURATION;
+		assertEquals(State.HALF_OPEN, breaker.getState());
+		
+		assertTrue("Expected a trial", breaker.allowRequest());
+		assertFalse("Expected only one trial", breaker.allowRequest());
+		
+		breaker.onSuccess();
+		assertEquals(State.CLOSED, breaker.getState());
+		assertTrue(breaker.allowRequest());
+	}
+	
+	@Test
+	public void testFailedTrialReopens() {
+		TestBreaker breaker = openBreaker();
+		breaker.time += OPEN_DURATION;
+		assertTrue(breaker.allowRequest());
+		breaker.onFailure();
+		
+		assertEquals(State.OPEN, breaker.getState());
+		assertFalse(breaker.allowRequest());
+		breaker.time += OPEN_DURATION - 1;
+		assertFalse("Expected open for the full duration again", breaker.allowRequest());
+	}
+	
+	@Test
+	public void testAbandonedTrialRetried() {
+		TestBreaker breaker = openBreaker();
+		breaker.time += OPEN_DURATION;
+		assertTrue(breaker.allowRequest());
+		breaker.onAbandoned();
+		assertTrue("Expected another trial", breaker.allowRequest());
+	}
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Helper methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** @return A breaker just opened. */
+	private static TestBreaker openBreaker() {
+		TestBreaker breaker = new TestBreaker();
+		for (int index = 0; index < breaker.getFailureThreshold(); index++) {
+			breaker.onFailure();
+		}
+		assertEquals(State.OPEN, breaker.getState());
+		return breaker;
+	}
+	
+	/** A breaker on a settable clock. */
+	private static class TestBreaker extends CircuitBreaker {
+		long time = 0;
+		public TestBreaker() {
+			super(3, OPEN_DURATION);
+		}
+		@Override
+		protected long now() {
+			return time;
+		}
+	}
+}
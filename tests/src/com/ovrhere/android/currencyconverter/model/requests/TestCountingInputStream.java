@@ -0,0 +1,38 @@
+package com.ovrhere.android.currencyconverter.model.requests;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import android.test.AndroidTestCase;
+
+public class TestCountingInputStream extends AndroidTestCase {
+
+	@Test
+	public void testCountsReadAndSkipped() throws IOException {
+		CountingInputStream in = new CountingInputStream(
+				new ByteArrayInputStream(new byte[100]));
+		assertEquals(0, in.getCount());
+		
+		in.read();
+		assertEquals(1, in.getCount());
+		in.read(new byte[10]);
+		assertEquals(11, in.getCount());
+		in.skip(9);
+		assertEquals(20, in.getCount());
+		
+		while (in.read(new byte[64], 0, 64) != -1) {}
+		assertEquals("Expected each byte counted once", 100, in.getCount());
+		assertEquals("Expected the end not to be counted", -1, in.read());
+		assertEquals(100, in.getCount());
+		in.close();
+	}
+	
+	@Test
+	public void testMarkNotSupported() {
+		CountingInputStream in = new CountingInputStream(
+				new ByteArrayInputStream(new byte[10]));
+		assertFalse("Expected no marks, so bytes are not counted twice", in.markSupported());
+	}
+}
@@ -0,0 +1,69 @@
+package com.ovrhere.android.currencyconverter.model.requests;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Random;
+
+import org.junit.Test;
+import org.xmlpull.v1.XmlPullParserException;
+
+import android.test.AndroidTestCase;
+
+public class TestExponentialBackoffPolicy extends AndroidTestCase {
+	final static private int SAMPLES = 1000;
+	
+	@Test
+	public void testCapDoublesToMax() {
+		ExponentialBackoffPolicy policy = new ExponentialBackoffPolicy(100, 1000, 10);
+		assertEquals(100, policy.getCap(1));
+		assertEquals(200, policy.getCap(2));
+		assertEquals(800, policy.getCap(4));
+		assertEquals("Expected the max", 1000, policy.getCap(5));
+		assertEquals("Expected no overflow", 1000, policy.getCap(Integer.MAX_VALUE));
+	}
+	
+	@Test
+	public void testFullJitter() {
+		ExponentialBackoffPolicy policy = 
+				new ExponentialBackoffPolicy(100, 1000, 5, new Random(42));
+		long min = Long.MAX_VALUE;
+		long max = 0;
+		for (int index = 0; index < SAMPLES; index++) {
+			final long backoff = policy.getBackoff(3);
+			min = Math.min(min, backoff);
+			max = Math.max(max, backoff);
+		}
+		assertTrue("Expected within [0, 400]: " + min + "-" + max, min >= 0 && max <= 400);
+		assertTrue("Expected spread over the range: " + min + "-" + max, min < 40 && max > 360);
+	}
+	
+	@Test
+	public void testStopsAfterMaxRetries() {
+		ExponentialBackoffPolicy policy = new ExponentialBackoffPolicy(100, 1000, 2);
+		assertTrue(policy.getBackoff(2) >= 0);
+		assertEquals(-1, policy.getBackoff(3));
+		assertEquals(-1, new ExponentialBackoffPolicy(100, 1000, 0).getBackoff(1));
+	}
+	
+	@Test
+	public void testRetryable() {
+		ExponentialBackoffPolicy policy = new ExponentialBackoffPolicy();
+		assertTrue("No response", policy.isRetryable(0, new IOException()));
+		assertTrue("Timeout", policy.isRetryable(0, new SocketTimeoutException()));
+		assertTrue("Server error", policy.isRetryable(500, new IOException()));
+		assertTrue("Unavailable", policy.isRetryable(503, new IOException()));
+		assertTrue("Too many requests", policy.isRetryable(429, new IOException()));
+		assertTrue("Request timeout", policy.isRetryable(408, new IOException()));
+		assertTrue("Body cut short", policy.isRetryable(200, new IOException()));
+	}
+	
+	@Test
+	public void testNotRetryable() {
+		ExponentialBackoffPolicy policy = new ExponentialBackoffPolicy();
+		assertFalse("Bad request", policy.isRetryable(400, new IOException()));
+		assertFalse("Not found", policy.isRetryable(404, new IOException()));
+		assertFalse("Not implemented", policy.isRetryable(501, new IOException()));
+		assertFalse("Unparsable", policy.isRetryable(200, new XmlPullParserException("")));
+		assertFalse("Unexpected", policy.isRetryable(0, new IllegalStateException()));
+	}
+}
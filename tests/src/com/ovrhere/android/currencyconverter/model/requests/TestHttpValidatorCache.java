@@ -0,0 +1,162 @@
+package com.ovrhere.android.currencyconverter.model.requests;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.ovrhere.android.currencyconverter.test.StubHttpServer;
+
+public class TestHttpValidatorCache extends AndroidTestCase {
+	final static private String TEST_BODY = "{\"rates\":[1.2315,121.505,98.6602]}";
+	final static private String TEST_ETAG = "\"v1\"";
+	final static private String TEST_LAST_MODIFIED = "Mon, 25 May 2015 14:04:56 GMT";
+	
+	private StubHttpServer mServer = null;
+	private HttpValidatorCache mCache = null;
+	
+	@Before
+	protected void setUp() throws Exception {
+		super.setUp();
+		mServer = new StubHttpServer(new StubHttpServer.Responder() {
+			@Override
+			public String respond(String target) {
+				return TEST_BODY;
+			}
+		});
+		mCache = new HttpValidatorCache();
+	}
+	
+	@After
+	protected void tearDown() throws Exception {
+		mServer.shutdown();
+		super.tearDown();
+	}
+	
+	@Test
+	public void testNotModifiedSkipsBody() {
+		mServer.setValidators(TEST_ETAG, null);
+		
+		RecordingListener first = runRequest();
+		assertEquals(200, first.responseCode);
+		assertTrue("Expected the body", first.started);
+		assertTrue(first.completed);
+		
+		RecordingListener second = runRequest();
+		assertEquals(304, second.responseCode);
+		assertFalse("Expected no body to parse", second.started);
+		assertTrue("Expected a 304 to complete", second.completed);
+		
+		assertEquals(1, mServer.getNotModifiedCount());
+		assertEquals(1, mCache.getNotModifiedCount());
+		assertEquals("Expected the body's length to be saved", 
+				TEST_BODY.length(), mCache.getBytesSaved());
+	}
+	
+	@Test
+	public void testLastModified() {
+		mServer.setValidators(null, TEST_LAST_MODIFIED);
+		runRequest();
+		assertEquals(304, runRequest().responseCode);
+	}
+	
+	@Test
+	public void testNoValidatorsUnconditional() {
+		runRequest();
+		RecordingListener second = runRequest();
+		assertEquals(200, second.responseCode);
+		assertTrue(second.started);
+		assertEquals(0, mServer.getNotModifiedCount());
+		assertEquals(0, mCache.getBytesSaved());
+	}
+	
+	@Test
+	public void testDiscardValidators() {
+		mServer.setValidators(TEST_ETAG, TEST_LAST_MODIFIED);
+		runRequest();
+		
+		TestRequest request = new TestRequest(mServer.getBaseUrl());
+		request.setValidatorCache(mCache);
+		request.discardValidators();
+		
+		assertEquals("Expected an unconditional request", 200, runRequest().responseCode);
+	}
+	
+	@Test
+	public void testDiscardValidatorsDuringStart() {
+		mServer.setValidators(TEST_ETAG, TEST_LAST_MODIFIED);
+		final TestRequest request = new TestRequest(mServer.getBaseUrl());
+		request.setValidatorCache(mCache);
+		request.setOnRequestEventListener(new RecordingListener() {
+			@Override public void onStart(InputStream in) {
+				super.onStart(in);
+				request.discardValidators(); //as a failed parse does
+			}
+		});
+		request.run();
+		
+		RecordingListener second = runRequest();
+		assertEquals("Expected an unconditional request", 200, second.responseCode);
+		assertTrue("Expected the body refetched", second.started);
+		assertEquals(0, mServer.getNotModifiedCount());
+	}
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Helper methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** @return The events of a request to the server, using the test cache. */
+	private RecordingListener runRequest() {
+		RecordingListener listener = new RecordingListener();
+		TestRequest request = new TestRequest(mServer.getBaseUrl());
+		request.setValidatorCache(mCache);
+		request.setOnRequestEventListener(listener);
+		request.run();
+		assertNull("Unexpected exception: " + listener.exception, listener.exception);
+		return listener;
+	}
+	
+	/** A request to a fixed url. */
+	private static class TestRequest extends AbstractSimpleHttpRequest {
+		final private String mUrl;
+		public TestRequest(String url) {
+			this.mUrl = url;
+		}
+		@Override
+		protected Uri getUriRequest() {
+			return Uri.parse(mUrl + "/rates");
+		}
+	}
+	
+	/** Records the events of a request. */
+	private static class RecordingListener implements 
+		AbstractSimpleHttpRequest.OnRequestEventListener {
+		int responseCode = 0;
+		boolean started = false;
+		boolean completed = false;
+		Exception exception = null;
+		
+		@Override public void onException(Exception e) {
+			exception = e;
+		}
+		@Override public void onResponseCode(int responseCode) {
+			this.responseCode = responseCode;
+		}
+		@Override public void onStart(InputStream in) {
+			started = true;
+			try {
+				while (in.read() != -1) {} //consume the body
+			} catch (IOException e) {
+				exception = e;
+			}
+		}
+		@Override public void onComplete() {
+			completed = true;
+		}
+	}
+}
@@ -0,0 +1,164 @@
+package com.ovrhere.android.currencyconverter.model.requests;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.ovrhere.android.currencyconverter.test.StubHttpServer;
+
+public class TestKeepAliveRequestClient extends AndroidTestCase {
+	final static private String LOGTAG = TestKeepAliveRequestClient.class.getSimpleName();
+	
+	/** The number of sequential requests of the benchmark. */
+	final static private int BENCHMARK_REQUEST_COUNT = 200;
+	
+	final static private String TEST_BODY = "{\"id\":\"USDCAD\",\"Rate\":\"1.2315\"}";
+	
+	/** The behaviour before keep-alive: every connection torn down. */
+	final static private RequestClient CLOSING_CLIENT = new RequestClient() {
+		@Override
+		public HttpURLConnection open(URL url) throws IOException {
+			return (HttpURLConnection) url.openConnection();
+		}
+		@Override
+		public void release(HttpURLConnection connection, InputStream body, boolean reusable) {
+			connection.disconnect();
+		}
+	};
+	
+	private StubHttpServer mServer = null;
+	
+	@Before
+	protected void setUp() throws Exception {
+		super.setUp();
+		mServer = new StubHttpServer(new StubHttpServer.Responder() {
+			@Override
+			public String respond(String target) {
+				return TEST_BODY;
+			}
+		});
+	}
+	
+	@After
+	protected void tearDown() throws Exception {
+		mServer.shutdown();
+		super.tearDown();
+	}
+	
+	@Test
+	public void testConnectionReused() {
+		final int COUNT = 10;
+		for (int index = 0; index < COUNT; index++) {
+			runRequest(KeepAliveRequestClient.getDefault(), false);
+		}
+		assertEquals(COUNT, mServer.getRequestCount());
+		assertTrue("Expected connections to be reused", mServer.getConnectionCount() < COUNT);
+	}
+	
+	@Test
+	public void testUnreadBodyDrained() {
+		final int COUNT = 10;
+		for (int index = 0; index < COUNT; index++) {
+			runRequest(KeepAliveRequestClient.getDefault(), true); //body never read
+		}
+		assertTrue("Expected connections to be reused", mServer.getConnectionCount() < COUNT);
+	}
+	
+	@Test
+	public void testServerCloseHonoured() {
+		mServer.setKeepAlive(false);
+		final int COUNT = 3;
+		for (int index = 0; index < COUNT; index++) {
+			runRequest(KeepAliveRequestClient.getDefault(), false);
+		}
+		assertEquals("Expected a connection per request", COUNT, mServer.getConnectionCount());
+	}
+	
+	@Test
+	public void testConfigurePool() {
+		try {
+			KeepAliveRequestClient.configurePool(0, 1000);
+			fail("Expected an empty pool to be rejected");
+		} catch (IllegalArgumentException expected) {}
+		KeepAliveRequestClient.configurePool(KeepAliveRequestClient.DEFAULT_POOL_SIZE, 
+				KeepAliveRequestClient.DEFAULT_KEEP_ALIVE_DURATION);
+		assertEquals(String.valueOf(KeepAliveRequestClient.DEFAULT_POOL_SIZE), 
+				System.getProperty("http.maxConnections"));
+	}
+	
+	@Test
+	public void testSequentialRequestTime() {
+		runRequest(KeepAliveRequestClient.getDefault(), false); //warm up
+		
+		int connections = mServer.getConnectionCount();
+		long start = System.currentTimeMillis();
+		for (int index = 0; index < BENCHMARK_REQUEST_COUNT; index++) {
+			runRequest(CLOSING_CLIENT, false);
+		}
+		final long closing = System.currentTimeMillis() - start;
+		final int closingConnections = mServer.getConnectionCount() - connections;
+		
+		connections = mServer.getConnectionCount();
+		start = System.currentTimeMillis();
+		for (int index = 0; index < BENCHMARK_REQUEST_COUNT; index++) {
+			runRequest(KeepAliveRequestClient.getDefault(), false);
+		}
+		final long keepAlive = System.currentTimeMillis() - start;
+		final int keepAliveConnections = mServer.getConnectionCount() - connections;
+		
+		Log.i(LOGTAG, String.format("%d sequential requests; " +
+				"closing: %dms (%d connections), keep-alive: %dms (%d connections)",
+				BENCHMARK_REQUEST_COUNT, closing, closingConnections, 
+				keepAlive, keepAliveConnections));
+		assertTrue("Expected fewer connections", keepAliveConnections < closingConnections);
+	}
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Helper methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** Runs a request to the server, reading its body unless told to skip it. */
+	private void runRequest(RequestClient client, final boolean skipBody) {
+		TestRequest request = new TestRequest(mServer.getBaseUrl());
+		request.setValidatorCache(null);
+		request.setRequestClient(client);
+		final Exception[] exception = new Exception[1];
+		request.setOnRequestEventListener(new AbstractSimpleHttpRequest.OnRequestEventListener() {
+			@Override public void onException(Exception e) {
+				exception[0] = e;
+			}
+			@Override public void onResponseCode(int responseCode) {}
+			@Override public void onStart(InputStream in) {
+				try {
+					while (!skipBody && in.read() != -1) {}
+				} catch (IOException e) {
+					exception[0] = e;
+				}
+			}
+			@Override public void onComplete() {}
+		});
+		request.run();
+		assertNull("Unexpected exception: " + exception[0], exception[0]);
+	}
+	
+	/** A request to a fixed url. */
+	private static class TestRequest extends AbstractSimpleHttpRequest {
+		final private String mUrl;
+		public TestRequest(String url) {
+			this.mUrl = url;
+		}
+		@Override
+		protected Uri getUriRequest() {
+			return Uri.parse(mUrl + "/rates");
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package com.ovrhere.android.currencyconverter.model.requests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import android.test.AndroidTestCase;
+
+public class TestReadAheadInputStream extends AndroidTestCase {
+
+	@Test
+	public void testReadsEveryByteInOrder() throws IOException {
+		final byte[] bytes = randomBytes(100000);
+		//small chunks, so the ring wraps many times
+		ReadAheadInputStream in = new ReadAheadInputStream(
+				new TrickleInputStream(new ByteArrayInputStream(bytes)), 7, 3);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(in.read());
+		long skipped = 0;
+		while (skipped < 5) {
+			skipped += in.skip(5 - skipped); //within a chunk at a time
+		}
+		byte[] buffer = new byte[13];
+		int read = 0;
+		while ((read = in.read(buffer, 0, buffer.length)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		assertEquals(-1, in.read());
+		in.close();
+
+		final byte[] expected = new byte[bytes.length - 5];
+		expected[0] = bytes[0];
+		System.arraycopy(bytes, 6, expected, 1, bytes.length - 6);
+		assertTrue("Expected every byte, in order", Arrays.equals(expected, out.toByteArray()));
+	}
+
+	@Test
+	public void testFailureAfterBytesBefore() throws IOException {
+		final byte[] bytes = randomBytes(1000);
+		ReadAheadInputStream in = new ReadAheadInputStream(
+				new FailingInputStream(new ByteArrayInputStream(bytes), 500), 64, 2);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[64];
+		try {
+			int read = 0;
+			while ((read = in.read(buffer, 0, buffer.length)) != -1) {
+				out.write(buffer, 0, read);
+			}
+			fail("Expected the failure of the source");
+		} catch (IOException expected) {
+			assertEquals("Simulated failure", expected.getMessage());
+		}
+		assertTrue("Expected every byte before the failure", 
+				Arrays.equals(Arrays.copyOf(bytes, 500), out.toByteArray()));
+		in.close();
+	}
+
+	@Test
+	public void testStopLeavesSourceOpen() throws IOException {
+		final CloseRecordingInputStream source =
+				new CloseRecordingInputStream(new ByteArrayInputStream(randomBytes(100000)));
+		ReadAheadInputStream in = new ReadAheadInputStream(source, 16, 2);
+		in.read();
+		in.stop();
+		assertFalse("Expected the source left open", source.closed);
+		assertTrue("Expected the source free to drain", source.read() != -1);
+		try {
+			in.read();
+			fail("Expected reads to fail once stopped");
+		} catch (IOException expected) {}
+
+		in.close();
+		assertTrue(source.closed);
+	}
+
+	@Test
+	public void testInterruptedWaiting() throws IOException {
+		//never ends
+		InputStream source = new InputStream() {
+			@Override
+			public int read() throws IOException {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {}
+				return 0;
+			}
+			@Override
+			public int read(byte[] buffer, int offset, int length) throws IOException {
+				return read() == 0 ? 0 : -1;
+			}
+		};
+		ReadAheadInputStream in = new ReadAheadInputStream(source, 16, 2);
+		Thread.currentThread().interrupt();
+		try {
+			in.read();
+			fail("Expected the wait interrupted");
+		} catch (InterruptedIOException expected) {
+		} finally {
+			Thread.interrupted();
+		}
+		in.close();
+	}
+
+	@Test
+	public void testFullRingWaits() throws Exception {
+		ReadAheadInputStream in = new ReadAheadInputStream(
+				new ByteArrayInputStream(randomBytes(1000)), 16, 2);
+		Thread.sleep(200); //for the ring to fill
+		assertTrue("Expected the source to wait on the reader", in.getFullWaitCount() > 0);
+		assertEquals(32, in.available());
+		in.close();
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Helper methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+
+	private static byte[] randomBytes(int count) {
+		byte[] bytes = new byte[count];
+		new Random(42).nextBytes(bytes);
+		return bytes;
+	}
+
+	/** Gives at most 5 bytes per read, as a slow network would. */
+	private static class TrickleInputStream extends FilterInputStream {
+		public TrickleInputStream(InputStream in) {
+			super(in);
+		}
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			return super.read(buffer, offset, Math.min(length, 5));
+		}
+	}
+
+	/** Fails once the given bytes have been read. */
+	private static class FailingInputStream extends FilterInputStream {
+		private int mRemaining;
+		public FailingInputStream(InputStream in, int failAfter) {
+			super(in);
+			this.mRemaining = failAfter;
+		}
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			if (mRemaining == 0) {
+				throw new IOException("Simulated failure");
+			}
+			final int read = super.read(buffer, offset, Math.min(length, mRemaining));
+			mRemaining -= read;
+			return read;
+		}
+	}
+
+	/** Records whether it was closed. */
+	private static class CloseRecordingInputStream extends FilterInputStream {
+		volatile boolean closed = false;
+		public CloseRecordingInputStream(InputStream in) {
+			super(in);
+		}
+		@Override
+		public void close() throws IOException {
+			closed = true;
+			super.close();
+		}
+	}
+}
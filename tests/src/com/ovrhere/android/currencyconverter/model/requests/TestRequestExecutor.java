@@ -0,0 +1,169 @@
+package com.ovrhere.android.currencyconverter.model.requests;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.ovrhere.android.currencyconverter.test.StubHttpServer;
+
+public class TestRequestExecutor extends AndroidTestCase {
+	final static private String LOGTAG = TestRequestExecutor.class.getSimpleName();
+	
+	/** The delay of a response that must never be waited on. */
+	final static private long HUNG_DELAY = 10000; //ms
+	/** The most time an aborted request may hold its thread. */
+	final static private long ABORT_TIMEOUT = 2000; //ms
+	
+	private StubHttpServer mServer = null;
+	private RequestExecutor mExecutor = null;
+	
+	@Before
+	protected void setUp() throws Exception {
+		super.setUp();
+		mServer = new StubHttpServer(new StubHttpServer.Responder() {
+			@Override
+			public String respond(String target) {
+				return "[]";
+			}
+		});
+	}
+	
+	@After
+	protected void tearDown() throws Exception {
+		if (mExecutor != null) {
+			mExecutor.shutdown();
+		}
+		mServer.shutdown();
+		super.tearDown();
+	}
+	
+	@Test
+	public void testSubmitMany() throws Exception {
+		final int COUNT = 20;
+		mServer.setDelay(50);
+		mExecutor = new RequestExecutor(4);
+		
+		List<RecordingListener> listeners = new ArrayList<RecordingListener>();
+		List<RequestFuture> futures = new ArrayList<RequestFuture>();
+		for (int index = 0; index < COUNT; index++) {
+			RecordingListener listener = new RecordingListener();
+			listeners.add(listener);
+			futures.add(mExecutor.submit(newRequest(listener)));
+		}
+		for (RequestFuture future : futures) {
+			future.get(ABORT_TIMEOUT * 5, TimeUnit.MILLISECONDS);
+		}
+		
+		assertEquals(COUNT, mServer.getRequestCount());
+		for (RecordingListener listener : listeners) {
+			assertTrue("Expected every request completed", listener.completed);
+			assertNull(listener.exception);
+		}
+	}
+	
+	@Test
+	public void testCancelInFlight() throws Exception {
+		mServer.setDelay(HUNG_DELAY);
+		mExecutor = new RequestExecutor(1);
+		RecordingListener listener = new RecordingListener();
+		RequestFuture future = mExecutor.submit(newRequest(listener));
+		awaitRequests(1);
+		
+		final long start = System.currentTimeMillis();
+		assertTrue(future.cancel(true)); //from this thread, not the request's
+		assertTrue(future.isCancelled());
+		assertTrue(future.getRequest().isCancelled());
+		try {
+			future.get();
+			fail("Expected the future cancelled");
+		} catch (CancellationException expected) {}
+		
+		//the only thread must be free for the next request, and not left interrupted
+		mServer.setDelay(0);
+		RecordingListener next = new RecordingListener();
+		mExecutor.submit(newRequest(next)).get(ABORT_TIMEOUT, TimeUnit.MILLISECONDS);
+		final long time = System.currentTimeMillis() - start;
+		Log.i(LOGTAG, "Aborted & ran the next request in " + time + "ms");
+		
+		assertTrue("Expected the next request completed", next.completed);
+		assertFalse("Expected no events once cancelled", listener.completed);
+		assertNull("Expected no events once cancelled", listener.exception);
+	}
+	
+	@Test
+	public void testCancelQueued() throws Exception {
+		mServer.setDelay(HUNG_DELAY);
+		mExecutor = new RequestExecutor(1);
+		RequestFuture running = mExecutor.submit(newRequest(new RecordingListener()));
+		RequestFuture queued = mExecutor.submit(newRequest(new RecordingListener()));
+		awaitRequests(1);
+		
+		assertTrue(queued.cancel(true));
+		assertTrue(running.cancel(true));
+		//another request proves the queue has moved past the cancelled one
+		mServer.setDelay(0);
+		mExecutor.submit(newRequest(new RecordingListener()))
+			.get(ABORT_TIMEOUT, TimeUnit.MILLISECONDS);
+		
+		assertEquals("Expected the queued request never made", 2, mServer.getRequestCount());
+	}
+	
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Helper methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/** @return A new request to the server, reporting to the listener. */
+	private AbstractSimpleHttpRequest newRequest(RecordingListener listener) {
+		TestRequest request = new TestRequest(mServer.getBaseUrl());
+		request.setValidatorCache(null);
+		request.setOnRequestEventListener(listener);
+		return request;
+	}
+	
+	/** Waits until the server has received the given number of requests. */
+	private void awaitRequests(int count) throws InterruptedException {
+		final long end = System.currentTimeMillis() + ABORT_TIMEOUT;
+		while (mServer.getRequestCount() < count) {
+			assertTrue("Expected the request received", System.currentTimeMillis() < end);
+			Thread.sleep(10);
+		}
+	}
+	
+	/** A request to a fixed url. */
+	private static class TestRequest extends AbstractSimpleHttpRequest {
+		final private String mUrl;
+		public TestRequest(String url) {
+			this.mUrl = url;
+		}
+		@Override
+		protected Uri getUriRequest() {
+			return Uri.parse(mUrl + "/rates");
+		}
+	}
+	
+	/** Records the terminal events of a request. */
+	private static class RecordingListener implements 
+		AbstractSimpleHttpRequest.OnRequestEventListener {
+		volatile boolean completed = false;
+		volatile Exception exception = null;
+		
+		@Override public void onException(Exception e) {
+			exception = e;
+		}
+		@Override public void onResponseCode(int responseCode) {}
+		@Override public void onStart(InputStream in) {}
+		@Override public void onComplete() {
+			completed = true;
+		}
+	}
+}
@@ -0,0 +1,283 @@
+package com.ovrhere.android.currencyconverter.test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A minimal, local HTTP server for tests & benchmarks. Every GET is answered
+ * by the {@link Responder} on its own thread, after an optional delay,
+ * so concurrent requests are served concurrently.
+ * 
+ * <p>If given validators, every 200 carries them and a request presenting 
+ * a matching <code>If-None-Match</code> or <code>If-Modified-Since</code> is 
+ * answered with a 304.</p>
+ * 
+ * <p>If given an encoding, bodies are compressed whenever the request
+ * accepts it.</p>
+ * 
+ * <p>Connections are kept alive between requests, unless disabled by 
+ * {@link #setKeepAlive(boolean)}.</p>
+ * 
+ * <p>If given a bandwidth, bodies are written in slices, paced to it.</p>
+ *
+ * @version 0.6.0-20261018
+ */
+public class StubHttpServer {
+	/** Answers a request. */
+	public interface Responder {
+		/**
+		 * @param target The request target; path & query, still encoded.
+		 * @return The body to answer with status 200 or <code>null</code> for
+		 * the error status; 500 unless set.
+		 */
+		public String respond(String target);
+	}
+
+	final private ServerSocket mServerSocket;
+	final private Responder mResponder;
+	final private AtomicInteger mRequestCount = new AtomicInteger();
+	final private AtomicInteger mNotModifiedCount = new AtomicInteger();
+	final private AtomicInteger mConnectionCount = new AtomicInteger();
+	volatile private boolean mKeepAlive = true;
+	volatile private long mDelay = 0;
+	volatile private int mBandwidth = 0;
+	volatile private int mErrorStatus = 500;
+	volatile private String mETag = null;
+	volatile private String mLastModified = null;
+	volatile private String mEncoding = null;
+	volatile private boolean mRunning = true;
+
+	/**
+	 * Starts the server on a free local port.
+	 * @param responder The responder to answer with.
+	 * @throws IOException If the port cannot be bound.
+	 */
+	public StubHttpServer(Responder responder) throws IOException {
+		mResponder = responder;
+		mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+		Thread acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				acceptLoop();
+			}
+		}, "StubHttpServer");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/** @return The base url of the server, without a trailing slash. */
+	public String getBaseUrl() {
+		return "http://127.0.0.1:" + mServerSocket.getLocalPort();
+	}
+
+	/** @param delay The time in ms to wait before answering each request. */
+	public void setDelay(long delay) {
+		this.mDelay = delay;
+	}
+
+	/** @param bandwidth The bytes per second to write bodies at or 0 for unpaced. */
+	public void setBandwidth(int bandwidth) {
+		this.mBandwidth = bandwidth;
+	}
+
+	/** @param errorStatus The status to answer with when the responder has no body. */
+	public void setErrorStatus(int errorStatus) {
+		this.mErrorStatus = errorStatus;
+	}
+
+	/**
+	 * @param eTag The entity tag of every body or <code>null</code> for none.
+	 * @param lastModified The last modified date of every body or <code>null</code> for none.
+	 */
+	public void setValidators(String eTag, String lastModified) {
+		this.mETag = eTag;
+		this.mLastModified = lastModified;
+	}
+
+	/** @param encoding "gzip", "deflate" or <code>null</code> to never compress. */
+	public void setEncoding(String encoding) {
+		this.mEncoding = encoding;
+	}
+
+	/** @return The number of requests answered with 304. */
+	public int getNotModifiedCount() {
+		return mNotModifiedCount.get();
+	}
+
+	/** @param keepAlive <code>false</code> to close every connection after its response. */
+	public void setKeepAlive(boolean keepAlive) {
+		this.mKeepAlive = keepAlive;
+	}
+
+	/** @return The number of connections accepted. */
+	public int getConnectionCount() {
+		return mConnectionCount.get();
+	}
+
+	/** @return The number of requests received. */
+	public int getRequestCount() {
+		return mRequestCount.get();
+	}
+
+	/** Stops accepting requests. */
+	public void shutdown() {
+		mRunning = false;
+		try {
+			mServerSocket.close();
+		} catch (IOException e) {}
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////////////////
+	//// Helper methods
+	////////////////////////////////////////////////////////////////////////////////////////////////
+
+	private void acceptLoop() {
+		while (mRunning) {
+			try {
+				final Socket socket = mServerSocket.accept();
+				Thread handler = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						handle(socket);
+					}
+				});
+				handler.setDaemon(true);
+				handler.start();
+			} catch (IOException e) {
+				//closed; stop.
+			}
+		}
+	}
+
+	/** @return The bytes compressed with the encoding. */
+	private static byte[] compress(byte[] bytes, String encoding) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		DeflaterOutputStream out = "gzip".equals(encoding) ?
+				new GZIPOutputStream(buffer) : new DeflaterOutputStream(buffer);
+		out.write(bytes);
+		out.close();
+		return buffer.toByteArray();
+	}
+
+	/** Writes the bytes in slices of a hundredth of a second each, sleeping 
+	 * as need be to keep to the bandwidth. */
+	private static void writePaced(OutputStream out, byte[] bytes, int bandwidth) 
+			throws IOException, InterruptedException {
+		final int slice = Math.max(1, bandwidth / 100);
+		final long start = System.nanoTime();
+		for (int offset = 0; offset < bytes.length; offset += slice) {
+			final long due = start + (offset * 1000000000L) / bandwidth;
+			final long wait = due - System.nanoTime();
+			if (wait > 0) {
+				Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+			}
+			out.write(bytes, offset, Math.min(slice, bytes.length - offset));
+			out.flush();
+		}
+	}
+
+	/** Serves the requests of a connection until either side closes it. */
+	private void handle(Socket socket) {
+		mConnectionCount.incrementAndGet();
+		try {
+			socket.setTcpNoDelay(true); //responses are small; do not wait on acks
+			BufferedReader reader = new BufferedReader(
+					new InputStreamReader(socket.getInputStream(), "UTF-8"));
+			OutputStream out = socket.getOutputStream();
+			while (handleRequest(reader, out)) {}
+		} catch (IOException e) {
+		} catch (InterruptedException e) {
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {}
+		}
+	}
+
+	/** @return <code>true</code> if the connection is kept alive for another request. */
+	private boolean handleRequest(BufferedReader reader, OutputStream out) 
+			throws IOException, InterruptedException {
+		final String requestLine = reader.readLine();
+		if (requestLine == null || requestLine.isEmpty()) {
+			return false; //closed by the client
+		}
+		final String eTag = mETag;
+		final String lastModified = mLastModified;
+		final String encoding = mEncoding;
+		final boolean keepAlive = mKeepAlive;
+		final String connection = keepAlive ? "keep-alive" : "close";
+		boolean notModified = false;
+		boolean compress = false;
+		String header = requestLine;
+		while (header != null && !header.isEmpty()) {
+			header = reader.readLine();
+			if (header == null) {
+				break;
+			}
+			final int colon = header.indexOf(':');
+			if (colon > 0) {
+				final String name = header.substring(0, colon).trim();
+				final String value = header.substring(colon + 1).trim();
+				notModified |= 
+						(name.equalsIgnoreCase("If-None-Match") && value.equals(eTag)) ||
+						(name.equalsIgnoreCase("If-Modified-Since") && value.equals(lastModified));
+				compress |= encoding != null && 
+						name.equalsIgnoreCase("Accept-Encoding") && value.contains(encoding);
+			}
+		}
+		mRequestCount.incrementAndGet();
+		if (mDelay > 0) {
+			Thread.sleep(mDelay);
+		}
+
+		if (notModified) {
+			mNotModifiedCount.incrementAndGet();
+			out.write(("HTTP/1.1 304 Not Modified\r\n" +
+					"Connection: " + connection + "\r\n\r\n").getBytes("UTF-8"));
+			out.flush();
+			return keepAlive;
+		}
+
+		final String target = requestLine.split(" ")[1];
+		final String body = mResponder.respond(target);
+		byte[] bytes = body == null ? new byte[0] : body.getBytes("UTF-8");
+		final String status = body == null ? mErrorStatus + " Error" : "200 OK";
+		String headers = "";
+		if (body != null && eTag != null) {
+			headers += "ETag: " + eTag + "\r\n";
+		}
+		if (body != null && lastModified != null) {
+			headers += "Last-Modified: " + lastModified + "\r\n";
+		}
+		if (body != null && compress) {
+			bytes = compress(bytes, encoding);
+			headers += "Content-Encoding: " + encoding + "\r\n";
+		}
+
+		ByteArrayOutputStream response = new ByteArrayOutputStream();
+		response.write(("HTTP/1.1 " + status + "\r\n" + headers +
+				"Content-Type: text/plain; charset=UTF-8\r\n" +
+				"Content-Length: " + bytes.length + "\r\n" +
+				"Connection: " + connection + "\r\n\r\n").getBytes("UTF-8"));
+		final int bandwidth = mBandwidth;
+		if (bandwidth <= 0) {
+			response.write(bytes);
+			response.writeTo(out); //in one write
+			out.flush();
+			return keepAlive;
+		}
+		response.writeTo(out);
+		out.flush();
+		writePaced(out, bytes, bandwidth);
+		return keepAlive;
+	}
+}